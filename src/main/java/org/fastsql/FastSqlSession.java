@@ -0,0 +1,150 @@
+package org.fastsql;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * 工作单元，持有以(实体类, id)为键的一级缓存
+ * <p>
+ * 通过{@link SQLFactory#openSession()}打开，绑定到当前线程，在try-with-resources中使用：
+ * <pre>
+ * try (FastSqlSession session = sqlFactory.openSession()) {
+ *     studentDAO.selectOneById(1);
+ *     studentDAO.selectOneById(1);//不再查询数据库，返回同一个对象
+ * }
+ * </pre>
+ * 会话打开期间，BaseDAO按id查询和按条件查询的结果都放入一级缓存，重复查询直接返回同一个对象，
+ * 写操作同步更新缓存；关闭会话时丢弃缓存。
+ * 会话只对使用同一个SQLFactory的DAO生效，不同数据库中同一实体类的id可能相同。
+ * 嵌套打开的同一工厂的会话与外层会话共用同一个缓存，关闭后恢复外层会话
+ */
+public final class FastSqlSession implements AutoCloseable {
+
+    private static final ThreadLocal<FastSqlSession> CURRENT = new ThreadLocal<>();
+
+    private final SQLFactory sqlFactory;
+
+    private final FastSqlSession previous;
+
+    private final Map<Class<?>, Map<Object, Object>> identityMap;
+
+    private final Thread owner;
+
+    private boolean closed;
+
+    private FastSqlSession(SQLFactory sqlFactory, FastSqlSession previous) {
+        this.sqlFactory = sqlFactory;
+        this.previous = previous;
+        final FastSqlSession outer = previous == null ? null : previous.find(sqlFactory);
+        this.identityMap = outer == null ? new HashMap<>() : outer.identityMap;
+        this.owner = Thread.currentThread();
+    }
+
+    static FastSqlSession open(SQLFactory sqlFactory) {
+        FastSqlSession session = new FastSqlSession(sqlFactory, CURRENT.get());
+        CURRENT.set(session);
+        return session;
+    }
+
+    /**
+     * @return 当前线程打开的会话，没有时返回null
+     */
+    public static FastSqlSession current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * @return 当前线程为sqlFactory打开的最内层会话，没有时返回null
+     */
+    public static FastSqlSession current(SQLFactory sqlFactory) {
+        final FastSqlSession session = CURRENT.get();
+        return session == null ? null : session.find(sqlFactory);
+    }
+
+    private FastSqlSession find(SQLFactory sqlFactory) {
+        for (FastSqlSession session = this; session != null; session = session.previous) {
+            if (session.sqlFactory == sqlFactory) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    public SQLFactory getSqlFactory() {
+        return sqlFactory;
+    }
+
+    /**
+     * @return 缓存的对象，没有时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E get(Class<E> entityClass, Object id) {
+        Map<Object, Object> entities = identityMap.get(entityClass);
+        return entities == null ? null : (E) entities.get(id);
+    }
+
+    public void put(Class<?> entityClass, Object id, Object entity) {
+        if (id != null && entity != null) {
+            identityMap.computeIfAbsent(entityClass, key -> new HashMap<>()).put(id, entity);
+        }
+    }
+
+    /**
+     * 缓存中已有同一id的对象时返回已有的对象，否则放入并返回传入的对象
+     */
+    @SuppressWarnings("unchecked")
+    public <E> E merge(Class<E> entityClass, Object id, E entity) {
+        if (id == null || entity == null) {
+            return entity;
+        }
+        Object existing = identityMap.computeIfAbsent(entityClass, key -> new HashMap<>()).putIfAbsent(id, entity);
+        return existing == null ? entity : (E) existing;
+    }
+
+    public void remove(Class<?> entityClass, Object id) {
+        Map<Object, Object> entities = identityMap.get(entityClass);
+        if (entities != null) {
+            entities.remove(id);
+        }
+    }
+
+    /**
+     * 丢弃一个实体类的所有缓存
+     */
+    public void clear(Class<?> entityClass) {
+        identityMap.remove(entityClass);
+    }
+
+    public void clear() {
+        identityMap.clear();
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * 关闭会话，不与外层会话共用缓存时丢弃缓存
+     */
+    @Override
+    public void close() {
+        if (closed) {
+            return;
+        }
+        if (Thread.currentThread() != owner) {
+            throw new FastSQLException("会话只能在打开它的线程中关闭");
+        }
+        if (CURRENT.get() != this) {
+            throw new FastSQLException("请先关闭嵌套的会话");
+        }
+        closed = true;
+        if (previous == null || previous.find(sqlFactory) == null) {
+            identityMap.clear();
+        }
+        if (previous == null) {
+            CURRENT.remove();
+        } else {
+            CURRENT.set(previous);
+        }
+    }
+}
@@ -0,0 +1,178 @@
+package org.fastsql;
+
+import org.fastsql.config.DatabaseType;
+import org.springframework.dao.support.DataAccessUtils;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 预编译的查询，由{@link SQL#prepare(Class)}生成
+ * <p>
+ * 实例不可变且线程安全，SQL文本、命名参数位置和RowMapper只解析一次，
+ * 可以作为静态常量保存，每次执行只需传入新的参数值。由SQLFactory创建时，每次执行都从工厂获取执行核心，
+ * 工厂配置变化后不会使用旧的执行核心，并按工厂的读写分离规则选择主库或副本
+ */
+public final class PreparedQuery<T> {
+
+    private final String sql;
+
+    /**
+     * 命名参数替换为?之后的SQL，参数值不含集合时直接使用
+     */
+    private final String substitutedSql;
+
+    /**
+     * 按占位符顺序排列的参数名，使用?占位符时为空
+     */
+    private final String[] parameterNames;
+
+    private final boolean useClassicJdbcTemplate;
+
+    private final RowMapper<T> rowMapper;
+
+    private final DatabaseType databaseType;
+
+    /**
+     * 不是由工厂创建的SQL生成时使用的执行核心
+     */
+    private final NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    private final SQLFactory sqlFactory;
+
+    PreparedQuery(String sql, RowMapper<T> rowMapper, DatabaseType databaseType,
+                  NamedParameterJdbcTemplate namedParameterJdbcTemplate, SQLFactory sqlFactory,
+                  boolean useClassicJdbcTemplate) {
+        this.sql = sql;
+        this.rowMapper = rowMapper;
+        this.databaseType = databaseType;
+        this.namedParameterJdbcTemplate = sqlFactory == null ? namedParameterJdbcTemplate : null;
+        this.sqlFactory = sqlFactory;
+        this.useClassicJdbcTemplate = useClassicJdbcTemplate;
+        if (useClassicJdbcTemplate) {
+            this.substitutedSql = sql;
+            this.parameterNames = new String[0];
+        } else {
+            ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+            this.substitutedSql = NamedParameterUtils.substituteNamedParameters(parsedSql, null);
+            List<SqlParameter> parameters =
+                    NamedParameterUtils.buildSqlParameterList(parsedSql, EmptySqlParameterSource.INSTANCE);
+            this.parameterNames = new String[parameters.size()];
+            for (int i = 0; i < parameters.size(); i++) {
+                this.parameterNames[i] = parameters.get(i).getName();
+            }
+        }
+    }
+
+    /**
+     * 查询多行结果
+     *
+     * @param parameterSource 命名参数
+     */
+    public List<T> queryList(SqlParameterSource parameterSource) {
+        if (useClassicJdbcTemplate) {
+            throw new FastSQLException("使用?占位符的查询请传入可变参数");
+        }
+        Object[] args = buildArgs(parameterSource);
+        if (args == null) {
+            //参数中含有集合，需要展开IN列表，交给NamedParameterJdbcTemplate处理
+            return template().query(sql, parameterSource, rowMapper);
+        }
+        return jdbcOperations().query(substitutedSql, args, rowMapper);
+    }
+
+    public List<T> queryList(Map<String, ?> parameterMap) {
+        return queryList(new MapSqlParameterSource(parameterMap));
+    }
+
+    /**
+     * 查询多行结果
+     *
+     * @param args 按占位符出现的顺序传入参数值，?占位符和命名参数都适用
+     */
+    public List<T> queryList(Object... args) {
+        checkArgs(args);
+        return jdbcOperations().query(substitutedSql, args, rowMapper);
+    }
+
+    /**
+     * 查询单行结果，没有结果时返回null
+     */
+    public T queryOne(SqlParameterSource parameterSource) {
+        return DataAccessUtils.singleResult(queryList(parameterSource));
+    }
+
+    public T queryOne(Map<String, ?> parameterMap) {
+        return DataAccessUtils.singleResult(queryList(parameterMap));
+    }
+
+    public T queryOne(Object... args) {
+        return DataAccessUtils.singleResult(queryList(args));
+    }
+
+    public String getSql() {
+        return sql;
+    }
+
+    public RowMapper<T> getRowMapper() {
+        return rowMapper;
+    }
+
+    public DatabaseType getDatabaseType() {
+        return databaseType;
+    }
+
+    /**
+     * 按预先解析的参数位置取值，参数值中含有集合时返回null
+     */
+    private Object[] buildArgs(SqlParameterSource parameterSource) {
+        Object[] args = new Object[parameterNames.length];
+        for (int i = 0; i < parameterNames.length; i++) {
+            String name = parameterNames[i];
+            if (!parameterSource.hasValue(name)) {
+                throw new FastSQLException("没有找到命名参数:" + name);
+            }
+            Object raw = parameterSource.getValue(name);
+            Object value = raw instanceof SqlParameterValue ? ((SqlParameterValue) raw).getValue() : raw;
+            if (value instanceof Iterable || (value != null && value.getClass().isArray() && !(value instanceof byte[]))) {
+                return null;
+            }
+            int sqlType = parameterSource.getSqlType(name);
+            if (sqlType != SqlParameterSource.TYPE_UNKNOWN) {
+                args[i] = new SqlParameterValue(sqlType, parameterSource.getTypeName(name), value);
+            } else {
+                args[i] = raw;
+            }
+        }
+        return args;
+    }
+
+    private void checkArgs(Object[] args) {
+        if (!useClassicJdbcTemplate && args.length != parameterNames.length) {
+            throw new FastSQLException("参数数量不匹配，需要" + parameterNames.length + "个，实际为" + args.length + "个");
+        }
+    }
+
+    private NamedParameterJdbcTemplate template() {
+        return sqlFactory == null ? namedParameterJdbcTemplate : sqlFactory.getReadTemplate();
+    }
+
+    private JdbcOperations jdbcOperations() {
+        return template().getJdbcOperations();
+    }
+
+    @Override
+    public String toString() {
+        return sql;
+    }
+}
@@ -1,13 +1,27 @@
 package org.fastsql;
 
+import org.fastsql.cache.QueryResultCache;
 import org.fastsql.config.DatabaseType;
 import org.fastsql.dto.BatchUpdateResult;
+import org.fastsql.dto.ColumnFrame;
 import org.fastsql.dto.ColumnMetaData;
+import org.fastsql.dto.KeysetPage;
 import org.fastsql.dto.ResultPage;
+import org.fastsql.dto.ScanProgress;
+import org.fastsql.mapper.ColumnReader;
+import org.fastsql.mapper.ColumnReaders;
+import org.fastsql.mapper.CompactRowMapper;
+import org.fastsql.mapper.FastBeanRowMapper;
 import org.fastsql.mapper.OraclePagingSingleColumnRowMapper;
+import org.fastsql.util.ChunkScanner;
+import org.fastsql.util.CountTemplate;
+import org.fastsql.util.CursorTemplate;
+import org.fastsql.util.EntityParameterSource;
 import org.fastsql.util.FastSqlUtils;
+import org.fastsql.util.Keyset;
 import org.fastsql.util.PageTemplate;
 import org.fastsql.util.PageUtils;
+import org.fastsql.util.TransactionCallbacks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.dao.EmptyResultDataAccessException;
@@ -20,11 +34,19 @@ import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.sql.*;
 import java.text.SimpleDateFormat;
+import java.time.Duration;
+import java.time.Instant;
 import java.time.LocalDate;
 import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZonedDateTime;
 import java.time.format.DateTimeFormatter;
 import java.util.*;
+import java.util.function.BiConsumer;
 import java.util.function.Consumer;
+import java.util.function.Supplier;
+import java.util.stream.Stream;
 
 /**
  * SQL构建器和执行器
@@ -47,6 +69,28 @@ public class SQL {
 
     private DatabaseType databaseType;
 
+    private QueryResultCache queryResultCache;
+
+    /**
+     * 创建该实例的工厂，用于读写分离
+     */
+    private SQLFactory sqlFactory;
+
+    /**
+     * 查询结果的缓存时间，为null时不缓存
+     */
+    private Duration cacheTtl;
+
+    /**
+     * 结果依赖的表，为null时从SQL中解析
+     */
+    private String[] cacheTables;
+
+    /**
+     * 为true时查询总在主库上执行
+     */
+    private boolean usePrimary;
+
     SQL() {
 
     }
@@ -738,8 +782,11 @@ public class SQL {
 
 
 
-    SQL template(JdbcTemplate jdbcTemplate) {
-        this.namedParameterJdbcTemplate = new NamedParameterJdbcTemplate(jdbcTemplate);
+    /**
+     * 使用SQLFactory共享的执行核心，不再为每个SQL实例新建模板
+     */
+    SQL template(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
+        this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
         return this;
     }
 
@@ -755,6 +802,110 @@ public class SQL {
         return this;
     }
 
+    /**
+     * 由工厂设置，查询按工厂的读写分离规则选择主库或副本
+     */
+    SQL factory(SQLFactory sqlFactory) {
+        this.sqlFactory = sqlFactory;
+        return this;
+    }
+
+    /**
+     * 查询使用的执行核心，缓存结果的查询在主库上执行，避免把副本上的旧数据放入缓存
+     */
+    private NamedParameterJdbcTemplate readTemplate() {
+        if (sqlFactory == null || usePrimary || cacheTtl != null) {
+            return namedParameterJdbcTemplate;
+        }
+        return sqlFactory.getReadTemplate();
+    }
+
+    /**
+     * 查询在主库上执行，不使用只读副本
+     */
+    public SQL usePrimary() {
+        this.usePrimary = true;
+        return this;
+    }
+
+    /**
+     * 由工厂设置共享的查询结果缓存
+     */
+    SQL resultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+        return this;
+    }
+
+    /**
+     * 缓存queryList/queryOne的结果，依赖的表从SQL中解析
+     * <p>
+     * 键为最终的SQL文本、结果类型和参数值；通过SQL或BaseDAO修改依赖的表后结果失效。
+     * 使用RowMapper时按实例区分，每次新建的RowMapper不会命中缓存。
+     * 事务中的查询不读写缓存，事务中的修改在事务结束后才使结果失效。配置了只读副本时查询在主库上执行
+     *
+     * @param ttl 缓存时间
+     */
+    public SQL cached(Duration ttl) {
+        return cached(ttl, (String[]) null);
+    }
+
+    /**
+     * 缓存queryList/queryOne的结果
+     *
+     * @param ttl    缓存时间
+     * @param tables 结果依赖的表，这些表被修改后结果失效
+     */
+    public SQL cached(Duration ttl, String... tables) {
+        if (queryResultCache == null) {
+            throw new FastSQLException("没有可用的查询结果缓存，请通过SQLFactory创建SQL");
+        }
+        this.cacheTtl = ttl;
+        if (tables != null) {
+            this.cacheTables = new String[tables.length];
+            for (int i = 0; i < tables.length; i++) {
+                this.cacheTables[i] = QueryResultCache.normalizeTableName(tables[i]);
+            }
+        }
+        return this;
+    }
+
+    /**
+     * 开启缓存时先查缓存，未命中时执行查询并缓存结果；事务中的查询不使用缓存
+     */
+    @SuppressWarnings("unchecked")
+    private <R> R cachedQuery(Object resultType, Supplier<R> query) {
+        if (cacheTtl == null || TransactionCallbacks.inTransaction()) {
+            return query.get();
+        }
+        String sql = strBuilder.toString();
+        Object[] parameters = useClassicJdbcTemplate
+                ? varParams : queryResultCache.parameterValues(sql, sqlParameterSource);
+        QueryResultCache.QueryKey key = new QueryResultCache.QueryKey(sql, resultType, parameters);
+        QueryResultCache.CachedResult cached = queryResultCache.get(key);
+        if (cached != null) {
+            return (R) cached.getValue();
+        }
+        String[] tables = cacheTables != null ? cacheTables : queryResultCache.tablesOf(sql);
+        //在查询之前取版本号，查询期间的修改会使结果不被缓存
+        long[] versions = queryResultCache.versions(tables);
+        R result = query.get();
+        queryResultCache.put(key, result, tables, versions, cacheTtl);
+        return result;
+    }
+
+    /**
+     * 写操作之后使依赖这些表的查询结果失效，在事务中时等到事务结束
+     */
+    private void afterWrite(String sql) {
+        if (queryResultCache != null) {
+            final QueryResultCache cache = queryResultCache;
+            TransactionCallbacks.afterCompletion(() -> cache.invalidateWrite(sql));
+        }
+        if (sqlFactory != null) {
+            sqlFactory.markWrite();
+        }
+    }
+
 
     /**
      * 通过Map添加命名参数
@@ -831,17 +982,9 @@ public class SQL {
         if (this.sqlParameterSource instanceof EmptySqlParameterSource) {
             //新建一个MapSqlParameterSource
             this.sqlParameterSource = new MapSqlParameterSource(key, value);
-        } else if (this.sqlParameterSource instanceof BeanPropertySqlParameterSource) {
-            BeanPropertySqlParameterSource propertySqlParameterSource = (BeanPropertySqlParameterSource) this.sqlParameterSource;
-
-            MapSqlParameterSource mapSqlParameterSource = new MapSqlParameterSource();
-            //TODO propertySqlParameterSource.getReadablePropertyNames 多了class属性
-            for (String name : propertySqlParameterSource.getReadablePropertyNames()) {
-                mapSqlParameterSource.addValue(name, propertySqlParameterSource.getValue(name));
-            }
-            //add
-            mapSqlParameterSource.addValue(key, value);
-            this.sqlParameterSource = mapSqlParameterSource;
+        } else if (this.sqlParameterSource instanceof EntityParameterSource) {
+            //叠加在bean属性之上，不复制
+            ((EntityParameterSource) this.sqlParameterSource).addValue(key, value);
         } else if (this.sqlParameterSource instanceof MapSqlParameterSource) {
             ((MapSqlParameterSource) this.sqlParameterSource).addValue(key, value);
         } else {
@@ -858,17 +1001,7 @@ public class SQL {
      * @param map  map
      */
     public SQL beanAndMapParameter(Object bean, Map<String, Object> map) {
-        BeanPropertySqlParameterSource propertySqlParameterSource = new BeanPropertySqlParameterSource(bean);
-
-        MapSqlParameterSource mapSqlParameterSource = new MapSqlParameterSource();
-
-        for (String name : propertySqlParameterSource.getReadablePropertyNames()) {
-            mapSqlParameterSource.addValue(name, propertySqlParameterSource.getValue(name));
-        }
-        for (Map.Entry<String, Object> entry : map.entrySet()) {
-            mapSqlParameterSource.addValue(entry.getKey(), entry.getValue());
-        }
-        this.sqlParameterSource = mapSqlParameterSource;
+        this.sqlParameterSource = new EntityParameterSource(bean, map);
         return this;
     }
 
@@ -876,12 +1009,12 @@ public class SQL {
      * @see SQL#beanParameter(Object)
      */
     public SQL parameterDTO(Object beanParam) {
-        this.sqlParameterSource = new BeanPropertySqlParameterSource(beanParam);
+        this.sqlParameterSource = new EntityParameterSource(beanParam);
         return this;
     }
 
     public SQL beanParameter(Object beanParam) {
-        this.sqlParameterSource = new BeanPropertySqlParameterSource(beanParam);
+        this.sqlParameterSource = new EntityParameterSource(beanParam);
         return this;
     }
 
@@ -918,7 +1051,7 @@ public class SQL {
     public <T> T queryOne(Class<T> returnClassType) {
         checkNull();
         RowMapper<T> rowMapper = getRowMapper(returnClassType);
-        return useTemplateQueryOne(rowMapper);
+        return cachedQuery(returnClassType, () -> useTemplateQueryOne(rowMapper));
     }
 
     public Integer queryInteger() {
@@ -933,9 +1066,57 @@ public class SQL {
         return queryOne(String.class);
     }
 
+    /**
+     * 查询是否至少返回一行，数据库找到第一行即停止，代替 count() &gt; 0
+     */
+    public boolean queryExists() {
+        checkNull();
+        CountTemplate countTemplate = new CountTemplate(readTemplate());
+        if (useClassicJdbcTemplate) {
+            return countTemplate.exists(strBuilder.toString(), varParams, this.databaseType);
+        }
+        return countTemplate.exists(strBuilder.toString(), sqlParameterSource, this.databaseType);
+    }
+
+    /**
+     * 按执行计划估计查询返回的行数，不执行查询；Oracle不支持估计，执行精确计数
+     */
+    public long queryEstimatedCount() {
+        checkNull();
+        String sql = strBuilder.toString();
+        CountTemplate countTemplate = new CountTemplate(readTemplate());
+        Long estimate = useClassicJdbcTemplate
+                ? countTemplate.estimateRows(sql, varParams, this.databaseType)
+                : countTemplate.estimateRows(sql, sqlParameterSource, this.databaseType);
+        if (estimate != null) {
+            return estimate;
+        }
+        if (useClassicJdbcTemplate) {
+            return readTemplate().getJdbcOperations().queryForObject(PageUtils.getNumberSQL(sql), Long.class, varParams);
+        }
+        return readTemplate().queryForObject(PageUtils.getNumberSQL(sql), sqlParameterSource, Long.class);
+    }
+
     public <T> T queryOne(RowMapper<T> rowMapper) {
         checkNull();
-        return useTemplateQueryOne(rowMapper);
+        return cachedQuery(rowMapper, () -> useTemplateQueryOne(rowMapper));
+    }
+
+    /**
+     * 生成可重复执行的预编译查询
+     *
+     * @param returnClassType 返回的结果类型，与{@link SQL#queryList(Class)}相同
+     * @return 不可变、线程安全的查询对象
+     */
+    public <T> PreparedQuery<T> prepare(Class<T> returnClassType) {
+        checkNull();
+        return prepare(getRowMapper(returnClassType));
+    }
+
+    public <T> PreparedQuery<T> prepare(RowMapper<T> rowMapper) {
+        checkNull();
+        return new PreparedQuery<>(this.build(), rowMapper, this.databaseType,
+                this.namedParameterJdbcTemplate, this.sqlFactory, this.useClassicJdbcTemplate);
     }
 
     /**
@@ -945,9 +1126,9 @@ public class SQL {
         try {
             String sql = this.build();
             if (useClassicJdbcTemplate) {
-                return this.namedParameterJdbcTemplate.getJdbcOperations().queryForObject(sql, rowMapper, this.varParams);
+                return readTemplate().getJdbcOperations().queryForObject(sql, rowMapper, this.varParams);
             } else {
-                return this.namedParameterJdbcTemplate.queryForObject(sql, this.sqlParameterSource, rowMapper);
+                return readTemplate().queryForObject(sql, this.sqlParameterSource, rowMapper);
             }
         } catch (EmptyResultDataAccessException e) {
             return null;
@@ -957,15 +1138,15 @@ public class SQL {
     /**
      * 查询单行结果封装为Map
      *
-     * @return Map
+     * @return 列名不区分大小写的Map，开启{@link SQLFactory#setCompactResultMaps(boolean)}时只读
      */
     public Map<String, Object> queryMap() {
         checkNull();
         try {
             if (this.useClassicJdbcTemplate) {
-                return this.namedParameterJdbcTemplate.getJdbcOperations().queryForMap(strBuilder.toString(), varParams);
+                return readTemplate().getJdbcOperations().queryForObject(strBuilder.toString(), mapRowMapper(), varParams);
             } else {
-                return this.namedParameterJdbcTemplate.queryForMap(strBuilder.toString(), this.sqlParameterSource);
+                return readTemplate().queryForObject(strBuilder.toString(), this.sqlParameterSource, mapRowMapper());
             }
         } catch (EmptyResultDataAccessException e) {
             return null;
@@ -979,12 +1160,15 @@ public class SQL {
      */
     public <T> List<T> queryList(Class<T> returnClassType) {
         checkNull();
-        RowMapper<T> rowMapper = getRowMapper(returnClassType);
+        return cachedQuery(Arrays.asList(List.class, returnClassType), () -> doQueryList(getRowMapper(returnClassType)));
+    }
+
+    private <T> List<T> doQueryList(RowMapper<T> rowMapper) {
         if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
         }
 
-        return this.namedParameterJdbcTemplate.query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
+        return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
     }
 
 
@@ -992,42 +1176,45 @@ public class SQL {
         checkNull();
         RowMapper<String> rowMapper = new SingleColumnRowMapper<>(String.class);
         if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
         }
 
-        return this.namedParameterJdbcTemplate.query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
+        return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
     }
 
     public List<Integer> queryIntegerList() {
         checkNull();
         RowMapper<Integer> rowMapper = new SingleColumnRowMapper<>(Integer.class);
         if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
         }
 
-        return this.namedParameterJdbcTemplate.query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
+        return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
     }
 
     public <T> List<T> queryList(RowMapper<T> rowMapper) {
         checkNull();
-        if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().query(strBuilder.toString(), rowMapper, varParams);
-        }
-
-        return this.namedParameterJdbcTemplate.query(strBuilder.toString(), this.sqlParameterSource, rowMapper);
+        return cachedQuery(Arrays.asList(List.class, rowMapper), () -> doQueryList(rowMapper));
     }
 
     /**
      * 查询多行结果封装为Map列表
      *
-     * @return Map数组
+     * @return 列名不区分大小写的Map，开启{@link SQLFactory#setCompactResultMaps(boolean)}时只读并且各行共用列名索引
      */
     public List<Map<String, Object>> queryMapList() {
         checkNull();
         if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().queryForList(strBuilder.toString(), varParams);
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), varParams, mapRowMapper());
         }
-        return this.namedParameterJdbcTemplate.queryForList(strBuilder.toString(), this.sqlParameterSource);
+        return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, mapRowMapper());
+    }
+
+    /**
+     * queryMap/queryMapList使用的RowMapper
+     */
+    private RowMapper<Map<String, Object>> mapRowMapper() {
+        return sqlFactory != null && sqlFactory.isCompactResultMaps() ? new CompactRowMapper() : new ColumnMapRowMapper();
     }
 
     /**
@@ -1038,24 +1225,95 @@ public class SQL {
     public List<Object[]> queryArrayList() {
         checkNull();
         if (this.useClassicJdbcTemplate) {
-            return this.namedParameterJdbcTemplate.getJdbcOperations().query(strBuilder.toString(), varParams, (rs, rowNum) -> {
-                int columnCount = rs.getMetaData().getColumnCount();
-                Object[] objects = new Object[columnCount];
-                for (int i = 1; i <= columnCount; i++) {
-                    objects[i - 1] = rs.getObject(i);
-                }
-                return objects;
-            });
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), varParams, arrayRowMapper());
         } else {
-            return this.namedParameterJdbcTemplate.query(strBuilder.toString(), this.sqlParameterSource, (rs, rowNum) -> {
-                int columnCount = rs.getMetaData().getColumnCount();
-                Object[] objects = new Object[columnCount];
-                for (int i = 1; i <= columnCount; i++) {
-                    objects[i - 1] = rs.getObject(i);
+            return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, arrayRowMapper());
+        }
+    }
+
+    /**
+     * 列数只在第一行读取一次
+     */
+    private static RowMapper<Object[]> arrayRowMapper() {
+        int[] columnCount = {-1};
+        return (rs, rowNum) -> {
+            if (columnCount[0] < 0) {
+                columnCount[0] = rs.getMetaData().getColumnCount();
+            }
+            Object[] objects = new Object[columnCount[0]];
+            for (int i = 1; i <= columnCount[0]; i++) {
+                objects[i - 1] = rs.getObject(i);
+            }
+            return objects;
+        };
+    }
+
+    /**
+     * 按列查询，数值列存为基本类型数组，字符串列按字典编码，用于返回大量数值的统计查询
+     *
+     * @return 按列存储的结果
+     */
+    public ColumnFrame queryColumns() {
+        return queryExtract(ColumnFrame::read);
+    }
+
+    /**
+     * 查询单列整数，结果不装箱，NULL读取为0
+     */
+    public int[] queryIntArray() {
+        return queryExtract(rs -> {
+            int[] values = new int[16];
+            int size = 0;
+            while (rs.next()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size + (size >> 1));
+                }
+                values[size++] = rs.getInt(1);
+            }
+            return Arrays.copyOf(values, size);
+        });
+    }
+
+    /**
+     * 查询单列长整数，结果不装箱，NULL读取为0
+     */
+    public long[] queryLongArray() {
+        return queryExtract(rs -> {
+            long[] values = new long[16];
+            int size = 0;
+            while (rs.next()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size + (size >> 1));
+                }
+                values[size++] = rs.getLong(1);
+            }
+            return Arrays.copyOf(values, size);
+        });
+    }
+
+    /**
+     * 查询单列浮点数，结果不装箱，NULL读取为0
+     */
+    public double[] queryDoubleArray() {
+        return queryExtract(rs -> {
+            double[] values = new double[16];
+            int size = 0;
+            while (rs.next()) {
+                if (size == values.length) {
+                    values = Arrays.copyOf(values, size + (size >> 1));
                 }
-                return objects;
-            });
+                values[size++] = rs.getDouble(1);
+            }
+            return Arrays.copyOf(values, size);
+        });
+    }
+
+    private <T> T queryExtract(ResultSetExtractor<T> extractor) {
+        checkNull();
+        if (this.useClassicJdbcTemplate) {
+            return readTemplate().getJdbcOperations().query(strBuilder.toString(), varParams, extractor);
         }
+        return readTemplate().query(strBuilder.toString(), this.sqlParameterSource, extractor);
     }
 
     public List<Map<String, Object>> queryMapListAndPrint() {
@@ -1089,28 +1347,122 @@ public class SQL {
      * @return 返回的结果页
      */
     public <T> ResultPage<T> queryPage(int page, int perPage, Class<T> returnClassType) {
+        return queryPage(page, perPage, getPagingRowMapper(returnClassType), null);
+    }
+
+    public <T> ResultPage<T> queryPage(int page, int perPage, RowMapper<T> rowMapper) {
+        return queryPage(page, perPage, rowMapper, null);
+    }
+
+    /**
+     * 使用已知的总数查询结果页，只执行一次查询，用于翻页时复用第一页返回的总数
+     *
+     * @param totalElements 之前返回的{@link ResultPage#getTotalElements()}
+     */
+    public <T> ResultPage<T> queryPage(int page, int perPage, int totalElements, Class<T> returnClassType) {
+        return queryPage(page, perPage, getPagingRowMapper(returnClassType), totalElements);
+    }
+
+    public <T> ResultPage<T> queryPage(int page, int perPage, int totalElements, RowMapper<T> rowMapper) {
+        return queryPage(page, perPage, rowMapper, totalElements);
+    }
+
+    private <T> ResultPage<T> queryPage(int page, int perPage, RowMapper<T> rowMapper, Integer totalElements) {
         checkNull();
-        RowMapper<T> rowMapper = getRowMapper(returnClassType);
+        PageTemplate pageTemplate = new PageTemplate(readTemplate(), windowCountPaging());
 
         if (useClassicJdbcTemplate) {
-            return new PageTemplate(namedParameterJdbcTemplate)
-                    .queryPage(strBuilder.toString(), page, perPage, varParams, rowMapper, this.databaseType);
+            return pageTemplate.queryPage(strBuilder.toString(), page, perPage, varParams, rowMapper, this.databaseType, totalElements);
         }
-        return new PageTemplate(namedParameterJdbcTemplate)
-                .queryPage(strBuilder.toString(), page, perPage, sqlParameterSource, rowMapper, this.databaseType);
+        return pageTemplate.queryPage(strBuilder.toString(), page, perPage, sqlParameterSource, rowMapper, this.databaseType, totalElements);
     }
 
-    public <T> ResultPage<T> queryPage(int page, int perPage, RowMapper<T> rowMapper) {
+    private boolean windowCountPaging() {
+        return sqlFactory != null && sqlFactory.isWindowCountPaging();
+    }
+
+    /**
+     * 窗口函数分页的结果多了总数列，单列结果只读取第一列
+     */
+    private <T> RowMapper<T> getPagingRowMapper(Class<T> returnClassType) {
+        if (windowCountPaging() && SINGLE_COLUMN_CLASSES.contains(returnClassType)) {
+            return new OraclePagingSingleColumnRowMapper<>(returnClassType);
+        }
+        return getRowMapper(returnClassType);
+    }
+
+
+    /**
+     * 流式查询，结果由打开的游标逐行读取，用于导出等大结果集
+     * <p>
+     * 返回的Stream持有数据库连接，读完时自动释放，提前结束时必须关闭：
+     * <pre>
+     * try (Stream&lt;User&gt; users = sql.queryStream(User.class)) { ... }
+     * </pre>
+     *
+     * @param returnClassType 返回的结果类型，与{@link SQL#queryList(Class)}相同
+     */
+    public <T> Stream<T> queryStream(Class<T> returnClassType) {
+        return queryStream(getRowMapper(returnClassType));
+    }
+
+    public <T> Stream<T> queryStream(RowMapper<T> rowMapper) {
         checkNull();
+        CursorTemplate cursorTemplate = new CursorTemplate(readTemplate());
 
         if (useClassicJdbcTemplate) {
-            return new PageTemplate(namedParameterJdbcTemplate)
-                    .queryPage(strBuilder.toString(), page, perPage, varParams, rowMapper, this.databaseType);
+            return cursorTemplate.queryStream(strBuilder.toString(), varParams, rowMapper, this.databaseType);
         }
-        return new PageTemplate(namedParameterJdbcTemplate)
-                .queryPage(strBuilder.toString(), page, perPage, sqlParameterSource, rowMapper, this.databaseType);
+        return cursorTemplate.queryStream(strBuilder.toString(), sqlParameterSource, rowMapper, this.databaseType);
+    }
+
+    /**
+     * 按块处理查询结果，只打开一个游标，内存占用与块大小成正比
+     * <p>
+     * 读取线程映射下一块的同时，调用线程执行consumer处理当前块；consumer返回后该List会被复用，不能保存它的引用
+     *
+     * @param chunkSize 每块的行数
+     * @return 扫描的进度统计
+     */
+    public <T> ScanProgress forEachChunk(int chunkSize, Class<T> returnClassType, Consumer<List<T>> consumer) {
+        return ChunkScanner.forEachChunk(queryStream(returnClassType), chunkSize, (chunk, progress) -> consumer.accept(chunk));
+    }
+
+    public <T> ScanProgress forEachChunk(int chunkSize, RowMapper<T> rowMapper, Consumer<List<T>> consumer) {
+        return ChunkScanner.forEachChunk(queryStream(rowMapper), chunkSize, (chunk, progress) -> consumer.accept(chunk));
     }
 
+    /**
+     * @param consumer 参数为当前块和实时进度
+     */
+    public <T> ScanProgress forEachChunk(int chunkSize, Class<T> returnClassType, BiConsumer<List<T>, ScanProgress> consumer) {
+        return ChunkScanner.forEachChunk(queryStream(returnClassType), chunkSize, consumer);
+    }
+
+    /**
+     * 键集分页查询，每页的查询代价与页数无关；已构造的sql不能包含ORDER BY
+     *
+     * @param orderBy         排序列，如 "create_time DESC, id DESC"，组合起来必须唯一且不为NULL
+     * @param cursor          上一页的{@link KeysetPage#getNextCursor()}，为空时查询第一页
+     * @param perPage         每页几条 最小为1
+     * @param returnClassType 返回的结果类型
+     * @return 返回的结果页
+     */
+    public <T> KeysetPage<T> queryKeysetPage(String orderBy, String cursor, int perPage, Class<T> returnClassType) {
+        return queryKeysetPage(orderBy, cursor, perPage, getRowMapper(returnClassType));
+    }
+
+    public <T> KeysetPage<T> queryKeysetPage(String orderBy, String cursor, int perPage, RowMapper<T> rowMapper) {
+        checkNull();
+        Keyset keyset = Keyset.parse(orderBy);
+
+        if (useClassicJdbcTemplate) {
+            return new PageTemplate(readTemplate())
+                    .queryKeysetPage(strBuilder.toString(), keyset, cursor, perPage, varParams, rowMapper, this.databaseType);
+        }
+        return new PageTemplate(readTemplate())
+                .queryKeysetPage(strBuilder.toString(), keyset, cursor, perPage, sqlParameterSource, rowMapper, this.databaseType);
+    }
 
     /**
      * 查询结果内存分页
@@ -1121,10 +1473,34 @@ public class SQL {
      * @return 返回的结果页
      */
     public <T> ResultPage<T> queryMemoryPage(int page, int perPage, Class<T> returnClassType) {
-        List<T> dataList = queryList(returnClassType);
-        int total = dataList.size();
-        List<T> list = FastSqlUtils.memoryPage(dataList, page, perPage);
-        return new ResultPage<>(list, total);
+        return queryMemoryPage(page, perPage, getRowMapper(returnClassType));
+    }
+
+    /**
+     * 查询结果内存分页，逐行读取结果：页之前的行只跳过不映射，页之后的行只计数，内存占用与每页条数成正比
+     */
+    public <T> ResultPage<T> queryMemoryPage(int page, int perPage, RowMapper<T> rowMapper) {
+        checkNull();
+        final int size = Math.max(perPage, 0);
+        final long from = (long) (Math.max(page, 1) - 1) * size;
+        final long to = from + size;
+        ResultSetExtractor<ResultPage<T>> extractor = rs -> {
+            ArrayList<T> list = new ArrayList<>(Math.min(size, 256));
+            int total = 0;
+            while (rs.next()) {
+                if (total >= from && total < to) {
+                    list.add(rowMapper.mapRow(rs, total));
+                }
+                total++;
+            }
+            list.trimToSize();
+            return new ResultPage<>(list, total);
+        };
+        CursorTemplate cursorTemplate = new CursorTemplate(readTemplate());
+        if (useClassicJdbcTemplate) {
+            return cursorTemplate.query(strBuilder.toString(), varParams, extractor, this.databaseType);
+        }
+        return cursorTemplate.query(strBuilder.toString(), sqlParameterSource, extractor, this.databaseType);
     }
 
     /**
@@ -1143,6 +1519,7 @@ public class SQL {
             count = this.namedParameterJdbcTemplate.update(sql, this.sqlParameterSource);
 
         }
+        afterWrite(sql);
         if (count < 1) {
             logger.warn("update更新成功数量为" + count);
         }
@@ -1157,12 +1534,18 @@ public class SQL {
         for (int i = 0; i < mapParamList.size(); i++) {
             batchArgs[i] = new MapSqlParameterSource(mapParamList.get(i));
         }
-        return new BatchUpdateResult(this.namedParameterJdbcTemplate.batchUpdate(sql, batchArgs));
+        BatchUpdateResult result = new BatchUpdateResult(this.namedParameterJdbcTemplate.batchUpdate(sql, batchArgs));
+        afterWrite(sql);
+        return result;
     }
 
     public BatchUpdateResult batchUpdateWithSqls(String... sql) {
         checkNull();
-        return new BatchUpdateResult(this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(sql));
+        BatchUpdateResult result = new BatchUpdateResult(this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(sql));
+        for (String s : sql) {
+            afterWrite(s);
+        }
+        return result;
     }
 
     public BatchUpdateResult batchUpdateWithSqls(List<String> sqls) {
@@ -1173,13 +1556,15 @@ public class SQL {
             sqlArray[i] = sql;
             i++;
         }
-        return new BatchUpdateResult(this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(sqlArray));
+        return batchUpdateWithSqls(sqlArray);
     }
 
     public BatchUpdateResult batchUpdateByArrays(List<Object[]> objects) {
         checkNull();
         String sql = strBuilder.toString();
-        return new BatchUpdateResult(this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(sql, objects));
+        BatchUpdateResult result = new BatchUpdateResult(this.namedParameterJdbcTemplate.getJdbcOperations().batchUpdate(sql, objects));
+        afterWrite(sql);
+        return result;
     }
 
 
@@ -1189,38 +1574,19 @@ public class SQL {
 
 
     public List<String> getTableNames() {
-        checkNull();
-        Connection connection;
-        try {
-            connection = this.getDataSource().getConnection();
-            ResultSet resultSet = connection.getMetaData().getTables(null, null, "%%", new String[]{"TABLE"});
-            List<String> tables = new ArrayList<>();
-            while (resultSet.next()) {
-                String tableName = resultSet.getString("TABLE_NAME");
-                tables.add(tableName);
-            }
-            resultSet.close();
-            connection.close();
-            return tables;
-        } catch (SQLException e) {
-            throw new RuntimeException(e);
-        }
+        return getTableNames(null, null, "%%");
     }
 
     public List<String> getTableNames(String catalog, String schemaPattern,
                                       String tableNamePattern) {
         checkNull();
-        Connection connection = null;
-        try {
-            connection = this.getDataSource().getConnection();
-            ResultSet resultSet = connection.getMetaData().getTables(catalog, schemaPattern, tableNamePattern, new String[]{"TABLE"});
+        try (Connection connection = this.getDataSource().getConnection();
+             ResultSet resultSet = connection.getMetaData().getTables(catalog, schemaPattern, tableNamePattern, new String[]{"TABLE"})) {
             List<String> tables = new ArrayList<>();
             while (resultSet.next()) {
                 String tableName = resultSet.getString("TABLE_NAME");
                 tables.add(tableName);
             }
-            resultSet.close();
-            connection.close();
             return tables;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -1230,17 +1596,12 @@ public class SQL {
     public List<String> getColumnNames(String tableName) {
         checkNull();
         List<String> columns = new ArrayList<>();
-        Connection connection;
-        try {
-            connection = this.getDataSource().getConnection();
-            ResultSet resultSet = connection.getMetaData().getColumns(null, "%", tableName, "%");
-
+        try (Connection connection = this.getDataSource().getConnection();
+             ResultSet resultSet = connection.getMetaData().getColumns(null, "%", tableName, "%")) {
             while (resultSet.next()) {
                 String columnName = resultSet.getString("COLUMN_NAME");
                 columns.add(columnName);
             }
-            resultSet.close();
-            connection.close();
             return columns;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -1255,11 +1616,8 @@ public class SQL {
     public List<ColumnMetaData> getColumnMetaDataList(String tableName) {
         checkNull();
         List<ColumnMetaData> columnMetaDataList = new ArrayList<>();
-        Connection connection;
-        try {
-            connection = this.getDataSource().getConnection();
-            ResultSet resultSet = connection.getMetaData().getColumns(null, "%", tableName, "%");
-
+        try (Connection connection = this.getDataSource().getConnection();
+             ResultSet resultSet = connection.getMetaData().getColumns(null, "%", tableName, "%")) {
             while (resultSet.next()) {
                 String columnName = resultSet.getString("COLUMN_NAME");
                 String typeName = resultSet.getString("TYPE_NAME");
@@ -1273,9 +1631,6 @@ public class SQL {
                 columnMetaData.setDefaultValue(def);
                 columnMetaDataList.add(columnMetaData);
             }
-
-            resultSet.close();
-            connection.close();
             return columnMetaDataList;
         } catch (SQLException e) {
             throw new RuntimeException(e);
@@ -1309,29 +1664,34 @@ public class SQL {
         return ((JdbcTemplate) namedParameterJdbcTemplate.getJdbcOperations()).getDataSource();
     }
 
+    private static final List<Class<?>> SINGLE_COLUMN_CLASSES =
+            Arrays.asList(String.class,
+                    Integer.class, int.class, Long.class, long.class,
+                    Short.class, short.class,
+                    BigDecimal.class,
+                    BigInteger.class,
+                    Float.class, float.class, Double.class, double.class,
+                    Boolean.class, boolean.class,
+                    java.sql.Date.class, java.sql.Time.class, java.sql.Timestamp.class,
+                    byte[].class, Blob.class, Clob.class);
+
+    private static final List<Class<?>> SINGLE_COLUMN_TIME_CLASSES =
+            Arrays.asList(LocalDate.class, LocalDateTime.class, LocalTime.class,
+                    Instant.class, OffsetDateTime.class, ZonedDateTime.class);
+
     private <T> RowMapper<T> getRowMapper(Class<T> returnClassType) {
-        RowMapper<T> rowMapper;
-
-        List<Class<?>> classArrayList =
-                Arrays.asList(String.class,
-                        Integer.class, int.class, Long.class, long.class,
-                        Short.class, short.class,
-                        BigDecimal.class,
-                        BigInteger.class,
-                        Float.class, float.class, Double.class, double.class,
-                        Boolean.class, boolean.class,
-                        java.sql.Date.class, java.sql.Time.class, java.sql.Timestamp.class,
-                        byte[].class, Blob.class, Clob.class);
-
-        if (classArrayList.contains(returnClassType)) {
+        if (SINGLE_COLUMN_CLASSES.contains(returnClassType)) {
             if (this.databaseType.equals(DatabaseType.ORACLE)) {
                 return new OraclePagingSingleColumnRowMapper<>(returnClassType);
             }
             return new SingleColumnRowMapper<>(returnClassType);
+        } else if (SINGLE_COLUMN_TIME_CLASSES.contains(returnClassType)) {
+            ColumnReader reader = ColumnReaders.forType(returnClassType);
+            return (rs, rowNum) -> returnClassType.cast(reader.read(rs, 1));
         } else if (returnClassType.equals(Map.class)) {
             return (RowMapper<T>) new ColumnMapRowMapper();
         } else {
-            return new BeanPropertyRowMapper<>(returnClassType);
+            return FastBeanRowMapper.of(returnClassType);
         }
     }
 
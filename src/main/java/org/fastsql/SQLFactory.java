@@ -1,16 +1,69 @@
 package org.fastsql;
 
+import org.fastsql.cache.QueryResultCache;
 import org.fastsql.config.DatabaseType;
+import org.fastsql.datasource.ReplicaRoutingDataSource;
 import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
 
 import javax.sql.DataSource;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 /**
  * SQL类的工厂类
+ * <p>
+ * 工厂持有一个长期存在、线程安全的{@link NamedParameterJdbcTemplate}，所有SQL实例共用它，
+ * 因此命名参数解析结果会缓存在同一个有界的LRU缓存中，不会随每条语句丢弃
+ * <p>
+ * 设置只读副本后，SQL的query*和BaseDAO的select*、count*在副本上执行，写操作和事务中的查询在主库上执行；
+ * 同一线程写入后的{@link #setReadYourWritesWindow(long)}毫秒内，查询也在主库上执行，保证读到自己的写入
  */
 public class SQLFactory {
     private DataSource dataSource;
 
+    /**
+     * 共享的执行核心，第一次使用时创建，配置变化后重建
+     */
+    private volatile NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    /**
+     * 只读副本
+     */
+    private List<DataSource> replicaDataSources = Collections.emptyList();
+
+    /**
+     * 在副本上查询的执行核心，第一次使用时创建
+     */
+    private volatile NamedParameterJdbcTemplate replicaJdbcTemplate;
+
+    /**
+     * 写入后在主库上查询的时间，毫秒
+     */
+    private long readYourWritesWindow = 1000;
+
+    /**
+     * 当前线程最后一次写入的时间
+     */
+    private final ThreadLocal<long[]> lastWriteNanos = new ThreadLocal<>();
+
+    /**
+     * 命名参数SQL解析缓存的最大条数
+     */
+    private int cacheLimit = NamedParameterJdbcTemplate.DEFAULT_CACHE_LIMIT;
+
+    /**
+     * 分页时用COUNT(*) OVER()在同一次查询中返回总数，MySQL需要8.0以上
+     */
+    private boolean windowCountPaging = false;
+
+    /**
+     * queryMap/queryMapList返回共用列名索引的只读Map
+     */
+    private boolean compactResultMaps = false;
+
     private DatabaseType databaseType = DatabaseType.POSTGRESQL;
 
     private boolean ignoreWarnings = true;
@@ -27,11 +80,97 @@ public class SQLFactory {
 
     private boolean resultsMapCaseInsensitive = false;
 
+    /**
+     * 所有SQL实例共用的查询结果缓存，只有调用{@link SQL#cached(java.time.Duration)}的查询才会使用
+     */
+    private QueryResultCache queryResultCache = new QueryResultCache();
+
     public SQL createSQL() {
+        return new SQL().template(getNamedParameterJdbcTemplate()).databaseType(databaseType)
+                .resultCache(queryResultCache).factory(this);
+    }
+
+    /**
+     * 在当前线程打开一个工作单元，使用本工厂的BaseDAO的查询结果在会话关闭前缓存在一级缓存中
+     *
+     * @return 需要关闭的会话，建议在try-with-resources中使用
+     */
+    public FastSqlSession openSession() {
+        return FastSqlSession.open(this);
+    }
+
+    /**
+     * 获取共享的执行核心
+     */
+    public NamedParameterJdbcTemplate getNamedParameterJdbcTemplate() {
+        NamedParameterJdbcTemplate template = this.namedParameterJdbcTemplate;
+        if (template == null) {
+            synchronized (this) {
+                template = this.namedParameterJdbcTemplate;
+                if (template == null) {
+                    template = createTemplate(dataSource);
+                    this.namedParameterJdbcTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 获取查询使用的执行核心
+     * <p>
+     * 没有配置副本、当前线程处于事务中或刚写入过时返回主库的执行核心，否则返回副本的执行核心
+     */
+    public NamedParameterJdbcTemplate getReadTemplate() {
+        if (replicaDataSources.isEmpty() || TransactionSynchronizationManager.isActualTransactionActive()
+                || isWithinReadYourWritesWindow()) {
+            return getNamedParameterJdbcTemplate();
+        }
+        NamedParameterJdbcTemplate template = this.replicaJdbcTemplate;
+        if (template == null) {
+            synchronized (this) {
+                template = this.replicaJdbcTemplate;
+                if (template == null) {
+                    template = createTemplate(new ReplicaRoutingDataSource(replicaDataSources));
+                    this.replicaJdbcTemplate = template;
+                }
+            }
+        }
+        return template;
+    }
+
+    /**
+     * 记录当前线程的一次写入，之后的一段时间内查询在主库上执行
+     */
+    public void markWrite() {
+        if (replicaDataSources.isEmpty()) {
+            return;
+        }
+        long[] nanos = lastWriteNanos.get();
+        if (nanos == null) {
+            nanos = new long[1];
+            lastWriteNanos.set(nanos);
+        }
+        nanos[0] = System.nanoTime();
+    }
+
+    private boolean isWithinReadYourWritesWindow() {
+        long[] nanos = lastWriteNanos.get();
+        if (nanos == null) {
+            return false;
+        }
+        if (System.nanoTime() - nanos[0] < readYourWritesWindow * 1000000L) {
+            return true;
+        }
+        lastWriteNanos.remove();
+        return false;
+    }
+
+    private NamedParameterJdbcTemplate createTemplate(DataSource dataSource) {
         if (dataSource == null) {
             throw new FastSQLException("SQLFactory的dataSource不能为null");
         }
-        JdbcTemplate jdbcTemplate = new JdbcTemplate();
+        JdbcTemplate jdbcTemplate = new JdbcTemplate(dataSource);
         jdbcTemplate.setIgnoreWarnings(ignoreWarnings);
         jdbcTemplate.setFetchSize(fetchSize);
         jdbcTemplate.setMaxRows(maxRows);
@@ -39,7 +178,17 @@ public class SQLFactory {
         jdbcTemplate.setSkipResultsProcessing(skipResultsProcessing);
         jdbcTemplate.setSkipUndeclaredResults(skipUndeclaredResults);
         jdbcTemplate.setResultsMapCaseInsensitive(resultsMapCaseInsensitive);
-        return new SQL().template(jdbcTemplate).databaseType(databaseType);
+        NamedParameterJdbcTemplate template = new NamedParameterJdbcTemplate(jdbcTemplate);
+        template.setCacheLimit(cacheLimit);
+        return template;
+    }
+
+    /**
+     * 配置变化后丢弃旧的执行核心，下次使用时重建
+     */
+    private synchronized void resetTemplate() {
+        this.namedParameterJdbcTemplate = null;
+        this.replicaJdbcTemplate = null;
     }
 
 
@@ -49,6 +198,7 @@ public class SQLFactory {
 
     public void setDataSource(DataSource dataSource) {
         this.dataSource = dataSource;
+        resetTemplate();
     }
 
     public DatabaseType getDatabaseType() {
@@ -65,6 +215,7 @@ public class SQLFactory {
 
     public void setIgnoreWarnings(boolean ignoreWarnings) {
         this.ignoreWarnings = ignoreWarnings;
+        resetTemplate();
     }
 
     public int getFetchSize() {
@@ -73,6 +224,7 @@ public class SQLFactory {
 
     public void setFetchSize(int fetchSize) {
         this.fetchSize = fetchSize;
+        resetTemplate();
     }
 
     public int getMaxRows() {
@@ -81,6 +233,7 @@ public class SQLFactory {
 
     public void setMaxRows(int maxRows) {
         this.maxRows = maxRows;
+        resetTemplate();
     }
 
     public int getQueryTimeout() {
@@ -89,6 +242,7 @@ public class SQLFactory {
 
     public void setQueryTimeout(int queryTimeout) {
         this.queryTimeout = queryTimeout;
+        resetTemplate();
     }
 
     public boolean isSkipResultsProcessing() {
@@ -97,6 +251,7 @@ public class SQLFactory {
 
     public void setSkipResultsProcessing(boolean skipResultsProcessing) {
         this.skipResultsProcessing = skipResultsProcessing;
+        resetTemplate();
     }
 
     public boolean isSkipUndeclaredResults() {
@@ -105,6 +260,7 @@ public class SQLFactory {
 
     public void setSkipUndeclaredResults(boolean skipUndeclaredResults) {
         this.skipUndeclaredResults = skipUndeclaredResults;
+        resetTemplate();
     }
 
     public boolean isResultsMapCaseInsensitive() {
@@ -113,5 +269,73 @@ public class SQLFactory {
 
     public void setResultsMapCaseInsensitive(boolean resultsMapCaseInsensitive) {
         this.resultsMapCaseInsensitive = resultsMapCaseInsensitive;
+        resetTemplate();
+    }
+
+    public int getCacheLimit() {
+        return cacheLimit;
+    }
+
+    public void setCacheLimit(int cacheLimit) {
+        this.cacheLimit = cacheLimit;
+        resetTemplate();
+    }
+
+    public List<DataSource> getReplicaDataSources() {
+        return replicaDataSources;
+    }
+
+    /**
+     * 设置只读副本，为空时所有语句都在主库上执行
+     */
+    public void setReplicaDataSources(List<DataSource> replicaDataSources) {
+        this.replicaDataSources = replicaDataSources == null
+                ? Collections.emptyList() : Collections.unmodifiableList(new ArrayList<>(replicaDataSources));
+        resetTemplate();
+    }
+
+    public long getReadYourWritesWindow() {
+        return readYourWritesWindow;
+    }
+
+    /**
+     * @param readYourWritesWindow 写入后在主库上查询的时间，毫秒，0表示写入后立即使用副本
+     */
+    public void setReadYourWritesWindow(long readYourWritesWindow) {
+        this.readYourWritesWindow = readYourWritesWindow;
+    }
+
+    public QueryResultCache getQueryResultCache() {
+        return queryResultCache;
+    }
+
+    /**
+     * 设置查询结果缓存，例如调整容量
+     */
+    public void setQueryResultCache(QueryResultCache queryResultCache) {
+        this.queryResultCache = queryResultCache;
+    }
+
+    public boolean isWindowCountPaging() {
+        return windowCountPaging;
+    }
+
+    /**
+     * @param windowCountPaging 为true时分页只执行一次查询，总数由窗口函数返回；不支持的查询仍然单独查询总数
+     */
+    public void setWindowCountPaging(boolean windowCountPaging) {
+        this.windowCountPaging = windowCountPaging;
+    }
+
+    public boolean isCompactResultMaps() {
+        return compactResultMaps;
+    }
+
+    /**
+     * @param compactResultMaps 为true时queryMap/queryMapList的每行只保存值数组，各行共用列名索引，内存占用小，
+     *                          但返回的Map不能修改；默认为false，返回可修改的LinkedCaseInsensitiveMap
+     */
+    public void setCompactResultMaps(boolean compactResultMaps) {
+        this.compactResultMaps = compactResultMaps;
     }
 }
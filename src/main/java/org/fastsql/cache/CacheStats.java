@@ -0,0 +1,71 @@
+package org.fastsql.cache;
+
+/**
+ * 缓存统计的快照，用于调整缓存大小
+ */
+public final class CacheStats {
+
+    private final long hitCount;
+    private final long missCount;
+    private final long evictionCount;
+    private final long size;
+    private final long weight;
+
+    public CacheStats(long hitCount, long missCount, long evictionCount, long size, long weight) {
+        this.hitCount = hitCount;
+        this.missCount = missCount;
+        this.evictionCount = evictionCount;
+        this.size = size;
+        this.weight = weight;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getMissCount() {
+        return missCount;
+    }
+
+    /**
+     * 因容量限制被淘汰的次数，不包括失效和过期
+     */
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getRequestCount() {
+        return hitCount + missCount;
+    }
+
+    /**
+     * @return 命中率，没有请求时为1
+     */
+    public double getHitRate() {
+        long requestCount = getRequestCount();
+        return requestCount == 0 ? 1.0 : (double) hitCount / requestCount;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    /**
+     * 当前的总权重，使用字节数权重时为估算的字节数
+     */
+    public long getWeight() {
+        return weight;
+    }
+
+    @Override
+    public String toString() {
+        return "CacheStats{" +
+                "hitCount=" + hitCount +
+                ", missCount=" + missCount +
+                ", evictionCount=" + evictionCount +
+                ", hitRate=" + getHitRate() +
+                ", size=" + size +
+                ", weight=" + weight +
+                '}';
+    }
+}
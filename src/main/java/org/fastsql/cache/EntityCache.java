@@ -0,0 +1,34 @@
+package org.fastsql.cache;
+
+/**
+ * 实体类缓存，实现必须线程安全
+ */
+public interface EntityCache<K, V> {
+
+    /**
+     * @return 缓存的值，不存在或已过期时返回null
+     */
+    V get(K key);
+
+    void put(K key, V value);
+
+    /**
+     * 使一个键失效
+     */
+    void invalidate(K key);
+
+    /**
+     * 使所有键失效
+     */
+    void invalidateAll();
+
+    /**
+     * @return 当前缓存的数量
+     */
+    long size();
+
+    /**
+     * @return 命中、未命中和淘汰次数的快照
+     */
+    CacheStats stats();
+}
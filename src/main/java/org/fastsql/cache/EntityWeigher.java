@@ -0,0 +1,60 @@
+package org.fastsql.cache;
+
+import org.fastsql.util.EntityMetadata;
+import org.fastsql.util.PropertyMetadata;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.util.Date;
+
+/**
+ * 计算缓存项的权重
+ */
+@FunctionalInterface
+public interface EntityWeigher<K, V> {
+
+    /**
+     * @return 权重，不能为负数
+     */
+    int weigh(K key, V value);
+
+    /**
+     * 每项权重为1，最大权重即最大数量
+     */
+    static <K, V> EntityWeigher<K, V> singleton() {
+        return (key, value) -> 1;
+    }
+
+    /**
+     * 按实体类中列字段的值估算字节数，最大权重即最大字节数
+     */
+    static <K, V> EntityWeigher<K, V> estimatedBytes() {
+        return (key, value) -> {
+            long bytes = 16;
+            for (PropertyMetadata property : EntityMetadata.of(value.getClass()).getColumnProperties()) {
+                bytes += 8 + estimateBytes(property.isReadable() ? property.get(value) : null);
+            }
+            return (int) Math.min(bytes, Integer.MAX_VALUE);
+        };
+    }
+
+    /**
+     * 估算一个值占用的字节数
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 0;
+        } else if (value instanceof String) {
+            return 40 + 2L * ((String) value).length();
+        } else if (value instanceof byte[]) {
+            return 16 + ((byte[]) value).length;
+        } else if (value instanceof BigDecimal || value instanceof BigInteger) {
+            return 48;
+        } else if (value instanceof Number || value instanceof Boolean || value instanceof Character) {
+            return 16;
+        } else if (value instanceof Date) {
+            return 24;
+        }
+        return 32;
+    }
+}
@@ -0,0 +1,87 @@
+package org.fastsql.cache;
+
+/**
+ * 估算访问频率的Count-Min Sketch，每个计数器4位，最大为15
+ * <p>
+ * 增加次数达到采样数量时所有计数器减半，使旧的热点逐渐冷却。
+ * 非线程安全，由{@link TinyLfuCache}在锁内调用
+ */
+final class FrequencySketch {
+
+    private static final long[] SEEDS = {
+            0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L};
+    private static final long RESET_MASK = 0x7777777777777777L;
+    private static final int MAX_TABLE_SIZE = 1 << 24;
+
+    private long[] table = new long[1];
+    private int tableMask;
+    private int sampleSize = 10;
+    private int additions;
+
+    /**
+     * 按缓存数量扩大计数表，扩大时丢弃已有的计数
+     */
+    void ensureCapacity(long expectedSize) {
+        int size = (int) Math.min(Math.max(expectedSize, 1), MAX_TABLE_SIZE);
+        if (table.length >= size) {
+            return;
+        }
+        table = new long[Integer.highestOneBit(size - 1) << 1];
+        tableMask = table.length - 1;
+        sampleSize = 10 * table.length;
+        additions = 0;
+    }
+
+    int frequency(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        int frequency = Integer.MAX_VALUE;
+        for (int i = 0; i < 4; i++) {
+            int index = indexOf(hash, i);
+            int count = (int) ((table[index] >>> ((start + i) << 2)) & 0xfL);
+            frequency = Math.min(frequency, count);
+        }
+        return frequency;
+    }
+
+    void increment(Object item) {
+        int hash = spread(item.hashCode());
+        int start = (hash & 3) << 2;
+        boolean added = false;
+        for (int i = 0; i < 4; i++) {
+            added |= incrementAt(indexOf(hash, i), start + i);
+        }
+        if (added && ++additions == sampleSize) {
+            reset();
+        }
+    }
+
+    private boolean incrementAt(int index, int counter) {
+        int offset = counter << 2;
+        long mask = 0xfL << offset;
+        if ((table[index] & mask) != mask) {
+            table[index] += 1L << offset;
+            return true;
+        }
+        return false;
+    }
+
+    private void reset() {
+        for (int i = 0; i < table.length; i++) {
+            table[i] = (table[i] >>> 1) & RESET_MASK;
+        }
+        additions >>>= 1;
+    }
+
+    private int indexOf(int hash, int i) {
+        long h = (hash + SEEDS[i]) * SEEDS[i];
+        h += h >>> 32;
+        return ((int) h) & tableMask;
+    }
+
+    private static int spread(int x) {
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        x = ((x >>> 16) ^ x) * 0x45d9f3b;
+        return (x >>> 16) ^ x;
+    }
+}
@@ -0,0 +1,451 @@
+package org.fastsql.cache;
+
+import org.fastsql.mapper.CompactRowMapper;
+import org.fastsql.util.EntityMetadata;
+import org.springframework.jdbc.core.SqlParameter;
+import org.springframework.jdbc.core.SqlParameterValue;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.util.LinkedCaseInsensitiveMap;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 查询结果缓存，由{@link org.fastsql.SQL#cached(Duration)}开启
+ * <p>
+ * 键为最终的SQL文本、结果类型和参数值，每个结果记录它读取的表及读取前各表的版本号；
+ * 写操作使表的版本号加1，版本号变化的结果在下次读取时被丢弃。
+ * 缓存和每次返回的都是结果的副本，不能复制的结果不缓存，见{@link #copyOf(Object)}。
+ * 容量同时按条数和估算的字节数限制，按{@link TinyLfuCache}的策略淘汰
+ */
+public class QueryResultCache {
+
+    public static final long DEFAULT_MAXIMUM_ENTRIES = 10000;
+
+    public static final long DEFAULT_MAXIMUM_BYTES = 64L * 1024 * 1024;
+
+    /**
+     * SQL解析结果缓存的数量上限，超过后清空重建
+     */
+    private static final int MAX_PARSED_SQL = 1024;
+
+    /**
+     * 估算列表大小时采样的元素数量
+     */
+    private static final int SAMPLE_SIZE = 16;
+
+    /**
+     * 结果中有不能复制的对象
+     */
+    private static final Object NOT_COPYABLE = new Object();
+
+    private static final Set<Class<?>> IMMUTABLE_TYPES = new HashSet<>(Arrays.asList(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigDecimal.class, BigInteger.class, UUID.class, Class.class));
+
+    private final TinyLfuCache<QueryKey, CachedResult> cache;
+
+    private final ConcurrentHashMap<String, AtomicLong> tableVersions = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, String[]> sqlTables = new ConcurrentHashMap<>();
+
+    private final ConcurrentHashMap<String, String[]> sqlParameterNames = new ConcurrentHashMap<>();
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+
+    public QueryResultCache() {
+        this(DEFAULT_MAXIMUM_ENTRIES, DEFAULT_MAXIMUM_BYTES);
+    }
+
+    /**
+     * 每条结果的权重至少为 maximumBytes / maximumEntries，因此条数不会超过maximumEntries
+     *
+     * @param maximumEntries 最大条数
+     * @param maximumBytes   最大字节数
+     */
+    public QueryResultCache(long maximumEntries, long maximumBytes) {
+        final long minimumWeight = Math.max(1, maximumBytes / maximumEntries);
+        this.cache = new TinyLfuCache<>(maximumBytes, null,
+                (key, value) -> (int) Math.min(Integer.MAX_VALUE, Math.max(minimumWeight, value.bytes)));
+    }
+
+    /**
+     * 查询缓存的结果
+     *
+     * @return 缓存的结果，未命中、已过期或读取的表已被修改时返回null
+     */
+    public CachedResult get(QueryKey key) {
+        CachedResult result = cache.get(key);
+        if (result == null) {
+            missCount.increment();
+            return null;
+        }
+        if (System.nanoTime() - result.expireAtNanos > 0 || !isCurrent(result)) {
+            cache.invalidate(key);
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        return result;
+    }
+
+    /**
+     * 缓存一个结果
+     *
+     * @param tables   结果读取的表
+     * @param versions 执行查询之前通过{@link #versions(String[])}获取的表版本号
+     * @param ttl      过期时间
+     */
+    public void put(QueryKey key, Object value, String[] tables, long[] versions, Duration ttl) {
+        Object copy = copyOf(value);
+        //不能复制的对象会被调用方修改，不缓存
+        if (copy == NOT_COPYABLE) {
+            return;
+        }
+        CachedResult result = new CachedResult(copy, tables, versions,
+                System.nanoTime() + ttl.toNanos(), estimateBytes(value));
+        //查询期间表已被修改
+        if (isCurrent(result)) {
+            cache.put(key, result);
+        }
+    }
+
+    /**
+     * @return 各表当前的版本号
+     */
+    public long[] versions(String[] tables) {
+        long[] versions = new long[tables.length];
+        for (int i = 0; i < tables.length; i++) {
+            versions[i] = version(tables[i]).get();
+        }
+        return versions;
+    }
+
+    /**
+     * 使读取这些表的结果失效
+     */
+    public void invalidateTables(String... tables) {
+        for (String table : tables) {
+            version(normalizeTableName(table)).incrementAndGet();
+        }
+    }
+
+    /**
+     * 使一条写语句涉及的表失效
+     */
+    public void invalidateWrite(String sql) {
+        invalidateTables(tablesOf(sql));
+    }
+
+    public void invalidateAll() {
+        cache.invalidateAll();
+    }
+
+    /**
+     * 过期和表被修改而丢弃的结果计为未命中
+     */
+    public CacheStats stats() {
+        CacheStats stats = cache.stats();
+        return new CacheStats(hitCount.sum(), missCount.sum(), stats.getEvictionCount(), stats.getSize(),
+                stats.getWeight());
+    }
+
+    /**
+     * SQL中FROM、JOIN、UPDATE、INTO之后的表名，小写，不含schema
+     */
+    public String[] tablesOf(String sql) {
+        String[] tables = sqlTables.get(sql);
+        if (tables == null) {
+            if (sqlTables.size() >= MAX_PARSED_SQL) {
+                sqlTables.clear();
+            }
+            tables = sqlTables.computeIfAbsent(sql, QueryResultCache::parseTables);
+        }
+        return tables;
+    }
+
+    /**
+     * 按命名参数在SQL中出现的顺序取参数值
+     */
+    public Object[] parameterValues(String sql, SqlParameterSource parameterSource) {
+        String[] names = sqlParameterNames.get(sql);
+        if (names == null) {
+            if (sqlParameterNames.size() >= MAX_PARSED_SQL) {
+                sqlParameterNames.clear();
+            }
+            names = sqlParameterNames.computeIfAbsent(sql, key -> {
+                List<SqlParameter> parameters = NamedParameterUtils.buildSqlParameterList(
+                        NamedParameterUtils.parseSqlStatement(key), EmptySqlParameterSource.INSTANCE);
+                String[] result = new String[parameters.size()];
+                for (int i = 0; i < result.length; i++) {
+                    result[i] = parameters.get(i).getName();
+                }
+                return result;
+            });
+        }
+        Object[] values = new Object[names.length];
+        for (int i = 0; i < names.length; i++) {
+            Object value = parameterSource.hasValue(names[i]) ? parameterSource.getValue(names[i]) : null;
+            values[i] = value instanceof SqlParameterValue ? ((SqlParameterValue) value).getValue() : value;
+        }
+        return values;
+    }
+
+    private AtomicLong version(String table) {
+        AtomicLong version = tableVersions.get(table);
+        return version != null ? version : tableVersions.computeIfAbsent(table, key -> new AtomicLong());
+    }
+
+    private boolean isCurrent(CachedResult result) {
+        for (int i = 0; i < result.tables.length; i++) {
+            if (version(result.tables[i]).get() != result.versions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    static String[] parseTables(String sql) {
+        String[] tokens = sql.trim().split("\\s+|(?=[(),;])|(?<=[(),;])");
+        Set<String> tables = new LinkedHashSet<>();
+        for (int i = 0; i < tokens.length - 1; i++) {
+            String keyword = tokens[i].toUpperCase();
+            if (!"FROM".equals(keyword) && !"JOIN".equals(keyword) && !"UPDATE".equals(keyword)
+                    && !"INTO".equals(keyword)) {
+                continue;
+            }
+            //FROM a, b 形式的多个表
+            int j = i + 1;
+            while (j < tokens.length && !tokens[j].isEmpty() && !"(".equals(tokens[j])) {
+                tables.add(normalizeTableName(tokens[j]));
+                j++;
+                //跳过别名
+                if (j < tokens.length && "AS".equalsIgnoreCase(tokens[j])) {
+                    j++;
+                }
+                if (j < tokens.length && !",".equals(tokens[j]) && isIdentifier(tokens[j])) {
+                    j++;
+                }
+                if ("FROM".equals(keyword) && j < tokens.length && ",".equals(tokens[j])) {
+                    j++;
+                } else {
+                    break;
+                }
+            }
+        }
+        return tables.toArray(new String[0]);
+    }
+
+    private static boolean isIdentifier(String token) {
+        switch (token.toUpperCase()) {
+            case "WHERE":
+            case "SET":
+            case "VALUES":
+            case "JOIN":
+            case "INNER":
+            case "LEFT":
+            case "RIGHT":
+            case "FULL":
+            case "CROSS":
+            case "ON":
+            case "USING":
+            case "GROUP":
+            case "ORDER":
+            case "LIMIT":
+            case "OFFSET":
+            case "UNION":
+            case "HAVING":
+            case "SELECT":
+                return false;
+            default:
+                return !token.isEmpty() && (Character.isLetter(token.charAt(0)) || token.charAt(0) == '_');
+        }
+    }
+
+    /**
+     * 去掉引号和schema并转为小写，与{@link #tablesOf(String)}的结果一致
+     */
+    public static String normalizeTableName(String table) {
+        String name = table.replace("\"", "").replace("`", "");
+        int dot = name.lastIndexOf('.');
+        return (dot < 0 ? name : name.substring(dot + 1)).toLowerCase();
+    }
+
+    /**
+     * 复制结果，调用方修改返回的列表和其中的对象不影响缓存
+     * <p>
+     * 不可变的值直接共享；Date和数组复制一份；Map结果复制HashMap和LinkedCaseInsensitiveMap，只读的CompactRowMapper行共享；
+     * 其他对象按{@link EntityMetadata#copy(Object)}复制可读写的属性
+     *
+     * @return 有不能复制的对象时返回{@link #NOT_COPYABLE}
+     */
+    static Object copyOf(Object value) {
+        if (!(value instanceof List)) {
+            return copyElement(value);
+        }
+        List<?> list = (List<?>) value;
+        List<Object> copy = new ArrayList<>(list.size());
+        for (Object element : list) {
+            Object copied = copyElement(element);
+            if (copied == NOT_COPYABLE) {
+                return NOT_COPYABLE;
+            }
+            copy.add(copied);
+        }
+        return copy;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Object copyElement(Object value) {
+        if (value == null || isImmutable(value)) {
+            return value;
+        } else if (value instanceof Date) {
+            return ((Date) value).clone();
+        } else if (value instanceof byte[]) {
+            return ((byte[]) value).clone();
+        } else if (value instanceof Object[]) {
+            Object[] copy = ((Object[]) value).clone();
+            for (int i = 0; i < copy.length; i++) {
+                copy[i] = copyElement(copy[i]);
+                if (copy[i] == NOT_COPYABLE) {
+                    return NOT_COPYABLE;
+                }
+            }
+            return copy;
+        } else if (value instanceof LinkedCaseInsensitiveMap) {
+            return ((LinkedCaseInsensitiveMap<Object>) value).clone();
+        } else if (value instanceof HashMap) {
+            return ((HashMap<Object, Object>) value).clone();
+        } else if (value instanceof Map) {
+            return CompactRowMapper.isCompactRow(value) ? value : NOT_COPYABLE;
+        } else if (value instanceof Collection || value.getClass().isArray()) {
+            return NOT_COPYABLE;
+        }
+        EntityMetadata<Object> metadata = EntityMetadata.of((Class<Object>) value.getClass());
+        return metadata.isCopyable() ? metadata.copy(value) : NOT_COPYABLE;
+    }
+
+    private static boolean isImmutable(Object value) {
+        Class<?> type = value.getClass();
+        return IMMUTABLE_TYPES.contains(type) || type.isEnum() || value instanceof Enum
+                || type.getName().startsWith("java.time.");
+    }
+
+    /**
+     * 估算结果占用的字节数，大列表按前{@link #SAMPLE_SIZE}个元素推算
+     */
+    static long estimateBytes(Object value) {
+        if (value == null) {
+            return 16;
+        } else if (value instanceof List) {
+            List<?> list = (List<?>) value;
+            int sampled = Math.min(list.size(), SAMPLE_SIZE);
+            long bytes = 0;
+            for (int i = 0; i < sampled; i++) {
+                bytes += estimateBytes(list.get(i));
+            }
+            return 40 + 8L * list.size() + (sampled == 0 ? 0 : bytes * list.size() / sampled);
+        } else if (value instanceof Map) {
+            long bytes = 48;
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) value).entrySet()) {
+                bytes += 32 + estimateBytes(entry.getKey()) + estimateBytes(entry.getValue());
+            }
+            return bytes;
+        } else if (value instanceof Object[]) {
+            long bytes = 16;
+            for (Object element : (Object[]) value) {
+                bytes += 8 + estimateBytes(element);
+            }
+            return bytes;
+        }
+        long bytes = EntityWeigher.estimateBytes(value);
+        if (bytes == 32 && !value.getClass().getName().startsWith("java.")) {
+            return EntityWeigher.estimatedBytes().weigh(null, value);
+        }
+        return bytes;
+    }
+
+    /**
+     * 结果缓存的键
+     */
+    public static final class QueryKey {
+        private final String sql;
+        private final Object resultType;
+        private final Object[] parameters;
+        private final int hash;
+
+        /**
+         * @param sql        最终的SQL文本
+         * @param resultType 结果类型，如Class或RowMapper实例
+         * @param parameters 按出现顺序的参数值
+         */
+        public QueryKey(String sql, Object resultType, Object[] parameters) {
+            this.sql = sql;
+            this.resultType = resultType;
+            this.parameters = parameters == null ? new Object[0] : parameters;
+            this.hash = 31 * (31 * sql.hashCode() + resultType.hashCode()) + Arrays.deepHashCode(this.parameters);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof QueryKey)) {
+                return false;
+            }
+            QueryKey other = (QueryKey) o;
+            return hash == other.hash && sql.equals(other.sql) && resultType.equals(other.resultType)
+                    && Arrays.deepEquals(parameters, other.parameters);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * 缓存的结果
+     */
+    public static final class CachedResult {
+        private final Object value;
+        private final String[] tables;
+        private final long[] versions;
+        private final long expireAtNanos;
+        private final long bytes;
+
+        CachedResult(Object value, String[] tables, long[] versions, long expireAtNanos, long bytes) {
+            this.value = value;
+            this.tables = tables;
+            this.versions = versions;
+            this.expireAtNanos = expireAtNanos;
+            this.bytes = bytes;
+        }
+
+        /**
+         * @return 结果的副本
+         */
+        public Object getValue() {
+            return copyOf(value);
+        }
+    }
+}
@@ -0,0 +1,349 @@
+package org.fastsql.cache;
+
+import java.time.Duration;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 按W-TinyLFU策略淘汰的有界缓存
+ * <p>
+ * 新数据先进入占总容量1%的LRU窗口，离开窗口后与主区中最久未访问的数据比较访问频率，
+ * 频率高的留下；主区分为试用区和受保护区(80%)，试用区中再次访问的数据升入受保护区。
+ * 访问频率由{@link FrequencySketch}估算。
+ * <p>
+ * 读操作只查询ConcurrentHashMap，访问顺序在取得锁时才更新，锁被占用时丢弃这次记录；
+ * 写操作和淘汰在锁内进行
+ */
+public class TinyLfuCache<K, V> implements EntityCache<K, V> {
+
+    private static final int WINDOW = 0;
+    private static final int PROBATION = 1;
+    private static final int PROTECTED = 2;
+    private static final int REMOVED = -1;
+
+    private final ConcurrentHashMap<K, Node<K, V>> data = new ConcurrentHashMap<>();
+    private final ReentrantLock evictionLock = new ReentrantLock();
+    private final FrequencySketch sketch = new FrequencySketch();
+
+    private final AccessOrderDeque<K, V> windowDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> probationDeque = new AccessOrderDeque<>();
+    private final AccessOrderDeque<K, V> protectedDeque = new AccessOrderDeque<>();
+
+    private final long maximumWeight;
+    private final long windowMaximum;
+    private final long protectedMaximum;
+    private final long expireAfterWriteNanos;
+    private final EntityWeigher<? super K, ? super V> weigher;
+
+    private long windowWeight;
+    private long protectedWeight;
+    private volatile long totalWeight;
+
+    private final LongAdder hitCount = new LongAdder();
+    private final LongAdder missCount = new LongAdder();
+    private final LongAdder evictionCount = new LongAdder();
+
+    /**
+     * 按数量限制，不过期
+     *
+     * @param maximumSize 最大数量
+     */
+    public TinyLfuCache(long maximumSize) {
+        this(maximumSize, null, EntityWeigher.singleton());
+    }
+
+    /**
+     * 按数量限制
+     *
+     * @param maximumSize      最大数量
+     * @param expireAfterWrite 写入后的过期时间，为null时不过期
+     */
+    public TinyLfuCache(long maximumSize, Duration expireAfterWrite) {
+        this(maximumSize, expireAfterWrite, EntityWeigher.singleton());
+    }
+
+    /**
+     * @param maximumWeight    最大总权重，使用{@link EntityWeigher#estimatedBytes()}时为最大字节数
+     * @param expireAfterWrite 写入后的过期时间，为null时不过期
+     * @param weigher          权重计算
+     */
+    public TinyLfuCache(long maximumWeight, Duration expireAfterWrite, EntityWeigher<? super K, ? super V> weigher) {
+        if (maximumWeight < 1) {
+            throw new IllegalArgumentException("最大权重必须大于0");
+        }
+        this.maximumWeight = maximumWeight;
+        this.windowMaximum = Math.max(1, maximumWeight / 100);
+        this.protectedMaximum = (maximumWeight - windowMaximum) * 8 / 10;
+        this.expireAfterWriteNanos = expireAfterWrite == null ? 0 : expireAfterWrite.toNanos();
+        this.weigher = weigher;
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = data.get(key);
+        if (node == null) {
+            missCount.increment();
+            return null;
+        }
+        if (isExpired(node)) {
+            evictionLock.lock();
+            try {
+                if (data.remove(key, node)) {
+                    unlink(node);
+                }
+            } finally {
+                evictionLock.unlock();
+            }
+            missCount.increment();
+            return null;
+        }
+        hitCount.increment();
+        //锁被占用时放弃记录这次访问
+        if (evictionLock.tryLock()) {
+            try {
+                onAccess(node);
+            } finally {
+                evictionLock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    @Override
+    public void put(K key, V value) {
+        int weight = weigher.weigh(key, value);
+        if (weight > maximumWeight) {
+            invalidate(key);
+            return;
+        }
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.get(key);
+            if (node != null) {
+                node.value = value;
+                node.writeNanos = System.nanoTime();
+                adjustWeight(node, weight - node.weight);
+                node.weight = weight;
+                onAccess(node);
+            } else {
+                node = new Node<>(key, value, weight);
+                data.put(key, node);
+                sketch.ensureCapacity(data.size());
+                sketch.increment(key);
+                node.queue = WINDOW;
+                windowDeque.addLast(node);
+                windowWeight += weight;
+                totalWeight += weight;
+            }
+            evict();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidate(K key) {
+        evictionLock.lock();
+        try {
+            Node<K, V> node = data.remove(key);
+            if (node != null) {
+                unlink(node);
+            }
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public void invalidateAll() {
+        evictionLock.lock();
+        try {
+            for (Node<K, V> node : data.values()) {
+                unlink(node);
+            }
+            data.clear();
+        } finally {
+            evictionLock.unlock();
+        }
+    }
+
+    @Override
+    public long size() {
+        return data.size();
+    }
+
+    @Override
+    public CacheStats stats() {
+        return new CacheStats(hitCount.sum(), missCount.sum(), evictionCount.sum(), data.size(), totalWeight);
+    }
+
+    public long getMaximumWeight() {
+        return maximumWeight;
+    }
+
+    private boolean isExpired(Node<K, V> node) {
+        return expireAfterWriteNanos > 0 && System.nanoTime() - node.writeNanos > expireAfterWriteNanos;
+    }
+
+    /**
+     * 记录一次访问，在锁内调用
+     */
+    private void onAccess(Node<K, V> node) {
+        if (node.queue == REMOVED) {
+            return;
+        }
+        sketch.increment(node.key);
+        if (node.queue == WINDOW) {
+            windowDeque.moveToLast(node);
+        } else if (node.queue == PROBATION) {
+            //试用区中再次访问，升入受保护区
+            probationDeque.remove(node);
+            node.queue = PROTECTED;
+            protectedDeque.addLast(node);
+            protectedWeight += node.weight;
+            demoteProtected();
+        } else {
+            protectedDeque.moveToLast(node);
+        }
+    }
+
+    private void adjustWeight(Node<K, V> node, int delta) {
+        if (node.queue == WINDOW) {
+            windowWeight += delta;
+        } else if (node.queue == PROTECTED) {
+            protectedWeight += delta;
+        }
+        totalWeight += delta;
+    }
+
+    /**
+     * 受保护区超出容量时，最久未访问的数据降回试用区
+     */
+    private void demoteProtected() {
+        while (protectedWeight > protectedMaximum) {
+            Node<K, V> node = protectedDeque.first();
+            if (node == null) {
+                return;
+            }
+            protectedDeque.remove(node);
+            protectedWeight -= node.weight;
+            node.queue = PROBATION;
+            probationDeque.addLast(node);
+        }
+    }
+
+    /**
+     * 窗口溢出的数据进入试用区成为候选者，总权重超出时淘汰候选者和试用区头部中访问频率较低的一个
+     */
+    private void evict() {
+        while (windowWeight > windowMaximum) {
+            Node<K, V> node = windowDeque.first();
+            windowDeque.remove(node);
+            windowWeight -= node.weight;
+            node.queue = PROBATION;
+            probationDeque.addLast(node);
+        }
+        while (totalWeight > maximumWeight) {
+            Node<K, V> victim = probationDeque.first();
+            Node<K, V> candidate = probationDeque.last();
+            if (victim == null) {
+                victim = protectedDeque.first() != null ? protectedDeque.first() : windowDeque.first();
+                candidate = victim;
+            }
+            if (victim == null) {
+                return;
+            }
+            Node<K, V> evicted = victim == candidate || sketch.frequency(candidate.key) > sketch.frequency(victim.key)
+                    ? victim : candidate;
+            data.remove(evicted.key, evicted);
+            unlink(evicted);
+            evictionCount.increment();
+        }
+    }
+
+    /**
+     * 从所在队列中移除，在锁内调用
+     */
+    private void unlink(Node<K, V> node) {
+        if (node.queue == WINDOW) {
+            windowDeque.remove(node);
+            windowWeight -= node.weight;
+        } else if (node.queue == PROBATION) {
+            probationDeque.remove(node);
+        } else if (node.queue == PROTECTED) {
+            protectedDeque.remove(node);
+            protectedWeight -= node.weight;
+        } else {
+            return;
+        }
+        totalWeight -= node.weight;
+        node.queue = REMOVED;
+    }
+
+    private static final class Node<K, V> {
+        final K key;
+        volatile V value;
+        volatile long writeNanos;
+        int weight;
+        int queue = REMOVED;
+        Node<K, V> prev;
+        Node<K, V> next;
+
+        Node(K key, V value, int weight) {
+            this.key = key;
+            this.value = value;
+            this.weight = weight;
+            this.writeNanos = System.nanoTime();
+        }
+    }
+
+    /**
+     * 按访问顺序排列的双向链表，头部最久未访问
+     */
+    private static final class AccessOrderDeque<K, V> {
+        private Node<K, V> head;
+        private Node<K, V> tail;
+
+        Node<K, V> first() {
+            return head;
+        }
+
+        Node<K, V> last() {
+            return tail;
+        }
+
+        void addLast(Node<K, V> node) {
+            node.prev = tail;
+            node.next = null;
+            if (tail == null) {
+                head = node;
+            } else {
+                tail.next = node;
+            }
+            tail = node;
+        }
+
+        void remove(Node<K, V> node) {
+            if (node.prev == null) {
+                head = node.next;
+            } else {
+                node.prev.next = node.next;
+            }
+            if (node.next == null) {
+                tail = node.prev;
+            } else {
+                node.next.prev = node.prev;
+            }
+            node.prev = null;
+            node.next = null;
+        }
+
+        void moveToLast(Node<K, V> node) {
+            if (node != tail) {
+                remove(node);
+                addLast(node);
+            }
+        }
+    }
+}
@@ -1,7 +1,8 @@
-/*
- *
- *TODO 增加缓存
- *
- *
+/**
+ * 实体类二级缓存
+ * <p>
+ * {@link org.fastsql.cache.EntityCache}是缓存接口，
+ * 默认实现{@link org.fastsql.cache.TinyLfuCache}按访问频率淘汰，支持过期时间和按字节数限制大小。
+ * BaseDAO通过setEntityCache按实体类开启缓存，写操作自动使缓存失效
  */
 package org.fastsql.cache;
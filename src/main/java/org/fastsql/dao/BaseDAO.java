@@ -1,30 +1,67 @@
 package org.fastsql.dao;
 
+import org.fastsql.FastSqlSession;
 import org.fastsql.SQL;
 import org.fastsql.SQLFactory;
+import org.fastsql.cache.EntityCache;
+import org.fastsql.cache.QueryResultCache;
 import org.fastsql.config.DatabaseType;
+import org.fastsql.dto.BatchUpdateResult;
+import org.fastsql.dto.KeysetPage;
+import org.fastsql.dto.LongObjectMap;
 import org.fastsql.dto.ResultPage;
+import org.fastsql.dto.ScanProgress;
+import org.fastsql.mapper.FastBeanRowMapper;
+import org.fastsql.util.ChunkScanner;
+import org.fastsql.util.CountTemplate;
+import org.fastsql.util.CursorTemplate;
+import org.fastsql.util.EntityMetadata;
+import org.fastsql.util.EntityParameterSource;
 import org.fastsql.util.EntityRefelectUtils;
-import org.fastsql.util.PageUtils;
-import org.fastsql.util.StringExtUtils;
+import org.fastsql.util.Keyset;
+import org.fastsql.util.PageTemplate;
+import org.fastsql.util.PropertyMetadata;
+import org.fastsql.util.TransactionCallbacks;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.dao.EmptyResultDataAccessException;
-import org.springframework.jdbc.core.BeanPropertyRowMapper;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.SingleColumnRowMapper;
+import org.springframework.jdbc.core.StatementCreatorUtils;
 import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
-import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.util.ClassUtils;
 import org.springframework.util.StringUtils;
 
 import java.lang.reflect.Field;
 import java.lang.reflect.ParameterizedType;
 import java.lang.reflect.Type;
+import java.math.BigDecimal;
+import java.sql.Statement;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
-
-import static org.fastsql.util.StringExtUtils.camelToUnderline;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Stream;
 
 /**
  * 基础DAO 提供CRUD等操作
@@ -54,6 +91,16 @@ public abstract class BaseDAO<E, ID> {
     protected List<Field> fields = new ArrayList<>();
     protected List<String> columnNames = new ArrayList<>();
 
+    protected EntityMetadata<E> metadata;
+    protected PropertyMetadata idProperty;
+    protected List<PropertyMetadata> propertiesWithoutId = new ArrayList<>();
+    protected List<PropertyMetadata> properties = new ArrayList<>();
+
+    /**
+     * 实体类的行映射器，所有查询共用
+     */
+    protected RowMapper<E> rowMapper;
+
     /**
      * save/update/delete 拦截器  配置
      */
@@ -66,6 +113,26 @@ public abstract class BaseDAO<E, ID> {
 
     protected DatabaseType databaseType;
 
+    /**
+     * 批量操作每批的数量
+     */
+    protected int batchSize = 1000;
+
+    /**
+     * 实体类缓存，为null时不使用缓存
+     */
+    protected EntityCache<ID, E> entityCache;
+
+    /**
+     * 实体缓存的版本号，按id的哈希分段，使id失效时加1；查询期间版本号变化的结果不留在缓存中
+     */
+    private final AtomicLongArray entityCacheVersions = new AtomicLongArray(ENTITY_CACHE_VERSION_STRIPES);
+
+    /**
+     * 使所有id失效时加1
+     */
+    private final AtomicLong entityCacheEpoch = new AtomicLong();
+
     protected NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
     protected SQLFactory sqlFactory;
@@ -74,6 +141,53 @@ public abstract class BaseDAO<E, ID> {
     @Autowired
     public void setNamedParameterJdbcTemplate(NamedParameterJdbcTemplate namedParameterJdbcTemplate) {
         this.namedParameterJdbcTemplate = namedParameterJdbcTemplate;
+        //注入模板时，sql工厂使用同一个数据源
+        if (this.sqlFactory.getDataSource() == null) {
+            this.sqlFactory.setDataSource(
+                    ((JdbcTemplate) namedParameterJdbcTemplate.getJdbcOperations()).getDataSource());
+        }
+    }
+
+    /**
+     * 注入共享的sql工厂，多个DAO共用一个执行核心
+     */
+    @Autowired(required = false)
+    public void setSqlFactory(SQLFactory sqlFactory) {
+        this.sqlFactory = sqlFactory;
+        this.databaseType = sqlFactory.getDatabaseType();
+    }
+
+    public SQLFactory getSqlFactory() {
+        return sqlFactory;
+    }
+
+    public int getBatchSize() {
+        return batchSize;
+    }
+
+    public void setBatchSize(int batchSize) {
+        this.batchSize = batchSize;
+    }
+
+    /**
+     * 与SQL实例共用的执行核心，命名参数的解析结果在所有调用之间缓存
+     */
+    protected NamedParameterJdbcTemplate template() {
+        return factory().getNamedParameterJdbcTemplate();
+    }
+
+    /**
+     * 查询使用的执行核心，配置了只读副本时按SQLFactory的读写分离规则选择
+     */
+    protected NamedParameterJdbcTemplate readTemplate() {
+        return factory().getReadTemplate();
+    }
+
+    /**
+     * 执行语句使用的sql工厂，分片时为当前分片的工厂
+     */
+    protected SQLFactory factory() {
+        return sqlFactory;
     }
 
     public BaseDAO() {
@@ -97,26 +211,34 @@ public abstract class BaseDAO<E, ID> {
         this.log = LoggerFactory.getLogger(entityClass);
 
         this.className = entityClass.getSimpleName();
-        this.tableName = EntityRefelectUtils.getTableNameFromEntityClass(this.entityClass);
+        //元数据只解析一次，多个DAO共用
+        this.metadata = EntityMetadata.of(entityClass);
+        this.tableName = metadata.getTableName();
 
-        //TODO 现在反射了两次 需要重写为一次
-        //没有主键
-        this.fieldsWithoutId = EntityRefelectUtils.getAllFieldWithoutIdByClass(entityClass);
-        /*
-        for (Field field : this.fieldsWithoutId) {
-            this.columnNamesWithoutId.add(camelToUnderline(field.getName()));
-        }
-        */
-        this.fieldsWithoutId.forEach(field -> this.columnNamesWithoutId.add(camelToUnderline(field.getName())));
         //主键
-        this.idField = EntityRefelectUtils.getIdField(entityClass); //TODO 2
-        this.idColumnName = camelToUnderline(idField.getName());
+        this.idProperty = metadata.requireIdProperty();
+        this.idField = idProperty.getField();
+        this.idColumnName = idProperty.getColumnName();
 
-        //所有
-        this.fields.addAll(this.fieldsWithoutId);
-        this.fields.add(0, this.idField);
-        this.columnNames.addAll(this.columnNamesWithoutId);
-        this.columnNames.add(0, camelToUnderline(this.idField.getName()));
+        //没有主键
+        this.propertiesWithoutId = metadata.getColumnPropertiesWithoutId();
+        this.propertiesWithoutId.forEach(property -> {
+            this.fieldsWithoutId.add(property.getField());
+            this.columnNamesWithoutId.add(property.getColumnName());
+        });
+
+        //所有，主键在第一位
+        this.properties.add(this.idProperty);
+        this.properties.addAll(this.propertiesWithoutId);
+        this.properties.forEach(property -> {
+            this.fields.add(property.getField());
+            this.columnNames.add(property.getColumnName());
+        });
+
+        this.rowMapper = FastBeanRowMapper.of(entityClass);
+
+        //预生成语句
+        initStatements();
 
         //使用默认配置
         this.databaseType = DatabaseType.POSTGRESQL;
@@ -126,6 +248,302 @@ public abstract class BaseDAO<E, ID> {
     }
 
 
+    /////////////////////////////////////////////////缓存////////////////////////////////////////
+
+    /**
+     * 设置实体类缓存，selectOneById和selectByIds先查缓存；
+     * 缓存中保存对象的浅拷贝，所有写操作都会使对应的id失效，按条件删除时全部失效。
+     * 事务中的查询不读写缓存，事务中写入引起的失效在事务结束后执行
+     *
+     * @param entityCache 缓存，为null时关闭缓存
+     */
+    public void setEntityCache(EntityCache<ID, E> entityCache) {
+        this.entityCache = entityCache;
+    }
+
+    public EntityCache<ID, E> getEntityCache() {
+        return entityCache;
+    }
+
+    /**
+     * 复制所有列字段，调用方修改返回的对象不会影响缓存
+     */
+    protected E copyEntity(E entity) {
+        final E copy = metadata.newInstance();
+        for (PropertyMetadata property : properties) {
+            property.set(copy, property.get(entity));
+        }
+        return copy;
+    }
+
+    /**
+     * 当前线程的查询是否使用实体缓存
+     */
+    private boolean useEntityCache() {
+        return entityCache != null && !TransactionCallbacks.inTransaction();
+    }
+
+    private int entityCacheStripe(Object id) {
+        final int hash = id.hashCode();
+        return (hash ^ (hash >>> 16)) & (ENTITY_CACHE_VERSION_STRIPES - 1);
+    }
+
+    /**
+     * 在查询之前获取，与{@link #putCached(Object, Object, long)}配合
+     */
+    private long entityCacheVersion(Object id) {
+        return entityCacheEpoch.get() + entityCacheVersions.get(entityCacheStripe(id));
+    }
+
+    /**
+     * 放入从数据库读取的对象，查询期间该id被写入过时立即移除
+     *
+     * @param version 查询之前的{@link #entityCacheVersion(Object)}
+     */
+    private void putCached(ID id, E entity, long version) {
+        entityCache.put(id, copyEntity(entity));
+        //写入方先增加版本号再使缓存失效，放入之后再检查可以保证旧数据不会留在缓存中
+        if (entityCacheVersion(id) != version) {
+            entityCache.invalidate(id);
+        }
+    }
+
+    private void evictCached(Object id) {
+        if (id != null) {
+            evictCachedIds(Collections.singletonList(id));
+        }
+    }
+
+    /**
+     * 从会话中立即移除，从实体缓存中在事务结束后移除
+     *
+     * @param ids 可以是调用方之后会复用的集合，延后执行时使用副本
+     */
+    private void evictCachedIds(Collection<?> ids) {
+        final FastSqlSession session = session();
+        if (session != null) {
+            for (Object id : ids) {
+                if (id != null) {
+                    session.remove(entityClass, id);
+                }
+            }
+        }
+        if (entityCache != null) {
+            final EntityCache<ID, E> cache = entityCache;
+            final List<Object> evicted = new ArrayList<>(ids);
+            TransactionCallbacks.afterCompletion(() -> {
+                for (Object id : evicted) {
+                    if (id != null) {
+                        entityCacheVersions.incrementAndGet(entityCacheStripe(id));
+                        cache.invalidate((ID) id);
+                    }
+                }
+            });
+        }
+    }
+
+    /**
+     * 批量写入之后，使这些对象在会话、实体缓存和查询结果缓存中失效
+     */
+    private void evictCachedEntities(Collection<E> entities) {
+        invalidateQueryResults();
+        final List<Object> ids = new ArrayList<>(entities.size());
+        for (E entity : entities) {
+            ids.add(idProperty.get(entity));
+        }
+        evictCachedIds(ids);
+    }
+
+    private void evictAllCached() {
+        invalidateQueryResults();
+        if (entityCache != null) {
+            final EntityCache<ID, E> cache = entityCache;
+            TransactionCallbacks.afterCompletion(() -> {
+                entityCacheEpoch.incrementAndGet();
+                cache.invalidateAll();
+            });
+        }
+        final FastSqlSession session = session();
+        if (session != null) {
+            session.clear(entityClass);
+        }
+    }
+
+    /**
+     * @return 当前线程为本DAO的工厂打开的会话，其他工厂的会话不适用
+     */
+    protected FastSqlSession session() {
+        return FastSqlSession.current(getSqlFactory());
+    }
+
+    /**
+     * 写入完整对象后放入会话的一级缓存
+     */
+    private void rememberInSession(E entity) {
+        final FastSqlSession session = session();
+        if (session != null) {
+            session.put(entityClass, idProperty.get(entity), entity);
+        }
+    }
+
+    /**
+     * 会话打开时，查询结果中已在一级缓存中的对象替换为缓存中的同一个对象
+     */
+    protected List<E> attachToSession(List<E> entities) {
+        final FastSqlSession session = session();
+        if (session != null) {
+            for (int i = 0; i < entities.size(); i++) {
+                final E entity = entities.get(i);
+                entities.set(i, session.merge(entityClass, idProperty.get(entity), entity));
+            }
+        }
+        return entities;
+    }
+
+    /**
+     * 不经过SQL类的写操作之后，使依赖本表的查询结果失效，在事务中时等到事务结束
+     */
+    private void invalidateQueryResults() {
+        final SQLFactory factory = factory();
+        final QueryResultCache queryResultCache = factory.getQueryResultCache();
+        if (queryResultCache != null) {
+            TransactionCallbacks.afterCompletion(() -> queryResultCache.invalidateTables(tableName));
+        }
+        factory.markWrite();
+    }
+
+    /////////////////////////////////////////////////预生成的语句////////////////////////////////////////
+
+    /**
+     * 一条多行INSERT语句中参数数量的上限
+     */
+    private static final int MAX_STATEMENT_PARAMETERS = 32767;
+
+    /**
+     * 一条语句中IN列表的长度上限，与Oracle的限制一致
+     */
+    public static final int MAX_IN_LIST_SIZE = 1000;
+
+    /**
+     * 缓存的选择性语句数量上限，超过后清空重建
+     */
+    private static final int MAX_CACHED_STATEMENTS = 1024;
+
+    /**
+     * 实体缓存版本号的分段数，必须是2的幂
+     */
+    private static final int ENTITY_CACHE_VERSION_STRIPES = 256;
+
+    /**
+     * 只依赖实体类的语句，初始化时生成一次
+     */
+    protected String insertSql;
+    protected String updateSql;
+    protected String selectByIdSql;
+    protected String deleteByIdSql;
+
+    /**
+     * 非null字段掩码 -> insertSelective语句
+     */
+    private final ConcurrentHashMap<Object, String> insertSelectiveSqlCache = new ConcurrentHashMap<>();
+    /**
+     * 非null字段掩码 -> updateSelective语句
+     */
+    private final ConcurrentHashMap<Object, String> updateSelectiveSqlCache = new ConcurrentHashMap<>();
+    /**
+     * 列名列表 -> updateColumns语句
+     */
+    private final ConcurrentHashMap<List<String>, String> updateColumnsSqlCache = new ConcurrentHashMap<>();
+    /**
+     * 数据库类型 -> upsert语句
+     */
+    private final ConcurrentHashMap<DatabaseType, String> upsertSqlCache = new ConcurrentHashMap<>();
+
+    /**
+     * 生成只依赖实体类的增删改查语句
+     */
+    protected void initStatements() {
+        final String idCondition = " WHERE " + idColumnName + "=:" + idProperty.getName();
+        this.insertSql = buildInsertSql(properties);
+        this.updateSql = buildUpdateSql(propertiesWithoutId);
+        this.selectByIdSql = "SELECT * FROM " + tableName + idCondition;
+        this.deleteByIdSql = "DELETE FROM " + tableName + idCondition;
+    }
+
+    private String buildInsertSql(List<PropertyMetadata> insertProperties) {
+        final StringBuilder nameBuilder = new StringBuilder();
+        final StringBuilder valueBuilder = new StringBuilder();
+        for (PropertyMetadata property : insertProperties) {
+            nameBuilder.append(",").append(property.getColumnName());
+            valueBuilder.append(",:").append(property.getName());
+        }
+        return "INSERT INTO " + tableName + "(" + nameBuilder.substring(1) + ") " +
+                "VALUES(" + valueBuilder.substring(1) + ")";
+    }
+
+    private String buildUpdateSql(List<PropertyMetadata> setProperties) {
+        final StringBuilder sqlBuilder = new StringBuilder();
+        for (PropertyMetadata property : setProperties) {
+            sqlBuilder.append(",").append(property.getColumnName()).append("=:").append(property.getName());
+        }
+        return "UPDATE " + tableName + " SET " + sqlBuilder.substring(1) +
+                " WHERE " + idColumnName + "=:" + idProperty.getName();
+    }
+
+    /**
+     * 对象中非null字段的掩码，字段不超过64个时为Long，否则为BitSet
+     */
+    private Object nonNullMask(List<PropertyMetadata> maskProperties, E entity) {
+        final int size = maskProperties.size();
+        if (size <= 64) {
+            long mask = 0L;
+            for (int i = 0; i < size; i++) {
+                if (maskProperties.get(i).get(entity) != null) {
+                    mask |= 1L << i;
+                }
+            }
+            return mask;
+        }
+        final BitSet mask = new BitSet(size);
+        for (int i = 0; i < size; i++) {
+            if (maskProperties.get(i).get(entity) != null) {
+                mask.set(i);
+            }
+        }
+        return mask;
+    }
+
+    private static boolean isEmptyMask(Object mask) {
+        return mask instanceof Long ? (Long) mask == 0L : ((BitSet) mask).isEmpty();
+    }
+
+    /**
+     * 掩码对应的字段
+     */
+    private List<PropertyMetadata> maskedProperties(List<PropertyMetadata> maskProperties, Object mask) {
+        final List<PropertyMetadata> result = new ArrayList<>();
+        for (int i = 0; i < maskProperties.size(); i++) {
+            final boolean present = mask instanceof Long
+                    ? ((Long) mask & (1L << i)) != 0
+                    : ((BitSet) mask).get(i);
+            if (present) {
+                result.add(maskProperties.get(i));
+            }
+        }
+        return result;
+    }
+
+    private static <K> String cacheStatement(ConcurrentHashMap<K, String> cache, K key, Function<K, String> builder) {
+        String sql = cache.get(key);
+        if (sql == null) {
+            if (cache.size() >= MAX_CACHED_STATEMENTS) {
+                cache.clear();
+            }
+            sql = cache.computeIfAbsent(key, builder);
+        }
+        return sql;
+    }
+
     /////////////////////////////////////////////////保存方法////////////////////////////////////////
 
     /**
@@ -135,27 +553,20 @@ public abstract class BaseDAO<E, ID> {
      * @return 插入成功的数量
      */
     public int insertSelective(E entity) {
-        //SQL语句部分字符串构建器
-        final StringBuilder nameBuilder = new StringBuilder();
-        final StringBuilder valueBuilder = new StringBuilder();
-        //遍历
-        fields.stream()
-                .filter(field -> EntityRefelectUtils.getFieldValue(entity, field) != null)
-                .forEach(field -> {
-                    nameBuilder.append(",").append(StringExtUtils.camelToUnderline(field.getName()));
-                    valueBuilder.append(",:").append(field.getName());
-                });
-        //构建SQL实例
-        final SQL sql = sqlFactory.createSQL()
-                .INSERT_INTO(tableName, nameBuilder.deleteCharAt(0).toString())
-                .VALUES(valueBuilder.deleteCharAt(0).toString())
-                .beanParameter(entity);
+        //同一组非null字段共用一条语句
+        final Object mask = nonNullMask(properties, entity);
+        if (isEmptyMask(mask)) {
+            throw new RuntimeException("插入时对象所有字段均为null");
+        }
+        final String sql = cacheStatement(insertSelectiveSqlCache, mask,
+                key -> buildInsertSql(maskedProperties(properties, key)));
         //若useBeforeInsert设置为true，则执行拦截方法
         if (useBeforeInsert) {
             beforeInsert(entity);
         }
         //执行sql语句并获取修改行数
-        final int count = sql.update();
+        final int count = factory().createSQL().useSql(sql).beanParameter(entity).update();
+        evictCached(idProperty.get(entity));
         //若useAfterInsert设置为true，则执行拦截方法
         if (useAfterInsert) {
             afterInsert(entity, count);
@@ -169,150 +580,452 @@ public abstract class BaseDAO<E, ID> {
      * 插入对象中的值到数据库，null值在数据库中会设置为NULL
      */
     public int insert(E entity) {
-        final StringBuilder nameBuilder = new StringBuilder();
-        final StringBuilder valueBuilder = new StringBuilder();
-        fields.forEach(field -> {
-            nameBuilder.append(",").append(StringExtUtils.camelToUnderline(field.getName()));
-            valueBuilder.append(",:").append(field.getName());
-        });
-        /*
-        for (Field field : fields) {
-            nameBuilder.append(",").append(StringExtUtils.camelToUnderline(field.getName()));
-            valueBuilder.append(",:").append(field.getName());
-        }
-        */
-        final SQL sql = sqlFactory.createSQL()
-                .INSERT_INTO(tableName, nameBuilder.deleteCharAt(0).toString())
-                .VALUES(valueBuilder.deleteCharAt(0).toString())
-                .beanParameter(entity);
-        /*
-        String sql = "INSERT INTO " + tableName + "(" + nameBuilder.toString().replaceFirst(",", "") + ") " +
-                "VALUES(" + valueBuilder.toString().replaceFirst(",", "") + ")";
-        int count = namedParameterJdbcTemplate.update(sql, new BeanPropertySqlParameterSource(entity));
-        */
         if (useBeforeInsert) {
             beforeInsert(entity);
         }
-        final int count = sql.update();
+        final int count = factory().createSQL().useSql(insertSql).beanParameter(entity).update();
+        evictCached(idProperty.get(entity));
+        rememberInSession(entity);
         if (useAfterInsert) {
             afterInsert(entity, count);
         }
         return count;
     }
 
+    /////////////////////////////////////////////////批量保存方法////////////////////////////////////////
+
+    /**
+     * 批量插入，每批{@link #batchSize}条
+     *
+     * @see #insertInBatch(Collection, int)
+     */
+    public BatchUpdateResult insertInBatch(Collection<E> entities) {
+        return insertInBatch(entities, batchSize);
+    }
+
+    /**
+     * 批量插入，null值在数据库中会设置为NULL
+     * <p>
+     * MySQL和PostgreSQL使用多行INSERT ... VALUES (...),(...)，其他数据库使用JDBC批处理；
+     * 每次只缓存一批对象，大量数据也不会占用过多内存
+     *
+     * @param entities  实体类对象
+     * @param chunkSize 每批的数量
+     * @return 每条语句（多行INSERT）或每个对象（JDBC批处理）的修改行数
+     */
+    public BatchUpdateResult insertInBatch(Collection<E> entities, int chunkSize) {
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(entities, chunkSize, chunk -> executeInsertChunk(chunk, properties, insertSql, counts));
+        return toBatchUpdateResult(counts);
+    }
+
+    /**
+     * 批量插入对象中非null的值，每批{@link #batchSize}条
+     *
+     * @see #insertSelectiveInBatch(Collection, int)
+     */
+    public BatchUpdateResult insertSelectiveInBatch(Collection<E> entities) {
+        return insertSelectiveInBatch(entities, batchSize);
+    }
+
+    /**
+     * 批量插入对象中非null的值
+     * <p>
+     * 每批中非null字段相同的对象使用同一条语句
+     *
+     * @param entities  实体类对象
+     * @param chunkSize 每批的数量
+     */
+    public BatchUpdateResult insertSelectiveInBatch(Collection<E> entities, int chunkSize) {
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(entities, chunkSize, chunk -> {
+            //按非null字段分组
+            final Map<Object, List<E>> groups = new LinkedHashMap<>();
+            for (E entity : chunk) {
+                final Object mask = nonNullMask(properties, entity);
+                if (isEmptyMask(mask)) {
+                    throw new RuntimeException("插入时对象所有字段均为null");
+                }
+                groups.computeIfAbsent(mask, key -> new ArrayList<>()).add(entity);
+            }
+            groups.forEach((mask, group) -> executeInsertChunk(group, maskedProperties(properties, mask),
+                    cacheStatement(insertSelectiveSqlCache, mask,
+                            key -> buildInsertSql(maskedProperties(properties, key))),
+                    counts));
+        });
+        return toBatchUpdateResult(counts);
+    }
+
+    /**
+     * 执行一批插入
+     *
+     * @param insertProperties 插入的字段
+     * @param namedSql         单行插入语句，使用JDBC批处理时执行
+     * @param counts           修改行数
+     */
+    private void executeInsertChunk(List<E> chunk, List<PropertyMetadata> insertProperties, String namedSql,
+                                    List<Integer> counts) {
+        if (useBeforeInsert) {
+            chunk.forEach(this::beforeInsert);
+        }
+        if (databaseType == DatabaseType.MY_SQL || databaseType == DatabaseType.POSTGRESQL) {
+            //一条语句的参数数量有上限
+            final int rowsPerStatement = Math.max(1, MAX_STATEMENT_PARAMETERS / insertProperties.size());
+            String sql = null;
+            int sqlRows = 0;
+            for (int from = 0; from < chunk.size(); from += rowsPerStatement) {
+                final List<E> rows = chunk.subList(from, Math.min(chunk.size(), from + rowsPerStatement));
+                if (sqlRows != rows.size()) {
+                    sql = buildMultiRowInsertSql(insertProperties, rows.size());
+                    sqlRows = rows.size();
+                }
+                final int count = template().getJdbcOperations().update(sql, ps -> {
+                    int index = 1;
+                    for (E entity : rows) {
+                        for (PropertyMetadata property : insertProperties) {
+                            StatementCreatorUtils.setParameterValue(ps, index++, property.getSqlType(),
+                                    property.getColumnValue(entity));
+                        }
+                    }
+                });
+                counts.add(count);
+                evictCachedEntities(rows);
+                if (useAfterInsert) {
+                    //所有行都插入成功时每个对象记为1行
+                    final int rowCount = count >= rows.size() ? 1 : 0;
+                    rows.forEach(entity -> afterInsert(entity, rowCount));
+                }
+            }
+        } else {
+            final SqlParameterSource[] parameterSources = new SqlParameterSource[chunk.size()];
+            for (int i = 0; i < chunk.size(); i++) {
+                parameterSources[i] = new EntityParameterSource(chunk.get(i));
+            }
+            final int[] rowCounts = template().batchUpdate(namedSql, parameterSources);
+            evictCachedEntities(chunk);
+            for (int i = 0; i < rowCounts.length; i++) {
+                //驱动不返回行数时视为成功
+                final int count = rowCounts[i] == Statement.SUCCESS_NO_INFO ? 1 : rowCounts[i];
+                counts.add(count);
+                if (useAfterInsert) {
+                    afterInsert(chunk.get(i), count);
+                }
+            }
+        }
+    }
+
+    private String buildMultiRowInsertSql(List<PropertyMetadata> insertProperties, int rows) {
+        final StringBuilder sqlBuilder = new StringBuilder("INSERT INTO ").append(tableName).append("(");
+        for (int i = 0; i < insertProperties.size(); i++) {
+            sqlBuilder.append(i == 0 ? "" : ",").append(insertProperties.get(i).getColumnName());
+        }
+        sqlBuilder.append(") VALUES ");
+        for (int row = 0; row < rows; row++) {
+            sqlBuilder.append(row == 0 ? "(" : ",(");
+            for (int i = 0; i < insertProperties.size(); i++) {
+                sqlBuilder.append(i == 0 ? "?" : ",?");
+            }
+            sqlBuilder.append(")");
+        }
+        return sqlBuilder.toString();
+    }
+
+    /**
+     * 按批遍历，每次只缓存一批对象
+     */
+    protected <T> void forEachChunk(Collection<T> items, int chunkSize, Consumer<List<T>> action) {
+        if (chunkSize < 1) {
+            throw new IllegalArgumentException("每批的数量必须大于0");
+        }
+        final List<T> chunk = new ArrayList<>(Math.min(chunkSize, items.size()));
+        for (T item : items) {
+            chunk.add(item);
+            if (chunk.size() == chunkSize) {
+                action.accept(chunk);
+                chunk.clear();
+            }
+        }
+        if (!chunk.isEmpty()) {
+            action.accept(chunk);
+        }
+    }
+
+    private static BatchUpdateResult toBatchUpdateResult(List<Integer> counts) {
+        final int[] affectRows = new int[counts.size()];
+        for (int i = 0; i < affectRows.length; i++) {
+            affectRows[i] = counts.get(i);
+        }
+        return new BatchUpdateResult(affectRows);
+    }
+
     /////////////////////////////修改 /////////////////////////////////////////////
 
     /**
      * 全更新 null值在 数据库中设置为null
      */
     public int update(E entity) {
-        //TODO
-        final ID id = (ID) EntityRefelectUtils.getFieldValue(entity, idField);
+        final ID id = (ID) idProperty.get(entity);
         if (StringUtils.isEmpty(id)) {
             throw new RuntimeException("修改时对象id不能为空");
         }
-        final StringBuilder sqlBuilder = new StringBuilder();
-        fieldsWithoutId
-                .forEach(field ->
-                        sqlBuilder.append("," + StringExtUtils.camelToUnderline(field.getName()) +
-                                "=:" +
-                                field.getName()));
-        /*
-        for (Field field : fieldsWithoutId) {
-            sqlBuilder.append("," + StringExtUtils.camelToUnderline(field.getName()) + "=:" + field.getName());
-        }
-        String setValueSql = sqlBuilder.deleteCharAt(0).toString();
-        String sql = "UPDATE " + tableName + " SET " + setValueSql + " WHERE id=:id";//set sql
-        */
-        final SQL sql = sqlFactory.createSQL()
-                .UPDATE(tableName)
-                .SET(sqlBuilder.deleteCharAt(0).toString())
-                .WHERE(idColumnName + "=:" + idColumnName)
-                .beanParameter(entity);
-        /*
-        if (useAfterUpdate) {
-            beforeUpdate(entity);
-        }
-        int count = namedParameterJdbcTemplate.update(
-                sql, new BeanPropertySqlParameterSource(entity)
-        );
-        */
         if (useBeforeUpdate) {
             beforeUpdate(entity);
         }
-        final int count = sql.update();
+        final int count = factory().createSQL().useSql(updateSql).beanParameter(entity).update();
+        evictCached(idProperty.get(entity));
+        rememberInSession(entity);
         if (useAfterUpdate) {
             afterUpdate(entity, count);
         }
         return count;
     }
 
+    /**
+     * id为空时插入，否则使用数据库原生的upsert语句插入或更新
+     * <p>
+     * 只执行一条语句。开启了beforeInsert/beforeUpdate拦截时需要先在主库上查询记录是否存在；
+     * afterInsert/afterUpdate按执行结果区分：MySQL的修改行数为1时是插入，否则是更新
+     * (连接参数useAffectedRows=false时未改变的记录也返回1)，PostgreSQL通过RETURNING (xmax = 0)判断，
+     * Oracle的MERGE无法区分，调用{@link #afterUpsert(Object, int)}
+     *
+     * @return 修改行数，MySQL更新已有记录时为2
+     * @see #upsertSql()
+     */
     public int insertOrUpdate(E entity) {
-        final ID id = (ID) EntityRefelectUtils.getFieldValue(entity, idField);
+        final ID id = (ID) idProperty.get(entity);
         if (StringUtils.isEmpty(id)) {
             //插入
             return insert(entity);
+        }
+        Boolean exists = null;
+        if (useBeforeInsert || useBeforeUpdate) {
+            exists = !existingIds(Collections.singletonList(id)).isEmpty();
+            beforeUpsert(entity, exists);
+        }
+        final int count;
+        if (exists == null && databaseType == DatabaseType.POSTGRESQL && (useAfterInsert || useAfterUpdate)) {
+            //插入的行xmax为0，ON CONFLICT DO NOTHING时冲突的行不返回
+            final List<Boolean> inserted = template().queryForList(upsertSql() + " RETURNING (xmax = 0)",
+                    new EntityParameterSource(entity), Boolean.class);
+            count = inserted.size();
+            exists = inserted.isEmpty() || !inserted.get(0);
+            invalidateQueryResults();
         } else {
-            //更新
-            final E row = selectOneById(id);
-            if (row == null) {
-                return insert(entity);
-            } else {
-                return update(entity);
+            count = factory().createSQL().useSql(upsertSql()).beanParameter(entity).update();
+            if (exists == null) {
+                exists = existedBeforeUpsert(count);
             }
         }
+        evictCached(id);
+        rememberInSession(entity);
+        afterUpsert(entity, exists, count);
+        return count;
+    }
+
+    /**
+     * 批量插入或更新，每批{@link #batchSize}条
+     */
+    public BatchUpdateResult upsertInBatch(Collection<E> entities) {
+        return upsertInBatch(entities, batchSize);
+    }
+
+    /**
+     * 批量插入或更新，每个对象占用JDBC批处理中的一条，拦截方法与{@link #insertOrUpdate(Object)}相同；
+     * 批处理不能返回结果，PostgreSQL和驱动没有返回每条修改行数时调用{@link #afterUpsert(Object, int)}
+     *
+     * @return 每个对象的修改行数
+     */
+    public BatchUpdateResult upsertInBatch(Collection<E> entities, int chunkSize) {
+        final String sql = upsertSql();
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(entities, chunkSize, chunk -> {
+            final SqlParameterSource[] parameterSources = new SqlParameterSource[chunk.size()];
+            final List<Object> ids = new ArrayList<>(chunk.size());
+            for (int i = 0; i < chunk.size(); i++) {
+                final E entity = chunk.get(i);
+                final Object id = idProperty.get(entity);
+                if (StringUtils.isEmpty(id)) {
+                    throw new RuntimeException("插入或更新时对象id不能为空");
+                }
+                ids.add(id);
+                parameterSources[i] = new EntityParameterSource(entity);
+            }
+            final Set<Object> existing = useBeforeInsert || useBeforeUpdate ? existingIds(ids) : null;
+            if (existing != null) {
+                for (int i = 0; i < chunk.size(); i++) {
+                    beforeUpsert(chunk.get(i), existing.contains(ids.get(i)));
+                }
+            }
+            final int[] rowCounts = template().batchUpdate(sql, parameterSources);
+            evictCachedEntities(chunk);
+            for (int i = 0; i < rowCounts.length; i++) {
+                final boolean noInfo = rowCounts[i] == Statement.SUCCESS_NO_INFO;
+                final int count = noInfo ? 1 : rowCounts[i];
+                counts.add(count);
+                final Boolean exists = existing != null ? (Boolean) existing.contains(ids.get(i))
+                        : noInfo || databaseType == DatabaseType.POSTGRESQL ? null : existedBeforeUpsert(count);
+                afterUpsert(chunk.get(i), exists, count);
+            }
+        });
+        return toBatchUpdateResult(counts);
+    }
+
+    /**
+     * 按upsert语句的修改行数判断记录是否已存在，无法判断时返回null
+     */
+    private Boolean existedBeforeUpsert(int count) {
+        return databaseType == DatabaseType.MY_SQL ? count != 1 : null;
+    }
+
+    private void beforeUpsert(E entity, boolean exists) {
+        if (exists && useBeforeUpdate) {
+            beforeUpdate(entity);
+        } else if (!exists && useBeforeInsert) {
+            beforeInsert(entity);
+        }
+    }
+
+    /**
+     * @param exists 记录是否已存在，为null时无法判断
+     */
+    private void afterUpsert(E entity, Boolean exists, int count) {
+        if (exists == null) {
+            if (useAfterInsert || useAfterUpdate) {
+                afterUpsert(entity, count);
+            }
+        } else if (exists && useAfterUpdate) {
+            afterUpdate(entity, count);
+        } else if (!exists && useAfterInsert) {
+            afterInsert(entity, count);
+        }
+    }
+
+    /**
+     * 在主库上查询已存在的主键，与按id删除、查询相同，经过转换器绑定，返回的值转换回主键属性的类型
+     */
+    private Set<Object> existingIds(List<Object> ids) {
+        final String arrayType = idArrayType();
+        final String sqlPrefix = "SELECT " + idColumnName + " FROM " + tableName;
+        final RowMapper<?> rowMapper = new SingleColumnRowMapper<>(
+                ClassUtils.resolvePrimitiveIfNecessary(idProperty.getColumnType()));
+        final Set<Object> existing = new HashSet<>();
+        forEachChunk(ids, idChunkSize(arrayType, MAX_IN_LIST_SIZE), chunk -> {
+            for (Object value : template().getJdbcOperations().query(idConditionSql(sqlPrefix, arrayType, chunk.size()),
+                    idConditionSetter(arrayType, chunk), rowMapper)) {
+                existing.add(idProperty.getConverter() == null ? value
+                        : idProperty.getConverter().convertToEntityAttribute(value));
+            }
+        });
+        return existing;
+    }
+
+    /**
+     * 当前数据库的upsert语句，每种数据库生成一次
+     * <p>
+     * PostgreSQL: INSERT ... ON CONFLICT (id) DO UPDATE，
+     * MySQL: INSERT ... ON DUPLICATE KEY UPDATE，
+     * Oracle: MERGE INTO ... USING DUAL
+     */
+    protected String upsertSql() {
+        return upsertSqlCache.computeIfAbsent(databaseType, this::buildUpsertSql);
+    }
+
+    private String buildUpsertSql(DatabaseType type) {
+        final StringBuilder sqlBuilder = new StringBuilder();
+        switch (type) {
+            case POSTGRESQL:
+                sqlBuilder.append(insertSql).append(" ON CONFLICT (").append(idColumnName).append(")");
+                if (propertiesWithoutId.isEmpty()) {
+                    return sqlBuilder.append(" DO NOTHING").toString();
+                }
+                sqlBuilder.append(" DO UPDATE SET ");
+                for (int i = 0; i < propertiesWithoutId.size(); i++) {
+                    final String column = propertiesWithoutId.get(i).getColumnName();
+                    sqlBuilder.append(i == 0 ? "" : ",").append(column).append("=EXCLUDED.").append(column);
+                }
+                return sqlBuilder.toString();
+            case MY_SQL:
+                sqlBuilder.append(insertSql).append(" ON DUPLICATE KEY UPDATE ");
+                if (propertiesWithoutId.isEmpty()) {
+                    return sqlBuilder.append(idColumnName).append("=").append(idColumnName).toString();
+                }
+                for (int i = 0; i < propertiesWithoutId.size(); i++) {
+                    final String column = propertiesWithoutId.get(i).getColumnName();
+                    sqlBuilder.append(i == 0 ? "" : ",").append(column).append("=VALUES(").append(column).append(")");
+                }
+                return sqlBuilder.toString();
+            case ORACLE:
+                final StringBuilder selectBuilder = new StringBuilder();
+                final StringBuilder insertColumns = new StringBuilder();
+                final StringBuilder insertValues = new StringBuilder();
+                for (int i = 0; i < properties.size(); i++) {
+                    final PropertyMetadata property = properties.get(i);
+                    final String separator = i == 0 ? "" : ",";
+                    selectBuilder.append(separator).append(":").append(property.getName())
+                            .append(" AS ").append(property.getColumnName());
+                    insertColumns.append(separator).append("T.").append(property.getColumnName());
+                    insertValues.append(separator).append("S.").append(property.getColumnName());
+                }
+                sqlBuilder.append("MERGE INTO ").append(tableName).append(" T USING (SELECT ").append(selectBuilder)
+                        .append(" FROM DUAL) S ON (T.").append(idColumnName).append("=S.").append(idColumnName).append(")");
+                if (!propertiesWithoutId.isEmpty()) {
+                    sqlBuilder.append(" WHEN MATCHED THEN UPDATE SET ");
+                    for (int i = 0; i < propertiesWithoutId.size(); i++) {
+                        final String column = propertiesWithoutId.get(i).getColumnName();
+                        sqlBuilder.append(i == 0 ? "" : ",").append("T.").append(column).append("=S.").append(column);
+                    }
+                }
+                return sqlBuilder.append(" WHEN NOT MATCHED THEN INSERT (").append(insertColumns)
+                        .append(") VALUES (").append(insertValues).append(")").toString();
+            default:
+                throw new RuntimeException(type + "不支持插入或更新");
+        }
     }
 
 
     /**
      * 仅更新非null， null值 不更新
+     *
+     * @return 修改行数，除主键外所有字段均为null时不执行并返回0
      */
     public int updateSelective(E entity) {
-        final ID id = (ID) EntityRefelectUtils.getFieldValue(entity, idField);
+        final ID id = (ID) idProperty.get(entity);
         if (StringUtils.isEmpty(id)) {
             throw new RuntimeException("修改时对象id不能为空");
         }
-        final StringBuilder sqlBuilder = new StringBuilder();
-        fieldsWithoutId.forEach(field ->
-                sqlBuilder.append("," + StringExtUtils.camelToUnderline(field.getName()) +
-                        "=:" +
-                        field.getName()));
-        final SQL sql = sqlFactory.createSQL()
-                .UPDATE(tableName)
-                .SET(sqlBuilder.deleteCharAt(0).toString())
-                .WHERE(idColumnName + "=:" + idColumnName)
-                .beanParameter(entity);
-        /*
-        int count = namedParameterJdbcTemplate.update(sql, new BeanPropertySqlParameterSource(entity));
-        */
+        final Object mask = nonNullMask(propertiesWithoutId, entity);
+        if (isEmptyMask(mask)) {
+            return 0;
+        }
+        final String sql = cacheStatement(updateSelectiveSqlCache, mask,
+                key -> buildUpdateSql(maskedProperties(propertiesWithoutId, key)));
         if (useBeforeUpdate) {
             beforeUpdate(entity);
         }
-        final int count = sql.update();
+        final int count = factory().createSQL().useSql(sql).beanParameter(entity).update();
+        evictCached(idProperty.get(entity));
         if (useAfterUpdate) {
             afterUpdate(entity, count);
         }
         return count;
     }
 
+    /**
+     * 只更新指定的列
+     *
+     * @param columns 数据库列名
+     */
     public int updateColumns(E entity, String... columns) {
-        final ID id = (ID) EntityRefelectUtils.getFieldValue(entity, idField);
+        final ID id = (ID) idProperty.get(entity);
         if (StringUtils.isEmpty(id)) {
             throw new RuntimeException("修改时对象id不能为空");
         }
-        final StringBuilder sqlBuilder = new StringBuilder();
-        for (String column : columns) {
-            sqlBuilder.append("," + column + "=:" + EntityRefelectUtils.underlineToCamelFirstLower(column));
-        }
-        final SQL sql = sqlFactory.createSQL()
-                .UPDATE(tableName)
-                .SET(sqlBuilder.deleteCharAt(0).toString())
-                .WHERE(idColumnName + "=:" + idColumnName)
-                .beanParameter(entity);
+        final String sql = updateColumnsSql(columns);
         if (useBeforeUpdate) {
             beforeUpdate(entity);
         }
-        final int count = sql.update();
+        final int count = factory().createSQL().useSql(sql).beanParameter(entity).update();
+        evictCached(idProperty.get(entity));
         if (useAfterUpdate) {
             afterUpdate(entity, count);
         }
@@ -320,6 +1033,83 @@ public abstract class BaseDAO<E, ID> {
     }
 
 
+    /**
+     * 列名对应的更新语句
+     */
+    private String updateColumnsSql(String[] columns) {
+        //复制数组，调用方之后修改columns不会改变缓存的键
+        return cacheStatement(updateColumnsSqlCache, Arrays.asList(columns.clone()), key -> {
+            final List<PropertyMetadata> setProperties = new ArrayList<>();
+            for (String column : key) {
+                PropertyMetadata property = metadata.getPropertyByColumn(column);
+                if (property == null) {
+                    property = metadata.getProperty(EntityRefelectUtils.underlineToCamelFirstLower(column));
+                }
+                if (property == null || !property.isPersistent()) {
+                    throw new RuntimeException(className + "中没有对应" + column + "列的字段");
+                }
+                setProperties.add(property);
+            }
+            return buildUpdateSql(setProperties);
+        });
+    }
+
+    /**
+     * 批量全更新，每批{@link #batchSize}条
+     */
+    public BatchUpdateResult updateInBatch(Collection<E> entities) {
+        return updateInBatch(entities, batchSize);
+    }
+
+    /**
+     * 批量全更新，null值在数据库中设置为null，每批使用一次JDBC批处理
+     *
+     * @return 每个对象的修改行数
+     */
+    public BatchUpdateResult updateInBatch(Collection<E> entities, int chunkSize) {
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(entities, chunkSize, chunk -> executeUpdateChunk(chunk, updateSql, counts));
+        return toBatchUpdateResult(counts);
+    }
+
+    /**
+     * 批量更新指定的列，每批{@link #batchSize}条
+     *
+     * @param columns 数据库列名
+     * @return 每个对象的修改行数
+     */
+    public BatchUpdateResult updateColumnsInBatch(Collection<E> entities, String... columns) {
+        final String sql = updateColumnsSql(columns);
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(entities, batchSize, chunk -> executeUpdateChunk(chunk, sql, counts));
+        return toBatchUpdateResult(counts);
+    }
+
+    private void executeUpdateChunk(List<E> chunk, String sql, List<Integer> counts) {
+        final SqlParameterSource[] parameterSources = new SqlParameterSource[chunk.size()];
+        for (int i = 0; i < chunk.size(); i++) {
+            final E entity = chunk.get(i);
+            if (StringUtils.isEmpty(idProperty.get(entity))) {
+                throw new RuntimeException("修改时对象id不能为空");
+            }
+            if (useBeforeUpdate) {
+                beforeUpdate(entity);
+            }
+            parameterSources[i] = new EntityParameterSource(entity);
+        }
+        final int[] rowCounts = template().batchUpdate(sql, parameterSources);
+        evictCachedEntities(chunk);
+        for (int i = 0; i < rowCounts.length; i++) {
+            //驱动不返回行数时视为成功
+            final int count = rowCounts[i] == Statement.SUCCESS_NO_INFO ? 1 : rowCounts[i];
+            counts.add(count);
+            if (useAfterUpdate) {
+                afterUpdate(chunk.get(i), count);
+            }
+        }
+    }
+
+
     /////////////////////////////////////////////////删除方法////////////////////////////////////////
 
     /**
@@ -329,11 +1119,11 @@ public abstract class BaseDAO<E, ID> {
         if (useBeforeDelete) {
             beforeDelete(id);
         }
-        final SQL sql = sqlFactory.createSQL()
-                .DELETE_FROM(tableName)
-                .WHERE(idColumnName + "=:" + idColumnName)
-                .mapItemsParameter("id", id);
-        final int count = sql.update();
+        final int count = factory().createSQL()
+                .useSql(deleteByIdSql)
+                .mapItemsParameter(idProperty.getName(), id)
+                .update();
+        evictCached(id);
         if (useAfterDelete) {
             afterDelete(id, count);
         }
@@ -345,7 +1135,9 @@ public abstract class BaseDAO<E, ID> {
      */
     public int deleteAll() {
         //TODO 此方法可考虑不使用SQL类重写
-        return namedParameterJdbcTemplate.getJdbcOperations().update("DELETE FROM " + tableName);
+        final int count = template().getJdbcOperations().update("DELETE FROM " + tableName);
+        evictAllCached();
+        return count;
     }
 
     /**
@@ -353,21 +1145,129 @@ public abstract class BaseDAO<E, ID> {
      */
     public int deleteWhere(String sqlCondition, Object... values) {
         String sql = "DELETE FROM " + tableName + " WHERE " + sqlCondition;
-        return namedParameterJdbcTemplate.getJdbcOperations().update(sql, values);
+        final int count = template().getJdbcOperations().update(sql, values);
+        //无法确定删除了哪些id
+        evictAllCached();
+        return count;
     }
 
     /**
      * 根据id列表批量删除数据
+     *
+     * @return 每批删除的行数
+     * @see #deleteByIds(Collection)
      */
     public int[] deleteInBatch(List<ID> ids) {
-        final String sql = "DELETE FROM " + tableName + " WHERE " + idColumnName + "=:" + idColumnName;
-        final MapSqlParameterSource[] parameterSources = new MapSqlParameterSource[ids.size()];
-        for (int i = 0; i < ids.size(); i++) {
-            parameterSources[i] = new MapSqlParameterSource("id", ids.get(i));
+        return deleteByIds(ids).getAffectRows();
+    }
+
+    /**
+     * 根据id集合删除数据，每批{@link #MAX_IN_LIST_SIZE}个id
+     *
+     * @see #deleteByIds(Collection, int)
+     */
+    public BatchUpdateResult deleteByIds(Collection<ID> ids) {
+        return deleteByIds(ids, MAX_IN_LIST_SIZE);
+    }
+
+    /**
+     * 根据id集合删除数据
+     * <p>
+     * PostgreSQL每批使用一条 WHERE id = ANY(?) 语句并绑定数组，
+     * 其他数据库每批使用一条 WHERE id IN (?,?,...) 语句
+     *
+     * @param ids       id集合
+     * @param chunkSize 每批的数量，IN列表最多{@link #MAX_IN_LIST_SIZE}个
+     * @return 每批删除的行数
+     */
+    public BatchUpdateResult deleteByIds(Collection<ID> ids, int chunkSize) {
+        final String arrayType = idArrayType();
+        final List<Integer> counts = new ArrayList<>();
+        forEachChunk(ids, idChunkSize(arrayType, chunkSize), chunk -> {
+            if (useBeforeDelete) {
+                chunk.forEach(this::beforeDelete);
+            }
+            final int count = template().getJdbcOperations().update(
+                    idConditionSql("DELETE FROM " + tableName, arrayType, chunk.size()),
+                    idConditionSetter(arrayType, chunk));
+            counts.add(count);
+            invalidateQueryResults();
+            evictCachedIds(chunk);
+            if (useAfterDelete) {
+                //每批全部删除时每个id记为1行
+                final int rowCount = count >= chunk.size() ? 1 : 0;
+                chunk.forEach(id -> afterDelete(id, rowCount));
+            }
+        });
+        return toBatchUpdateResult(counts);
+    }
+
+    /**
+     * PostgreSQL使用数组绑定id集合，返回数组元素类型，其他数据库返回null
+     */
+    private String idArrayType() {
+        return databaseType == DatabaseType.POSTGRESQL ? postgresqlArrayType() : null;
+    }
+
+    private int idChunkSize(String arrayType, int chunkSize) {
+        return arrayType == null ? Math.min(chunkSize, MAX_IN_LIST_SIZE) : chunkSize;
+    }
+
+    /**
+     * 以一批id为条件的语句
+     *
+     * @param sqlPrefix 条件之前的语句
+     * @param arrayType 数组元素类型，为null时使用IN列表
+     * @param size      id数量
+     */
+    private String idConditionSql(String sqlPrefix, String arrayType, int size) {
+        final StringBuilder sqlBuilder = new StringBuilder(sqlPrefix).append(" WHERE ").append(idColumnName);
+        if (arrayType != null) {
+            return sqlBuilder.append(" = ANY(?)").toString();
+        }
+        sqlBuilder.append(" IN (");
+        for (int i = 0; i < size; i++) {
+            sqlBuilder.append(i == 0 ? "?" : ",?");
         }
-        return namedParameterJdbcTemplate.batchUpdate(sql, parameterSources);
+        return sqlBuilder.append(")").toString();
     }
 
+    private PreparedStatementSetter idConditionSetter(String arrayType, List<?> chunk) {
+        final Object[] values = new Object[chunk.size()];
+        for (int i = 0; i < values.length; i++) {
+            final Object id = chunk.get(i);
+            values[i] = idProperty.getConverter() == null ? id : idProperty.getConverter().convertToDatabaseColumn(id);
+        }
+        if (arrayType != null) {
+            return ps -> ps.setArray(1, ps.getConnection().createArrayOf(arrayType, values));
+        }
+        return ps -> {
+            for (int i = 0; i < values.length; i++) {
+                StatementCreatorUtils.setParameterValue(ps, i + 1, idProperty.getSqlType(), values[i]);
+            }
+        };
+    }
+
+    /**
+     * 主键对应的PostgreSQL数组元素类型，无法确定时返回null，退回到IN列表
+     */
+    private String postgresqlArrayType() {
+        final Class<?> type = idProperty.getColumnType();
+        if (type == Long.class || type == long.class) {
+            return "int8";
+        } else if (type == Integer.class || type == int.class) {
+            return "int4";
+        } else if (type == Short.class || type == short.class) {
+            return "int2";
+        } else if (type == String.class) {
+            return "varchar";
+        } else if (type == UUID.class) {
+            return "uuid";
+        } else if (type == BigDecimal.class) {
+            return "numeric";
+        }
+        return null;
+    }
 
     //////////////////////////////find one/////////////////////////////////////
 
@@ -375,6 +1275,26 @@ public abstract class BaseDAO<E, ID> {
      * 通过id查找
      */
     public E selectOneById(ID id) {
+        final FastSqlSession session = session();
+        if (session != null) {
+            final E known = session.get(entityClass, id);
+            if (known != null) {
+                return known;
+            }
+        }
+        final boolean useEntityCache = useEntityCache();
+        long cacheVersion = 0;
+        if (useEntityCache) {
+            final E cached = entityCache.get(id);
+            if (cached != null) {
+                final E copy = copyEntity(cached);
+                if (session != null) {
+                    session.put(entityClass, id, copy);
+                }
+                return copy;
+            }
+            cacheVersion = entityCacheVersion(id);
+        }
         E returnObject;
         try {
             /*
@@ -384,15 +1304,24 @@ public abstract class BaseDAO<E, ID> {
                     id
             );
             */
-            returnObject = sqlFactory.createSQL()
-                    .SELECT("*")
-                    .FROM(tableName)
-                    .WHERE(idColumnName + "=:" + idColumnName)
-                    .mapItemsParameter(idColumnName, id)
+            final SQL sql = factory().createSQL();
+            if (useEntityCache) {
+                //放入缓存的对象从主库读取
+                sql.usePrimary();
+            }
+            returnObject = sql
+                    .useSql(selectByIdSql)
+                    .mapItemsParameter(idProperty.getName(), id)
                     .queryOne(entityClass);
         } catch (EmptyResultDataAccessException e) {
             returnObject = null;
         }
+        if (useEntityCache && returnObject != null) {
+            putCached(id, returnObject, cacheVersion);
+        }
+        if (session != null) {
+            session.put(entityClass, id, returnObject);
+        }
         return returnObject;
     }
 
@@ -420,13 +1349,13 @@ public abstract class BaseDAO<E, ID> {
         //sql
         String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
 
-        List<E> dateList = namedParameterJdbcTemplate.getJdbcOperations().query(
-                sql, values, new BeanPropertyRowMapper<>(entityClass)
+        List<E> dateList = readTemplate().getJdbcOperations().query(
+                sql, values, rowMapper
         );
 
         /*
         TODO 不知如何用SQL重写
-        sqlFactory.createSQL()
+        factory().createSQL()
                 .SELECT("*")
                 .FROM(tableName)
                 .WHERE(sqlCondition)
@@ -447,8 +1376,8 @@ public abstract class BaseDAO<E, ID> {
         //sql
         String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
 
-        List<E> dateList = namedParameterJdbcTemplate.query(
-                sql, parameterSource, new BeanPropertyRowMapper<>(entityClass)
+        List<E> dateList = readTemplate().query(
+                sql, parameterSource, rowMapper
         );
         if (dateList.size() == 0) {
             return null;
@@ -460,6 +1389,141 @@ public abstract class BaseDAO<E, ID> {
         }
     }
 
+    //////////////////////////////find by ids/////////////////////////////////////
+
+    /**
+     * 根据id集合查找，每批{@link #MAX_IN_LIST_SIZE}个id
+     *
+     * @see #selectByIds(Collection, int)
+     */
+    public Map<ID, E> selectByIds(Collection<ID> ids) {
+        return selectByIds(ids, MAX_IN_LIST_SIZE);
+    }
+
+    /**
+     * 根据id集合查找
+     * <p>
+     * PostgreSQL每批使用 id = ANY(?) 绑定数组，其他数据库使用IN列表，按顺序逐批执行
+     *
+     * @param chunkSize 每批的数量，IN列表最多{@link #MAX_IN_LIST_SIZE}个
+     * @return id -> 对象，按id集合的顺序，不存在的id不在结果中
+     */
+    public Map<ID, E> selectByIds(Collection<ID> ids, int chunkSize) {
+        final Map<ID, E> rows = new HashMap<>(ids.size() * 2);
+        final Set<ID> missing = new LinkedHashSet<>(ids);
+        final FastSqlSession session = session();
+        if (session != null) {
+            for (Iterator<ID> iterator = missing.iterator(); iterator.hasNext(); ) {
+                final ID id = iterator.next();
+                final E known = session.get(entityClass, id);
+                if (known != null) {
+                    rows.put(id, known);
+                    iterator.remove();
+                }
+            }
+        }
+        final boolean useEntityCache = useEntityCache();
+        final Map<ID, Long> cacheVersions = useEntityCache ? new HashMap<>(missing.size() * 2) : null;
+        if (useEntityCache) {
+            //先查缓存，只查询未命中的id
+            for (Iterator<ID> iterator = missing.iterator(); iterator.hasNext(); ) {
+                final ID id = iterator.next();
+                final E cached = entityCache.get(id);
+                if (cached != null) {
+                    final E copy = copyEntity(cached);
+                    rows.put(id, copy);
+                    if (session != null) {
+                        session.put(entityClass, id, copy);
+                    }
+                    iterator.remove();
+                } else {
+                    cacheVersions.put(id, entityCacheVersion(id));
+                }
+            }
+        }
+        queryByIds(missing, chunkSize, useEntityCache, entity -> {
+            final ID id = (ID) idProperty.get(entity);
+            if (useEntityCache) {
+                putCached(id, entity, cacheVersions.get(id));
+            }
+            rows.put(id, session == null ? entity : session.merge(entityClass, id, entity));
+        });
+        final Map<ID, E> result = new LinkedHashMap<>(rows.size() * 2);
+        for (ID id : ids) {
+            final E entity = rows.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 根据id集合查找
+     *
+     * @return 按id集合的顺序排列的对象，不存在的id被跳过，重复的id对应同一个对象
+     */
+    public List<E> selectListByIds(Collection<ID> ids) {
+        final Map<ID, E> rows = selectByIds(ids);
+        final List<E> result = new ArrayList<>(ids.size());
+        for (ID id : ids) {
+            final E entity = rows.get(id);
+            if (entity != null) {
+                result.add(entity);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 根据数字id查找，结果以long为键，大量id时不装箱
+     *
+     * @return id -> 对象
+     */
+    public LongObjectMap<E> selectByLongIds(long... ids) {
+        final Class<?> type = idProperty.getType();
+        final boolean intId = type == Integer.class || type == int.class;
+        if (!intId && type != Long.class && type != long.class) {
+            throw new RuntimeException(className + "的主键不是数字类型");
+        }
+        final FastSqlSession session = session();
+        final List<Object> values = new ArrayList<>(ids.length);
+        final LongObjectMap<Boolean> distinct = new LongObjectMap<>(ids.length);
+        final LongObjectMap<E> result = new LongObjectMap<>(ids.length);
+        for (long id : ids) {
+            if (distinct.put(id, Boolean.TRUE) != null) {
+                continue;
+            }
+            final Object value = intId ? (Object) (int) id : (Object) id;
+            final E known = session == null ? null : session.get(entityClass, value);
+            if (known != null) {
+                result.put(id, known);
+            } else {
+                values.add(value);
+            }
+        }
+        queryByIds(values, MAX_IN_LIST_SIZE, false, entity -> {
+            final Object id = idProperty.get(entity);
+            result.put(((Number) id).longValue(), session == null ? entity : session.merge(entityClass, id, entity));
+        });
+        return result;
+    }
+
+    /**
+     * 按批查询一组不重复的id
+     *
+     * @param primary 是否在主库上执行，结果要放入实体缓存时为true
+     */
+    private void queryByIds(Collection<?> ids, int chunkSize, boolean primary, Consumer<E> consumer) {
+        final String arrayType = idArrayType();
+        final NamedParameterJdbcTemplate template = primary ? template() : readTemplate();
+        forEachChunk(ids, idChunkSize(arrayType, chunkSize), chunk ->
+                template.getJdbcOperations().query(
+                        idConditionSql("SELECT * FROM " + tableName, arrayType, chunk.size()),
+                        idConditionSetter(arrayType, chunk),
+                        rowMapper).forEach(consumer));
+    }
+
     //////////////////////////////find list/////////////////////////////////////
 
     public List<E> selectAll() {
@@ -467,12 +1531,52 @@ public abstract class BaseDAO<E, ID> {
         String sql = "SELECT * FROM " + tableName;
         return namedParameterJdbcTemplate.query(sql, new HashMap<String, Object>(), new BeanPropertyRowMapper<E>(entityClass));
         */
-        return sqlFactory.createSQL()
+        return factory().createSQL()
                 .SELECT("*")
                 .FROM(tableName)
                 .queryList(entityClass);
     }
 
+    /**
+     * 流式读取全表，用于导出等大结果集，内存占用与行数无关；结果不放入一级缓存
+     * <p>
+     * 返回的Stream持有数据库连接，读完时自动释放，提前结束时必须关闭
+     */
+    public Stream<E> streamAll() {
+        return new CursorTemplate(readTemplate())
+                .queryStream("SELECT * FROM " + tableName, new Object[0], rowMapper, this.databaseType);
+    }
+
+    public Stream<E> streamWhere(String sqlCondition, Object... values) {
+        String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
+        return new CursorTemplate(readTemplate()).queryStream(sql, values, rowMapper, this.databaseType);
+    }
+
+    public Stream<E> streamWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
+        return new CursorTemplate(readTemplate()).queryStream(sql, parameterSource, rowMapper, this.databaseType);
+    }
+
+    /**
+     * 按块扫描满足条件的行，读取下一块与处理当前块同时进行；consumer返回后该List会被复用
+     *
+     * @param chunkSize 每块的行数
+     * @return 扫描的进度统计
+     */
+    public ScanProgress scanWhere(String sqlCondition, Object[] values, int chunkSize, Consumer<List<E>> consumer) {
+        return ChunkScanner.forEachChunk(streamWhere(sqlCondition, values), chunkSize, (chunk, progress) -> consumer.accept(chunk));
+    }
+
+    public ScanProgress scanWhere(String sqlCondition, SqlParameterSource parameterSource, int chunkSize,
+                                  Consumer<List<E>> consumer) {
+        return ChunkScanner.forEachChunk(streamWhere(sqlCondition, parameterSource), chunkSize,
+                (chunk, progress) -> consumer.accept(chunk));
+    }
+
+    public ScanProgress scanAll(int chunkSize, Consumer<List<E>> consumer) {
+        return ChunkScanner.forEachChunk(streamAll(), chunkSize, (chunk, progress) -> consumer.accept(chunk));
+    }
+
     public List<E> selectWhere(String sqlCondition, Object param1) {
         return selectWhere(sqlCondition, new Object[]{param1});
     }
@@ -485,18 +1589,18 @@ public abstract class BaseDAO<E, ID> {
         return selectWhere(sqlCondition, new Object[]{param1, param2, param3});
     }
 
-    private List<E> selectWhere(String sqlCondition, Object[] values) {
+    protected List<E> selectWhere(String sqlCondition, Object[] values) {
         //sql
         String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
-        return namedParameterJdbcTemplate.getJdbcOperations()
-                .query(sql, values, new BeanPropertyRowMapper<>(entityClass));
+        return attachToSession(readTemplate().getJdbcOperations()
+                .query(sql, values, rowMapper));
     }
 
 
     public List<E> selectWhere(String sqlCondition, SqlParameterSource parameterSource) {
         //sql
         String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
-        return namedParameterJdbcTemplate.query(sql, parameterSource, new BeanPropertyRowMapper<>(entityClass));
+        return attachToSession(readTemplate().query(sql, parameterSource, rowMapper));
     }
 
     ////////////////////////////////////count///////////////////////////////////////////
@@ -513,15 +1617,15 @@ public abstract class BaseDAO<E, ID> {
         return countWhere(sqlCondition, new Object[]{param1, param2, param3});
     }
 
-    private int countWhere(String sqlCondition, Object[] values) {
+    protected int countWhere(String sqlCondition, Object[] values) {
         String sql = "SELECT count(*) FROM " + tableName + " WHERE " + sqlCondition;
-        return namedParameterJdbcTemplate.getJdbcOperations().queryForObject(sql, values, Integer.class);
+        return readTemplate().getJdbcOperations().queryForObject(sql, values, Integer.class);
     }
 
     public int countWhere(String sqlCondition, SqlParameterSource parameterSource) {
         //sql
         String sql = "SELECT count(*) FROM " + tableName + " WHERE " + sqlCondition;
-        return namedParameterJdbcTemplate.queryForObject(sql, parameterSource, Integer.class);
+        return readTemplate().queryForObject(sql, parameterSource, Integer.class);
     }
 
 
@@ -530,13 +1634,58 @@ public abstract class BaseDAO<E, ID> {
         String sql = "SELECT count(*) FROM " + tableName;
         return namedParameterJdbcTemplate.getJdbcOperations().queryForObject(sql, Integer.class);
         */
-        return sqlFactory.createSQL()
+        return factory().createSQL()
                 .SELECT("COUNT(*)")
                 .FROM(tableName)
                 .queryInteger();
     }
 
 
+    /**
+     * 按统计信息估计表的行数，不扫描表，适合大表的概览；没有统计信息时执行精确计数
+     */
+    public long estimateCount() {
+        Long estimate = new CountTemplate(readTemplate()).estimateTableRows(tableName, this.databaseType);
+        return estimate != null ? estimate : count();
+    }
+
+    /**
+     * 按执行计划估计满足条件的行数，不执行查询；Oracle执行精确计数
+     */
+    public long estimateCountWhere(String sqlCondition, Object... values) {
+        String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
+        Long estimate = new CountTemplate(readTemplate()).estimateRows(sql, values, this.databaseType);
+        return estimate != null ? estimate : countWhere(sqlCondition, values);
+    }
+
+    public long estimateCountWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
+        Long estimate = new CountTemplate(readTemplate()).estimateRows(sql, parameterSource, this.databaseType);
+        return estimate != null ? estimate : countWhere(sqlCondition, parameterSource);
+    }
+
+    ////////////////////////////////////exists///////////////////////////////////////////
+
+    public boolean existsById(ID id) {
+        //与按id删除、查询相同，经过转换器并按主键的sql类型绑定
+        String sql = idConditionSql("SELECT 1 FROM " + tableName, null, 1);
+        return new CountTemplate(readTemplate())
+                .exists(sql, idConditionSetter(null, Collections.singletonList(id)), this.databaseType);
+    }
+
+    /**
+     * 是否存在满足条件的行，找到第一行即返回，代替 countWhere(...) &gt; 0
+     */
+    public boolean existsWhere(String sqlCondition, Object... values) {
+        String sql = "SELECT 1 FROM " + tableName + " WHERE " + sqlCondition;
+        return new CountTemplate(readTemplate()).exists(sql, values, this.databaseType);
+    }
+
+    public boolean existsWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        String sql = "SELECT 1 FROM " + tableName + " WHERE " + sqlCondition;
+        return new CountTemplate(readTemplate()).exists(sql, parameterSource, this.databaseType);
+    }
+
     ////////////////page///////////////
 
     public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage, Object param1) {
@@ -554,53 +1703,100 @@ public abstract class BaseDAO<E, ID> {
     public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage, Object[] values) {
         //sql
         String sql = "SELECT * FROM " + tableName + " WHERE " + sqlCondition;
-        List<E> list = namedParameterJdbcTemplate.getJdbcOperations().query(
-                PageUtils.getRowsSQL(sql, pageNumber, perPage, this.databaseType),
-                values,
-                new BeanPropertyRowMapper<>(entityClass)
-        );
-        Integer count = namedParameterJdbcTemplate.getJdbcOperations().queryForObject(
-                PageUtils.getNumberSQL(sql),
-                Integer.class, values);
-        return new ResultPage<>(list, count);
+        return pageTemplate().queryPage(sql, pageNumber, perPage, values, rowMapper, this.databaseType);
     }
 
 
     public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage,
                                          SqlParameterSource parameterSource) {
-        //sql
-        String sql = "SELECT * FROM " + tableName + " WHERE 1=1 AND " + sqlCondition;
+        return selectPageWhere(sqlCondition, pageNumber, perPage, parameterSource, null);
+    }
 
-        List<E> coll = namedParameterJdbcTemplate.query(
-                PageUtils.getRowsSQL(sql, pageNumber, perPage, this.databaseType),
-                parameterSource,
-                new BeanPropertyRowMapper<>(entityClass)
-        );
-        Integer count = namedParameterJdbcTemplate.queryForObject(
-                PageUtils.getNumberSQL(sql),
-                parameterSource,
-                Integer.class);
+    /**
+     * 使用已知的总数查询，只执行一次查询
+     *
+     * @param totalElements 之前返回的{@link ResultPage#getTotalElements()}
+     */
+    public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage, int totalElements,
+                                         SqlParameterSource parameterSource) {
+        return selectPageWhere(sqlCondition, pageNumber, perPage, parameterSource, totalElements);
+    }
 
-        return new ResultPage<>(coll, count);
+    private ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage,
+                                          SqlParameterSource parameterSource, Integer totalElements) {
+        //sql
+        String sql = "SELECT * FROM " + tableName + " WHERE 1=1 AND " + sqlCondition;
+        return pageTemplate().queryPage(sql, pageNumber, perPage, parameterSource, rowMapper, this.databaseType, totalElements);
     }
 
 
     public ResultPage<E> selectPage(int pageNumber, int perPage) {
         //sql
         String sql = "SELECT * FROM " + tableName;
+        return pageTemplate().queryPage(sql, pageNumber, perPage, EmptySqlParameterSource.INSTANCE, rowMapper, this.databaseType);
+    }
+
+    /**
+     * 使用已知的总数查询，只执行一次查询
+     *
+     * @param totalElements 之前返回的{@link ResultPage#getTotalElements()}
+     */
+    public ResultPage<E> selectPage(int pageNumber, int perPage, int totalElements) {
+        String sql = "SELECT * FROM " + tableName;
+        return pageTemplate().queryPage(sql, pageNumber, perPage, EmptySqlParameterSource.INSTANCE, rowMapper,
+                this.databaseType, totalElements);
+    }
 
-        List<E> coll = namedParameterJdbcTemplate.query(
-                PageUtils.getRowsSQL(sql, pageNumber, perPage, this.databaseType),
-                EmptySqlParameterSource.INSTANCE,
-                new BeanPropertyRowMapper<>(entityClass)
+    private PageTemplate pageTemplate() {
+        return new PageTemplate(readTemplate(), factory().isWindowCountPaging());
+    }
+
+    /**
+     * 键集分页，排序列后自动追加主键保证排序唯一
+     *
+     * @param orderBy 排序列，如 "create_time DESC"，列上应有索引且不为NULL
+     * @param cursor  上一页的{@link KeysetPage#getNextCursor()}，为空时查询第一页
+     */
+    public KeysetPage<E> selectKeysetPage(String orderBy, String cursor, int perPage) {
+        return selectKeysetPageWhere(null, orderBy, cursor, perPage, new Object[0]);
+    }
+
+    /**
+     * @param sqlCondition 条件，不能包含ORDER BY，可为null
+     */
+    public KeysetPage<E> selectKeysetPageWhere(String sqlCondition, String orderBy, String cursor, int perPage,
+                                               Object... values) {
+        Keyset keyset = keyset(orderBy);
+        Object[] key = keyset.decode(cursor);
+        Keyset.KeysetRowMapper<E> keysetRowMapper = keyset.rowMapper(rowMapper, perPage);
+        List<E> list = readTemplate().getJdbcOperations().query(
+                keyset.getRowsSQL("SELECT * FROM " + tableName, sqlCondition, key != null, false, perPage + 1, this.databaseType),
+                key == null ? values : keyset.bind(values, key, this.databaseType),
+                keysetRowMapper
         );
-        Integer count = namedParameterJdbcTemplate.queryForObject(
-                PageUtils.getNumberSQL(sql),
-                EmptySqlParameterSource.INSTANCE,
-                Integer.class);
-        return new ResultPage<>(coll, count);
+        KeysetPage<E> page = keysetRowMapper.toPage(list);
+        page.setContent(attachToSession(page.getContent()));
+        return page;
     }
 
+    public KeysetPage<E> selectKeysetPageWhere(String sqlCondition, String orderBy, String cursor, int perPage,
+                                               SqlParameterSource parameterSource) {
+        Keyset keyset = keyset(orderBy);
+        Object[] key = keyset.decode(cursor);
+        Keyset.KeysetRowMapper<E> keysetRowMapper = keyset.rowMapper(rowMapper, perPage);
+        List<E> list = readTemplate().query(
+                keyset.getRowsSQL("SELECT * FROM " + tableName, sqlCondition, key != null, true, perPage + 1, this.databaseType),
+                key == null ? parameterSource : keyset.bind(parameterSource, key),
+                keysetRowMapper
+        );
+        KeysetPage<E> page = keysetRowMapper.toPage(list);
+        page.setContent(attachToSession(page.getContent()));
+        return page;
+    }
+
+    protected Keyset keyset(String orderBy) {
+        return Keyset.parse(orderBy).thenBy(idProperty.getColumnName());
+    }
 
     ////////////////////////////////////拦截器///////////////////////////
 
@@ -623,6 +1819,15 @@ public abstract class BaseDAO<E, ID> {
         }
     }
 
+    /**
+     * upsert之后无法判断是插入还是更新时调用，见{@link #insertOrUpdate(Object)}
+     */
+    protected void afterUpsert(E entity, int count) {
+        if (count < 1) {
+            log.warn(this.entityClass.getSimpleName() + "插入或更新成功数量" + count + ",entity=" + entity.toString());
+        }
+    }
+
     protected void beforeDelete(ID id) {
     }
 
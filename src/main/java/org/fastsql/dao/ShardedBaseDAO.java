@@ -0,0 +1,903 @@
+package org.fastsql.dao;
+
+import org.fastsql.FastSQLException;
+import org.fastsql.FastSqlSession;
+import org.fastsql.SQLFactory;
+import org.fastsql.config.DatabaseType;
+import org.fastsql.dto.BatchUpdateResult;
+import org.fastsql.dto.KeysetPage;
+import org.fastsql.dto.LongObjectMap;
+import org.fastsql.dto.ResultPage;
+import org.fastsql.shard.ConsistentHashShardRouter;
+import org.fastsql.shard.ShardKey;
+import org.fastsql.shard.ShardRouter;
+import org.fastsql.util.Keyset;
+import org.fastsql.util.PropertyMetadata;
+import org.fastsql.util.SharedExecutor;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+import org.springframework.util.StringUtils;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Executor;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+/**
+ * 分片的DAO，数据按分片键分布在{@link #setShardFactories(List)}设置的多个数据库中
+ * <p>
+ * 分片键为{@link ShardKey}标注的字段，没有标注时为主键，由{@link ShardRouter}(默认一致性哈希)映射到分片。
+ * 插入、修改和按id的操作只访问一个分片，分片键不是主键时按id的操作访问所有分片；
+ * selectWhere、countWhere、selectPageWhere等按条件的查询并行访问所有分片后合并：列表按分片顺序拼接，数量相加，
+ * 分页时每个分片查询前 pageNumber * perPage 条，再按条件中的ORDER BY归并，因此页数越大代价越高，深分页应使用键集分页。
+ * 按条件的删除和处于事务中的查询在当前线程依次访问各分片。
+ * <p>
+ * 归并时在Java中比较排序列的值，字符串的顺序取决于数据库的排序规则(collation)，与String.compareTo不一定相同，
+ * 因此按字符串列跨分片分页前必须通过{@link #setStringOrder(Comparator)}提供与数据库一致的比较方式，否则抛出异常。
+ * <p>
+ * 各分片的表结构相同，主键由应用生成，不能依赖数据库自增
+ */
+@SuppressWarnings({"unchecked", "WeakerAccess"})
+public abstract class ShardedBaseDAO<E, ID> extends BaseDAO<E, ID> {
+
+    private static final Pattern ORDER_BY =
+            Pattern.compile("(?is)\\border\\s+by\\s+(.+?)\\s*(?:\\blimit\\b.*|\\boffset\\b.*)?$");
+
+    private List<SQLFactory> shardFactories = Collections.emptyList();
+
+    private ShardRouter shardRouter = new ConsistentHashShardRouter();
+
+    /**
+     * 默认使用共享线程池，线程都在忙时在调用线程查询
+     */
+    private Executor executor = SharedExecutor.CALLER_RUNS;
+
+    private int parallelism = 2;
+
+    private Comparator<? super String> stringOrder;
+
+    protected final PropertyMetadata shardKeyProperty;
+
+    /**
+     * 分片键是否为主键
+     */
+    protected final boolean shardedById;
+
+    /**
+     * 列名(小写) -> 字段，用于解析ORDER BY
+     */
+    private final Map<String, PropertyMetadata> columnProperties = new HashMap<>();
+
+    private final ThreadLocal<Shard> currentShard = new ThreadLocal<>();
+
+    protected ShardedBaseDAO() {
+        PropertyMetadata key = idProperty;
+        for (PropertyMetadata property : properties) {
+            if (property.getField() != null && property.getField().isAnnotationPresent(ShardKey.class)) {
+                key = property;
+                break;
+            }
+        }
+        this.shardKeyProperty = key;
+        this.shardedById = key == idProperty;
+        for (PropertyMetadata property : properties) {
+            columnProperties.put(property.getColumnName().toLowerCase(), property);
+        }
+    }
+
+    /**
+     * 设置各分片的sql工厂，下标即分片号；第一个工厂同时作为默认工厂
+     */
+    public void setShardFactories(List<SQLFactory> shardFactories) {
+        if (shardFactories == null || shardFactories.isEmpty()) {
+            throw new IllegalArgumentException("分片不能为空");
+        }
+        this.shardFactories = Collections.unmodifiableList(new ArrayList<>(shardFactories));
+        setSqlFactory(shardFactories.get(0));
+        SharedExecutor.ensureMaximumPoolSize(shardFactories.size() * parallelism);
+    }
+
+    public List<SQLFactory> getShardFactories() {
+        return shardFactories;
+    }
+
+    public void setShardRouter(ShardRouter shardRouter) {
+        this.shardRouter = shardRouter;
+    }
+
+    public ShardRouter getShardRouter() {
+        return shardRouter;
+    }
+
+    /**
+     * 设置并行查询各分片的线程池，默认为{@link SharedExecutor#CALLER_RUNS}
+     */
+    public void setExecutor(Executor executor) {
+        this.executor = executor;
+    }
+
+    /**
+     * 预计同时进行的跨分片查询数，默认为2，共享线程池的上限至少为 分片数 * parallelism
+     */
+    public void setParallelism(int parallelism) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("parallelism必须大于0");
+        }
+        this.parallelism = parallelism;
+        SharedExecutor.ensureMaximumPoolSize(shardFactories.size() * parallelism);
+    }
+
+    public int getParallelism() {
+        return parallelism;
+    }
+
+    /**
+     * 设置跨分片分页归并时字符串排序列的比较方式，需与数据库的排序规则一致，
+     * 如二进制排序规则时为Comparator.naturalOrder()，中文排序规则时可用Collator.getInstance(Locale.CHINA)
+     */
+    public void setStringOrder(Comparator<? super String> stringOrder) {
+        this.stringOrder = stringOrder;
+    }
+
+    public Comparator<? super String> getStringOrder() {
+        return stringOrder;
+    }
+
+    /**
+     * @return 分片键所在的分片
+     */
+    public int shardOf(Object shardKey) {
+        if (StringUtils.isEmpty(shardKey)) {
+            throw new FastSQLException(className + "的分片键" + shardKeyProperty.getName() + "不能为空");
+        }
+        final int count = shards().size();
+        final int index = shardRouter.route(shardKey, count);
+        if (index < 0 || index >= count) {
+            throw new FastSQLException("分片路由返回了不存在的分片" + index);
+        }
+        return index;
+    }
+
+    protected int shardOfEntity(E entity) {
+        return shardOf(shardKeyProperty.get(entity));
+    }
+
+    private List<SQLFactory> shards() {
+        if (shardFactories.isEmpty()) {
+            throw new FastSQLException(className + "没有设置分片");
+        }
+        return shardFactories;
+    }
+
+    /////////////////////////////////////////////////路由////////////////////////////////////////
+
+    /**
+     * 任一分片的工厂打开的会话都对本DAO生效，各分片的id不重复
+     */
+    @Override
+    protected FastSqlSession session() {
+        for (SQLFactory factory : shardFactories) {
+            final FastSqlSession session = FastSqlSession.current(factory);
+            if (session != null) {
+                return session;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * 当前分片的sql工厂，只能在分片内调用
+     */
+    @Override
+    protected SQLFactory factory() {
+        return requireShard().factory;
+    }
+
+    @Override
+    protected NamedParameterJdbcTemplate readTemplate() {
+        final Shard shard = requireShard();
+        return shard.readTemplate != null ? shard.readTemplate : shard.factory.getReadTemplate();
+    }
+
+    private Shard requireShard() {
+        final Shard shard = currentShard.get();
+        if (shard == null) {
+            throw new FastSQLException(className + "是分片DAO，该操作没有指定分片");
+        }
+        return shard;
+    }
+
+    /**
+     * 当前线程已在某个分片上执行
+     */
+    private boolean routed() {
+        return currentShard.get() != null;
+    }
+
+    /**
+     * 在指定分片上执行
+     */
+    protected <R> R onShard(int index, Supplier<R> action) {
+        return onShard(new Shard(shards().get(index), null), action);
+    }
+
+    private <R> R onShard(Shard shard, Supplier<R> action) {
+        final Shard previous = currentShard.get();
+        currentShard.set(shard);
+        try {
+            return action.get();
+        } finally {
+            if (previous == null) {
+                currentShard.remove();
+            } else {
+                currentShard.set(previous);
+            }
+        }
+    }
+
+    /**
+     * 在所有分片上执行
+     *
+     * @param parallel 是否并行，处于事务中时总是在当前线程依次执行
+     * @return 各分片的结果，按分片顺序
+     */
+    protected <R> List<R> onAllShards(Supplier<R> action, boolean parallel) {
+        final List<SQLFactory> factories = shards();
+        final List<R> results = new ArrayList<>(factories.size());
+        if (!parallel || factories.size() == 1 || TransactionSynchronizationManager.isActualTransactionActive()) {
+            for (SQLFactory factory : factories) {
+                results.add(onShard(new Shard(factory, null), action));
+            }
+            return results;
+        }
+        final List<CompletableFuture<R>> futures = new ArrayList<>(factories.size());
+        for (SQLFactory factory : factories) {
+            //在调用线程选择主库或副本，写入后的查询仍然读主库
+            final Shard shard = new Shard(factory, factory.getReadTemplate());
+            futures.add(CompletableFuture.supplyAsync(() -> onShard(shard, action), executor));
+        }
+        for (CompletableFuture<R> future : futures) {
+            try {
+                results.add(future.join());
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+        return results;
+    }
+
+    /**
+     * 按分片分组后在各分片上批量执行，结果按分片顺序拼接
+     */
+    private BatchUpdateResult inBatchByShard(Collection<E> entities, Function<List<E>, BatchUpdateResult> action) {
+        final List<List<E>> groups = new ArrayList<>(shards().size());
+        for (int i = 0; i < shards().size(); i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (E entity : entities) {
+            groups.get(shardOfEntity(entity)).add(entity);
+        }
+        final List<int[]> parts = new ArrayList<>(groups.size());
+        for (int i = 0; i < groups.size(); i++) {
+            final List<E> group = groups.get(i);
+            if (!group.isEmpty()) {
+                parts.add(onShard(i, () -> action.apply(group)).getAffectRows());
+            }
+        }
+        return concat(parts);
+    }
+
+    private static BatchUpdateResult concat(List<int[]> parts) {
+        int length = 0;
+        for (int[] part : parts) {
+            length += part.length;
+        }
+        final int[] rows = new int[length];
+        int offset = 0;
+        for (int[] part : parts) {
+            System.arraycopy(part, 0, rows, offset, part.length);
+            offset += part.length;
+        }
+        return new BatchUpdateResult(rows);
+    }
+
+    /**
+     * 按id所在的分片分组，只在分片键为主键时使用
+     */
+    private <K> List<List<K>> groupIds(Collection<K> ids) {
+        final List<List<K>> groups = new ArrayList<>(shards().size());
+        for (int i = 0; i < shards().size(); i++) {
+            groups.add(new ArrayList<>());
+        }
+        for (K id : ids) {
+            groups.get(shardOf(id)).add(id);
+        }
+        return groups;
+    }
+
+    private static int sum(List<Integer> counts) {
+        long total = 0;
+        for (Integer count : counts) {
+            total += count;
+        }
+        return (int) total;
+    }
+
+    private static <T> List<T> flatten(List<List<T>> lists) {
+        int size = 0;
+        for (List<T> list : lists) {
+            size += list.size();
+        }
+        final List<T> result = new ArrayList<>(size);
+        lists.forEach(result::addAll);
+        return result;
+    }
+
+    /////////////////////////////////////////////////写操作////////////////////////////////////////
+
+    @Override
+    public int insertSelective(E entity) {
+        return routed() ? super.insertSelective(entity)
+                : onShard(shardOfEntity(entity), () -> super.insertSelective(entity));
+    }
+
+    @Override
+    public int insert(E entity) {
+        return routed() ? super.insert(entity) : onShard(shardOfEntity(entity), () -> super.insert(entity));
+    }
+
+    @Override
+    public BatchUpdateResult insertInBatch(Collection<E> entities, int chunkSize) {
+        return routed() ? super.insertInBatch(entities, chunkSize)
+                : inBatchByShard(entities, group -> super.insertInBatch(group, chunkSize));
+    }
+
+    @Override
+    public BatchUpdateResult insertSelectiveInBatch(Collection<E> entities, int chunkSize) {
+        return routed() ? super.insertSelectiveInBatch(entities, chunkSize)
+                : inBatchByShard(entities, group -> super.insertSelectiveInBatch(group, chunkSize));
+    }
+
+    @Override
+    public int update(E entity) {
+        return routed() ? super.update(entity) : onShard(shardOfEntity(entity), () -> super.update(entity));
+    }
+
+    @Override
+    public int insertOrUpdate(E entity) {
+        return routed() ? super.insertOrUpdate(entity)
+                : onShard(shardOfEntity(entity), () -> super.insertOrUpdate(entity));
+    }
+
+    @Override
+    public BatchUpdateResult upsertInBatch(Collection<E> entities, int chunkSize) {
+        return routed() ? super.upsertInBatch(entities, chunkSize)
+                : inBatchByShard(entities, group -> super.upsertInBatch(group, chunkSize));
+    }
+
+    @Override
+    public int updateSelective(E entity) {
+        return routed() ? super.updateSelective(entity)
+                : onShard(shardOfEntity(entity), () -> super.updateSelective(entity));
+    }
+
+    @Override
+    public int updateColumns(E entity, String... columns) {
+        return routed() ? super.updateColumns(entity, columns)
+                : onShard(shardOfEntity(entity), () -> super.updateColumns(entity, columns));
+    }
+
+    @Override
+    public BatchUpdateResult updateInBatch(Collection<E> entities, int chunkSize) {
+        return routed() ? super.updateInBatch(entities, chunkSize)
+                : inBatchByShard(entities, group -> super.updateInBatch(group, chunkSize));
+    }
+
+    @Override
+    public BatchUpdateResult updateColumnsInBatch(Collection<E> entities, String... columns) {
+        return routed() ? super.updateColumnsInBatch(entities, columns)
+                : inBatchByShard(entities, group -> super.updateColumnsInBatch(group, columns));
+    }
+
+    @Override
+    public int deleteOneById(ID id) {
+        if (routed()) {
+            return super.deleteOneById(id);
+        }
+        if (shardedById) {
+            return onShard(shardOf(id), () -> super.deleteOneById(id));
+        }
+        return sum(onAllShards(() -> super.deleteOneById(id), false));
+    }
+
+    @Override
+    public int deleteAll() {
+        return routed() ? super.deleteAll() : sum(onAllShards(super::deleteAll, false));
+    }
+
+    @Override
+    public int deleteWhere(String sqlCondition, Object... values) {
+        return routed() ? super.deleteWhere(sqlCondition, values)
+                : sum(onAllShards(() -> super.deleteWhere(sqlCondition, values), false));
+    }
+
+    @Override
+    public BatchUpdateResult deleteByIds(Collection<ID> ids, int chunkSize) {
+        if (routed()) {
+            return super.deleteByIds(ids, chunkSize);
+        }
+        final List<int[]> parts = new ArrayList<>();
+        if (shardedById) {
+            final List<List<ID>> groups = groupIds(ids);
+            for (int i = 0; i < groups.size(); i++) {
+                final List<ID> group = groups.get(i);
+                if (!group.isEmpty()) {
+                    parts.add(onShard(i, () -> super.deleteByIds(group, chunkSize)).getAffectRows());
+                }
+            }
+        } else {
+            onAllShards(() -> super.deleteByIds(ids, chunkSize), false)
+                    .forEach(result -> parts.add(result.getAffectRows()));
+        }
+        return concat(parts);
+    }
+
+    /////////////////////////////////////////////////按id查询////////////////////////////////////////
+
+    @Override
+    public E selectOneById(ID id) {
+        if (routed()) {
+            return super.selectOneById(id);
+        }
+        if (shardedById) {
+            return onShard(shardOf(id), () -> super.selectOneById(id));
+        }
+        for (E entity : onAllShards(() -> super.selectOneById(id), true)) {
+            if (entity != null) {
+                return attachToSession(new ArrayList<>(Collections.singletonList(entity))).get(0);
+            }
+        }
+        return null;
+    }
+
+    @Override
+    public Map<ID, E> selectByIds(Collection<ID> ids, int chunkSize) {
+        if (routed()) {
+            return super.selectByIds(ids, chunkSize);
+        }
+        final Map<ID, E> rows = new HashMap<>(ids.size() * 2);
+        if (shardedById) {
+            //在当前线程逐个分片查询，保留一级缓存
+            final List<List<ID>> groups = groupIds(ids);
+            for (int i = 0; i < groups.size(); i++) {
+                final List<ID> group = groups.get(i);
+                if (!group.isEmpty()) {
+                    rows.putAll(onShard(i, () -> super.selectByIds(group, chunkSize)));
+                }
+            }
+        } else {
+            onAllShards(() -> super.selectByIds(ids, chunkSize), true).forEach(rows::putAll);
+        }
+        final Map<ID, E> result = new LinkedHashMap<>(rows.size() * 2);
+        for (ID id : ids) {
+            final E entity = rows.get(id);
+            if (entity != null) {
+                result.put(id, entity);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public LongObjectMap<E> selectByLongIds(long... ids) {
+        if (routed()) {
+            return super.selectByLongIds(ids);
+        }
+        final List<LongObjectMap<E>> parts = new ArrayList<>();
+        if (shardedById) {
+            final List<List<Long>> groups = new ArrayList<>(shards().size());
+            for (int i = 0; i < shards().size(); i++) {
+                groups.add(new ArrayList<>());
+            }
+            for (long id : ids) {
+                groups.get(shardOf(id)).add(id);
+            }
+            for (int i = 0; i < groups.size(); i++) {
+                final List<Long> group = groups.get(i);
+                if (!group.isEmpty()) {
+                    final long[] values = new long[group.size()];
+                    for (int j = 0; j < values.length; j++) {
+                        values[j] = group.get(j);
+                    }
+                    parts.add(onShard(i, () -> super.selectByLongIds(values)));
+                }
+            }
+        } else {
+            parts.addAll(onAllShards(() -> super.selectByLongIds(ids), true));
+        }
+        final LongObjectMap<E> result = new LongObjectMap<>(ids.length);
+        parts.forEach(part -> part.forEach(result::put));
+        return result;
+    }
+
+    /////////////////////////////////////////////////按条件查询////////////////////////////////////////
+
+    @Override
+    public E selectOneWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        if (routed()) {
+            return super.selectOneWhere(sqlCondition, parameterSource);
+        }
+        E found = null;
+        for (E entity : onAllShards(() -> super.selectOneWhere(sqlCondition, parameterSource), true)) {
+            if (entity != null) {
+                if (found != null) {
+                    log.error(tableName + "#findOneWhere()返回多条数据");
+                    throw new RuntimeException(tableName + "#findOneWhere()返回多条数据");
+                }
+                found = entity;
+            }
+        }
+        return found;
+    }
+
+    @Override
+    public List<E> selectAll() {
+        return routed() ? super.selectAll() : attachToSession(flatten(onAllShards(super::selectAll, true)));
+    }
+
+    /**
+     * 依次读取各分片，同一时间只占用一个分片的连接
+     */
+    @Override
+    public Stream<E> streamAll() {
+        return routed() ? super.streamAll() : streamShards(super::streamAll);
+    }
+
+    @Override
+    public Stream<E> streamWhere(String sqlCondition, Object... values) {
+        return routed() ? super.streamWhere(sqlCondition, values)
+                : streamShards(() -> super.streamWhere(sqlCondition, values));
+    }
+
+    @Override
+    public Stream<E> streamWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        return routed() ? super.streamWhere(sqlCondition, parameterSource)
+                : streamShards(() -> super.streamWhere(sqlCondition, parameterSource));
+    }
+
+    private Stream<E> streamShards(Supplier<Stream<E>> action) {
+        //flatMap在读完一个分片后关闭它的Stream
+        return IntStream.range(0, shards().size()).boxed().flatMap(index -> onShard(index, action));
+    }
+
+    @Override
+    protected List<E> selectWhere(String sqlCondition, Object[] values) {
+        return routed() ? super.selectWhere(sqlCondition, values)
+                : attachToSession(flatten(onAllShards(() -> super.selectWhere(sqlCondition, values), true)));
+    }
+
+    @Override
+    public List<E> selectWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        return routed() ? super.selectWhere(sqlCondition, parameterSource)
+                : attachToSession(flatten(onAllShards(() -> super.selectWhere(sqlCondition, parameterSource), true)));
+    }
+
+    @Override
+    protected int countWhere(String sqlCondition, Object[] values) {
+        return routed() ? super.countWhere(sqlCondition, values)
+                : sum(onAllShards(() -> super.countWhere(sqlCondition, values), true));
+    }
+
+    @Override
+    public int countWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        return routed() ? super.countWhere(sqlCondition, parameterSource)
+                : sum(onAllShards(() -> super.countWhere(sqlCondition, parameterSource), true));
+    }
+
+    @Override
+    public int count() {
+        return routed() ? super.count() : sum(onAllShards(super::count, true));
+    }
+
+    @Override
+    public long estimateCount() {
+        return routed() ? super.estimateCount() : sumLong(onAllShards(super::estimateCount, true));
+    }
+
+    @Override
+    public long estimateCountWhere(String sqlCondition, Object... values) {
+        return routed() ? super.estimateCountWhere(sqlCondition, values)
+                : sumLong(onAllShards(() -> super.estimateCountWhere(sqlCondition, values), true));
+    }
+
+    @Override
+    public long estimateCountWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        return routed() ? super.estimateCountWhere(sqlCondition, parameterSource)
+                : sumLong(onAllShards(() -> super.estimateCountWhere(sqlCondition, parameterSource), true));
+    }
+
+    @Override
+    public boolean existsById(ID id) {
+        if (routed()) {
+            return super.existsById(id);
+        }
+        if (shardedById) {
+            return onShard(shardOf(id), () -> super.existsById(id));
+        }
+        return onAllShards(() -> super.existsById(id), true).contains(Boolean.TRUE);
+    }
+
+    @Override
+    public boolean existsWhere(String sqlCondition, Object... values) {
+        return routed() ? super.existsWhere(sqlCondition, values)
+                : onAllShards(() -> super.existsWhere(sqlCondition, values), true).contains(Boolean.TRUE);
+    }
+
+    @Override
+    public boolean existsWhere(String sqlCondition, SqlParameterSource parameterSource) {
+        return routed() ? super.existsWhere(sqlCondition, parameterSource)
+                : onAllShards(() -> super.existsWhere(sqlCondition, parameterSource), true).contains(Boolean.TRUE);
+    }
+
+    private static long sumLong(List<Long> counts) {
+        long total = 0;
+        for (Long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    @Override
+    public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage, Object[] values) {
+        if (routed()) {
+            return super.selectPageWhere(sqlCondition, pageNumber, perPage, values);
+        }
+        final int limit = pageNumber * perPage;
+        return mergePages(onAllShards(() -> super.selectPageWhere(sqlCondition, 1, limit, values), true),
+                orderComparator(sqlCondition), pageNumber, perPage);
+    }
+
+    @Override
+    public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage,
+                                         SqlParameterSource parameterSource) {
+        if (routed()) {
+            return super.selectPageWhere(sqlCondition, pageNumber, perPage, parameterSource);
+        }
+        final int limit = pageNumber * perPage;
+        return mergePages(onAllShards(() -> super.selectPageWhere(sqlCondition, 1, limit, parameterSource), true),
+                orderComparator(sqlCondition), pageNumber, perPage);
+    }
+
+    @Override
+    public ResultPage<E> selectPage(int pageNumber, int perPage) {
+        if (routed()) {
+            return super.selectPage(pageNumber, perPage);
+        }
+        final int limit = pageNumber * perPage;
+        return mergePages(onAllShards(() -> super.selectPage(1, limit), true), null, pageNumber, perPage);
+    }
+
+    @Override
+    public ResultPage<E> selectPageWhere(String sqlCondition, int pageNumber, int perPage, int totalElements,
+                                         SqlParameterSource parameterSource) {
+        if (routed()) {
+            return super.selectPageWhere(sqlCondition, pageNumber, perPage, totalElements, parameterSource);
+        }
+        final int limit = pageNumber * perPage;
+        //各分片不再查询总数
+        final ResultPage<E> page = mergePages(
+                onAllShards(() -> super.selectPageWhere(sqlCondition, 1, limit, 0, parameterSource), true),
+                orderComparator(sqlCondition), pageNumber, perPage);
+        page.setTotalElements(totalElements);
+        return page;
+    }
+
+    @Override
+    public ResultPage<E> selectPage(int pageNumber, int perPage, int totalElements) {
+        if (routed()) {
+            return super.selectPage(pageNumber, perPage, totalElements);
+        }
+        final int limit = pageNumber * perPage;
+        final ResultPage<E> page = mergePages(onAllShards(() -> super.selectPage(1, limit, 0), true),
+                null, pageNumber, perPage);
+        page.setTotalElements(totalElements);
+        return page;
+    }
+
+    @Override
+    public KeysetPage<E> selectKeysetPageWhere(String sqlCondition, String orderBy, String cursor, int perPage,
+                                               Object... values) {
+        if (routed()) {
+            return super.selectKeysetPageWhere(sqlCondition, orderBy, cursor, perPage, values);
+        }
+        return mergeKeysetPages(onAllShards(
+                () -> super.selectKeysetPageWhere(sqlCondition, orderBy, cursor, perPage, values), true),
+                keyset(orderBy), perPage);
+    }
+
+    @Override
+    public KeysetPage<E> selectKeysetPageWhere(String sqlCondition, String orderBy, String cursor, int perPage,
+                                               SqlParameterSource parameterSource) {
+        if (routed()) {
+            return super.selectKeysetPageWhere(sqlCondition, orderBy, cursor, perPage, parameterSource);
+        }
+        return mergeKeysetPages(onAllShards(
+                () -> super.selectKeysetPageWhere(sqlCondition, orderBy, cursor, perPage, parameterSource), true),
+                keyset(orderBy), perPage);
+    }
+
+    /**
+     * 各分片从同一个游标开始查询，归并后取前perPage条，游标由最后一条的字段值生成
+     */
+    private KeysetPage<E> mergeKeysetPages(List<KeysetPage<E>> pages, Keyset keyset, int perPage) {
+        boolean hasNext = false;
+        final List<List<E>> lists = new ArrayList<>(pages.size());
+        for (KeysetPage<E> page : pages) {
+            hasNext |= page.hasNext();
+            lists.add(page.getContent());
+        }
+        final List<E> merged = mergeSorted(lists, orderComparator("ORDER BY " + keyset.getOrderBy()), perPage + 1);
+        if (merged.size() > perPage) {
+            hasNext = true;
+            merged.remove(perPage);
+        }
+        String nextCursor = null;
+        if (hasNext && !merged.isEmpty()) {
+            final E last = merged.get(merged.size() - 1);
+            final String[] columns = keyset.getColumns();
+            final Object[] key = new Object[columns.length];
+            for (int i = 0; i < columns.length; i++) {
+                key[i] = columnProperties.get(columns[i].toLowerCase()).get(last);
+            }
+            nextCursor = keyset.encode(key);
+        }
+        return new KeysetPage<>(attachToSession(merged), nextCursor);
+    }
+
+    /**
+     * 合并各分片的前 pageNumber * perPage 条，取出第pageNumber页
+     *
+     * @param order 排序，为null时按分片顺序拼接
+     */
+    private ResultPage<E> mergePages(List<ResultPage<E>> pages, Comparator<E> order, int pageNumber, int perPage) {
+        long total = 0;
+        final List<List<E>> lists = new ArrayList<>(pages.size());
+        for (ResultPage<E> page : pages) {
+            total += page.getTotalElements();
+            lists.add(page.getContent());
+        }
+        final int end = pageNumber * perPage;
+        final List<E> merged = order == null ? flatten(lists) : mergeSorted(lists, order, end);
+        final int from = Math.min((pageNumber - 1) * perPage, merged.size());
+        final int to = Math.min(end, merged.size());
+        return new ResultPage<>(attachToSession(new ArrayList<>(merged.subList(from, to))), total);
+    }
+
+    /**
+     * 归并多个已排序的列表，相等时按列表顺序
+     *
+     * @param limit 最多取出的数量
+     */
+    static <T> List<T> mergeSorted(List<List<T>> lists, Comparator<? super T> order, int limit) {
+        final int[] positions = new int[lists.size()];
+        final PriorityQueue<Integer> heads = new PriorityQueue<>(Math.max(1, lists.size()), (a, b) -> {
+            int c = order.compare(lists.get(a).get(positions[a]), lists.get(b).get(positions[b]));
+            return c != 0 ? c : Integer.compare(a, b);
+        });
+        for (int i = 0; i < lists.size(); i++) {
+            if (!lists.get(i).isEmpty()) {
+                heads.add(i);
+            }
+        }
+        final List<T> merged = new ArrayList<>();
+        while (!heads.isEmpty() && merged.size() < limit) {
+            final int i = heads.poll();
+            merged.add(lists.get(i).get(positions[i]++));
+            if (positions[i] < lists.get(i).size()) {
+                heads.add(i);
+            }
+        }
+        return merged;
+    }
+
+    /**
+     * 按条件末尾的ORDER BY生成排序，比较写入数据库的值，NULL的位置与数据库的默认行为一致
+     *
+     * @return 没有ORDER BY时返回null
+     */
+    protected Comparator<E> orderComparator(String sqlCondition) {
+        final Matcher matcher = ORDER_BY.matcher(sqlCondition);
+        if (!matcher.find()) {
+            return null;
+        }
+        Comparator<E> comparator = null;
+        for (String item : matcher.group(1).split(",")) {
+            final String[] tokens = item.trim().split("\\s+");
+            String column = tokens[0].replace("\"", "").replace("`", "");
+            column = column.substring(column.lastIndexOf('.') + 1);
+            final PropertyMetadata property = columnProperties.get(column.toLowerCase());
+            if (property == null) {
+                throw new FastSQLException("分片分页无法按" + tokens[0] + "排序，排序列必须是" + className + "的字段");
+            }
+            final boolean descending = tokens.length > 1 && "DESC".equalsIgnoreCase(tokens[1]);
+            //升序时NULL是否排在最后
+            boolean nullsLast = databaseType != DatabaseType.MY_SQL;
+            for (int i = 1; i + 1 < tokens.length; i++) {
+                if ("NULLS".equalsIgnoreCase(tokens[i])) {
+                    nullsLast = "FIRST".equalsIgnoreCase(tokens[i + 1]) == descending;
+                }
+            }
+            final boolean nullsLarge = nullsLast;
+            final Comparator<Object> values = valueOrder(property, tokens[0]);
+            Comparator<E> next = (a, b) ->
+                    compareValues(property.getColumnValue(a), property.getColumnValue(b), nullsLarge, values);
+            if (descending) {
+                next = next.reversed();
+            }
+            comparator = comparator == null ? next : comparator.thenComparing(next);
+        }
+        return comparator;
+    }
+
+    /**
+     * 非NULL值的比较方式，字符串按{@link #stringOrder}比较
+     */
+    private Comparator<Object> valueOrder(PropertyMetadata property, String column) {
+        final Class<?> type = property.getColumnType();
+        if (CharSequence.class.isAssignableFrom(type) || type == Character.class || type == char.class) {
+            if (stringOrder == null) {
+                throw new FastSQLException("分片分页无法按字符串列" + column + "排序，需要通过setStringOrder()设置与数据库排序规则一致的比较方式");
+            }
+            return (a, b) -> stringOrder.compare(a.toString(), b.toString());
+        }
+        return (a, b) -> ((Comparable<Object>) a).compareTo(b);
+    }
+
+    private static int compareValues(Object a, Object b, boolean nullsLarge, Comparator<Object> values) {
+        if (a == null) {
+            return b == null ? 0 : (nullsLarge ? 1 : -1);
+        }
+        if (b == null) {
+            return nullsLarge ? -1 : 1;
+        }
+        return values.compare(a, b);
+    }
+
+    /**
+     * 执行中的分片
+     */
+    private static final class Shard {
+        final SQLFactory factory;
+
+        /**
+         * 在调用线程选好的查询执行核心，为null时按工厂的规则选择
+         */
+        final NamedParameterJdbcTemplate readTemplate;
+
+        Shard(SQLFactory factory, NamedParameterJdbcTemplate readTemplate) {
+            this.factory = factory;
+            this.readTemplate = readTemplate;
+        }
+    }
+}
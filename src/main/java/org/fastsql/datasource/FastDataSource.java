@@ -0,0 +1,752 @@
+package org.fastsql.datasource;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.Closeable;
+import java.io.PrintWriter;
+import java.lang.ref.WeakReference;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 带连接池的数据源
+ * <p>
+ * 借出连接时依次尝试：当前线程最近归还的连接、共享列表中的空闲连接、新建连接(未达到上限时)，
+ * 都失败时等待其他线程归还。前三步只使用CAS，不加锁。
+ * 空闲超过{@link #setValidationIdleTime(long)}的连接在借出前校验，频繁使用的连接不校验；
+ * 超过{@link #setMaxLifetime(long)}的连接在归还或空闲时关闭，由后台线程补足最小空闲连接数。
+ * 设置{@link #setStatementCacheSize(int)}后每个连接按SQL文本缓存预编译语句，关闭连接时一并关闭。
+ * <pre>
+ * FastDataSource dataSource = new FastDataSource();
+ * dataSource.setUrl("jdbc:postgresql://localhost:5432/test");
+ * dataSource.setUsername("postgres");
+ * dataSource.setPassword("123456");
+ * dataSource.setMaximumPoolSize(20);
+ * sqlFactory.setDataSource(dataSource);
+ * </pre>
+ * 连接池在第一次获取连接时启动，启动后修改的连接参数不再生效
+ */
+public class FastDataSource implements DataSource, Closeable {
+
+    private static final Logger logger = LoggerFactory.getLogger(FastDataSource.class);
+
+    private static final AtomicInteger POOL_NUMBER = new AtomicInteger();
+
+    /**
+     * 每个线程记住的最近归还的连接数量
+     */
+    private static final int MAX_THREAD_LOCAL_ENTRIES = 16;
+
+    /**
+     * 归还连接时尝试直接交给阻塞线程的次数，超过后放回线程本地列表
+     */
+    private static final int HANDOFF_SPINS = 64;
+
+    /**
+     * 阻塞线程每次等待的最长时间，超时后重新扫描空闲连接，避免错过没能直接交接的连接
+     */
+    private static final long MAX_POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    private String poolName = "FastPool-" + POOL_NUMBER.incrementAndGet();
+
+    private String driverClassName;
+
+    private String url;
+
+    private String username;
+
+    private String password;
+
+    /**
+     * 提供物理连接的数据源，设置后忽略url和driverClassName
+     */
+    private DataSource dataSource;
+
+    private int maximumPoolSize = 10;
+
+    private int minimumIdle = 0;
+
+    /**
+     * 等待连接的最长时间，毫秒
+     */
+    private long connectionTimeout = 30000;
+
+    /**
+     * 超过最小空闲连接数的连接空闲该时间后关闭，毫秒，0表示不关闭
+     */
+    private long idleTimeout = 600000;
+
+    /**
+     * 连接的最长存活时间，毫秒，0表示不限制
+     */
+    private long maxLifetime = 1800000;
+
+    /**
+     * 空闲超过该时间的连接在借出前校验，毫秒
+     */
+    private long validationIdleTime = 500;
+
+    private long validationTimeout = 5000;
+
+    /**
+     * 连接借出超过该时间未归还时打印借出位置，毫秒，0表示不检测
+     */
+    private long leakDetectionThreshold = 0;
+
+    private long housekeepingPeriod = 30000;
+
+    /**
+     * 每个连接缓存的预编译语句数量，0表示不缓存
+     */
+    private int statementCacheSize = 0;
+
+    /**
+     * 整个连接池缓存的预编译语句总数上限，0表示只按每个连接的数量限制
+     */
+    private int maxCachedStatements = 0;
+
+    private final AtomicInteger cachedStatements = new AtomicInteger();
+
+    private final LongAdder statementCacheHits = new LongAdder();
+
+    private final LongAdder statementCacheMisses = new LongAdder();
+
+    private final CopyOnWriteArrayList<PoolEntry> entries = new CopyOnWriteArrayList<>();
+
+    private final SynchronousQueue<PoolEntry> handoffQueue = new SynchronousQueue<>(true);
+
+    private final ThreadLocal<List<WeakReference<PoolEntry>>> threadEntries =
+            ThreadLocal.withInitial(() -> new ArrayList<>(MAX_THREAD_LOCAL_ENTRIES));
+
+    private final AtomicInteger totalConnections = new AtomicInteger();
+
+    /**
+     * 正在借出连接的线程数，大于0时为关闭的连接补充新连接
+     */
+    private final AtomicInteger waiters = new AtomicInteger();
+
+    /**
+     * 阻塞等待的线程数，大于0时归还的连接直接交给它们
+     */
+    private final AtomicInteger threadsAwaiting = new AtomicInteger();
+
+    private final LongAdder borrowCount = new LongAdder();
+
+    private final LongAdder timeoutCount = new LongAdder();
+
+    private final LatencyHistogram borrowLatency = new LatencyHistogram();
+
+    private volatile boolean started;
+
+    private volatile boolean closed;
+
+    private ScheduledThreadPoolExecutor executor;
+
+    private PrintWriter logWriter;
+
+    private int loginTimeout;
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final long startNanos = System.nanoTime();
+        if (!started) {
+            start();
+        }
+        if (closed) {
+            throw new SQLException(poolName + "已关闭", "08003");
+        }
+        PoolEntry entry = borrow(startNanos);
+        borrowLatency.record(TimeUnit.NANOSECONDS.toMicros(System.nanoTime() - startNanos));
+        borrowCount.increment();
+        if (leakDetectionThreshold > 0) {
+            scheduleLeakDetection(entry);
+        }
+        return new ProxyConnection(this, entry);
+    }
+
+    /**
+     * 不支持按用户名获取连接，请通过{@link #setUsername(String)}配置
+     */
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("连接池不支持按用户名获取连接");
+    }
+
+    private PoolEntry borrow(long startNanos) throws SQLException {
+        //当前线程最近归还的连接
+        List<WeakReference<PoolEntry>> local = threadEntries.get();
+        for (int i = local.size() - 1; i >= 0; i--) {
+            PoolEntry entry = local.remove(i).get();
+            if (entry != null && entry.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE)) {
+                if (isUsable(entry)) {
+                    return entry;
+                }
+                retire(entry);
+            }
+        }
+
+        final long deadline = startNanos + TimeUnit.MILLISECONDS.toNanos(connectionTimeout);
+        waiters.incrementAndGet();
+        try {
+            for (; ; ) {
+                PoolEntry entry = takeShared();
+                if (entry == null && reserveSlot()) {
+                    return createEntry(PoolEntry.IN_USE);
+                }
+                if (entry == null) {
+                    long remaining = deadline - System.nanoTime();
+                    if (remaining <= 0) {
+                        throw timeout();
+                    }
+                    threadsAwaiting.incrementAndGet();
+                    try {
+                        //计数后再扫描一次，之后归还的连接会尝试交给本线程
+                        entry = takeShared();
+                        if (entry == null) {
+                            entry = handoffQueue.poll(Math.min(remaining, MAX_POLL_NANOS), TimeUnit.NANOSECONDS);
+                            if (entry == null) {
+                                continue;
+                            }
+                            if (!entry.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE)) {
+                                continue;
+                            }
+                        }
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                        throw new SQLException("等待连接时被中断", "08001", e);
+                    } finally {
+                        threadsAwaiting.decrementAndGet();
+                    }
+                }
+                if (isUsable(entry)) {
+                    return entry;
+                }
+                retire(entry);
+            }
+        } finally {
+            waiters.decrementAndGet();
+        }
+    }
+
+    private PoolEntry takeShared() {
+        for (PoolEntry entry : entries) {
+            if (entry.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.IN_USE)) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    private SQLException timeout() {
+        timeoutCount.increment();
+        return new SQLTransientConnectionException(poolName + "获取连接超时，已等待" + connectionTimeout + "毫秒，"
+                + getPoolStats(), "08001");
+    }
+
+    /**
+     * 已过期或断开的连接不可用，空闲较久的连接需要校验
+     */
+    private boolean isUsable(PoolEntry entry) {
+        final long now = System.nanoTime();
+        if (entry.broken || entry.isExpired(now)) {
+            return false;
+        }
+        if (now - entry.lastAccessNanos > TimeUnit.MILLISECONDS.toNanos(validationIdleTime)) {
+            try {
+                return entry.connection.isValid((int) Math.max(1, TimeUnit.MILLISECONDS.toSeconds(validationTimeout)));
+            } catch (SQLException e) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 连接数未达到上限时占用一个名额
+     */
+    private boolean reserveSlot() {
+        for (; ; ) {
+            int count = totalConnections.get();
+            if (count >= maximumPoolSize) {
+                return false;
+            }
+            if (totalConnections.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /**
+     * 在已占用的名额上新建连接，失败时释放名额
+     */
+    private PoolEntry createEntry(int state) throws SQLException {
+        Connection connection = null;
+        try {
+            connection = openConnection();
+            long lifetime = maxLifetime > 0
+                    //错开到期时间，避免连接同时关闭
+                    ? TimeUnit.MILLISECONDS.toNanos(maxLifetime - ThreadLocalRandom.current().nextLong(maxLifetime / 40 + 1))
+                    : 0;
+            PoolEntry entry = new PoolEntry(connection, lifetime, state,
+                    statementCacheSize > 0 ? new StatementCache(this, statementCacheSize) : null);
+            entries.add(entry);
+            return entry;
+        } catch (SQLException | RuntimeException e) {
+            totalConnections.decrementAndGet();
+            if (connection != null) {
+                try {
+                    connection.close();
+                } catch (SQLException ignored) {
+                    //连接已不可用
+                }
+            }
+            throw e;
+        }
+    }
+
+    private Connection openConnection() throws SQLException {
+        if (dataSource != null) {
+            return username == null ? dataSource.getConnection() : dataSource.getConnection(username, password);
+        }
+        if (url == null) {
+            throw new SQLException(poolName + "未设置url或dataSource");
+        }
+        Properties properties = new Properties();
+        if (username != null) {
+            properties.setProperty("user", username);
+        }
+        if (password != null) {
+            properties.setProperty("password", password);
+        }
+        return DriverManager.getConnection(url, properties);
+    }
+
+    /**
+     * 归还连接，由{@link ProxyConnection#close()}调用
+     */
+    void recycle(PoolEntry entry) {
+        cancelLeakDetection(entry);
+        final long now = System.nanoTime();
+        entry.lastAccessNanos = now;
+        if (closed || entry.broken || entry.isExpired(now)) {
+            retire(entry);
+            return;
+        }
+        entry.state = PoolEntry.NOT_IN_USE;
+        if (handOff(entry)) {
+            return;
+        }
+        List<WeakReference<PoolEntry>> local = threadEntries.get();
+        if (local.size() >= MAX_THREAD_LOCAL_ENTRIES) {
+            local.remove(0);
+        }
+        local.add(new WeakReference<>(entry));
+    }
+
+    /**
+     * 有线程阻塞等待时把空闲连接交给它，最多尝试{@link #HANDOFF_SPINS}次
+     * <p>
+     * 连接始终留在共享列表中，没能交出时等待的线程会在下次扫描时取走
+     *
+     * @return 连接已被其他线程取走
+     */
+    private boolean handOff(PoolEntry entry) {
+        for (int i = 0; i < HANDOFF_SPINS && threadsAwaiting.get() > 0; i++) {
+            if (entry.state != PoolEntry.NOT_IN_USE || handoffQueue.offer(entry)) {
+                return true;
+            }
+            Thread.yield();
+        }
+        return entry.state != PoolEntry.NOT_IN_USE;
+    }
+
+    /**
+     * 关闭连接，调用方需已占用该连接
+     */
+    private void retire(PoolEntry entry) {
+        entry.state = PoolEntry.REMOVED;
+        if (entries.remove(entry)) {
+            totalConnections.decrementAndGet();
+            entry.closeQuietly();
+            //为等待中的线程补充连接
+            if (waiters.get() > 0) {
+                submit(this::addConnectionForWaiters);
+            }
+        }
+    }
+
+    private void addConnectionForWaiters() {
+        if (closed || waiters.get() == 0 || !reserveSlot()) {
+            return;
+        }
+        try {
+            handOff(createEntry(PoolEntry.NOT_IN_USE));
+        } catch (SQLException | RuntimeException e) {
+            logger.warn(poolName + "创建连接失败", e);
+        }
+    }
+
+    /**
+     * 补足最小空闲连接数
+     */
+    private void fillPool() {
+        try {
+            while (!closed && idleCount() < Math.min(minimumIdle, maximumPoolSize) && reserveSlot()) {
+                handOff(createEntry(PoolEntry.NOT_IN_USE));
+            }
+        } catch (SQLException | RuntimeException e) {
+            logger.warn(poolName + "创建连接失败", e);
+        }
+    }
+
+    /**
+     * 关闭过期和空闲过久的连接，再补足最小空闲连接数
+     */
+    private void houseKeep() {
+        final long now = System.nanoTime();
+        final long idleTimeoutNanos = TimeUnit.MILLISECONDS.toNanos(idleTimeout);
+        int idle = idleCount();
+        for (PoolEntry entry : entries) {
+            if (!entry.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.RESERVED)) {
+                continue;
+            }
+            if (entry.isExpired(now)
+                    || (idleTimeout > 0 && idle > minimumIdle && now - entry.lastAccessNanos > idleTimeoutNanos)) {
+                retire(entry);
+                idle--;
+            } else {
+                entry.state = PoolEntry.NOT_IN_USE;
+                handOff(entry);
+            }
+        }
+        fillPool();
+    }
+
+    private int idleCount() {
+        int idle = 0;
+        for (PoolEntry entry : entries) {
+            if (entry.state == PoolEntry.NOT_IN_USE) {
+                idle++;
+            }
+        }
+        return idle;
+    }
+
+    private void scheduleLeakDetection(PoolEntry entry) {
+        final long threshold = leakDetectionThreshold;
+        final Exception borrowedAt = new Exception("连接在线程" + Thread.currentThread().getName() + "中借出");
+        try {
+            entry.leakTask = executor.schedule(() -> logger.warn(poolName + "的连接借出超过" + threshold
+                    + "毫秒未归还，可能已泄漏", borrowedAt), threshold, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException ignored) {
+            //连接池已关闭
+        }
+    }
+
+    private void cancelLeakDetection(PoolEntry entry) {
+        ScheduledFuture<?> task = entry.leakTask;
+        if (task != null) {
+            entry.leakTask = null;
+            if (!task.cancel(false)) {
+                logger.info("{}之前报告可能泄漏的连接已归还", poolName);
+            }
+        }
+    }
+
+    /**
+     * 占用一个缓存语句的名额
+     *
+     * @return 未达到{@link #setMaxCachedStatements(int)}的上限
+     */
+    boolean reserveStatementSlot() {
+        for (; ; ) {
+            int count = cachedStatements.get();
+            if (maxCachedStatements > 0 && count >= maxCachedStatements) {
+                return false;
+            }
+            if (cachedStatements.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    void releaseStatementSlot() {
+        cachedStatements.decrementAndGet();
+    }
+
+    void recordStatementCache(boolean hit) {
+        if (hit) {
+            statementCacheHits.increment();
+        } else {
+            statementCacheMisses.increment();
+        }
+    }
+
+    private void submit(Runnable task) {
+        try {
+            executor.execute(task);
+        } catch (RejectedExecutionException ignored) {
+            //连接池已关闭
+        }
+    }
+
+    private synchronized void start() throws SQLException {
+        if (started || closed) {
+            return;
+        }
+        if (dataSource == null && driverClassName != null) {
+            try {
+                Class.forName(driverClassName);
+            } catch (ClassNotFoundException e) {
+                throw new SQLException("找不到数据库驱动" + driverClassName, e);
+            }
+        }
+        executor = new ScheduledThreadPoolExecutor(1, runnable -> {
+            Thread thread = new Thread(runnable, poolName + "-housekeeper");
+            thread.setDaemon(true);
+            return thread;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.scheduleWithFixedDelay(this::houseKeep, housekeepingPeriod, housekeepingPeriod,
+                TimeUnit.MILLISECONDS);
+        if (minimumIdle > 0) {
+            executor.execute(this::fillPool);
+        }
+        started = true;
+    }
+
+    /**
+     * 关闭连接池，空闲连接立即关闭，借出的连接在归还时关闭
+     */
+    @Override
+    public synchronized void close() {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        if (executor != null) {
+            executor.shutdownNow();
+        }
+        for (PoolEntry entry : entries) {
+            if (entry.compareAndSet(PoolEntry.NOT_IN_USE, PoolEntry.REMOVED) && entries.remove(entry)) {
+                totalConnections.decrementAndGet();
+                entry.closeQuietly();
+            }
+        }
+    }
+
+    public boolean isClosed() {
+        return closed;
+    }
+
+    /**
+     * @return 连接池当前的状态
+     */
+    public PoolStats getPoolStats() {
+        int total = 0;
+        int idle = 0;
+        for (PoolEntry entry : entries) {
+            total++;
+            if (entry.state == PoolEntry.NOT_IN_USE) {
+                idle++;
+            }
+        }
+        return new PoolStats(total - idle, idle, total, threadsAwaiting.get(), borrowCount.sum(), timeoutCount.sum(),
+                borrowLatency.percentile(50), borrowLatency.percentile(95), borrowLatency.percentile(99),
+                borrowLatency.getMax(), cachedStatements.get(), statementCacheHits.sum(), statementCacheMisses.sum());
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        if (dataSource != null) {
+            return dataSource.unwrap(iface);
+        }
+        throw new SQLException(getClass().getName() + "不是" + iface.getName() + "的包装类");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || (dataSource != null && dataSource.isWrapperFor(iface));
+    }
+
+    public String getPoolName() {
+        return poolName;
+    }
+
+    public void setPoolName(String poolName) {
+        this.poolName = poolName;
+    }
+
+    public String getDriverClassName() {
+        return driverClassName;
+    }
+
+    public void setDriverClassName(String driverClassName) {
+        this.driverClassName = driverClassName;
+    }
+
+    public String getUrl() {
+        return url;
+    }
+
+    public void setUrl(String url) {
+        this.url = url;
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public void setUsername(String username) {
+        this.username = username;
+    }
+
+    public void setPassword(String password) {
+        this.password = password;
+    }
+
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    public void setDataSource(DataSource dataSource) {
+        this.dataSource = dataSource;
+    }
+
+    public int getMaximumPoolSize() {
+        return maximumPoolSize;
+    }
+
+    public void setMaximumPoolSize(int maximumPoolSize) {
+        if (maximumPoolSize < 1) {
+            throw new IllegalArgumentException("最大连接数必须大于0");
+        }
+        this.maximumPoolSize = maximumPoolSize;
+    }
+
+    public int getMinimumIdle() {
+        return minimumIdle;
+    }
+
+    public void setMinimumIdle(int minimumIdle) {
+        this.minimumIdle = minimumIdle;
+    }
+
+    public long getConnectionTimeout() {
+        return connectionTimeout;
+    }
+
+    public void setConnectionTimeout(long connectionTimeout) {
+        this.connectionTimeout = connectionTimeout;
+    }
+
+    public long getIdleTimeout() {
+        return idleTimeout;
+    }
+
+    public void setIdleTimeout(long idleTimeout) {
+        this.idleTimeout = idleTimeout;
+    }
+
+    public long getMaxLifetime() {
+        return maxLifetime;
+    }
+
+    public void setMaxLifetime(long maxLifetime) {
+        this.maxLifetime = maxLifetime;
+    }
+
+    public long getValidationIdleTime() {
+        return validationIdleTime;
+    }
+
+    public void setValidationIdleTime(long validationIdleTime) {
+        this.validationIdleTime = validationIdleTime;
+    }
+
+    public long getValidationTimeout() {
+        return validationTimeout;
+    }
+
+    public void setValidationTimeout(long validationTimeout) {
+        this.validationTimeout = validationTimeout;
+    }
+
+    public long getLeakDetectionThreshold() {
+        return leakDetectionThreshold;
+    }
+
+    public void setLeakDetectionThreshold(long leakDetectionThreshold) {
+        this.leakDetectionThreshold = leakDetectionThreshold;
+    }
+
+    public int getStatementCacheSize() {
+        return statementCacheSize;
+    }
+
+    public void setStatementCacheSize(int statementCacheSize) {
+        this.statementCacheSize = statementCacheSize;
+    }
+
+    public int getMaxCachedStatements() {
+        return maxCachedStatements;
+    }
+
+    public void setMaxCachedStatements(int maxCachedStatements) {
+        this.maxCachedStatements = maxCachedStatements;
+    }
+
+    public long getHousekeepingPeriod() {
+        return housekeepingPeriod;
+    }
+
+    public void setHousekeepingPeriod(long housekeepingPeriod) {
+        this.housekeepingPeriod = housekeepingPeriod;
+    }
+}
@@ -0,0 +1,80 @@
+package org.fastsql.datasource;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+
+/**
+ * 无锁的耗时直方图，单位为微秒
+ * <p>
+ * 每个2的幂区间再分为4个桶，分位数的相对误差不超过25%
+ */
+final class LatencyHistogram {
+
+    private static final int BUCKETS = 4 * 63;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    void record(long micros) {
+        long value = Math.max(0, micros);
+        counts.incrementAndGet(indexOf(value));
+        max.accumulate(value);
+    }
+
+    long getMax() {
+        return max.get();
+    }
+
+    long getCount() {
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            count += counts.get(i);
+        }
+        return count;
+    }
+
+    /**
+     * @param percentile 0到100之间的百分位
+     * @return 百分位所在桶的上限，没有数据时返回0
+     */
+    long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long total = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            snapshot[i] = counts.get(i);
+            total += snapshot[i];
+        }
+        if (total == 0) {
+            return 0;
+        }
+        long rank = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += snapshot[i];
+            if (seen >= Math.max(1, rank)) {
+                return Math.min(upperBound(i), getMax());
+            }
+        }
+        return getMax();
+    }
+
+    static int indexOf(long value) {
+        if (value < 4) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - 2)) & 3;
+        return 4 * (msb - 1) + sub;
+    }
+
+    static long upperBound(int index) {
+        if (index < 4) {
+            return index;
+        }
+        int msb = index / 4 + 1;
+        int sub = index % 4;
+        long lower = (4L + sub) << (msb - 2);
+        return lower + (1L << (msb - 2)) - 1;
+    }
+}
@@ -0,0 +1,104 @@
+package org.fastsql.datasource;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+
+/**
+ * 连接池中的一个物理连接及其状态
+ * <p>
+ * 状态通过CAS切换，借出和归还都不需要加锁
+ */
+final class PoolEntry {
+
+    static final int NOT_IN_USE = 0;
+    static final int IN_USE = 1;
+    /**
+     * 后台任务检查时暂时占用
+     */
+    static final int RESERVED = 2;
+    static final int REMOVED = -1;
+
+    private static final AtomicIntegerFieldUpdater<PoolEntry> STATE =
+            AtomicIntegerFieldUpdater.newUpdater(PoolEntry.class, "state");
+
+    final Connection connection;
+
+    final long createdNanos;
+
+    /**
+     * 超过该时间后不再借出，0表示不限制
+     */
+    final long expireAtNanos;
+
+    final boolean defaultAutoCommit;
+    final boolean defaultReadOnly;
+    final int defaultTransactionIsolation;
+    final String defaultCatalog;
+    final String defaultSchema;
+
+    volatile int state;
+
+    volatile long lastAccessNanos;
+
+    /**
+     * 连接出现了表示断开的异常，归还时关闭
+     */
+    volatile boolean broken;
+
+    /**
+     * 预编译语句缓存，未开启时为null
+     */
+    final StatementCache statementCache;
+
+    /**
+     * 泄漏检测任务
+     */
+    volatile ScheduledFuture<?> leakTask;
+
+    PoolEntry(Connection connection, long lifetimeNanos, int initialState, StatementCache statementCache)
+            throws SQLException {
+        this.connection = connection;
+        this.statementCache = statementCache;
+        this.createdNanos = System.nanoTime();
+        this.expireAtNanos = lifetimeNanos > 0 ? createdNanos + lifetimeNanos : 0;
+        this.lastAccessNanos = createdNanos;
+        this.defaultAutoCommit = connection.getAutoCommit();
+        this.defaultReadOnly = connection.isReadOnly();
+        this.defaultTransactionIsolation = connection.getTransactionIsolation();
+        this.defaultCatalog = connection.getCatalog();
+        this.defaultSchema = schemaOf(connection);
+        this.state = initialState;
+    }
+
+    /**
+     * @return 连接当前的schema，驱动不支持时为null
+     */
+    private static String schemaOf(Connection connection) {
+        try {
+            return connection.getSchema();
+        } catch (SQLException | AbstractMethodError e) {
+            return null;
+        }
+    }
+
+    boolean compareAndSet(int expect, int update) {
+        return STATE.compareAndSet(this, expect, update);
+    }
+
+    boolean isExpired(long nowNanos) {
+        return expireAtNanos != 0 && nowNanos - expireAtNanos >= 0;
+    }
+
+    void closeQuietly() {
+        if (statementCache != null) {
+            statementCache.closeAll();
+        }
+        try {
+            connection.close();
+        } catch (SQLException | RuntimeException ignored) {
+            //连接已不可用
+        }
+    }
+}
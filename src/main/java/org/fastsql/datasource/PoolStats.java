@@ -0,0 +1,134 @@
+package org.fastsql.datasource;
+
+/**
+ * 连接池的运行状态快照，由{@link FastDataSource#getPoolStats()}获取
+ */
+public final class PoolStats {
+
+    private final int activeConnections;
+    private final int idleConnections;
+    private final int totalConnections;
+    private final int threadsAwaitingConnection;
+    private final long borrowCount;
+    private final long timeoutCount;
+    private final long borrowLatencyP50Micros;
+    private final long borrowLatencyP95Micros;
+    private final long borrowLatencyP99Micros;
+    private final long borrowLatencyMaxMicros;
+    private final int cachedStatements;
+    private final long statementCacheHits;
+    private final long statementCacheMisses;
+
+    PoolStats(int activeConnections, int idleConnections, int totalConnections, int threadsAwaitingConnection,
+              long borrowCount, long timeoutCount, long borrowLatencyP50Micros, long borrowLatencyP95Micros,
+              long borrowLatencyP99Micros, long borrowLatencyMaxMicros, int cachedStatements,
+              long statementCacheHits, long statementCacheMisses) {
+        this.activeConnections = activeConnections;
+        this.idleConnections = idleConnections;
+        this.totalConnections = totalConnections;
+        this.threadsAwaitingConnection = threadsAwaitingConnection;
+        this.borrowCount = borrowCount;
+        this.timeoutCount = timeoutCount;
+        this.borrowLatencyP50Micros = borrowLatencyP50Micros;
+        this.borrowLatencyP95Micros = borrowLatencyP95Micros;
+        this.borrowLatencyP99Micros = borrowLatencyP99Micros;
+        this.borrowLatencyMaxMicros = borrowLatencyMaxMicros;
+        this.cachedStatements = cachedStatements;
+        this.statementCacheHits = statementCacheHits;
+        this.statementCacheMisses = statementCacheMisses;
+    }
+
+    /**
+     * @return 已借出的连接数
+     */
+    public int getActiveConnections() {
+        return activeConnections;
+    }
+
+    /**
+     * @return 空闲的连接数
+     */
+    public int getIdleConnections() {
+        return idleConnections;
+    }
+
+    public int getTotalConnections() {
+        return totalConnections;
+    }
+
+    /**
+     * @return 正在等待连接的线程数
+     */
+    public int getThreadsAwaitingConnection() {
+        return threadsAwaitingConnection;
+    }
+
+    /**
+     * @return 成功借出的次数
+     */
+    public long getBorrowCount() {
+        return borrowCount;
+    }
+
+    /**
+     * @return 等待超时的次数
+     */
+    public long getTimeoutCount() {
+        return timeoutCount;
+    }
+
+    public long getBorrowLatencyP50Micros() {
+        return borrowLatencyP50Micros;
+    }
+
+    public long getBorrowLatencyP95Micros() {
+        return borrowLatencyP95Micros;
+    }
+
+    public long getBorrowLatencyP99Micros() {
+        return borrowLatencyP99Micros;
+    }
+
+    public long getBorrowLatencyMaxMicros() {
+        return borrowLatencyMaxMicros;
+    }
+
+    /**
+     * @return 当前缓存的预编译语句数量
+     */
+    public int getCachedStatements() {
+        return cachedStatements;
+    }
+
+    public long getStatementCacheHits() {
+        return statementCacheHits;
+    }
+
+    public long getStatementCacheMisses() {
+        return statementCacheMisses;
+    }
+
+    /**
+     * @return 预编译语句缓存的命中率，没有请求时为0
+     */
+    public double getStatementCacheHitRate() {
+        long requests = statementCacheHits + statementCacheMisses;
+        return requests == 0 ? 0 : (double) statementCacheHits / requests;
+    }
+
+    @Override
+    public String toString() {
+        return "PoolStats{" +
+                "active=" + activeConnections +
+                ", idle=" + idleConnections +
+                ", total=" + totalConnections +
+                ", waiting=" + threadsAwaitingConnection +
+                ", borrowCount=" + borrowCount +
+                ", timeoutCount=" + timeoutCount +
+                ", borrowLatencyMicros(p50/p95/p99/max)=" + borrowLatencyP50Micros + "/" + borrowLatencyP95Micros +
+                "/" + borrowLatencyP99Micros + "/" + borrowLatencyMaxMicros +
+                ", cachedStatements=" + cachedStatements +
+                ", statementCacheHitRate=" + getStatementCacheHitRate() +
+                '}';
+    }
+}
@@ -0,0 +1,482 @@
+package org.fastsql.datasource;
+
+import java.sql.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.Executor;
+
+/**
+ * 借出给调用方的连接，close()时把物理连接归还连接池
+ * <p>
+ * 开启语句缓存时，prepareStatement返回的语句来自物理连接的{@link StatementCache}。
+ * 归还前关闭未关闭的Statement，回滚未提交的事务，并把修改过的自动提交、只读、隔离级别、catalog和schema恢复为创建时的值
+ */
+final class ProxyConnection implements Connection {
+
+    /**
+     * 记录的Statement超过该数量时先清理已关闭的
+     */
+    private static final int STATEMENT_PURGE_THRESHOLD = 64;
+
+    private final FastDataSource pool;
+
+    private final PoolEntry entry;
+
+    private final Connection delegate;
+
+    private final List<Statement> openStatements = new ArrayList<>();
+
+    private boolean closed;
+
+    private boolean autoCommit;
+
+    private boolean autoCommitChanged;
+    private boolean readOnlyChanged;
+    private boolean isolationChanged;
+    private boolean catalogChanged;
+    private boolean schemaChanged;
+
+    ProxyConnection(FastDataSource pool, PoolEntry entry) {
+        this.pool = pool;
+        this.entry = entry;
+        this.delegate = entry.connection;
+        this.autoCommit = entry.defaultAutoCommit;
+    }
+
+    private Connection delegate() throws SQLException {
+        if (closed) {
+            throw new SQLException("连接已关闭", "08003");
+        }
+        return delegate;
+    }
+
+    /**
+     * 表示连接断开的异常使连接在归还时被关闭
+     */
+    private SQLException checkException(SQLException e) {
+        String sqlState = e.getSQLState();
+        if (e instanceof SQLNonTransientConnectionException || e instanceof SQLRecoverableException
+                || (sqlState != null && sqlState.startsWith("08"))) {
+            entry.broken = true;
+        }
+        return e;
+    }
+
+    private <T extends Statement> T track(T statement) {
+        if (openStatements.size() >= STATEMENT_PURGE_THRESHOLD) {
+            openStatements.removeIf(ProxyConnection::isClosedQuietly);
+        }
+        openStatements.add(statement);
+        return statement;
+    }
+
+    private static boolean isClosedQuietly(Statement statement) {
+        try {
+            return statement.isClosed();
+        } catch (SQLException e) {
+            return true;
+        }
+    }
+
+    @Override
+    public void close() throws SQLException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        try {
+            for (Statement statement : openStatements) {
+                try {
+                    statement.close();
+                } catch (SQLException ignored) {
+                    //继续关闭其余的Statement
+                }
+            }
+            openStatements.clear();
+            if (!entry.broken) {
+                if (!autoCommit) {
+                    delegate.rollback();
+                }
+                if (autoCommitChanged) {
+                    delegate.setAutoCommit(entry.defaultAutoCommit);
+                }
+                if (readOnlyChanged) {
+                    delegate.setReadOnly(entry.defaultReadOnly);
+                }
+                if (isolationChanged) {
+                    delegate.setTransactionIsolation(entry.defaultTransactionIsolation);
+                }
+                if (catalogChanged && entry.defaultCatalog != null) {
+                    delegate.setCatalog(entry.defaultCatalog);
+                }
+                if (schemaChanged && entry.defaultSchema != null) {
+                    delegate.setSchema(entry.defaultSchema);
+                }
+                delegate.clearWarnings();
+            }
+        } catch (SQLException e) {
+            entry.broken = true;
+            throw e;
+        } finally {
+            pool.recycle(entry);
+        }
+    }
+
+    @Override
+    public boolean isClosed() throws SQLException {
+        return closed;
+    }
+
+    @Override
+    public Statement createStatement() throws SQLException {
+        try {
+            return track(delegate().createStatement());
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency) throws SQLException {
+        try {
+            return track(delegate().createStatement(resultSetType, resultSetConcurrency));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public Statement createStatement(int resultSetType, int resultSetConcurrency, int resultSetHoldability)
+            throws SQLException {
+        try {
+            return track(delegate().createStatement(resultSetType, resultSetConcurrency, resultSetHoldability));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    /**
+     * 开启了语句缓存时优先使用缓存的语句
+     */
+    private PreparedStatement prepareCached(StatementKey key) throws SQLException {
+        try {
+            StatementCache cache = entry.statementCache;
+            if (cache == null) {
+                return track(key.prepare(delegate()));
+            }
+            PreparedStatement statement = cache.take(key);
+            if (statement == null) {
+                statement = key.prepare(delegate());
+            }
+            return track(new CachedPreparedStatement(this, statement, key, cache));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql) throws SQLException {
+        return prepareCached(StatementKey.of(sql));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        return prepareCached(StatementKey.of(sql, resultSetType, resultSetConcurrency));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int resultSetType, int resultSetConcurrency,
+                                              int resultSetHoldability) throws SQLException {
+        try {
+            return track(delegate().prepareStatement(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int autoGeneratedKeys) throws SQLException {
+        return prepareCached(StatementKey.of(sql, autoGeneratedKeys));
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, int[] columnIndexes) throws SQLException {
+        try {
+            return track(delegate().prepareStatement(sql, columnIndexes));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public PreparedStatement prepareStatement(String sql, String[] columnNames) throws SQLException {
+        try {
+            return track(delegate().prepareStatement(sql, columnNames));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql) throws SQLException {
+        try {
+            return track(delegate().prepareCall(sql));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency)
+            throws SQLException {
+        try {
+            return track(delegate().prepareCall(sql, resultSetType, resultSetConcurrency));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public CallableStatement prepareCall(String sql, int resultSetType, int resultSetConcurrency,
+                                         int resultSetHoldability) throws SQLException {
+        try {
+            return track(delegate().prepareCall(sql, resultSetType, resultSetConcurrency, resultSetHoldability));
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public String nativeSQL(String sql) throws SQLException {
+        return delegate().nativeSQL(sql);
+    }
+
+    @Override
+    public void setAutoCommit(boolean autoCommit) throws SQLException {
+        try {
+            delegate().setAutoCommit(autoCommit);
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+        this.autoCommit = autoCommit;
+        this.autoCommitChanged = autoCommit != entry.defaultAutoCommit;
+    }
+
+    @Override
+    public boolean getAutoCommit() throws SQLException {
+        delegate();
+        return autoCommit;
+    }
+
+    @Override
+    public void commit() throws SQLException {
+        try {
+            delegate().commit();
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public void rollback() throws SQLException {
+        try {
+            delegate().rollback();
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public void rollback(Savepoint savepoint) throws SQLException {
+        try {
+            delegate().rollback(savepoint);
+        } catch (SQLException e) {
+            throw checkException(e);
+        }
+    }
+
+    @Override
+    public DatabaseMetaData getMetaData() throws SQLException {
+        return delegate().getMetaData();
+    }
+
+    @Override
+    public void setReadOnly(boolean readOnly) throws SQLException {
+        delegate().setReadOnly(readOnly);
+        readOnlyChanged = readOnly != entry.defaultReadOnly;
+    }
+
+    @Override
+    public boolean isReadOnly() throws SQLException {
+        return delegate().isReadOnly();
+    }
+
+    @Override
+    public void setCatalog(String catalog) throws SQLException {
+        delegate().setCatalog(catalog);
+        catalogChanged = true;
+    }
+
+    @Override
+    public String getCatalog() throws SQLException {
+        return delegate().getCatalog();
+    }
+
+    @Override
+    public void setTransactionIsolation(int level) throws SQLException {
+        delegate().setTransactionIsolation(level);
+        isolationChanged = level != entry.defaultTransactionIsolation;
+    }
+
+    @Override
+    public int getTransactionIsolation() throws SQLException {
+        return delegate().getTransactionIsolation();
+    }
+
+    @Override
+    public SQLWarning getWarnings() throws SQLException {
+        return delegate().getWarnings();
+    }
+
+    @Override
+    public void clearWarnings() throws SQLException {
+        delegate().clearWarnings();
+    }
+
+    @Override
+    public Map<String, Class<?>> getTypeMap() throws SQLException {
+        return delegate().getTypeMap();
+    }
+
+    @Override
+    public void setTypeMap(Map<String, Class<?>> map) throws SQLException {
+        delegate().setTypeMap(map);
+    }
+
+    @Override
+    public void setHoldability(int holdability) throws SQLException {
+        delegate().setHoldability(holdability);
+    }
+
+    @Override
+    public int getHoldability() throws SQLException {
+        return delegate().getHoldability();
+    }
+
+    @Override
+    public Savepoint setSavepoint() throws SQLException {
+        return delegate().setSavepoint();
+    }
+
+    @Override
+    public Savepoint setSavepoint(String name) throws SQLException {
+        return delegate().setSavepoint(name);
+    }
+
+    @Override
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        delegate().releaseSavepoint(savepoint);
+    }
+
+    @Override
+    public Clob createClob() throws SQLException {
+        return delegate().createClob();
+    }
+
+    @Override
+    public Blob createBlob() throws SQLException {
+        return delegate().createBlob();
+    }
+
+    @Override
+    public NClob createNClob() throws SQLException {
+        return delegate().createNClob();
+    }
+
+    @Override
+    public SQLXML createSQLXML() throws SQLException {
+        return delegate().createSQLXML();
+    }
+
+    @Override
+    public boolean isValid(int timeout) throws SQLException {
+        return !closed && delegate.isValid(timeout);
+    }
+
+    @Override
+    public void setClientInfo(String name, String value) throws SQLClientInfoException {
+        delegate.setClientInfo(name, value);
+    }
+
+    @Override
+    public void setClientInfo(Properties properties) throws SQLClientInfoException {
+        delegate.setClientInfo(properties);
+    }
+
+    @Override
+    public String getClientInfo(String name) throws SQLException {
+        return delegate().getClientInfo(name);
+    }
+
+    @Override
+    public Properties getClientInfo() throws SQLException {
+        return delegate().getClientInfo();
+    }
+
+    @Override
+    public Array createArrayOf(String typeName, Object[] elements) throws SQLException {
+        return delegate().createArrayOf(typeName, elements);
+    }
+
+    @Override
+    public Struct createStruct(String typeName, Object[] attributes) throws SQLException {
+        return delegate().createStruct(typeName, attributes);
+    }
+
+    @Override
+    public void setSchema(String schema) throws SQLException {
+        delegate().setSchema(schema);
+        schemaChanged = true;
+    }
+
+    @Override
+    public String getSchema() throws SQLException {
+        return delegate().getSchema();
+    }
+
+    /**
+     * 中止的物理连接不再归还连接池
+     */
+    @Override
+    public void abort(Executor executor) throws SQLException {
+        entry.broken = true;
+        delegate().abort(executor);
+    }
+
+    @Override
+    public void setNetworkTimeout(Executor executor, int milliseconds) throws SQLException {
+        delegate().setNetworkTimeout(executor, milliseconds);
+    }
+
+    @Override
+    public int getNetworkTimeout() throws SQLException {
+        return delegate().getNetworkTimeout();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(delegate)) {
+            return (T) delegate;
+        }
+        return delegate.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(delegate) || delegate.isWrapperFor(iface);
+    }
+}
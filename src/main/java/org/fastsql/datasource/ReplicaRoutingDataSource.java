@@ -0,0 +1,156 @@
+package org.fastsql.datasource;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * 把连接请求分配到多个只读副本的数据源
+ * <p>
+ * 每次获取连接时选择未归还连接最少的副本，数量相同时轮流选择；
+ * 副本获取连接失败时依次尝试其他副本，全部失败时抛出最后一个异常
+ */
+public class ReplicaRoutingDataSource implements DataSource {
+
+    private final List<DataSource> replicas;
+
+    /**
+     * 各副本未归还的连接数
+     */
+    private final AtomicIntegerArray outstanding;
+
+    private final AtomicInteger next = new AtomicInteger();
+
+    private PrintWriter logWriter;
+
+    private int loginTimeout;
+
+    public ReplicaRoutingDataSource(List<DataSource> replicas) {
+        if (replicas == null || replicas.isEmpty()) {
+            throw new IllegalArgumentException("副本数据源不能为空");
+        }
+        this.replicas = new ArrayList<>(replicas);
+        this.outstanding = new AtomicIntegerArray(replicas.size());
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        final int size = replicas.size();
+        final int start = (next.getAndIncrement() & Integer.MAX_VALUE) % size;
+        boolean[] tried = new boolean[size];
+        SQLException lastException = null;
+        for (int attempt = 0; attempt < size; attempt++) {
+            int chosen = -1;
+            for (int i = 0; i < size; i++) {
+                int index = (start + i) % size;
+                if (!tried[index] && (chosen < 0 || outstanding.get(index) < outstanding.get(chosen))) {
+                    chosen = index;
+                }
+            }
+            tried[chosen] = true;
+            outstanding.incrementAndGet(chosen);
+            try {
+                return track(replicas.get(chosen).getConnection(), chosen);
+            } catch (SQLException e) {
+                outstanding.decrementAndGet(chosen);
+                lastException = e;
+            }
+        }
+        throw lastException;
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        throw new SQLFeatureNotSupportedException("副本数据源不支持按用户名获取连接");
+    }
+
+    /**
+     * 连接关闭时减少副本的未归还连接数
+     */
+    private Connection track(Connection connection, int index) {
+        final boolean[] closed = {false};
+        return (Connection) Proxy.newProxyInstance(Connection.class.getClassLoader(), new Class<?>[]{Connection.class},
+                (proxy, method, args) -> {
+                    String name = method.getName();
+                    if ("close".equals(name)) {
+                        if (!closed[0]) {
+                            closed[0] = true;
+                            outstanding.decrementAndGet(index);
+                        }
+                    } else if ("equals".equals(name)) {
+                        return proxy == args[0];
+                    } else if ("hashCode".equals(name)) {
+                        return System.identityHashCode(proxy);
+                    } else if ("unwrap".equals(name) && ((Class<?>) args[0]).isInstance(connection)) {
+                        return connection;
+                    }
+                    try {
+                        return method.invoke(connection, args);
+                    } catch (InvocationTargetException e) {
+                        throw e.getTargetException();
+                    }
+                });
+    }
+
+    /**
+     * @return 各副本当前未归还的连接数
+     */
+    public int[] getOutstandingRequests() {
+        int[] counts = new int[outstanding.length()];
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] = outstanding.get(i);
+        }
+        return counts;
+    }
+
+    public List<DataSource> getReplicas() {
+        return replicas;
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return logWriter;
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        this.logWriter = out;
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        this.loginTimeout = seconds;
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return loginTimeout;
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        throw new SQLFeatureNotSupportedException();
+    }
+
+    @Override
+    @SuppressWarnings("unchecked")
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        if (iface.isInstance(this)) {
+            return (T) this;
+        }
+        throw new SQLException(getClass().getName() + "不是" + iface.getName() + "的包装类");
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this);
+    }
+}
@@ -0,0 +1,95 @@
+package org.fastsql.datasource;
+
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * 一个物理连接上的预编译语句LRU缓存
+ * <p>
+ * 语句借出时从缓存中移除，关闭时放回，因此同一条SQL同时使用时各自持有不同的语句。
+ * 只由持有连接的线程访问，不加锁；连接池的缓存语句总数由{@link FastDataSource}限制
+ */
+final class StatementCache {
+
+    private final FastDataSource pool;
+
+    private final int maximumSize;
+
+    private final LinkedHashMap<StatementKey, PreparedStatement> statements;
+
+    StatementCache(FastDataSource pool, int maximumSize) {
+        this.pool = pool;
+        this.maximumSize = maximumSize;
+        this.statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    /**
+     * @return 缓存的语句，没有时返回null
+     */
+    PreparedStatement take(StatementKey key) {
+        PreparedStatement statement = statements.remove(key);
+        if (statement != null) {
+            pool.releaseStatementSlot();
+        }
+        pool.recordStatementCache(statement != null);
+        return statement;
+    }
+
+    /**
+     * 放回语句，缓存已满时先关闭最久未使用的语句
+     *
+     * @return 是否已放入缓存，未放入时调用方负责关闭
+     */
+    boolean offer(StatementKey key, PreparedStatement statement) {
+        if (statements.containsKey(key)) {
+            return false;
+        }
+        if (statements.size() >= maximumSize) {
+            evictEldest();
+        }
+        while (!pool.reserveStatementSlot()) {
+            if (statements.isEmpty()) {
+                return false;
+            }
+            evictEldest();
+        }
+        statements.put(key, statement);
+        return true;
+    }
+
+    private void evictEldest() {
+        Iterator<Map.Entry<StatementKey, PreparedStatement>> iterator = statements.entrySet().iterator();
+        if (iterator.hasNext()) {
+            PreparedStatement statement = iterator.next().getValue();
+            iterator.remove();
+            pool.releaseStatementSlot();
+            closeQuietly(statement);
+        }
+    }
+
+    int size() {
+        return statements.size();
+    }
+
+    /**
+     * 关闭所有缓存的语句，在关闭物理连接前调用
+     */
+    void closeAll() {
+        for (PreparedStatement statement : statements.values()) {
+            pool.releaseStatementSlot();
+            closeQuietly(statement);
+        }
+        statements.clear();
+    }
+
+    private static void closeQuietly(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException | RuntimeException ignored) {
+            //语句已不可用
+        }
+    }
+}
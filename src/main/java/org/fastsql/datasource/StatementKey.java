@@ -0,0 +1,78 @@
+package org.fastsql.datasource;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+
+/**
+ * 预编译语句缓存的键，由SQL文本和创建参数组成
+ */
+final class StatementKey {
+
+    private static final int PLAIN = 0;
+    private static final int RESULT_SET_TYPE = 1;
+    private static final int AUTO_GENERATED_KEYS = 2;
+
+    private final String sql;
+    private final int variant;
+    private final int resultSetType;
+    private final int resultSetConcurrency;
+    private final int autoGeneratedKeys;
+    private final int hash;
+
+    private StatementKey(String sql, int variant, int resultSetType, int resultSetConcurrency,
+                         int autoGeneratedKeys) {
+        this.sql = sql;
+        this.variant = variant;
+        this.resultSetType = resultSetType;
+        this.resultSetConcurrency = resultSetConcurrency;
+        this.autoGeneratedKeys = autoGeneratedKeys;
+        this.hash = 31 * (31 * (31 * (31 * sql.hashCode() + variant) + resultSetType) + resultSetConcurrency)
+                + autoGeneratedKeys;
+    }
+
+    static StatementKey of(String sql) {
+        return new StatementKey(sql, PLAIN, 0, 0, 0);
+    }
+
+    static StatementKey of(String sql, int resultSetType, int resultSetConcurrency) {
+        return new StatementKey(sql, RESULT_SET_TYPE, resultSetType, resultSetConcurrency, 0);
+    }
+
+    static StatementKey of(String sql, int autoGeneratedKeys) {
+        return new StatementKey(sql, AUTO_GENERATED_KEYS, 0, 0, autoGeneratedKeys);
+    }
+
+    /**
+     * 在物理连接上创建语句
+     */
+    PreparedStatement prepare(Connection connection) throws SQLException {
+        switch (variant) {
+            case RESULT_SET_TYPE:
+                return connection.prepareStatement(sql, resultSetType, resultSetConcurrency);
+            case AUTO_GENERATED_KEYS:
+                return connection.prepareStatement(sql, autoGeneratedKeys);
+            default:
+                return connection.prepareStatement(sql);
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof StatementKey)) {
+            return false;
+        }
+        StatementKey other = (StatementKey) o;
+        return hash == other.hash && variant == other.variant && resultSetType == other.resultSetType
+                && resultSetConcurrency == other.resultSetConcurrency
+                && autoGeneratedKeys == other.autoGeneratedKeys && sql.equals(other.sql);
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+}
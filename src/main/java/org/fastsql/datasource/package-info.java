@@ -1,2 +1,9 @@
-//todo 两个数据源，一个普通，另一个使用连接池技术
-package org.fastsql.datasource;
\ No newline at end of file
+/**
+ * 数据源
+ * <p>
+ * {@link org.fastsql.datasource.FastDataSource}是FastSQL自带的连接池，
+ * 可以直接设置给{@link org.fastsql.SQLFactory#setDataSource(javax.sql.DataSource)}
+ *
+ * @author 陈佳志
+ */
+package org.fastsql.datasource;
@@ -0,0 +1,454 @@
+package org.fastsql.dto;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 按列存储的查询结果，用于统计报表等返回大量数值的查询
+ * <p>
+ * 整数列存为int[]/long[]，浮点列存为double[]，NULL记录在BitSet中；字符串列按字典编码，重复的值只保存一次。
+ * 其余类型(DECIMAL、日期等)按对象存储
+ */
+public class ColumnFrame {
+
+    private final List<Column> columns;
+
+    private final int rowCount;
+
+    private ColumnFrame(List<Column> columns, int rowCount) {
+        this.columns = columns;
+        this.rowCount = rowCount;
+    }
+
+    /**
+     * 读取ResultSet的全部行，列的类型由元数据决定，元数据只读取一次
+     */
+    public static ColumnFrame read(ResultSet rs) throws SQLException {
+        ResultSetMetaData metaData = rs.getMetaData();
+        int columnCount = metaData.getColumnCount();
+        List<Column> columns = new ArrayList<>(columnCount);
+        for (int i = 1; i <= columnCount; i++) {
+            columns.add(createColumn(JdbcUtils.lookupColumnName(metaData, i), metaData.getColumnType(i),
+                    metaData.getPrecision(i), metaData.getScale(i)));
+        }
+        Column[] array = columns.toArray(new Column[0]);
+        int rowCount = 0;
+        while (rs.next()) {
+            for (int i = 0; i < array.length; i++) {
+                array[i].append(rs, i + 1, rowCount);
+            }
+            rowCount++;
+        }
+        for (Column column : array) {
+            column.trim(rowCount);
+        }
+        return new ColumnFrame(columns, rowCount);
+    }
+
+    private static Column createColumn(String name, int sqlType, int precision, int scale) {
+        switch (sqlType) {
+            case Types.TINYINT:
+            case Types.SMALLINT:
+            case Types.INTEGER:
+                return new IntColumn(name);
+            case Types.BIGINT:
+                return new LongColumn(name);
+            case Types.REAL:
+            case Types.FLOAT:
+            case Types.DOUBLE:
+                return new DoubleColumn(name);
+            case Types.NUMERIC:
+            case Types.DECIMAL:
+                //Oracle未指定精度的NUMBER精度为0
+                if (scale == 0 && precision > 0 && precision <= 9) {
+                    return new IntColumn(name);
+                }
+                if (scale == 0 && precision > 0 && precision <= 18) {
+                    return new LongColumn(name);
+                }
+                return new ObjectColumn(name);
+            case Types.CHAR:
+            case Types.VARCHAR:
+            case Types.LONGVARCHAR:
+            case Types.NCHAR:
+            case Types.NVARCHAR:
+            case Types.LONGNVARCHAR:
+                return new StringColumn(name);
+            default:
+                return new ObjectColumn(name);
+        }
+    }
+
+    public int getRowCount() {
+        return rowCount;
+    }
+
+    public int getColumnCount() {
+        return columns.size();
+    }
+
+    public List<Column> getColumns() {
+        return columns;
+    }
+
+    /**
+     * @param index 从0开始
+     */
+    public Column getColumn(int index) {
+        return columns.get(index);
+    }
+
+    /**
+     * @param name 列名，不区分大小写
+     */
+    public Column getColumn(String name) {
+        for (Column column : columns) {
+            if (column.getName().equalsIgnoreCase(name)) {
+                return column;
+            }
+        }
+        throw new IllegalArgumentException("结果中没有列" + name);
+    }
+
+    public IntColumn getIntColumn(String name) {
+        return as(getColumn(name), IntColumn.class);
+    }
+
+    public LongColumn getLongColumn(String name) {
+        return as(getColumn(name), LongColumn.class);
+    }
+
+    public DoubleColumn getDoubleColumn(String name) {
+        return as(getColumn(name), DoubleColumn.class);
+    }
+
+    public StringColumn getStringColumn(String name) {
+        return as(getColumn(name), StringColumn.class);
+    }
+
+    private static <C extends Column> C as(Column column, Class<C> type) {
+        if (!type.isInstance(column)) {
+            throw new IllegalArgumentException("列" + column.getName() + "是" + column.getClass().getSimpleName()
+                    + "，不是" + type.getSimpleName());
+        }
+        return type.cast(column);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder names = new StringBuilder();
+        for (Column column : columns) {
+            if (names.length() > 0) {
+                names.append(", ");
+            }
+            names.append(column.getName()).append(':').append(column.getClass().getSimpleName());
+        }
+        return "ColumnFrame{" + "rowCount=" + rowCount + ", columns=[" + names + "]}";
+    }
+
+    /**
+     * 一列数据
+     */
+    public abstract static class Column {
+
+        private final String name;
+
+        Column(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public abstract boolean isNull(int row);
+
+        /**
+         * @return 装箱后的值，NULL时为null
+         */
+        public abstract Object getObject(int row);
+
+        abstract void append(ResultSet rs, int index, int row) throws SQLException;
+
+        abstract void trim(int size);
+
+        static int grow(int capacity, int row) {
+            return row < capacity ? capacity : Math.max(16, capacity + (capacity >> 1));
+        }
+    }
+
+    /**
+     * 有NULL标记的数值列
+     */
+    public abstract static class PrimitiveColumn extends Column {
+
+        /**
+         * 为NULL的行
+         */
+        final BitSet nulls = new BitSet();
+
+        PrimitiveColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return nulls.get(row);
+        }
+
+        /**
+         * @return NULL的行数
+         */
+        public int getNullCount() {
+            return nulls.cardinality();
+        }
+
+        void markNull(ResultSet rs, int row) throws SQLException {
+            if (rs.wasNull()) {
+                nulls.set(row);
+            }
+        }
+    }
+
+    public static final class IntColumn extends PrimitiveColumn {
+
+        private int[] values = new int[0];
+
+        IntColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void append(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = rs.getInt(index);
+            markNull(rs, row);
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        /**
+         * @return NULL时为0
+         */
+        public int getInt(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * @return 全部值，NULL为0，不要修改
+         */
+        public int[] values() {
+            return values;
+        }
+    }
+
+    public static final class LongColumn extends PrimitiveColumn {
+
+        private long[] values = new long[0];
+
+        LongColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void append(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = rs.getLong(index);
+            markNull(rs, row);
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        /**
+         * @return NULL时为0
+         */
+        public long getLong(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * @return 全部值，NULL为0，不要修改
+         */
+        public long[] values() {
+            return values;
+        }
+    }
+
+    public static final class DoubleColumn extends PrimitiveColumn {
+
+        private double[] values = new double[0];
+
+        DoubleColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void append(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = rs.getDouble(index);
+            markNull(rs, row);
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        /**
+         * @return NULL时为0
+         */
+        public double getDouble(int row) {
+            return values[row];
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return isNull(row) ? null : values[row];
+        }
+
+        /**
+         * @return 全部值，NULL为0，不要修改
+         */
+        public double[] values() {
+            return values;
+        }
+    }
+
+    /**
+     * 字典编码的字符串列，每行保存值在字典中的编号，NULL的编号为-1
+     */
+    public static final class StringColumn extends Column {
+
+        private int[] codes = new int[0];
+
+        private final List<String> dictionary = new ArrayList<>();
+
+        private Map<String, Integer> lookup = new HashMap<>();
+
+        StringColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void append(ResultSet rs, int index, int row) throws SQLException {
+            if (row == codes.length) {
+                codes = Arrays.copyOf(codes, grow(codes.length, row));
+            }
+            String value = rs.getString(index);
+            if (value == null) {
+                codes[row] = -1;
+                return;
+            }
+            Integer code = lookup.get(value);
+            if (code == null) {
+                code = dictionary.size();
+                dictionary.add(value);
+                lookup.put(value, code);
+            }
+            codes[row] = code;
+        }
+
+        @Override
+        void trim(int size) {
+            codes = Arrays.copyOf(codes, size);
+            //读取完成后不再需要反查
+            lookup = null;
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return codes[row] < 0;
+        }
+
+        public String getString(int row) {
+            int code = codes[row];
+            return code < 0 ? null : dictionary.get(code);
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return getString(row);
+        }
+
+        /**
+         * @return 值在字典中的编号，NULL时为-1
+         */
+        public int getCode(int row) {
+            return codes[row];
+        }
+
+        /**
+         * @return 不重复的值，按第一次出现的顺序
+         */
+        public List<String> getDictionary() {
+            return dictionary;
+        }
+    }
+
+    /**
+     * 其他类型的列
+     */
+    public static final class ObjectColumn extends Column {
+
+        private Object[] values = new Object[0];
+
+        ObjectColumn(String name) {
+            super(name);
+        }
+
+        @Override
+        void append(ResultSet rs, int index, int row) throws SQLException {
+            if (row == values.length) {
+                values = Arrays.copyOf(values, grow(values.length, row));
+            }
+            values[row] = JdbcUtils.getResultSetValue(rs, index);
+        }
+
+        @Override
+        void trim(int size) {
+            values = Arrays.copyOf(values, size);
+        }
+
+        @Override
+        public boolean isNull(int row) {
+            return values[row] == null;
+        }
+
+        @Override
+        public Object getObject(int row) {
+            return values[row];
+        }
+    }
+}
@@ -0,0 +1,55 @@
+package org.fastsql.dto;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * 键集分页的结果页
+ * <p>
+ * 下一页的位置由游标表示，把{@link #getNextCursor()}传给下一次查询即可；游标为null表示没有下一页
+ */
+public class KeysetPage<T> implements Iterable<T> {
+    /**
+     * 内容
+     */
+    private List<T> content;
+    /**
+     * 下一页的游标
+     */
+    private String nextCursor;
+
+    public KeysetPage(List<T> content, String nextCursor) {
+        this.content = content;
+        this.nextCursor = nextCursor;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean hasNext() {
+        return nextCursor != null;
+    }
+
+    @Override
+    public String toString() {
+        return "KeysetPage{" + "nextCursor=" + nextCursor + ", content=" + content + '}';
+    }
+
+    @Override
+    public Iterator<T> iterator() {
+        return content.iterator();
+    }
+}
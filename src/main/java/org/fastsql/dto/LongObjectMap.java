@@ -0,0 +1,186 @@
+package org.fastsql.dto;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * 以long为键的Map，键不装箱
+ * <p>
+ * 开放寻址，线性探测，用于按数字id批量查询的结果
+ */
+public class LongObjectMap<V> {
+
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private long[] keys;
+    private Object[] values;
+    private boolean[] used;
+    private int size;
+    private int mask;
+
+    public LongObjectMap() {
+        this(16);
+    }
+
+    /**
+     * @param expectedSize 预计的元素数量
+     */
+    public LongObjectMap(int expectedSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    private void allocate(int capacity) {
+        this.keys = new long[capacity];
+        this.values = new Object[capacity];
+        this.used = new boolean[capacity];
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * 键的初始位置
+     */
+    private int slotOf(long key) {
+        long hash = key * 0x9E3779B97F4A7C15L;
+        return (int) (hash ^ (hash >>> 32)) & mask;
+    }
+
+    private int indexOf(long key) {
+        int index = slotOf(key);
+        while (used[index] && keys[index] != key) {
+            index = (index + 1) & mask;
+        }
+        return index;
+    }
+
+    @SuppressWarnings("unchecked")
+    public V get(long key) {
+        int index = indexOf(key);
+        return used[index] ? (V) values[index] : null;
+    }
+
+    public boolean containsKey(long key) {
+        return used[indexOf(key)];
+    }
+
+    /**
+     * @return 原来的值，没有时为null
+     */
+    @SuppressWarnings("unchecked")
+    public V put(long key, V value) {
+        int index = indexOf(key);
+        if (used[index]) {
+            V old = (V) values[index];
+            values[index] = value;
+            return old;
+        }
+        used[index] = true;
+        keys[index] = key;
+        values[index] = value;
+        if (++size > keys.length * LOAD_FACTOR) {
+            rehash();
+        }
+        return null;
+    }
+
+    /**
+     * @return 被移除的值，没有时为null
+     */
+    @SuppressWarnings("unchecked")
+    public V remove(long key) {
+        int index = indexOf(key);
+        if (!used[index]) {
+            return null;
+        }
+        V old = (V) values[index];
+        //后面同一探测序列中的元素前移，填补空位，不使用墓碑
+        int hole = index;
+        for (int next = (hole + 1) & mask; used[next]; next = (next + 1) & mask) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - hole) & mask)) {
+                keys[hole] = keys[next];
+                values[hole] = values[next];
+                hole = next;
+            }
+        }
+        used[hole] = false;
+        values[hole] = null;
+        size--;
+        return old;
+    }
+
+    private void rehash() {
+        long[] oldKeys = keys;
+        Object[] oldValues = values;
+        boolean[] oldUsed = used;
+        allocate(oldKeys.length << 1);
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldUsed[i]) {
+                int index = indexOf(oldKeys[i]);
+                used[index] = true;
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /**
+     * 所有的键，顺序不确定
+     */
+    public long[] keys() {
+        long[] result = new long[size];
+        int n = 0;
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                result[n++] = keys[i];
+            }
+        }
+        return result;
+    }
+
+    /**
+     * 所有的值，顺序不确定
+     */
+    @SuppressWarnings("unchecked")
+    public List<V> values() {
+        List<V> result = new ArrayList<>(size);
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                result.add((V) values[i]);
+            }
+        }
+        return result;
+    }
+
+    @SuppressWarnings("unchecked")
+    public void forEach(Entry<? super V> action) {
+        for (int i = 0; i < keys.length; i++) {
+            if (used[i]) {
+                action.accept(keys[i], (V) values[i]);
+            }
+        }
+    }
+
+    public void clear() {
+        Arrays.fill(used, false);
+        Arrays.fill(values, null);
+        size = 0;
+    }
+
+    /**
+     * 遍历键值对
+     */
+    @FunctionalInterface
+    public interface Entry<V> {
+        void accept(long key, V value);
+    }
+}
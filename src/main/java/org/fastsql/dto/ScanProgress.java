@@ -0,0 +1,87 @@
+package org.fastsql.dto;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 分块扫描的进度，扫描过程中实时更新
+ */
+public class ScanProgress {
+
+    private final long startNanos = System.nanoTime();
+
+    private final AtomicLong rowCount = new AtomicLong();
+
+    private final AtomicLong chunkCount = new AtomicLong();
+
+    private final AtomicLong consumerNanos = new AtomicLong();
+
+    private final AtomicLong waitNanos = new AtomicLong();
+
+    private volatile long endNanos;
+
+    public void chunkConsumed(int rows, long consumerNanos) {
+        this.rowCount.addAndGet(rows);
+        this.chunkCount.incrementAndGet();
+        this.consumerNanos.addAndGet(consumerNanos);
+    }
+
+    public void waited(long nanos) {
+        this.waitNanos.addAndGet(nanos);
+    }
+
+    public void finish() {
+        this.endNanos = System.nanoTime();
+    }
+
+    /**
+     * @return 已处理的行数
+     */
+    public long getRowCount() {
+        return rowCount.get();
+    }
+
+    /**
+     * @return 已处理的块数
+     */
+    public long getChunkCount() {
+        return chunkCount.get();
+    }
+
+    /**
+     * @return 从开始到现在(或结束)的时间
+     */
+    public long getElapsedMillis() {
+        long end = endNanos != 0 ? endNanos : System.nanoTime();
+        return TimeUnit.NANOSECONDS.toMillis(end - startNanos);
+    }
+
+    /**
+     * @return 处理数据花费的时间
+     */
+    public long getConsumerMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(consumerNanos.get());
+    }
+
+    /**
+     * @return 处理方等待查询结果的时间，接近0说明瓶颈在处理方
+     */
+    public long getWaitMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(waitNanos.get());
+    }
+
+    public boolean isFinished() {
+        return endNanos != 0;
+    }
+
+    @Override
+    public String toString() {
+        return "ScanProgress{" +
+                "rows=" + getRowCount() +
+                ", chunks=" + getChunkCount() +
+                ", elapsedMillis=" + getElapsedMillis() +
+                ", consumerMillis=" + getConsumerMillis() +
+                ", waitMillis=" + getWaitMillis() +
+                '}';
+    }
+}
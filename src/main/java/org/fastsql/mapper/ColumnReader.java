@@ -0,0 +1,12 @@
+package org.fastsql.mapper;
+
+import java.sql.ResultSet;
+import java.sql.SQLException;
+
+/**
+ * 按列序号从结果集读取一个值
+ */
+@FunctionalInterface
+public interface ColumnReader {
+    Object read(ResultSet rs, int index) throws SQLException;
+}
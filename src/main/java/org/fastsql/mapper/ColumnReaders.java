@@ -0,0 +1,131 @@
+package org.fastsql.mapper;
+
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Blob;
+import java.sql.Clob;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.OffsetDateTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.UUID;
+
+/**
+ * 按属性类型选择对应的ResultSet读取方法，包括java.time类型
+ */
+public final class ColumnReaders {
+
+    private ColumnReaders() {
+    }
+
+    @SuppressWarnings({"unchecked", "rawtypes"})
+    public static ColumnReader forType(Class<?> type) {
+        if (type == String.class) {
+            return ResultSet::getString;
+        } else if (type == Integer.class || type == int.class) {
+            return (rs, i) -> {
+                int value = rs.getInt(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Long.class || type == long.class) {
+            return (rs, i) -> {
+                long value = rs.getLong(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Double.class || type == double.class) {
+            return (rs, i) -> {
+                double value = rs.getDouble(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Float.class || type == float.class) {
+            return (rs, i) -> {
+                float value = rs.getFloat(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Short.class || type == short.class) {
+            return (rs, i) -> {
+                short value = rs.getShort(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Byte.class || type == byte.class) {
+            return (rs, i) -> {
+                byte value = rs.getByte(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == Boolean.class || type == boolean.class) {
+            return (rs, i) -> {
+                boolean value = rs.getBoolean(i);
+                return rs.wasNull() ? null : value;
+            };
+        } else if (type == BigDecimal.class) {
+            return ResultSet::getBigDecimal;
+        } else if (type == BigInteger.class) {
+            return (rs, i) -> {
+                BigDecimal value = rs.getBigDecimal(i);
+                return value == null ? null : value.toBigInteger();
+            };
+        } else if (type == java.sql.Date.class) {
+            return ResultSet::getDate;
+        } else if (type == Time.class) {
+            return ResultSet::getTime;
+        } else if (type == Timestamp.class || type == java.util.Date.class) {
+            return ResultSet::getTimestamp;
+        } else if (type == LocalDate.class) {
+            return (rs, i) -> {
+                java.sql.Date value = rs.getDate(i);
+                return value == null ? null : value.toLocalDate();
+            };
+        } else if (type == LocalDateTime.class) {
+            return (rs, i) -> {
+                Timestamp value = rs.getTimestamp(i);
+                return value == null ? null : value.toLocalDateTime();
+            };
+        } else if (type == LocalTime.class) {
+            return (rs, i) -> {
+                Time value = rs.getTime(i);
+                return value == null ? null : value.toLocalTime();
+            };
+        } else if (type == Instant.class) {
+            return (rs, i) -> {
+                Timestamp value = rs.getTimestamp(i);
+                return value == null ? null : value.toInstant();
+            };
+        } else if (type == OffsetDateTime.class) {
+            return (rs, i) -> {
+                Timestamp value = rs.getTimestamp(i);
+                return value == null ? null : value.toLocalDateTime().atZone(ZoneId.systemDefault()).toOffsetDateTime();
+            };
+        } else if (type == ZonedDateTime.class) {
+            return (rs, i) -> {
+                Timestamp value = rs.getTimestamp(i);
+                return value == null ? null : value.toLocalDateTime().atZone(ZoneId.systemDefault());
+            };
+        } else if (type == byte[].class) {
+            return ResultSet::getBytes;
+        } else if (type == Blob.class) {
+            return ResultSet::getBlob;
+        } else if (type == Clob.class) {
+            return ResultSet::getClob;
+        } else if (type == UUID.class) {
+            return (rs, i) -> {
+                Object value = rs.getObject(i);
+                return value == null || value instanceof UUID ? value : UUID.fromString(value.toString());
+            };
+        } else if (type.isEnum()) {
+            return (rs, i) -> {
+                String value = rs.getString(i);
+                return value == null ? null : Enum.valueOf((Class<Enum>) type, value.trim());
+            };
+        } else {
+            return (rs, i) -> JdbcUtils.getResultSetValue(rs, i, type);
+        }
+    }
+}
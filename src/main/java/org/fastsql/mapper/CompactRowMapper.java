@@ -0,0 +1,187 @@
+package org.fastsql.mapper;
+
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.io.Serializable;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * 把一行映射为只读的Map，代替ColumnMapRowMapper
+ * <p>
+ * 同一结果集的所有行共用一份列名索引，每行只保存一个Object[]，不再为每行创建LinkedCaseInsensitiveMap及其Entry。
+ * 列名不区分大小写，重名的列与ColumnMapRowMapper一致，后面的列覆盖前面的列。
+ * 行可以序列化，值需要是可序列化的类型。
+ * 一个实例只能用于一次查询
+ */
+public class CompactRowMapper implements RowMapper<Map<String, Object>> {
+
+    private ColumnIndex columnIndex;
+
+    @Override
+    public Map<String, Object> mapRow(ResultSet rs, int rowNum) throws SQLException {
+        if (columnIndex == null) {
+            columnIndex = ColumnIndex.of(rs.getMetaData());
+        }
+        int[] columns = columnIndex.columns;
+        Object[] values = new Object[columns.length];
+        for (int i = 0; i < columns.length; i++) {
+            values[i] = JdbcUtils.getResultSetValue(rs, columns[i]);
+        }
+        return new CompactRow(columnIndex, values);
+    }
+
+    /**
+     * @return 是否是本类生成的只读行
+     */
+    public static boolean isCompactRow(Object value) {
+        return value instanceof CompactRow;
+    }
+
+    /**
+     * 列名到下标的索引，创建后不再修改
+     */
+    static final class ColumnIndex implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        /**
+         * 去重后的列名，按第一次出现的顺序
+         */
+        private final String[] names;
+
+        /**
+         * 每个列名读取的列序号，从1开始
+         */
+        private final int[] columns;
+
+        private final Map<String, Integer> exact;
+
+        private final Map<String, Integer> lowerCase;
+
+        private ColumnIndex(String[] names, int[] columns) {
+            this.names = names;
+            this.columns = columns;
+            this.exact = new HashMap<>(names.length * 2);
+            this.lowerCase = new HashMap<>(names.length * 2);
+            for (int i = 0; i < names.length; i++) {
+                exact.put(names[i], i);
+                lowerCase.put(names[i].toLowerCase(Locale.ROOT), i);
+            }
+        }
+
+        static ColumnIndex of(ResultSetMetaData metaData) throws SQLException {
+            int columnCount = metaData.getColumnCount();
+            List<String> names = new ArrayList<>(columnCount);
+            Map<String, Integer> positions = new HashMap<>(columnCount * 2);
+            int[] columns = new int[columnCount];
+            for (int i = 1; i <= columnCount; i++) {
+                String name = JdbcUtils.lookupColumnName(metaData, i);
+                Integer position = positions.get(name.toLowerCase(Locale.ROOT));
+                if (position == null) {
+                    position = names.size();
+                    positions.put(name.toLowerCase(Locale.ROOT), position);
+                    names.add(name);
+                }
+                columns[position] = i;
+            }
+            return new ColumnIndex(names.toArray(new String[0]), Arrays.copyOf(columns, names.size()));
+        }
+
+        int indexOf(Object key) {
+            if (!(key instanceof String)) {
+                return -1;
+            }
+            Integer index = exact.get(key);
+            if (index == null) {
+                index = lowerCase.get(((String) key).toLowerCase(Locale.ROOT));
+            }
+            return index == null ? -1 : index;
+        }
+    }
+
+    /**
+     * 一行数据，不能修改
+     */
+    static final class CompactRow extends AbstractMap<String, Object> implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private final ColumnIndex columnIndex;
+
+        private final Object[] values;
+
+        private transient Set<Entry<String, Object>> entrySet;
+
+        CompactRow(ColumnIndex columnIndex, Object[] values) {
+            this.columnIndex = columnIndex;
+            this.values = values;
+        }
+
+        @Override
+        public Object get(Object key) {
+            int index = columnIndex.indexOf(key);
+            return index < 0 ? null : values[index];
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return columnIndex.indexOf(key) >= 0;
+        }
+
+        @Override
+        public int size() {
+            return values.length;
+        }
+
+        @Override
+        public Set<Entry<String, Object>> entrySet() {
+            if (entrySet == null) {
+                entrySet = new EntrySet();
+            }
+            return entrySet;
+        }
+
+        private final class EntrySet extends AbstractSet<Entry<String, Object>> {
+
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new Iterator<Entry<String, Object>>() {
+                    private int next;
+
+                    @Override
+                    public boolean hasNext() {
+                        return next < values.length;
+                    }
+
+                    @Override
+                    public Entry<String, Object> next() {
+                        if (next >= values.length) {
+                            throw new NoSuchElementException();
+                        }
+                        int index = next++;
+                        return new SimpleImmutableEntry<>(columnIndex.names[index], values[index]);
+                    }
+                };
+            }
+
+            @Override
+            public int size() {
+                return values.length;
+            }
+        }
+    }
+}
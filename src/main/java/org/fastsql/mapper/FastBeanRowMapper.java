@@ -0,0 +1,190 @@
+package org.fastsql.mapper;
+
+import org.fastsql.util.EntityMetadata;
+import org.fastsql.util.PropertyMetadata;
+import org.fastsql.util.StringExtUtils;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import java.lang.ref.WeakReference;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 代替BeanPropertyRowMapper的高性能映射器
+ * <p>
+ * setter来自{@link EntityMetadata}，每个类只通过LambdaMetafactory生成一次直接调用的函数；
+ * 每种结果集列布局只匹配一次列名，之后按列序号使用对应类型的ResultSet方法读取。
+ * 实例线程安全，使用{@link #of(Class)}获取缓存的实例
+ */
+public class FastBeanRowMapper<T> implements RowMapper<T> {
+
+    /**
+     * 映射器挂在类本身上，不阻止类加载器被回收
+     */
+    private static final ClassValue<FastBeanRowMapper<?>> MAPPER_CACHE = new ClassValue<FastBeanRowMapper<?>>() {
+        @Override
+        protected FastBeanRowMapper<?> computeValue(Class<?> type) {
+            return new FastBeanRowMapper<>(type);
+        }
+    };
+
+    /**
+     * 每个类缓存的列布局数量上限，超过后清空重建
+     */
+    private static final int MAX_LAYOUTS = 256;
+
+    private final EntityMetadata<T> metadata;
+
+    /**
+     * 小写的属性名、下划线属性名和列名 -> 属性
+     */
+    private final Map<String, PropertyMetadata> writers = new HashMap<>();
+
+    /**
+     * 列布局 -> 列绑定
+     */
+    private final ConcurrentHashMap<String, ColumnBinding[]> layouts = new ConcurrentHashMap<>();
+
+    /**
+     * 当前线程正在映射的结果集及其列绑定
+     */
+    private final ThreadLocal<LayoutHolder> currentLayout = ThreadLocal.withInitial(LayoutHolder::new);
+
+    @SuppressWarnings("unchecked")
+    public static <T> FastBeanRowMapper<T> of(Class<T> mappedClass) {
+        return (FastBeanRowMapper<T>) MAPPER_CACHE.get(mappedClass);
+    }
+
+    private FastBeanRowMapper(Class<T> mappedClass) {
+        this.metadata = EntityMetadata.of(mappedClass);
+        for (PropertyMetadata property : metadata.getProperties().values()) {
+            if (!property.isWritable()) {
+                continue;
+            }
+            writers.putIfAbsent(property.getName().toLowerCase(), property);
+            writers.putIfAbsent(StringExtUtils.camelToUnderline(property.getName()).toLowerCase(), property);
+            writers.putIfAbsent(property.getColumnName().toLowerCase(), property);
+        }
+    }
+
+    public Class<T> getMappedClass() {
+        return metadata.getEntityClass();
+    }
+
+    @Override
+    public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+        ColumnBinding[] bindings = bindings(rs);
+        T bean = metadata.newInstance();
+        for (ColumnBinding binding : bindings) {
+            binding.bind(rs, bean);
+        }
+        return bean;
+    }
+
+    /**
+     * 同一个结果集只解析一次列布局
+     */
+    private ColumnBinding[] bindings(ResultSet rs) throws SQLException {
+        LayoutHolder holder = currentLayout.get();
+        if (holder.resultSet == null || holder.resultSet.get() != rs) {
+            holder.resultSet = new WeakReference<>(rs);
+            holder.bindings = resolveLayout(rs.getMetaData());
+        }
+        return holder.bindings;
+    }
+
+    private ColumnBinding[] resolveLayout(ResultSetMetaData metaData) throws SQLException {
+        int columnCount = metaData.getColumnCount();
+        String[] columns = new String[columnCount];
+        StringBuilder key = new StringBuilder();
+        for (int i = 1; i <= columnCount; i++) {
+            columns[i - 1] = JdbcUtils.lookupColumnName(metaData, i).replaceAll(" ", "").toLowerCase();
+            key.append(columns[i - 1]).append(',');
+        }
+        ColumnBinding[] bindings = layouts.get(key.toString());
+        if (bindings != null) {
+            return bindings;
+        }
+        ColumnBinding[] resolved = new ColumnBinding[columnCount];
+        int size = 0;
+        for (int i = 1; i <= columnCount; i++) {
+            PropertyMetadata property = writers.get(columns[i - 1]);
+            if (property != null) {
+                resolved[size++] = bindingFor(property, i);
+            }
+        }
+        bindings = new ColumnBinding[size];
+        System.arraycopy(resolved, 0, bindings, 0, size);
+        if (layouts.size() >= MAX_LAYOUTS) {
+            layouts.clear();
+        }
+        layouts.put(key.toString(), bindings);
+        return bindings;
+    }
+
+    /**
+     * 一个属性对应的列绑定，基本类型使用不装箱的setter
+     */
+    private static ColumnBinding bindingFor(PropertyMetadata property, int index) {
+        ObjIntConsumer<Object> intSetter = property.getIntSetter();
+        if (intSetter != null) {
+            return (rs, bean) -> {
+                int value = rs.getInt(index);
+                if (!rs.wasNull()) {
+                    intSetter.accept(bean, value);
+                }
+            };
+        }
+        ObjLongConsumer<Object> longSetter = property.getLongSetter();
+        if (longSetter != null) {
+            return (rs, bean) -> {
+                long value = rs.getLong(index);
+                if (!rs.wasNull()) {
+                    longSetter.accept(bean, value);
+                }
+            };
+        }
+        ObjDoubleConsumer<Object> doubleSetter = property.getDoubleSetter();
+        if (doubleSetter != null) {
+            return (rs, bean) -> {
+                double value = rs.getDouble(index);
+                if (!rs.wasNull()) {
+                    doubleSetter.accept(bean, value);
+                }
+            };
+        }
+        ColumnReader reader = ColumnReaders.forType(property.getColumnType());
+        if (property.getConverter() != null) {
+            return (rs, bean) -> property.setColumnValue(bean, reader.read(rs, index));
+        }
+        boolean primitive = property.getType().isPrimitive();
+        return (rs, bean) -> {
+            Object value = reader.read(rs, index);
+            //基本类型遇到NULL时保留默认值
+            if (value != null || !primitive) {
+                property.set(bean, value);
+            }
+        };
+    }
+
+    /**
+     * 读取一列并写入对象
+     */
+    @FunctionalInterface
+    private interface ColumnBinding {
+        void bind(ResultSet rs, Object bean) throws SQLException;
+    }
+
+    private static class LayoutHolder {
+        WeakReference<ResultSet> resultSet;
+        ColumnBinding[] bindings;
+    }
+}
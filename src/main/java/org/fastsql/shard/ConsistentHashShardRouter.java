@@ -0,0 +1,102 @@
+package org.fastsql.shard;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * 一致性哈希分片
+ * <p>
+ * 每个分片在哈希环上有若干个虚拟节点，分片键落在顺时针方向的第一个节点上。
+ * 增加一个分片时只有约1/N的数据需要迁移
+ */
+public class ConsistentHashShardRouter implements ShardRouter {
+
+    public static final int DEFAULT_VIRTUAL_NODES = 160;
+
+    private final int virtualNodes;
+
+    private volatile Ring ring;
+
+    public ConsistentHashShardRouter() {
+        this(DEFAULT_VIRTUAL_NODES);
+    }
+
+    /**
+     * @param virtualNodes 每个分片的虚拟节点数，越多分布越均匀
+     */
+    public ConsistentHashShardRouter(int virtualNodes) {
+        if (virtualNodes < 1) {
+            throw new IllegalArgumentException("虚拟节点数必须大于0");
+        }
+        this.virtualNodes = virtualNodes;
+    }
+
+    @Override
+    public int route(Object shardKey, int shardCount) {
+        Ring ring = this.ring;
+        if (ring == null || ring.shardCount != shardCount) {
+            ring = new Ring(shardCount, virtualNodes);
+            this.ring = ring;
+        }
+        return ring.shardOf(hash(shardKey));
+    }
+
+    /**
+     * 整数按值计算，其他类型按toString()的UTF-8字节计算，与JVM的hashCode无关
+     */
+    static long hash(Object key) {
+        if (key instanceof Long || key instanceof Integer || key instanceof Short || key instanceof Byte) {
+            return mix(((Number) key).longValue());
+        }
+        //FNV-1a
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.toString().getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        return mix(hash);
+    }
+
+    private static long mix(long x) {
+        x = (x ^ (x >>> 30)) * 0xbf58476d1ce4e5b9L;
+        x = (x ^ (x >>> 27)) * 0x94d049bb133111ebL;
+        return x ^ (x >>> 31);
+    }
+
+    /**
+     * 按哈希值排序的虚拟节点
+     */
+    private static final class Ring {
+        final int shardCount;
+        final long[] points;
+        final int[] shards;
+
+        Ring(int shardCount, int virtualNodes) {
+            if (shardCount < 1) {
+                throw new IllegalArgumentException("分片数量必须大于0");
+            }
+            this.shardCount = shardCount;
+            long[][] nodes = new long[shardCount * virtualNodes][];
+            for (int shard = 0; shard < shardCount; shard++) {
+                for (int v = 0; v < virtualNodes; v++) {
+                    nodes[shard * virtualNodes + v] = new long[]{mix(((long) shard << 32) | v), shard};
+                }
+            }
+            Arrays.sort(nodes, (a, b) -> Long.compare(a[0], b[0]));
+            this.points = new long[nodes.length];
+            this.shards = new int[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                points[i] = nodes[i][0];
+                shards[i] = (int) nodes[i][1];
+            }
+        }
+
+        int shardOf(long hash) {
+            int index = Arrays.binarySearch(points, hash);
+            if (index < 0) {
+                index = -index - 1;
+            }
+            return shards[index == points.length ? 0 : index];
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.fastsql.shard;
+
+/**
+ * 把分片键映射到分片
+ */
+@FunctionalInterface
+public interface ShardRouter {
+
+    /**
+     * @param shardKey   分片键的值，不为null
+     * @param shardCount 分片数量
+     * @return 分片下标，0到shardCount-1
+     */
+    int route(Object shardKey, int shardCount);
+}
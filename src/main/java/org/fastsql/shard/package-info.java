@@ -0,0 +1,7 @@
+/**
+ * 分片
+ * <p>
+ * {@link org.fastsql.dao.ShardedBaseDAO}按{@link org.fastsql.shard.ShardKey}标注的字段或主键，
+ * 通过{@link org.fastsql.shard.ShardRouter}把数据分配到多个数据库
+ */
+package org.fastsql.shard;
@@ -0,0 +1,226 @@
+package org.fastsql.util;
+
+import org.fastsql.FastSQLException;
+import org.springframework.beans.BeanUtils;
+
+import java.lang.invoke.CallSite;
+import java.lang.invoke.LambdaMetafactory;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+import java.util.function.Supplier;
+
+/**
+ * 生成直接调用构造器、getter、setter的函数
+ * <p>
+ * 优先使用LambdaMetafactory生成与手写代码等价的调用。生成的类由FastSQL的类加载器解析，
+ * 涉及的类由子类加载器加载(如DevTools的RestartClassLoader、Web容器)时，生成本身不会出错，调用时才抛出NoClassDefFoundError，
+ * 因此这种情况以及方法不可访问时直接使用MethodHandle调用
+ */
+public final class Accessors {
+
+    private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+
+    private Accessors() {
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> Supplier<T> constructor(Class<T> cls) {
+        MethodHandle handle;
+        try {
+            handle = LOOKUP.findConstructor(cls, MethodType.methodType(void.class));
+        } catch (NoSuchMethodException | IllegalAccessException e) {
+            return () -> BeanUtils.instantiateClass(cls);
+        }
+        try {
+            checkVisible(cls);
+            CallSite site = LambdaMetafactory.metafactory(LOOKUP, "get",
+                    MethodType.methodType(Supplier.class),
+                    MethodType.methodType(Object.class),
+                    handle,
+                    MethodType.methodType(cls));
+            return (Supplier<T>) site.getTarget().invoke();
+        } catch (Throwable e) {
+            MethodHandle generic = handle.asType(MethodType.methodType(Object.class));
+            return () -> {
+                try {
+                    return (T) generic.invokeExact();
+                } catch (Throwable t) {
+                    throw new FastSQLException("实例化" + cls.getName() + "失败:" + t);
+                }
+            };
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static Function<Object, Object> getter(Method readMethod) {
+        MethodHandle handle = unreflect(readMethod);
+        try {
+            checkVisible(readMethod.getDeclaringClass(), readMethod.getReturnType());
+            return (Function<Object, Object>) metafactory("apply", Function.class,
+                    MethodType.methodType(Object.class, Object.class), handle,
+                    MethodType.methodType(MethodType.methodType(readMethod.getReturnType()).wrap().returnType(),
+                            readMethod.getDeclaringClass()));
+        } catch (Throwable e) {
+            return genericGetter(handle, readMethod.toString());
+        }
+    }
+
+    public static Function<Object, Object> getter(Field field) {
+        makeAccessible(field);
+        try {
+            return genericGetter(LOOKUP.unreflectGetter(field), field.toString());
+        } catch (IllegalAccessException e) {
+            throw new FastSQLException("无法访问" + field + ":" + e.getMessage());
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public static BiConsumer<Object, Object> setter(Method writeMethod) {
+        MethodHandle handle = unreflect(writeMethod);
+        try {
+            checkVisible(writeMethod.getDeclaringClass(), writeMethod.getParameterTypes()[0]);
+            return (BiConsumer<Object, Object>) metafactory("accept", BiConsumer.class,
+                    MethodType.methodType(void.class, Object.class, Object.class), handle,
+                    MethodType.methodType(void.class, writeMethod.getDeclaringClass(),
+                            MethodType.methodType(writeMethod.getParameterTypes()[0]).wrap().returnType()));
+        } catch (Throwable e) {
+            return genericSetter(handle, writeMethod.toString());
+        }
+    }
+
+    public static BiConsumer<Object, Object> setter(Field field) {
+        makeAccessible(field);
+        try {
+            return genericSetter(LOOKUP.unreflectSetter(field), field.toString());
+        } catch (IllegalAccessException e) {
+            throw new FastSQLException("无法访问" + field + ":" + e.getMessage());
+        }
+    }
+
+    /**
+     * int参数的setter，无法生成时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static ObjIntConsumer<Object> intSetter(Method writeMethod) {
+        try {
+            checkVisible(writeMethod.getDeclaringClass());
+            return (ObjIntConsumer<Object>) metafactory("accept", ObjIntConsumer.class,
+                    MethodType.methodType(void.class, Object.class, int.class), unreflect(writeMethod),
+                    MethodType.methodType(void.class, writeMethod.getDeclaringClass(), int.class));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * long参数的setter，无法生成时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static ObjLongConsumer<Object> longSetter(Method writeMethod) {
+        try {
+            checkVisible(writeMethod.getDeclaringClass());
+            return (ObjLongConsumer<Object>) metafactory("accept", ObjLongConsumer.class,
+                    MethodType.methodType(void.class, Object.class, long.class), unreflect(writeMethod),
+                    MethodType.methodType(void.class, writeMethod.getDeclaringClass(), long.class));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    /**
+     * double参数的setter，无法生成时返回null
+     */
+    @SuppressWarnings("unchecked")
+    public static ObjDoubleConsumer<Object> doubleSetter(Method writeMethod) {
+        try {
+            checkVisible(writeMethod.getDeclaringClass());
+            return (ObjDoubleConsumer<Object>) metafactory("accept", ObjDoubleConsumer.class,
+                    MethodType.methodType(void.class, Object.class, double.class), unreflect(writeMethod),
+                    MethodType.methodType(void.class, writeMethod.getDeclaringClass(), double.class));
+        } catch (Throwable e) {
+            return null;
+        }
+    }
+
+    private static Object metafactory(String name, Class<?> functionType, MethodType samType, MethodHandle handle,
+                                      MethodType instantiatedType) throws Throwable {
+        CallSite site = LambdaMetafactory.metafactory(LOOKUP, name,
+                MethodType.methodType(functionType), samType, handle, instantiatedType);
+        return site.getTarget().invoke();
+    }
+
+    /**
+     * 类不能从FastSQL的类加载器解析时抛出异常，由调用方退回到MethodHandle
+     */
+    private static void checkVisible(Class<?>... classes) {
+        for (Class<?> cls : classes) {
+            if (!isVisible(cls)) {
+                throw new FastSQLException(cls.getName() + "不是由FastSQL的类加载器或其父加载器加载的");
+            }
+        }
+    }
+
+    private static boolean isVisible(Class<?> cls) {
+        while (cls.isArray()) {
+            cls = cls.getComponentType();
+        }
+        ClassLoader target = cls.getClassLoader();
+        if (target == null) {
+            return true;
+        }
+        for (ClassLoader loader = Accessors.class.getClassLoader(); loader != null; loader = loader.getParent()) {
+            if (loader == target) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static Function<Object, Object> genericGetter(MethodHandle handle, String description) {
+        MethodHandle generic = handle.asType(MethodType.methodType(Object.class, Object.class));
+        return bean -> {
+            try {
+                return generic.invokeExact(bean);
+            } catch (Throwable t) {
+                throw new FastSQLException("调用" + description + "失败:" + t);
+            }
+        };
+    }
+
+    private static BiConsumer<Object, Object> genericSetter(MethodHandle handle, String description) {
+        MethodHandle generic = handle.asType(MethodType.methodType(void.class, Object.class, Object.class));
+        return (bean, value) -> {
+            try {
+                generic.invokeExact(bean, value);
+            } catch (Throwable t) {
+                throw new FastSQLException("调用" + description + "失败:" + t);
+            }
+        };
+    }
+
+    private static MethodHandle unreflect(Method method) {
+        if (!Modifier.isPublic(method.getModifiers()) || !Modifier.isPublic(method.getDeclaringClass().getModifiers())) {
+            method.setAccessible(true);
+        }
+        try {
+            return LOOKUP.unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new FastSQLException("无法访问" + method + ":" + e.getMessage());
+        }
+    }
+
+    private static void makeAccessible(Field field) {
+        if (!Modifier.isPublic(field.getModifiers()) || !Modifier.isPublic(field.getDeclaringClass().getModifiers())) {
+            field.setAccessible(true);
+        }
+    }
+}
@@ -0,0 +1,169 @@
+package org.fastsql.util;
+
+import org.fastsql.dto.ScanProgress;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.BiConsumer;
+import java.util.stream.Stream;
+
+/**
+ * 按块处理流式查询的结果
+ * <p>
+ * 读取线程从游标读取并映射下一块时，调用线程处理当前块，两块缓冲交替使用，内存占用不超过两块。
+ * 传给处理方的List在处理方返回后被清空并复用，不能保存它的引用。
+ * 读取线程来自{@link SharedExecutor}，线程都在忙时在调用线程交替读取和处理，不再重叠。
+ * 调用线程处于事务中时同样在调用线程读取：事务的连接绑定在调用线程上，不能同时被另一个线程使用。
+ * MySQL流式读取期间同一连接不能执行其他语句，处理方的写入应使用其他连接
+ */
+public final class ChunkScanner {
+
+    /**
+     * 读取结束的标记
+     */
+    private static final List<Object> END = Collections.emptyList();
+
+    private ChunkScanner() {
+    }
+
+    /**
+     * 按块处理rows，处理完或出错时关闭rows
+     *
+     * @param consumer 在调用线程中执行，参数为当前块和实时进度
+     */
+    @SuppressWarnings("unchecked")
+    public static <T> ScanProgress forEachChunk(Stream<T> rows, int chunkSize, BiConsumer<List<T>, ScanProgress> consumer) {
+        if (chunkSize < 1) {
+            rows.close();
+            throw new IllegalArgumentException("chunkSize必须大于0");
+        }
+        final ScanProgress progress = new ScanProgress();
+        final Iterator<T> iterator;
+        try {
+            iterator = rows.iterator();
+        } catch (RuntimeException | Error e) {
+            rows.close();
+            throw e;
+        }
+        if (TransactionCallbacks.inTransaction()) {
+            return forEachChunkInCurrentThread(rows, iterator, chunkSize, consumer, progress);
+        }
+        final BlockingQueue<List<T>> free = new ArrayBlockingQueue<>(2);
+        final BlockingQueue<List<T>> full = new ArrayBlockingQueue<>(3);
+        free.add(new ArrayList<>(chunkSize));
+        free.add(new ArrayList<>(chunkSize));
+        final Throwable[] readError = new Throwable[1];
+        final AtomicBoolean cancelled = new AtomicBoolean();
+        final CountDownLatch readerDone = new CountDownLatch(1);
+
+        final boolean started = SharedExecutor.tryExecute(() -> {
+            try {
+                List<T> chunk = free.take();
+                while (!cancelled.get() && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                    if (chunk.size() == chunkSize) {
+                        full.put(chunk);
+                        chunk = free.take();
+                    }
+                }
+                if (!chunk.isEmpty() && !cancelled.get()) {
+                    full.put(chunk);
+                }
+            } catch (Throwable e) {
+                readError[0] = e;
+            } finally {
+                full.offer((List<T>) END);
+                readerDone.countDown();
+            }
+        });
+        if (!started) {
+            return forEachChunkInCurrentThread(rows, iterator, chunkSize, consumer, progress);
+        }
+
+        try {
+            while (true) {
+                long waitStart = System.nanoTime();
+                List<T> chunk = full.take();
+                progress.waited(System.nanoTime() - waitStart);
+                if (chunk == END) {
+                    break;
+                }
+                long consumerStart = System.nanoTime();
+                consumer.accept(chunk, progress);
+                progress.chunkConsumed(chunk.size(), System.nanoTime() - consumerStart);
+                chunk.clear();
+                free.put(chunk);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeException("分块扫描被中断", e);
+        } finally {
+            //处理方出错时让读取线程尽快结束，并在它退出后再关闭游标
+            cancelled.set(true);
+            free.offer(new ArrayList<>(0));
+            awaitQuietly(readerDone);
+            rows.close();
+            progress.finish();
+        }
+        if (readError[0] instanceof RuntimeException) {
+            throw (RuntimeException) readError[0];
+        }
+        if (readError[0] instanceof Error) {
+            throw (Error) readError[0];
+        }
+        if (readError[0] != null) {
+            throw new RuntimeException(readError[0]);
+        }
+        return progress;
+    }
+
+    /**
+     * 在调用线程交替读取和处理，只使用一块缓冲
+     */
+    private static <T> ScanProgress forEachChunkInCurrentThread(Stream<T> rows, Iterator<T> iterator, int chunkSize,
+                                                               BiConsumer<List<T>, ScanProgress> consumer,
+                                                               ScanProgress progress) {
+        final List<T> chunk = new ArrayList<>(chunkSize);
+        try {
+            while (true) {
+                long readStart = System.nanoTime();
+                while (chunk.size() < chunkSize && iterator.hasNext()) {
+                    chunk.add(iterator.next());
+                }
+                progress.waited(System.nanoTime() - readStart);
+                if (chunk.isEmpty()) {
+                    break;
+                }
+                long consumerStart = System.nanoTime();
+                consumer.accept(chunk, progress);
+                progress.chunkConsumed(chunk.size(), System.nanoTime() - consumerStart);
+                chunk.clear();
+            }
+        } finally {
+            rows.close();
+            progress.finish();
+        }
+        return progress;
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        boolean interrupted = false;
+        while (true) {
+            try {
+                latch.await();
+                break;
+            } catch (InterruptedException e) {
+                interrupted = true;
+            }
+        }
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,162 @@
+package org.fastsql.util;
+
+import org.fastsql.config.DatabaseType;
+import org.springframework.jdbc.core.PreparedStatementSetter;
+import org.springframework.jdbc.core.namedparam.EmptySqlParameterSource;
+import org.springframework.jdbc.core.namedparam.MapSqlParameterSource;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * 不需要精确COUNT(*)时的计数：按统计信息或执行计划估计行数，以及只判断是否存在
+ */
+public class CountTemplate {
+
+    private static final Pattern PLAN_ROWS = Pattern.compile("\"Plan Rows\"\\s*:\\s*([0-9.eE+]+)");
+
+    private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
+
+    public CountTemplate(NamedParameterJdbcTemplate template) {
+        this.namedParameterJdbcTemplate = template;
+    }
+
+    /**
+     * 按数据库的统计信息估计表的行数，不扫描表
+     * <p>
+     * PostgreSQL按pg_class的reltuples和当前的页数推算，MySQL读取information_schema.TABLES.TABLE_ROWS，Oracle读取NUM_ROWS
+     *
+     * @param tableName 表名，可以带schema
+     * @return 没有统计信息时返回null
+     */
+    public Long estimateTableRows(String tableName, DatabaseType databaseType) {
+        int dot = tableName.indexOf('.');
+        String schema = dot < 0 ? null : tableName.substring(0, dot);
+        String table = tableName.substring(dot + 1);
+        MapSqlParameterSource paramSource = new MapSqlParameterSource()
+                .addValue("tableName", tableName)
+                .addValue("schema", schema)
+                .addValue("table", table);
+        List<Map<String, Object>> rows;
+        if (Objects.equals(databaseType, DatabaseType.POSTGRESQL)) {
+            rows = namedParameterJdbcTemplate.queryForList(
+                    "SELECT reltuples, relpages, pg_relation_size(oid) / current_setting('block_size')::integer AS pages " +
+                            "FROM pg_class WHERE oid = CAST(CAST(:tableName AS text) AS regclass)",
+                    paramSource);
+            if (rows.isEmpty()) {
+                return null;
+            }
+            double reltuples = ((Number) rows.get(0).get("reltuples")).doubleValue();
+            double relpages = ((Number) rows.get(0).get("relpages")).doubleValue();
+            double pages = ((Number) rows.get(0).get("pages")).doubleValue();
+            if (reltuples < 0) {
+                //从未ANALYZE
+                return null;
+            }
+            //统计之后表可能已经增长，按当前页数等比推算
+            return relpages > 0 ? Math.round(reltuples / relpages * pages) : Math.round(reltuples);
+        } else if (Objects.equals(databaseType, DatabaseType.MY_SQL)) {
+            rows = namedParameterJdbcTemplate.queryForList(
+                    "SELECT TABLE_ROWS FROM information_schema.TABLES " +
+                            "WHERE TABLE_SCHEMA = " + (schema == null ? "DATABASE()" : ":schema") + " AND TABLE_NAME = :table",
+                    paramSource);
+        } else if (Objects.equals(databaseType, DatabaseType.ORACLE)) {
+            rows = namedParameterJdbcTemplate.queryForList(schema == null
+                            ? "SELECT NUM_ROWS FROM USER_TABLES WHERE TABLE_NAME = UPPER(:table)"
+                            : "SELECT NUM_ROWS FROM ALL_TABLES WHERE OWNER = UPPER(:schema) AND TABLE_NAME = UPPER(:table)",
+                    paramSource);
+        } else {
+            throw new RuntimeException("不支持的数据库类型");
+        }
+        if (rows.isEmpty()) {
+            return null;
+        }
+        Object value = rows.get(0).values().iterator().next();
+        return value == null ? null : ((Number) value).longValue();
+    }
+
+    /**
+     * 按执行计划估计查询返回的行数，不执行查询
+     *
+     * @return Oracle需要PLAN_TABLE，不支持，返回null
+     */
+    public Long estimateRows(String sql, SqlParameterSource paramSource, DatabaseType databaseType) {
+        if (Objects.equals(databaseType, DatabaseType.POSTGRESQL)) {
+            return postgresqlPlanRows(namedParameterJdbcTemplate.queryForList(
+                    "EXPLAIN (FORMAT JSON) " + sql, paramSource, String.class));
+        } else if (Objects.equals(databaseType, DatabaseType.MY_SQL)) {
+            return mysqlPlanRows(namedParameterJdbcTemplate.queryForList("EXPLAIN " + sql, paramSource));
+        }
+        return null;
+    }
+
+    public Long estimateRows(String sql, Object[] objects, DatabaseType databaseType) {
+        if (Objects.equals(databaseType, DatabaseType.POSTGRESQL)) {
+            return postgresqlPlanRows(namedParameterJdbcTemplate.getJdbcOperations().queryForList(
+                    "EXPLAIN (FORMAT JSON) " + sql, String.class, objects));
+        } else if (Objects.equals(databaseType, DatabaseType.MY_SQL)) {
+            return mysqlPlanRows(namedParameterJdbcTemplate.getJdbcOperations().queryForList("EXPLAIN " + sql, objects));
+        }
+        return null;
+    }
+
+    /**
+     * 第一个"Plan Rows"属于最外层的计划节点
+     */
+    private static Long postgresqlPlanRows(List<String> plan) {
+        Matcher matcher = PLAN_ROWS.matcher(String.join("\n", plan));
+        return matcher.find() ? Math.round(Double.parseDouble(matcher.group(1))) : null;
+    }
+
+    /**
+     * 最外层SELECT中各表的rows * filtered%相乘
+     */
+    private static Long mysqlPlanRows(List<Map<String, Object>> plan) {
+        if (plan.isEmpty()) {
+            return null;
+        }
+        Object id = plan.get(0).get("id");
+        double estimate = 1;
+        for (Map<String, Object> row : plan) {
+            if (!Objects.equals(id, row.get("id"))) {
+                continue;
+            }
+            Object rows = row.get("rows");
+            Object filtered = row.get("filtered");
+            estimate *= rows == null ? 1 : ((Number) rows).doubleValue();
+            estimate *= filtered == null ? 1 : ((Number) filtered).doubleValue() / 100;
+        }
+        return Math.round(estimate);
+    }
+
+    /**
+     * 查询是否至少返回一行，数据库找到第一行即停止
+     */
+    public boolean exists(String sql, SqlParameterSource paramSource, DatabaseType databaseType) {
+        return namedParameterJdbcTemplate.queryForObject(getExistsSQL(sql, databaseType),
+                paramSource == null ? EmptySqlParameterSource.INSTANCE : paramSource, Integer.class) > 0;
+    }
+
+    public boolean exists(String sql, Object[] objects, DatabaseType databaseType) {
+        return namedParameterJdbcTemplate.getJdbcOperations()
+                .queryForObject(getExistsSQL(sql, databaseType), objects, Integer.class) > 0;
+    }
+
+    /**
+     * @param setter 绑定sql中的参数
+     */
+    public boolean exists(String sql, PreparedStatementSetter setter, DatabaseType databaseType) {
+        return namedParameterJdbcTemplate.getJdbcOperations()
+                .query(getExistsSQL(sql, databaseType), setter, rs -> rs.next() && rs.getInt(1) > 0);
+    }
+
+    public static String getExistsSQL(String sql, DatabaseType databaseType) {
+        String exists = "SELECT CASE WHEN EXISTS ( " + sql + " ) THEN 1 ELSE 0 END";
+        return Objects.equals(databaseType, DatabaseType.ORACLE) ? exists + " FROM dual" : exists;
+    }
+}
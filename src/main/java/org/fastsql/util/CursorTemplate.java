@@ -0,0 +1,211 @@
+package org.fastsql.util;
+
+import org.fastsql.config.DatabaseType;
+import org.springframework.jdbc.core.ArgumentPreparedStatementSetter;
+import org.springframework.jdbc.core.JdbcOperations;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.jdbc.core.ResultSetExtractor;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+import org.springframework.jdbc.core.namedparam.NamedParameterUtils;
+import org.springframework.jdbc.core.namedparam.ParsedSql;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.datasource.DataSourceUtils;
+import org.springframework.jdbc.support.JdbcUtils;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * 以游标逐行读取查询结果，返回的Stream持有打开的连接和ResultSet，内存占用与结果行数无关
+ * <p>
+ * 各数据库的流式读取条件：PostgreSQL需要关闭自动提交并设置fetchSize，MySQL的fetchSize为Integer.MIN_VALUE，
+ * Oracle按fetchSize预取。Stream读完时自动释放连接，提前结束时必须调用close()，建议使用try-with-resources
+ */
+public class CursorTemplate {
+
+    /**
+     * PostgreSQL每次从游标读取的行数
+     */
+    public static final int DEFAULT_FETCH_SIZE = 1000;
+
+    /**
+     * Oracle的预取行数，驱动默认只有10行
+     */
+    public static final int DEFAULT_ORACLE_PREFETCH = 500;
+
+    private final JdbcTemplate jdbcTemplate;
+
+    /**
+     * 小于等于0时使用各数据库的默认值，MySQL总是使用Integer.MIN_VALUE
+     */
+    private int fetchSize;
+
+    public CursorTemplate(NamedParameterJdbcTemplate template) {
+        JdbcOperations operations = template.getJdbcOperations();
+        if (!(operations instanceof JdbcTemplate)) {
+            throw new IllegalArgumentException("流式查询需要JdbcTemplate");
+        }
+        this.jdbcTemplate = (JdbcTemplate) operations;
+        this.fetchSize = jdbcTemplate.getFetchSize();
+    }
+
+    public CursorTemplate(NamedParameterJdbcTemplate template, int fetchSize) {
+        this(template);
+        this.fetchSize = fetchSize;
+    }
+
+    public <T> Stream<T> queryStream(String sql, SqlParameterSource paramSource, RowMapper<T> rowMapper, DatabaseType databaseType) {
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+        String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, paramSource);
+        Object[] params = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
+        return queryStream(sqlToUse, params, rowMapper, databaseType);
+    }
+
+    public <T> Stream<T> queryStream(String sql, Object[] objects, RowMapper<T> rowMapper, DatabaseType databaseType) {
+        Cursor<T> cursor = open(sql, objects, rowMapper, databaseType);
+        return StreamSupport.stream(cursor, false).onClose(cursor::close);
+    }
+
+    /**
+     * 用流式读取的ResultSet执行extractor，返回前释放连接
+     */
+    public <T> T query(String sql, SqlParameterSource paramSource, ResultSetExtractor<T> extractor, DatabaseType databaseType) {
+        ParsedSql parsedSql = NamedParameterUtils.parseSqlStatement(sql);
+        String sqlToUse = NamedParameterUtils.substituteNamedParameters(parsedSql, paramSource);
+        Object[] params = NamedParameterUtils.buildValueArray(parsedSql, paramSource, null);
+        return query(sqlToUse, params, extractor, databaseType);
+    }
+
+    public <T> T query(String sql, Object[] objects, ResultSetExtractor<T> extractor, DatabaseType databaseType) {
+        Cursor<Object> cursor = open(sql, objects, null, databaseType);
+        try {
+            return extractor.extractData(cursor.resultSet);
+        } catch (SQLException e) {
+            throw jdbcTemplate.getExceptionTranslator().translate("StreamQuery", sql, e);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private <T> Cursor<T> open(String sql, Object[] objects, RowMapper<T> rowMapper, DatabaseType databaseType) {
+        DataSource dataSource = jdbcTemplate.getDataSource();
+        Connection connection = DataSourceUtils.getConnection(dataSource);
+        boolean restoreAutoCommit = false;
+        PreparedStatement statement = null;
+        try {
+            //事务中的连接已关闭自动提交
+            if (Objects.equals(databaseType, DatabaseType.POSTGRESQL) && connection.getAutoCommit()) {
+                connection.setAutoCommit(false);
+                restoreAutoCommit = true;
+            }
+            statement = connection.prepareStatement(sql, ResultSet.TYPE_FORWARD_ONLY, ResultSet.CONCUR_READ_ONLY);
+            statement.setFetchSize(fetchSize(databaseType));
+            DataSourceUtils.applyTimeout(statement, dataSource, jdbcTemplate.getQueryTimeout());
+            new ArgumentPreparedStatementSetter(objects).setValues(statement);
+            ResultSet resultSet = statement.executeQuery();
+            return new Cursor<>(sql, rowMapper, dataSource, connection, statement, resultSet, restoreAutoCommit);
+        } catch (SQLException | RuntimeException e) {
+            JdbcUtils.closeStatement(statement);
+            release(dataSource, connection, restoreAutoCommit);
+            if (e instanceof SQLException) {
+                throw jdbcTemplate.getExceptionTranslator().translate("StreamQuery", sql, (SQLException) e);
+            }
+            throw (RuntimeException) e;
+        }
+    }
+
+    private int fetchSize(DatabaseType databaseType) {
+        if (Objects.equals(databaseType, DatabaseType.MY_SQL)) {
+            return Integer.MIN_VALUE;
+        }
+        if (fetchSize > 0) {
+            return fetchSize;
+        }
+        return Objects.equals(databaseType, DatabaseType.ORACLE) ? DEFAULT_ORACLE_PREFETCH : DEFAULT_FETCH_SIZE;
+    }
+
+    private static void release(DataSource dataSource, Connection connection, boolean restoreAutoCommit) {
+        if (restoreAutoCommit) {
+            try {
+                connection.setAutoCommit(true);
+            } catch (SQLException ignored) {
+                //连接池归还时会重置
+            }
+        }
+        DataSourceUtils.releaseConnection(connection, dataSource);
+    }
+
+    /**
+     * 逐行映射ResultSet，读完或关闭时释放资源
+     */
+    private final class Cursor<T> extends Spliterators.AbstractSpliterator<T> {
+
+        private final String sql;
+        private final RowMapper<T> rowMapper;
+        private final DataSource dataSource;
+        private final Connection connection;
+        private final PreparedStatement statement;
+        private final ResultSet resultSet;
+        private final boolean restoreAutoCommit;
+
+        private int rowNum;
+
+        private boolean closed;
+
+        Cursor(String sql, RowMapper<T> rowMapper, DataSource dataSource, Connection connection,
+               PreparedStatement statement, ResultSet resultSet, boolean restoreAutoCommit) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED);
+            this.sql = sql;
+            this.rowMapper = rowMapper;
+            this.dataSource = dataSource;
+            this.connection = connection;
+            this.statement = statement;
+            this.resultSet = resultSet;
+            this.restoreAutoCommit = restoreAutoCommit;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (closed) {
+                return false;
+            }
+            T row;
+            try {
+                if (!resultSet.next()) {
+                    close();
+                    return false;
+                }
+                row = rowMapper.mapRow(resultSet, rowNum++);
+            } catch (SQLException e) {
+                close();
+                throw jdbcTemplate.getExceptionTranslator().translate("StreamQuery", sql, e);
+            } catch (RuntimeException e) {
+                //RowMapper抛出的异常同样要释放连接
+                close();
+                throw e;
+            }
+            action.accept(row);
+            return true;
+        }
+
+        void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            JdbcUtils.closeResultSet(resultSet);
+            JdbcUtils.closeStatement(statement);
+            release(dataSource, connection, restoreAutoCommit);
+        }
+    }
+}
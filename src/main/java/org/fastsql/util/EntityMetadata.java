@@ -0,0 +1,242 @@
+package org.fastsql.util;
+
+import org.fastsql.FastSQLException;
+import org.springframework.beans.BeanUtils;
+import org.springframework.core.GenericTypeResolver;
+import org.springframework.util.ClassUtils;
+import org.springframework.util.StringUtils;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Column;
+import javax.persistence.Convert;
+import javax.persistence.Id;
+import javax.persistence.Transient;
+import java.beans.PropertyDescriptor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Supplier;
+
+/**
+ * 实体类元数据注册表
+ * <p>
+ * 每个类只解析一次：表名、主键、列名、转换器以及生成好的getter/setter，
+ * 结果通过ClassValue挂在类本身上，DAO、参数源和行映射器共用；类被卸载时元数据随之回收，不会阻止重新部署时释放类加载器
+ */
+public final class EntityMetadata<T> {
+
+    private static final ClassValue<EntityMetadata<?>> REGISTRY = new ClassValue<EntityMetadata<?>>() {
+        @Override
+        protected EntityMetadata<?> computeValue(Class<?> type) {
+            return new EntityMetadata<>(type);
+        }
+    };
+
+    private final Class<T> entityClass;
+    private final String tableName;
+    private final Supplier<T> constructor;
+
+    private final PropertyMetadata idProperty;
+    /**
+     * 类中声明的对应数据库列的字段，按声明顺序
+     */
+    private final List<PropertyMetadata> columnProperties;
+    private final List<PropertyMetadata> columnPropertiesWithoutId;
+    /**
+     * 属性名 -> 属性，包括没有对应字段的bean属性
+     */
+    private final Map<String, PropertyMetadata> properties;
+    /**
+     * 列名 -> 属性
+     */
+    private final Map<String, PropertyMetadata> columns;
+    /**
+     * 有无参构造器并且所有可读的属性都可写，可以通过{@link #copy(Object)}复制
+     */
+    private final boolean copyable;
+
+    @SuppressWarnings("unchecked")
+    public static <T> EntityMetadata<T> of(Class<T> entityClass) {
+        return (EntityMetadata<T>) REGISTRY.get(entityClass);
+    }
+
+    private EntityMetadata(Class<T> entityClass) {
+        this.entityClass = entityClass;
+        this.tableName = EntityRefelectUtils.getTableNameFromEntityClass(entityClass);
+        this.constructor = Accessors.constructor(entityClass);
+
+        Map<String, PropertyDescriptor> descriptors = new LinkedHashMap<>();
+        for (PropertyDescriptor pd : BeanUtils.getPropertyDescriptors(entityClass)) {
+            if (!"class".equals(pd.getName())) {
+                descriptors.put(pd.getName(), pd);
+            }
+        }
+
+        PropertyMetadata id = null;
+        List<PropertyMetadata> columnList = new ArrayList<>();
+        List<PropertyMetadata> columnListWithoutId = new ArrayList<>();
+        Map<String, PropertyMetadata> propertyMap = new LinkedHashMap<>();
+        Map<String, PropertyMetadata> columnMap = new LinkedHashMap<>();
+
+        for (Field field : entityClass.getDeclaredFields()) {
+            int modifiers = field.getModifiers();
+            if (Modifier.isStatic(modifiers) || Modifier.isTransient(modifiers) || field.isSynthetic()
+                    || field.isAnnotationPresent(Transient.class)) {
+                continue;
+            }
+            boolean isId = field.isAnnotationPresent(Id.class);
+            PropertyDescriptor pd = descriptors.remove(field.getName());
+            PropertyMetadata property = createProperty(field.getName(), field.getType(), field, isId, true,
+                    compatibleReadMethod(pd, field.getType()), compatibleWriteMethod(pd, field.getType()));
+            if (isId) {
+                if (id != null) {
+                    throw new FastSQLException(entityClass.getSimpleName() + "实体类必须有一个包含@Id的字段");
+                }
+                id = property;
+            } else {
+                columnListWithoutId.add(property);
+            }
+            columnList.add(property);
+            propertyMap.put(property.getName(), property);
+            columnMap.put(property.getColumnName(), property);
+        }
+        //没有对应字段的bean属性，只用于参数和结果映射
+        for (PropertyDescriptor pd : descriptors.values()) {
+            PropertyMetadata property = createProperty(pd.getName(), pd.getPropertyType(), null, false, false,
+                    pd.getReadMethod(), pd.getWriteMethod());
+            propertyMap.put(property.getName(), property);
+        }
+
+        this.idProperty = id;
+        this.columnProperties = Collections.unmodifiableList(columnList);
+        this.columnPropertiesWithoutId = Collections.unmodifiableList(columnListWithoutId);
+        this.properties = Collections.unmodifiableMap(propertyMap);
+        this.columns = Collections.unmodifiableMap(columnMap);
+        boolean allWritable = ClassUtils.hasConstructor(entityClass);
+        for (PropertyMetadata property : propertyMap.values()) {
+            if (property.isReadable() && !property.isWritable()) {
+                allWritable = false;
+            }
+        }
+        this.copyable = allWritable;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static PropertyMetadata createProperty(String name, Class<?> type, Field field, boolean id, boolean persistent,
+                                                   Method readMethod, Method writeMethod) {
+        String columnName = StringExtUtils.camelToUnderline(name);
+        AttributeConverter<Object, Object> converter = null;
+        Class<?> converterColumnType = null;
+        if (field != null) {
+            Column column = field.getAnnotation(Column.class);
+            if (column != null && !StringUtils.isEmpty(column.name())) {
+                columnName = column.name();
+            }
+            Convert convert = field.getAnnotation(Convert.class);
+            if (convert != null && !convert.disableConversion() && convert.converter() != void.class) {
+                Class<?> converterClass = convert.converter();
+                converter = (AttributeConverter<Object, Object>) BeanUtils.instantiateClass(converterClass);
+                Class<?>[] typeArguments = GenericTypeResolver.resolveTypeArguments(converterClass, AttributeConverter.class);
+                converterColumnType = typeArguments == null ? Object.class : typeArguments[1];
+            }
+        }
+        return new PropertyMetadata(name, columnName, type, field, id, persistent,
+                readMethod, writeMethod, converter, converterColumnType);
+    }
+
+    private static Method compatibleReadMethod(PropertyDescriptor pd, Class<?> type) {
+        if (pd == null || pd.getReadMethod() == null || pd.getReadMethod().getReturnType() != type) {
+            return null;
+        }
+        return pd.getReadMethod();
+    }
+
+    private static Method compatibleWriteMethod(PropertyDescriptor pd, Class<?> type) {
+        if (pd == null || pd.getWriteMethod() == null || pd.getWriteMethod().getParameterTypes()[0] != type) {
+            return null;
+        }
+        return pd.getWriteMethod();
+    }
+
+    public T newInstance() {
+        return constructor.get();
+    }
+
+    public boolean isCopyable() {
+        return copyable;
+    }
+
+    /**
+     * 复制所有可读写的属性，属性值本身不复制
+     */
+    public T copy(T source) {
+        if (!copyable) {
+            throw new FastSQLException(entityClass.getName() + "没有无参构造器或有只读属性，不能复制");
+        }
+        T copy = newInstance();
+        for (PropertyMetadata property : properties.values()) {
+            if (property.isReadable()) {
+                property.set(copy, property.get(source));
+            }
+        }
+        return copy;
+    }
+
+    public Class<T> getEntityClass() {
+        return entityClass;
+    }
+
+    public String getTableName() {
+        return tableName;
+    }
+
+    /**
+     * @return 主键属性，没有@Id字段时为null
+     */
+    public PropertyMetadata getIdProperty() {
+        return idProperty;
+    }
+
+    /**
+     * @return 主键属性，没有@Id字段时抛出异常
+     */
+    public PropertyMetadata requireIdProperty() {
+        if (idProperty == null) {
+            throw new FastSQLException(entityClass.getSimpleName() + "实体类必须有一个包含@Id的字段");
+        }
+        return idProperty;
+    }
+
+    public List<PropertyMetadata> getColumnProperties() {
+        return columnProperties;
+    }
+
+    public List<PropertyMetadata> getColumnPropertiesWithoutId() {
+        return columnPropertiesWithoutId;
+    }
+
+    /**
+     * 所有属性，包括没有对应字段的bean属性
+     */
+    public Map<String, PropertyMetadata> getProperties() {
+        return properties;
+    }
+
+    public PropertyMetadata getProperty(String name) {
+        return properties.get(name);
+    }
+
+    public PropertyMetadata getPropertyByColumn(String columnName) {
+        return columns.get(columnName);
+    }
+
+    @Override
+    public String toString() {
+        return "EntityMetadata{" + "entityClass=" + entityClass.getName() + ", tableName='" + tableName + '\'' + '}';
+    }
+}
@@ -0,0 +1,123 @@
+package org.fastsql.util;
+
+import org.springframework.jdbc.core.namedparam.AbstractSqlParameterSource;
+
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 代替BeanPropertySqlParameterSource的命名参数源
+ * <p>
+ * 属性通过{@link EntityMetadata}中生成好的getter读取，不创建BeanWrapper；
+ * 每个属性的SQL类型在解析元数据时已经确定，有转换器时写入转换后的值。
+ * 可以叠加额外的参数，同名时覆盖bean中的属性，叠加的Map不会被复制
+ */
+public class EntityParameterSource extends AbstractSqlParameterSource {
+
+    private final Object bean;
+
+    private final EntityMetadata<?> metadata;
+
+    /**
+     * 外部传入的叠加参数，只读
+     */
+    private final Map<String, ?> overlay;
+
+    /**
+     * 通过{@link #addValue(String, Object)}添加的参数
+     */
+    private Map<String, Object> values;
+
+    public EntityParameterSource(Object bean) {
+        this(bean, null);
+    }
+
+    /**
+     * @param bean    bean
+     * @param overlay 叠加的参数，同名时覆盖bean中的属性
+     */
+    public EntityParameterSource(Object bean, Map<String, ?> overlay) {
+        this.bean = bean;
+        this.metadata = EntityMetadata.of(bean.getClass());
+        this.overlay = overlay;
+    }
+
+    /**
+     * 添加一个参数，同名时覆盖bean中的属性
+     */
+    public EntityParameterSource addValue(String paramName, Object value) {
+        if (values == null) {
+            values = new HashMap<>();
+        }
+        values.put(paramName, value);
+        return this;
+    }
+
+    public Object getBean() {
+        return bean;
+    }
+
+    @Override
+    public boolean hasValue(String paramName) {
+        if (values != null && values.containsKey(paramName)) {
+            return true;
+        }
+        if (overlay != null && overlay.containsKey(paramName)) {
+            return true;
+        }
+        PropertyMetadata property = metadata.getProperty(paramName);
+        return property != null && property.isReadable();
+    }
+
+    @Override
+    public Object getValue(String paramName) throws IllegalArgumentException {
+        if (values != null && values.containsKey(paramName)) {
+            return values.get(paramName);
+        }
+        if (overlay != null && overlay.containsKey(paramName)) {
+            return overlay.get(paramName);
+        }
+        PropertyMetadata property = metadata.getProperty(paramName);
+        if (property == null || !property.isReadable()) {
+            throw new IllegalArgumentException("没有找到命名参数:" + paramName);
+        }
+        return property.getColumnValue(bean);
+    }
+
+    /**
+     * 未注册类型时，bean属性使用元数据中推断的类型
+     */
+    @Override
+    public int getSqlType(String paramName) {
+        int sqlType = super.getSqlType(paramName);
+        if (sqlType != TYPE_UNKNOWN) {
+            return sqlType;
+        }
+        if ((values != null && values.containsKey(paramName)) || (overlay != null && overlay.containsKey(paramName))) {
+            return TYPE_UNKNOWN;
+        }
+        PropertyMetadata property = metadata.getProperty(paramName);
+        return property == null ? TYPE_UNKNOWN : property.getSqlType();
+    }
+
+    /**
+     * 所有可读的参数名，不包括class属性
+     */
+    public String[] getReadablePropertyNames() {
+        Set<String> names = new LinkedHashSet<>();
+        for (PropertyMetadata property : metadata.getProperties().values()) {
+            if (property.isReadable()) {
+                names.add(property.getName());
+            }
+        }
+        if (overlay != null) {
+            names.addAll(overlay.keySet());
+        }
+        if (values != null) {
+            names.addAll(values.keySet());
+        }
+        return names.toArray(new String[0]);
+    }
+}
@@ -105,6 +105,10 @@ public class EntityRefelectUtils {
      * @param field  对象属性
      */
     public static Object getFieldValue(Object object, Field field) {
+        PropertyMetadata property = EntityMetadata.of(object.getClass()).getProperty(field.getName());
+        if (property != null && field.equals(property.getField())) {
+            return property.get(object);
+        }
         field.setAccessible(true);
         try {
             return field.get(object);
@@ -114,6 +118,11 @@ public class EntityRefelectUtils {
     }
 
     public static void setFieldValue(Object object, Field field, Object value) {
+        PropertyMetadata property = EntityMetadata.of(object.getClass()).getProperty(field.getName());
+        if (property != null && field.equals(property.getField()) && property.isWritable()) {
+            property.set(object, value);
+            return;
+        }
         field.setAccessible(true);
         try {
             field.set(object, value);
@@ -166,23 +175,16 @@ public class EntityRefelectUtils {
         return fieldList;
     }
 
-    public static List<Field> getAllFieldWithoutIdByClass(Class cls) {
+    /**
+     * 获取实体类中除主键外的字段，结果来自{@link EntityMetadata}缓存
+     */
+    public static List<Field> getAllFieldWithoutIdByClass(Class<?> cls) {
+        EntityMetadata<?> metadata = EntityMetadata.of(cls);
+        metadata.requireIdProperty();
         List<Field> fieldList = new ArrayList<>();
-        Field[] declaredFields = cls.getDeclaredFields();
-
-        boolean containId = false;
-
-        for (Field field : declaredFields) {
-            if (!field.isAnnotationPresent(Id.class)) {
-                fieldList.add(field);
-            } else {
-                containId = true;
-            }
-        }
-        if (!containId) {
-            throw new RuntimeException(cls.getSimpleName() + "实体类必须有一个包含@Id的字段");
+        for (PropertyMetadata property : metadata.getColumnPropertiesWithoutId()) {
+            fieldList.add(property.getField());
         }
-
         return fieldList;
     }
 
@@ -205,23 +207,11 @@ public class EntityRefelectUtils {
         return fieldList.get(0);
     }
 
-    public static Field getIdField(Class cls) {
-        List<Field> fieldList = new ArrayList<>();
-        Field[] declaredFields = cls.getDeclaredFields();
-
-
-        for (Field field : declaredFields) {
-            if (field.isAnnotationPresent(Id.class)) {
-                fieldList.add(field);
-            }
-        }
-        if (fieldList.size() == 0) {
-            throw new RuntimeException(cls.getSimpleName() + "实体类必须有一个包含@Id的字段");
-        }
-        if (fieldList.size() > 1) {
-            throw new RuntimeException(cls.getSimpleName() + "实体类必须有一个包含@Id的字段");
-        }
-        return fieldList.get(0);
+    /**
+     * 获取实体类的主键字段，结果来自{@link EntityMetadata}缓存
+     */
+    public static Field getIdField(Class<?> cls) {
+        return EntityMetadata.of(cls).requireIdProperty().getField();
     }
 
     public static List<Field> getAllField(Object object) {
@@ -234,12 +224,14 @@ public class EntityRefelectUtils {
         return fieldList;
     }
 
-    public static List<Field> getAllField(Class cls) {
-        Field[] declaredFields = cls.getDeclaredFields();
-        List<Field> fieldList = new ArrayList<>(declaredFields.length);
-
-        for (Field field : declaredFields) {
-            fieldList.add(field);
+    /**
+     * 获取实体类中对应数据库列的字段，结果来自{@link EntityMetadata}缓存
+     */
+    public static List<Field> getAllField(Class<?> cls) {
+        List<PropertyMetadata> properties = EntityMetadata.of(cls).getColumnProperties();
+        List<Field> fieldList = new ArrayList<>(properties.size());
+        for (PropertyMetadata property : properties) {
+            fieldList.add(property.getField());
         }
         return fieldList;
     }
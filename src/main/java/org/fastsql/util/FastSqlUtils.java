@@ -91,7 +91,8 @@ public class FastSqlUtils {
         if (to > list.size()) {
             to = list.size();
         }
-        return list.subList(from, to);
+        //复制，不让结果页引用整个列表
+        return new ArrayList<T>(list.subList(from, to));
 
     }
 
@@ -0,0 +1,428 @@
+package org.fastsql.util;
+
+import org.fastsql.FastSQLException;
+import org.fastsql.config.DatabaseType;
+import org.fastsql.dto.KeysetPage;
+import org.springframework.jdbc.core.RowMapper;
+import org.springframework.jdbc.core.namedparam.SqlParameterSource;
+import org.springframework.jdbc.support.JdbcUtils;
+import org.springframework.util.StringUtils;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
+import java.util.List;
+import java.util.UUID;
+import java.util.regex.Pattern;
+
+/**
+ * 键集分页(seek)的排序列
+ * <p>
+ * 下一页的查询条件为"排序列的值在上一页最后一行之后"，配合排序列上的索引，任意页的查询代价都与第一页相同。
+ * 排序列的值不能为NULL，并且组合起来必须唯一，否则相同值的行可能被跳过；
+ * MySQL和PostgreSQL在排序方向一致时使用行值比较 (a, b) &gt; (?, ?)，其余情况展开为等价的AND/OR条件
+ */
+public final class Keyset {
+
+    private static final String PARAMETER_PREFIX = "keyset_";
+
+    /**
+     * 可带表名前缀的列名
+     */
+    private static final Pattern COLUMN = Pattern.compile("[\\p{L}_][\\p{L}\\p{N}_$]*(\\.[\\p{L}_][\\p{L}\\p{N}_$]*)*");
+
+    private final String[] columns;
+
+    private final boolean[] descending;
+
+    private Keyset(String[] columns, boolean[] descending) {
+        this.columns = columns;
+        this.descending = descending;
+    }
+
+    /**
+     * @param orderBy 排序列，如 "create_time DESC, id DESC"，只能是列名加可选的ASC/DESC
+     */
+    public static Keyset parse(String orderBy) {
+        if (!StringUtils.hasText(orderBy)) {
+            throw new IllegalArgumentException("键集分页的排序列不能为空");
+        }
+        String[] items = orderBy.split(",");
+        String[] columns = new String[items.length];
+        boolean[] descending = new boolean[items.length];
+        for (int i = 0; i < items.length; i++) {
+            String[] tokens = items[i].trim().split("\\s+");
+            String column = tokens[0].replace("\"", "").replace("`", "");
+            if (!COLUMN.matcher(column).matches() || tokens.length > 2 || (tokens.length == 2
+                    && !"ASC".equalsIgnoreCase(tokens[1]) && !"DESC".equalsIgnoreCase(tokens[1]))) {
+                throw new IllegalArgumentException("不支持的排序列'" + items[i].trim() + "'，只能是 列名 [ASC|DESC]");
+            }
+            columns[i] = column.substring(column.lastIndexOf('.') + 1);
+            descending[i] = tokens.length == 2 && "DESC".equalsIgnoreCase(tokens[1]);
+        }
+        return new Keyset(columns, descending);
+    }
+
+    /**
+     * 排序列中没有column时追加到最后，方向与最后一列相同，用于保证排序唯一
+     */
+    public Keyset thenBy(String column) {
+        for (String c : columns) {
+            if (c.equalsIgnoreCase(column)) {
+                return this;
+            }
+        }
+        String[] newColumns = Arrays.copyOf(columns, columns.length + 1);
+        boolean[] newDescending = Arrays.copyOf(descending, descending.length + 1);
+        newColumns[columns.length] = column;
+        newDescending[columns.length] = descending[descending.length - 1];
+        return new Keyset(newColumns, newDescending);
+    }
+
+    public String[] getColumns() {
+        return columns.clone();
+    }
+
+    public boolean isDescending(int index) {
+        return descending[index];
+    }
+
+    public String getOrderBy() {
+        StringBuilder orderBy = new StringBuilder();
+        for (int i = 0; i < columns.length; i++) {
+            if (i > 0) {
+                orderBy.append(", ");
+            }
+            orderBy.append(columns[i]).append(descending[i] ? " DESC" : " ASC");
+        }
+        return orderBy.toString();
+    }
+
+    /**
+     * 生成查询一页的sql
+     *
+     * @param select      不含WHERE的查询
+     * @param where       条件，可为null
+     * @param afterCursor 是否只查询游标之后的行
+     * @param named       游标的值使用:keyset_0形式的命名参数还是?
+     * @param limit       最多返回的行数
+     */
+    public String getRowsSQL(String select, String where, boolean afterCursor, boolean named, int limit,
+                             DatabaseType databaseType) {
+        StringBuilder sql = new StringBuilder(select);
+        boolean hasWhere = StringUtils.hasText(where);
+        if (hasWhere) {
+            sql.append(" WHERE (").append(where).append(')');
+        }
+        if (afterCursor) {
+            sql.append(hasWhere ? " AND " : " WHERE ").append(predicate(named, databaseType, new ArrayList<>()));
+        }
+        sql.append(" ORDER BY ").append(getOrderBy());
+        return PageUtils.getLimitSQL(sql.toString(), limit, databaseType);
+    }
+
+    /**
+     * @param indexes 按占位符出现的顺序记录对应的排序列
+     */
+    private String predicate(boolean named, DatabaseType databaseType, List<Integer> indexes) {
+        if (columns.length > 1 && sameDirection() && databaseType != DatabaseType.ORACLE) {
+            StringBuilder left = new StringBuilder("(");
+            StringBuilder right = new StringBuilder("(");
+            for (int i = 0; i < columns.length; i++) {
+                if (i > 0) {
+                    left.append(", ");
+                    right.append(", ");
+                }
+                left.append(columns[i]);
+                right.append(placeholder(i, named, indexes));
+            }
+            return left + ") " + (descending[0] ? "<" : ">") + " " + right + ")";
+        }
+        return predicate(0, named, indexes);
+    }
+
+    /**
+     * a &gt;= ? AND (a &gt; ? OR (后续列的条件))，第一列可以直接使用索引范围扫描
+     */
+    private String predicate(int index, boolean named, List<Integer> indexes) {
+        String column = columns[index];
+        String op = descending[index] ? "<" : ">";
+        if (index == columns.length - 1) {
+            return column + " " + op + " " + placeholder(index, named, indexes);
+        }
+        return "(" + column + " " + op + "= " + placeholder(index, named, indexes)
+                + " AND (" + column + " " + op + " " + placeholder(index, named, indexes)
+                + " OR " + predicate(index + 1, named, indexes) + "))";
+    }
+
+    private static String placeholder(int index, boolean named, List<Integer> indexes) {
+        indexes.add(index);
+        return named ? ":" + PARAMETER_PREFIX + index : "?";
+    }
+
+    private boolean sameDirection() {
+        for (boolean d : descending) {
+            if (d != descending[0]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 在条件的参数后追加游标的值，与{@link #getRowsSQL}中?的顺序一致
+     */
+    public Object[] bind(Object[] values, Object[] key, DatabaseType databaseType) {
+        List<Integer> indexes = new ArrayList<>();
+        predicate(false, databaseType, indexes);
+        int length = values == null ? 0 : values.length;
+        Object[] params = new Object[length + indexes.size()];
+        if (length > 0) {
+            System.arraycopy(values, 0, params, 0, length);
+        }
+        for (int i = 0; i < indexes.size(); i++) {
+            params[length + i] = key[indexes.get(i)];
+        }
+        return params;
+    }
+
+    /**
+     * 在条件的参数中加入游标的值
+     */
+    public SqlParameterSource bind(SqlParameterSource parameterSource, Object[] key) {
+        return new KeysetParameterSource(parameterSource, key);
+    }
+
+    /**
+     * 记录每页最后一行排序列的值
+     *
+     * @param perPage 每页条数，查询时应多取一行用于判断是否有下一页
+     */
+    public <T> KeysetRowMapper<T> rowMapper(RowMapper<T> rowMapper, int perPage) {
+        return new KeysetRowMapper<>(rowMapper, perPage);
+    }
+
+    /**
+     * 把排序列的值编码为游标
+     */
+    public String encode(Object[] key) {
+        StringBuilder token = new StringBuilder();
+        for (int i = 0; i < key.length; i++) {
+            Object value = key[i];
+            char type;
+            String text;
+            if (value == null) {
+                throw new FastSQLException("键集分页的排序列" + columns[i] + "不能为NULL");
+            } else if (value instanceof String) {
+                type = 'S';
+                text = (String) value;
+            } else if (value instanceof Integer || value instanceof Short || value instanceof Byte) {
+                type = 'I';
+                text = String.valueOf(((Number) value).intValue());
+            } else if (value instanceof Long) {
+                type = 'J';
+                text = value.toString();
+            } else if (value instanceof BigDecimal) {
+                type = 'D';
+                text = value.toString();
+            } else if (value instanceof BigInteger) {
+                type = 'G';
+                text = value.toString();
+            } else if (value instanceof Double || value instanceof Float) {
+                type = 'F';
+                text = String.valueOf(((Number) value).doubleValue());
+            } else if (value instanceof Boolean) {
+                type = 'B';
+                text = value.toString();
+            } else if (value instanceof java.sql.Date) {
+                type = 'd';
+                text = value.toString();
+            } else if (value instanceof java.sql.Time) {
+                type = 't';
+                text = value.toString();
+            } else if (value instanceof java.util.Date) {
+                Timestamp timestamp = value instanceof Timestamp
+                        ? (Timestamp) value : new Timestamp(((java.util.Date) value).getTime());
+                type = 'T';
+                text = timestamp.getTime() + "." + timestamp.getNanos();
+            } else if (value instanceof LocalDate) {
+                type = 'L';
+                text = value.toString();
+            } else if (value instanceof LocalDateTime) {
+                type = 'M';
+                text = value.toString();
+            } else if (value instanceof UUID) {
+                type = 'U';
+                text = value.toString();
+            } else {
+                throw new FastSQLException("键集分页不支持" + value.getClass().getName() + "类型的排序列" + columns[i]);
+            }
+            token.append(type).append(text.length()).append(':').append(text);
+        }
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(token.toString().getBytes(StandardCharsets.UTF_8));
+    }
+
+    /**
+     * @return 游标中排序列的值，游标为空时返回null
+     */
+    public Object[] decode(String cursor) {
+        if (!StringUtils.hasText(cursor)) {
+            return null;
+        }
+        List<Object> key = new ArrayList<>(columns.length);
+        try {
+            String token = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            int position = 0;
+            while (position < token.length()) {
+                char type = token.charAt(position);
+                int colon = token.indexOf(':', position);
+                int length = Integer.parseInt(token.substring(position + 1, colon));
+                String text = token.substring(colon + 1, colon + 1 + length);
+                position = colon + 1 + length;
+                key.add(parseValue(type, text));
+            }
+        } catch (RuntimeException e) {
+            throw new FastSQLException("无效的分页游标" + cursor);
+        }
+        if (key.size() != columns.length) {
+            throw new FastSQLException("分页游标" + cursor + "与排序列" + getOrderBy() + "不匹配");
+        }
+        return key.toArray();
+    }
+
+    private static Object parseValue(char type, String text) {
+        switch (type) {
+            case 'S':
+                return text;
+            case 'I':
+                return Integer.valueOf(text);
+            case 'J':
+                return Long.valueOf(text);
+            case 'D':
+                return new BigDecimal(text);
+            case 'G':
+                return new BigInteger(text);
+            case 'F':
+                return Double.valueOf(text);
+            case 'B':
+                return Boolean.valueOf(text);
+            case 'd':
+                return java.sql.Date.valueOf(text);
+            case 't':
+                return java.sql.Time.valueOf(text);
+            case 'T':
+                int dot = text.indexOf('.');
+                Timestamp timestamp = new Timestamp(Long.parseLong(text.substring(0, dot)));
+                timestamp.setNanos(Integer.parseInt(text.substring(dot + 1)));
+                return timestamp;
+            case 'L':
+                return LocalDate.parse(text);
+            case 'M':
+                return LocalDateTime.parse(text);
+            case 'U':
+                return UUID.fromString(text);
+            default:
+                throw new IllegalArgumentException("未知的类型" + type);
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "Keyset{" + getOrderBy() + '}';
+    }
+
+    /**
+     * 映射结果的同时记录第perPage行排序列的值
+     */
+    public final class KeysetRowMapper<T> implements RowMapper<T> {
+
+        private final RowMapper<T> delegate;
+
+        private final int perPage;
+
+        private Object[] lastKey;
+
+        private KeysetRowMapper(RowMapper<T> delegate, int perPage) {
+            this.delegate = delegate;
+            this.perPage = perPage;
+        }
+
+        @Override
+        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (rowNum == perPage - 1) {
+                lastKey = new Object[columns.length];
+                for (int i = 0; i < columns.length; i++) {
+                    lastKey[i] = JdbcUtils.getResultSetValue(rs, rs.findColumn(columns[i]));
+                }
+            }
+            return delegate.mapRow(rs, rowNum);
+        }
+
+        /**
+         * @param rows 最多perPage + 1行的查询结果
+         */
+        public KeysetPage<T> toPage(List<T> rows) {
+            if (rows.size() <= perPage) {
+                return new KeysetPage<>(rows, null);
+            }
+            List<T> content = new ArrayList<>(rows.subList(0, perPage));
+            return new KeysetPage<>(content, encode(lastKey));
+        }
+    }
+
+    /**
+     * 在原参数之外提供keyset_0等游标参数
+     */
+    private static final class KeysetParameterSource implements SqlParameterSource {
+
+        private final SqlParameterSource delegate;
+
+        private final Object[] key;
+
+        KeysetParameterSource(SqlParameterSource delegate, Object[] key) {
+            this.delegate = delegate;
+            this.key = key;
+        }
+
+        private int keyIndex(String paramName) {
+            if (paramName.startsWith(PARAMETER_PREFIX)) {
+                try {
+                    int index = Integer.parseInt(paramName.substring(PARAMETER_PREFIX.length()));
+                    return index < key.length ? index : -1;
+                } catch (NumberFormatException e) {
+                    return -1;
+                }
+            }
+            return -1;
+        }
+
+        @Override
+        public boolean hasValue(String paramName) {
+            return keyIndex(paramName) >= 0 || delegate.hasValue(paramName);
+        }
+
+        @Override
+        public Object getValue(String paramName) throws IllegalArgumentException {
+            int index = keyIndex(paramName);
+            return index >= 0 ? key[index] : delegate.getValue(paramName);
+        }
+
+        @Override
+        public int getSqlType(String paramName) {
+            return keyIndex(paramName) >= 0 ? TYPE_UNKNOWN : delegate.getSqlType(paramName);
+        }
+
+        @Override
+        public String getTypeName(String paramName) {
+            return keyIndex(paramName) >= 0 ? null : delegate.getTypeName(paramName);
+        }
+    }
+}
@@ -1,12 +1,18 @@
 package org.fastsql.util;
 
 import org.fastsql.config.DatabaseType;
+import org.fastsql.dto.KeysetPage;
 import org.fastsql.dto.ResultPage;
 import org.springframework.jdbc.core.RowMapper;
 import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
 import org.springframework.jdbc.core.namedparam.SqlParameterSource;
 
+import java.sql.ResultSet;
+import java.sql.SQLException;
 import java.util.List;
+import java.util.Map;
+import java.util.function.BiFunction;
+import java.util.function.Function;
 
 /**
  * @author 陈佳志
@@ -16,10 +22,20 @@ public class PageTemplate {
 
     private NamedParameterJdbcTemplate namedParameterJdbcTemplate;
 
+    /**
+     * 是否用窗口函数在同一次查询中返回总数
+     */
+    private boolean windowCount;
+
     public PageTemplate(NamedParameterJdbcTemplate template) {
         this.namedParameterJdbcTemplate = template;
     }
 
+    public PageTemplate(NamedParameterJdbcTemplate template, boolean windowCount) {
+        this.namedParameterJdbcTemplate = template;
+        this.windowCount = windowCount;
+    }
+
 //    public <T> ResultPage<T> queryPage(String sql, int page, int perPage, SqlParameterSource paramSource, RowMapper<T> rowMapper) {
 //        String rowsSQL = PageUtils.getRowsSQL(sql, page, perPage);
 //        List<T> list = namedParameterJdbcTemplate.query(
@@ -37,19 +53,16 @@ public class PageTemplate {
 //    }
 //
     public <T> ResultPage<T> queryPage(String sql, int page, int perPage, SqlParameterSource paramSource, RowMapper<T> rowMapper, DatabaseType databaseType) {
-        String rowsSQL = PageUtils.getRowsSQL(sql, page, perPage, databaseType);
-        List<T> list = namedParameterJdbcTemplate.query(
-                rowsSQL,
-                paramSource,
-                rowMapper);
+        return queryPage(sql, page, perPage, paramSource, rowMapper, databaseType, null);
+    }
 
-        //查询数量
-        String numberSQL = PageUtils.getNumberSQL(sql);
-        Integer number = namedParameterJdbcTemplate.queryForObject(
-                numberSQL,
-                paramSource,
-                Integer.class);
-        return new ResultPage<T>(list, number);
+    /**
+     * @param totalElements 之前返回的总数，不为null时不再查询总数
+     */
+    public <T> ResultPage<T> queryPage(String sql, int page, int perPage, SqlParameterSource paramSource, RowMapper<T> rowMapper, DatabaseType databaseType, Integer totalElements) {
+        return queryPage(sql, page, perPage, rowMapper, databaseType, totalElements,
+                (rowsSQL, mapper) -> namedParameterJdbcTemplate.query(rowsSQL, paramSource, mapper),
+                numberSQL -> namedParameterJdbcTemplate.queryForObject(numberSQL, paramSource, Integer.class));
     }
 
 //    public <T> ResultPage<T> queryPage(String sql, int page, int perPage, Object[] objects, RowMapper<T> rowMapper) {
@@ -69,18 +82,100 @@ public class PageTemplate {
 //    }
 
     public <T> ResultPage<T> queryPage(String sql, int page, int perPage, Object[] objects, RowMapper<T> rowMapper, DatabaseType databaseType) {
-        String rowsSQL = PageUtils.getRowsSQL(sql, page, perPage, databaseType);
-        List<T> list = namedParameterJdbcTemplate.getJdbcOperations().query(
-                rowsSQL,
-                objects,
-                rowMapper);
+        return queryPage(sql, page, perPage, objects, rowMapper, databaseType, null);
+    }
+
+    /**
+     * @param totalElements 之前返回的总数，不为null时不再查询总数
+     */
+    public <T> ResultPage<T> queryPage(String sql, int page, int perPage, Object[] objects, RowMapper<T> rowMapper, DatabaseType databaseType, Integer totalElements) {
+        return queryPage(sql, page, perPage, rowMapper, databaseType, totalElements,
+                (rowsSQL, mapper) -> namedParameterJdbcTemplate.getJdbcOperations().query(rowsSQL, objects, mapper),
+                numberSQL -> namedParameterJdbcTemplate.getJdbcOperations().queryForObject(numberSQL, objects, Integer.class));
+    }
+
+    private <T> ResultPage<T> queryPage(String sql, int page, int perPage, RowMapper<T> rowMapper, DatabaseType databaseType,
+                                        Integer totalElements, BiFunction<String, RowMapper<T>, List<T>> rowsQuery,
+                                        Function<String, Integer> numberQuery) {
+        if (totalElements != null) {
+            return new ResultPage<T>(rowsQuery.apply(PageUtils.getRowsSQL(sql, page, perPage, databaseType), rowMapper),
+                    totalElements);
+        }
+        String windowSQL = windowCount ? PageUtils.getWindowRowsSQL(sql, page, perPage, databaseType) : null;
+        if (windowSQL != null) {
+            WindowCountRowMapper<T> windowCountRowMapper = new WindowCountRowMapper<>(rowMapper);
+            List<T> list = rowsQuery.apply(windowSQL, windowCountRowMapper);
+            //页数超出范围时结果中没有总数
+            if (!list.isEmpty() || page <= 1) {
+                return new ResultPage<T>(list, windowCountRowMapper.total);
+            }
+            return new ResultPage<T>(list, numberQuery.apply(PageUtils.getNumberSQL(sql)));
+        }
+        List<T> list = rowsQuery.apply(PageUtils.getRowsSQL(sql, page, perPage, databaseType), rowMapper);
 
         //查询数量
-        String numberSQL = PageUtils.getNumberSQL(sql);
-        Integer number = namedParameterJdbcTemplate.getJdbcOperations().queryForObject(
-                numberSQL,
-                objects,
-                Integer.class);
+        Integer number = numberQuery.apply(PageUtils.getNumberSQL(sql));
         return new ResultPage<T>(list, number);
     }
+
+    /**
+     * 键集分页，sql不能包含ORDER BY，排序由keyset指定
+     *
+     * @param cursor 上一页的{@link KeysetPage#getNextCursor()}，为空时查询第一页
+     */
+    public <T> KeysetPage<T> queryKeysetPage(String sql, Keyset keyset, String cursor, int perPage, SqlParameterSource paramSource, RowMapper<T> rowMapper, DatabaseType databaseType) {
+        Object[] key = keyset.decode(cursor);
+        String rowsSQL = keyset.getRowsSQL(wrap(sql), null, key != null, true, perPage + 1, databaseType);
+        Keyset.KeysetRowMapper<T> keysetRowMapper = keyset.rowMapper(rowMapper, perPage);
+        List<T> list = namedParameterJdbcTemplate.query(
+                rowsSQL,
+                key == null ? paramSource : keyset.bind(paramSource, key),
+                keysetRowMapper);
+        return keysetRowMapper.toPage(list);
+    }
+
+    public <T> KeysetPage<T> queryKeysetPage(String sql, Keyset keyset, String cursor, int perPage, Object[] objects, RowMapper<T> rowMapper, DatabaseType databaseType) {
+        Object[] key = keyset.decode(cursor);
+        String rowsSQL = keyset.getRowsSQL(wrap(sql), null, key != null, false, perPage + 1, databaseType);
+        Keyset.KeysetRowMapper<T> keysetRowMapper = keyset.rowMapper(rowMapper, perPage);
+        List<T> list = namedParameterJdbcTemplate.getJdbcOperations().query(
+                rowsSQL,
+                key == null ? objects : keyset.bind(objects, key, databaseType),
+                keysetRowMapper);
+        return keysetRowMapper.toPage(list);
+    }
+
+    /**
+     * 作为子查询，排序列按结果的列名引用
+     */
+    private static String wrap(String sql) {
+        //subQuery can not with  "AS"  in Oracle
+        return "SELECT * FROM ( " + sql + " ) keyset_t";
+    }
+
+    /**
+     * 读取总数列，Map结果中去掉该列
+     */
+    private static final class WindowCountRowMapper<T> implements RowMapper<T> {
+
+        private final RowMapper<T> delegate;
+
+        private int total;
+
+        WindowCountRowMapper(RowMapper<T> delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public T mapRow(ResultSet rs, int rowNum) throws SQLException {
+            if (rowNum == 0) {
+                total = rs.getInt(PageUtils.TOTAL_COLUMN);
+            }
+            T row = delegate.mapRow(rs, rowNum);
+            if (row instanceof Map) {
+                ((Map<?, ?>) row).remove(PageUtils.TOTAL_COLUMN);
+            }
+            return row;
+        }
+    }
 }
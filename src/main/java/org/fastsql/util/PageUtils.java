@@ -9,6 +9,11 @@ import java.util.Objects;
  */
 public class PageUtils {
 
+    /**
+     * 窗口函数返回的总数列
+     */
+    public static final String TOTAL_COLUMN = "FASTSQL_TOTAL";
+
 //    public static String getRowsSQL(String sql, int pageNumber, int perPageSize) {
 //        //没指定dbType，使用FastSqlConfig配置项中默认的
 //        return getRowsSQL(sql, pageNumber, perPageSize, FastSqlConfig.databaseType);
@@ -29,6 +34,95 @@ public class PageUtils {
 
 
 
+    /**
+     * 在每行中用COUNT(*) OVER()返回总数的分页sql，只需一次查询
+     * <p>
+     * MySQL和PostgreSQL把总数列加在最外层的SELECT中，ORDER BY和LIMIT仍在同一层生效；Oracle在ROWNUM外层计算
+     *
+     * @return 查询含有DISTINCT、UNION等无法直接计数的结构时返回null
+     */
+    public static String getWindowRowsSQL(String sql, int pageNumber, int perPageSize, DatabaseType databaseType) {
+        if (Objects.equals(databaseType, DatabaseType.ORACLE)) {
+            int offset = (pageNumber - 1) * perPageSize;
+            return "SELECT * FROM" +
+                    "  (  " +
+                    "     SELECT t.*, ROWNUM RN, COUNT(*) OVER() " + TOTAL_COLUMN + " FROM  ( " + sql + " ) t " +
+                    "   ) " +
+                    "WHERE RN > " + offset + " AND RN <= " + (offset + perPageSize);
+        }
+        if (!Objects.equals(databaseType, DatabaseType.MY_SQL) && !Objects.equals(databaseType, DatabaseType.POSTGRESQL)) {
+            throw new RuntimeException("不支持的数据库类型");
+        }
+        int from = topLevelFrom(sql);
+        if (from < 0) {
+            return null;
+        }
+        String windowSQL = sql.substring(0, from) + ", COUNT(*) OVER() AS " + TOTAL_COLUMN + " " + sql.substring(from);
+        return getRowsSQL(windowSQL, pageNumber, perPageSize, databaseType);
+    }
+
+    /**
+     * @return 最外层SELECT对应的FROM的位置，含有DISTINCT或UNION/INTERSECT/EXCEPT时返回-1
+     */
+    private static int topLevelFrom(String sql) {
+        int depth = 0;
+        boolean selectFound = false;
+        boolean afterSelect = false;
+        int from = -1;
+        for (int i = 0; i < sql.length(); i++) {
+            char c = sql.charAt(i);
+            if (c == '\'' || c == '"' || c == '`') {
+                int end = sql.indexOf(c, i + 1);
+                if (end < 0) {
+                    return -1;
+                }
+                i = end;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (depth == 0 && Character.isLetter(c) && (i == 0 || !isIdentifierPart(sql.charAt(i - 1)))) {
+                int end = i;
+                while (end < sql.length() && isIdentifierPart(sql.charAt(end))) {
+                    end++;
+                }
+                String word = sql.substring(i, end).toUpperCase();
+                if (afterSelect && "DISTINCT".equals(word)) {
+                    return -1;
+                }
+                afterSelect = false;
+                if ("UNION".equals(word) || "INTERSECT".equals(word) || "EXCEPT".equals(word) || "MINUS".equals(word)) {
+                    return -1;
+                }
+                if (!selectFound && "SELECT".equals(word)) {
+                    selectFound = true;
+                    afterSelect = true;
+                } else if (selectFound && from < 0 && "FROM".equals(word)) {
+                    from = i;
+                }
+                i = end - 1;
+            }
+        }
+        return from;
+    }
+
+    private static boolean isIdentifierPart(char c) {
+        return Character.isLetterOrDigit(c) || c == '_' || c == '$';
+    }
+
+    /**
+     * 只返回前limit行，sql中的ORDER BY在截取之前生效
+     */
+    public static String getLimitSQL(String sql, int limit, DatabaseType databaseType) {
+        if (Objects.equals(databaseType, DatabaseType.MY_SQL) || Objects.equals(databaseType, DatabaseType.POSTGRESQL)) {
+            return sql + " LIMIT " + limit;
+        } else if (Objects.equals(databaseType, DatabaseType.ORACLE)) {
+            return "SELECT * FROM ( " + sql + " ) WHERE ROWNUM <= " + limit;
+        } else {
+            throw new RuntimeException("不支持的数据库类型");
+        }
+    }
+
     public static String getNumberSQL(String sql) {
         // (T_T)
         //subQuery can not with  "AS"  in Oracle
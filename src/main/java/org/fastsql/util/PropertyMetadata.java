@@ -0,0 +1,177 @@
+package org.fastsql.util;
+
+import org.fastsql.FastSQLException;
+import org.springframework.jdbc.core.StatementCreatorUtils;
+
+import javax.persistence.AttributeConverter;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjDoubleConsumer;
+import java.util.function.ObjIntConsumer;
+import java.util.function.ObjLongConsumer;
+
+/**
+ * 实体类一个属性的元数据，持有预先生成的getter/setter
+ * @see EntityMetadata
+ */
+public final class PropertyMetadata {
+
+    private final String name;
+    private final String columnName;
+    private final Class<?> type;
+    private final Field field;
+    private final boolean id;
+    private final boolean persistent;
+
+    private final AttributeConverter<Object, Object> converter;
+    /**
+     * 数据库列对应的Java类型，有转换器时为转换器的数据库类型
+     */
+    private final Class<?> columnType;
+    private final int sqlType;
+
+    private final Function<Object, Object> getter;
+    private final BiConsumer<Object, Object> setter;
+    private final ObjIntConsumer<Object> intSetter;
+    private final ObjLongConsumer<Object> longSetter;
+    private final ObjDoubleConsumer<Object> doubleSetter;
+
+    PropertyMetadata(String name, String columnName, Class<?> type, Field field, boolean id, boolean persistent,
+                     Method readMethod, Method writeMethod,
+                     AttributeConverter<Object, Object> converter, Class<?> converterColumnType) {
+        this.name = name;
+        this.columnName = columnName;
+        this.type = type;
+        this.field = field;
+        this.id = id;
+        this.persistent = persistent;
+        this.converter = converter;
+        this.columnType = converter == null ? type : converterColumnType;
+        this.sqlType = StatementCreatorUtils.javaTypeToSqlParameterType(columnType);
+
+        if (readMethod != null) {
+            this.getter = Accessors.getter(readMethod);
+        } else if (field != null) {
+            this.getter = Accessors.getter(field);
+        } else {
+            this.getter = null;
+        }
+        if (writeMethod != null) {
+            this.setter = Accessors.setter(writeMethod);
+            this.intSetter = type == int.class ? Accessors.intSetter(writeMethod) : null;
+            this.longSetter = type == long.class ? Accessors.longSetter(writeMethod) : null;
+            this.doubleSetter = type == double.class ? Accessors.doubleSetter(writeMethod) : null;
+        } else {
+            this.setter = field != null && !Modifier.isFinal(field.getModifiers())
+                    ? Accessors.setter(field) : null;
+            this.intSetter = null;
+            this.longSetter = null;
+            this.doubleSetter = null;
+        }
+    }
+
+    /**
+     * 读取属性值
+     */
+    public Object get(Object bean) {
+        if (getter == null) {
+            throw new FastSQLException(name + "属性不可读");
+        }
+        return getter.apply(bean);
+    }
+
+    /**
+     * 读取写入数据库的值，有转换器时先进行转换
+     */
+    public Object getColumnValue(Object bean) {
+        Object value = get(bean);
+        return converter == null ? value : converter.convertToDatabaseColumn(value);
+    }
+
+    /**
+     * 设置属性值
+     */
+    public void set(Object bean, Object value) {
+        if (setter == null) {
+            throw new FastSQLException(name + "属性不可写");
+        }
+        setter.accept(bean, value);
+    }
+
+    /**
+     * 设置从数据库读取的值，有转换器时先进行转换
+     */
+    public void setColumnValue(Object bean, Object value) {
+        set(bean, converter == null ? value : converter.convertToEntityAttribute(value));
+    }
+
+    public boolean isReadable() {
+        return getter != null;
+    }
+
+    public boolean isWritable() {
+        return setter != null;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getColumnName() {
+        return columnName;
+    }
+
+    public Class<?> getType() {
+        return type;
+    }
+
+    public Field getField() {
+        return field;
+    }
+
+    public boolean isId() {
+        return id;
+    }
+
+    /**
+     * 是否对应数据库中的列
+     */
+    public boolean isPersistent() {
+        return persistent;
+    }
+
+    public AttributeConverter<Object, Object> getConverter() {
+        return converter;
+    }
+
+    public Class<?> getColumnType() {
+        return columnType;
+    }
+
+    /**
+     * @return java.sql.Types中的类型，无法推断时为{@link org.springframework.jdbc.support.JdbcUtils#TYPE_UNKNOWN}
+     */
+    public int getSqlType() {
+        return sqlType;
+    }
+
+    public ObjIntConsumer<Object> getIntSetter() {
+        return converter == null ? intSetter : null;
+    }
+
+    public ObjLongConsumer<Object> getLongSetter() {
+        return converter == null ? longSetter : null;
+    }
+
+    public ObjDoubleConsumer<Object> getDoubleSetter() {
+        return converter == null ? doubleSetter : null;
+    }
+
+    @Override
+    public String toString() {
+        return "PropertyMetadata{" + "name='" + name + '\'' + ", columnName='" + columnName + '\'' + '}';
+    }
+}
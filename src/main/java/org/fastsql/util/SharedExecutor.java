@@ -0,0 +1,83 @@
+package org.fastsql.util;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * 分片并行查询和分块扫描共用的线程池
+ * <p>
+ * 线程数有上限，不排队：线程都在忙时{@link #tryExecute(Runnable)}返回false，由调用方在当前线程执行。
+ * 空闲60秒的线程被回收
+ */
+public final class SharedExecutor {
+
+    private static final AtomicInteger THREAD_NUMBER = new AtomicInteger();
+
+    private static final ThreadPoolExecutor POOL = new ThreadPoolExecutor(0,
+            Math.max(4, Runtime.getRuntime().availableProcessors()), 60, TimeUnit.SECONDS, new SynchronousQueue<>(),
+            runnable -> {
+                Thread thread = new Thread(runnable, "fastsql-worker-" + THREAD_NUMBER.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }, new ThreadPoolExecutor.AbortPolicy());
+
+    /**
+     * 线程都在忙时在调用线程执行
+     */
+    public static final Executor CALLER_RUNS = task -> {
+        if (!tryExecute(task)) {
+            task.run();
+        }
+    };
+
+    private SharedExecutor() {
+    }
+
+    /**
+     * 在空闲线程或新线程中执行
+     *
+     * @return 线程数已达上限时返回false，task不会被执行
+     */
+    public static boolean tryExecute(Runnable task) {
+        try {
+            POOL.execute(task);
+            return true;
+        } catch (RejectedExecutionException e) {
+            return false;
+        }
+    }
+
+    /**
+     * 把线程数上限提高到size，不会降低
+     */
+    public static synchronized void ensureMaximumPoolSize(int size) {
+        if (size > POOL.getMaximumPoolSize()) {
+            POOL.setMaximumPoolSize(size);
+        }
+    }
+
+    /**
+     * 设置线程数上限
+     */
+    public static synchronized void setMaximumPoolSize(int size) {
+        if (size < 1) {
+            throw new IllegalArgumentException("线程数上限必须大于0");
+        }
+        POOL.setMaximumPoolSize(size);
+    }
+
+    public static int getMaximumPoolSize() {
+        return POOL.getMaximumPoolSize();
+    }
+
+    /**
+     * @return 正在执行任务的线程数
+     */
+    public static int getActiveCount() {
+        return POOL.getActiveCount();
+    }
+}
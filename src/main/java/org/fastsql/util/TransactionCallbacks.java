@@ -0,0 +1,39 @@
+package org.fastsql.util;
+
+import org.springframework.transaction.support.TransactionSynchronizationAdapter;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+/**
+ * 缓存与Spring事务的配合
+ * <p>
+ * 事务中读到的数据可能被回滚，写入在提交前对其他线程不可见，
+ * 因此事务中不读写共享缓存，写入引起的失效在事务结束后执行
+ */
+public final class TransactionCallbacks {
+
+    private TransactionCallbacks() {
+    }
+
+    /**
+     * @return 当前线程是否处于数据库事务中
+     */
+    public static boolean inTransaction() {
+        return TransactionSynchronizationManager.isActualTransactionActive();
+    }
+
+    /**
+     * 当前线程有事务同步时在事务结束(提交或回滚)后执行，否则立即执行
+     */
+    public static void afterCompletion(Runnable action) {
+        if (!TransactionSynchronizationManager.isSynchronizationActive()) {
+            action.run();
+            return;
+        }
+        TransactionSynchronizationManager.registerSynchronization(new TransactionSynchronizationAdapter() {
+            @Override
+            public void afterCompletion(int status) {
+                action.run();
+            }
+        });
+    }
+}
@@ -0,0 +1,38 @@
+package org.fastsql;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FastSqlSessionTest {
+
+    /**
+     * 会话按工厂区分，嵌套的同一工厂的会话共用缓存
+     */
+    @Test
+    public void sessionsAreKeyedByFactory() {
+        SQLFactory first = new SQLFactory();
+        SQLFactory second = new SQLFactory();
+        try (FastSqlSession outer = first.openSession()) {
+            outer.put(String.class, 1, "first");
+            assertSame(outer, FastSqlSession.current(first));
+            assertNull(FastSqlSession.current(second));
+            try (FastSqlSession other = second.openSession()) {
+                assertSame(other, FastSqlSession.current(second));
+                assertSame(outer, FastSqlSession.current(first));
+                assertNull(other.get(String.class, 1));
+                other.put(String.class, 1, "second");
+                try (FastSqlSession nested = first.openSession()) {
+                    assertSame(nested, FastSqlSession.current(first));
+                    assertEquals("first", nested.get(String.class, 1));
+                }
+                assertEquals("first", outer.get(String.class, 1));
+            }
+            assertNull(FastSqlSession.current(second));
+            assertEquals("first", outer.get(String.class, 1));
+        }
+        assertNull(FastSqlSession.current());
+    }
+}
@@ -0,0 +1,107 @@
+package org.fastsql;
+
+import org.fastsql.support.StubDataSource;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import javax.sql.DataSource;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+public class SQLFactoryTest {
+
+    private final SQLFactory factory = new SQLFactory();
+
+    private final DataSource primary = StubDataSource.create();
+
+    private final DataSource replica = StubDataSource.create();
+
+    public SQLFactoryTest() {
+        factory.setDataSource(primary);
+        factory.setReplicaDataSources(Arrays.asList(replica, StubDataSource.create()));
+    }
+
+    private void query() {
+        factory.getReadTemplate().queryForList("SELECT 1", Collections.<String, Object>emptyMap());
+    }
+
+    private boolean readsPrimary() {
+        return factory.getReadTemplate() == factory.getNamedParameterJdbcTemplate();
+    }
+
+    @Test
+    public void withoutReplicasReadsPrimary() {
+        SQLFactory plain = new SQLFactory();
+        plain.setDataSource(primary);
+        plain.markWrite();
+        assertSame(plain.getNamedParameterJdbcTemplate(), plain.getReadTemplate());
+    }
+
+    @Test
+    public void readsGoToReplicas() {
+        assertNotSame(factory.getNamedParameterJdbcTemplate(), factory.getReadTemplate());
+        assertSame(factory.getReadTemplate(), factory.getReadTemplate());
+        for (int i = 0; i < 4; i++) {
+            query();
+        }
+        assertEquals(0, StubDataSource.of(primary).getOpened());
+        assertEquals(2, StubDataSource.of(replica).getOpened());
+        assertEquals(2, StubDataSource.of(factory.getReplicaDataSources().get(1)).getOpened());
+    }
+
+    /**
+     * 副本不可用时由其他副本执行
+     */
+    @Test
+    public void unavailableReplicaIsSkipped() {
+        StubDataSource.of(replica).unavailable(true);
+        for (int i = 0; i < 4; i++) {
+            query();
+        }
+        assertEquals(0, StubDataSource.of(replica).getOpened());
+        assertEquals(4, StubDataSource.of(factory.getReplicaDataSources().get(1)).getOpened());
+    }
+
+    @Test
+    public void transactionReadsPrimary() {
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            assertTrue(readsPrimary());
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertFalse(readsPrimary());
+    }
+
+    /**
+     * 写入后的一段时间内在主库上查询，只影响写入的线程
+     */
+    @Test
+    public void readYourWritesWindow() throws Exception {
+        factory.setReadYourWritesWindow(100);
+        factory.markWrite();
+        assertTrue(readsPrimary());
+        query();
+        assertEquals(1, StubDataSource.of(primary).getOpened());
+
+        AtomicBoolean otherReadsPrimary = new AtomicBoolean(true);
+        Thread other = new Thread(() -> otherReadsPrimary.set(readsPrimary()));
+        other.start();
+        other.join();
+        assertFalse(otherReadsPrimary.get());
+
+        Thread.sleep(150);
+        assertFalse(readsPrimary());
+
+        factory.setReadYourWritesWindow(0);
+        factory.markWrite();
+        assertFalse(readsPrimary());
+    }
+}
@@ -0,0 +1,71 @@
+package org.fastsql.cache;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class FrequencySketchTest {
+
+    @Test
+    public void countsUpToFifteen() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(64);
+        assertEquals(0, sketch.frequency("a"));
+        for (int i = 1; i <= 20; i++) {
+            sketch.increment("a");
+            assertEquals(Math.min(i, 15), sketch.frequency("a"));
+        }
+    }
+
+    @Test
+    public void estimateIsNeverBelowTrueCount() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(512);
+        for (int i = 0; i < 256; i++) {
+            for (int j = 0; j <= i % 4; j++) {
+                sketch.increment(i);
+            }
+        }
+        int exact = 0;
+        for (int i = 0; i < 256; i++) {
+            int frequency = sketch.frequency(i);
+            assertTrue(frequency >= i % 4 + 1);
+            if (frequency == i % 4 + 1) {
+                exact++;
+            }
+        }
+        //容量足够时碰撞很少
+        assertTrue(String.valueOf(exact), exact > 240);
+    }
+
+    /**
+     * 增加次数达到采样数量时所有计数减半
+     */
+    @Test
+    public void resetHalvesCounters() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(16);
+        for (int i = 0; i < 15; i++) {
+            sketch.increment("hot");
+        }
+        assertEquals(15, sketch.frequency("hot"));
+        int additions = 0;
+        while (sketch.frequency("hot") == 15) {
+            sketch.increment(additions++);
+            assertTrue(additions <= 10 * 16);
+        }
+        assertEquals(7, sketch.frequency("hot"));
+    }
+
+    @Test
+    public void growingDiscardsCounts() {
+        FrequencySketch sketch = new FrequencySketch();
+        sketch.ensureCapacity(16);
+        sketch.increment("a");
+        sketch.ensureCapacity(8);
+        assertEquals(1, sketch.frequency("a"));
+        sketch.ensureCapacity(1024);
+        assertEquals(0, sketch.frequency("a"));
+    }
+}
@@ -0,0 +1,119 @@
+package org.fastsql.cache;
+
+import org.junit.Test;
+
+import java.sql.Timestamp;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class QueryResultCacheTest {
+
+    private final QueryResultCache cache = new QueryResultCache();
+
+    private QueryResultCache.QueryKey key(String sql) {
+        return new QueryResultCache.QueryKey(sql, Bean.class, new Object[]{1});
+    }
+
+    private void put(QueryResultCache.QueryKey key, Object value, String... tables) {
+        cache.put(key, value, tables, cache.versions(tables), Duration.ofMinutes(1));
+    }
+
+    @Test
+    @SuppressWarnings("unchecked")
+    public void callersGetTheirOwnCopies() {
+        QueryResultCache.QueryKey key = key("SELECT * FROM bean");
+        Bean bean = new Bean("a");
+        put(key, new ArrayList<>(Arrays.asList(bean)), "bean");
+        bean.setName("changed before get");
+
+        List<Bean> first = (List<Bean>) cache.get(key).getValue();
+        assertEquals("a", first.get(0).getName());
+        first.get(0).setName("changed by caller");
+        first.clear();
+
+        List<Bean> second = (List<Bean>) cache.get(key).getValue();
+        assertEquals(1, second.size());
+        assertEquals("a", second.get(0).getName());
+        assertNotSame(first, second);
+    }
+
+    @Test
+    public void mutableValuesAreCopied() {
+        QueryResultCache.QueryKey key = key("SELECT created_at, name FROM bean");
+        Timestamp time = new Timestamp(0);
+        put(key, new Object[]{time, "a"}, "bean");
+
+        Object[] row = (Object[]) cache.get(key).getValue();
+        ((Timestamp) row[0]).setTime(1000);
+        row[1] = "b";
+
+        assertArrayEquals(new Object[]{new Timestamp(0), "a"}, (Object[]) cache.get(key).getValue());
+    }
+
+    @Test
+    public void uncopyableResultsAreNotCached() {
+        QueryResultCache.QueryKey key = key("SELECT name FROM bean");
+        put(key, Arrays.asList(new Immutable("a")), "bean");
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void writeInvalidatesDependentResults() {
+        QueryResultCache.QueryKey key = key("SELECT name FROM bean b JOIN other o ON b.id = o.id");
+        String[] tables = cache.tablesOf("SELECT name FROM bean b JOIN other o ON b.id = o.id");
+        assertArrayEquals(new String[]{"bean", "other"}, tables);
+        put(key, "a", tables);
+        assertNotNull(cache.get(key));
+
+        cache.invalidateWrite("UPDATE other SET x = 1");
+        assertNull(cache.get(key));
+    }
+
+    @Test
+    public void resultReadDuringWriteIsNotCached() {
+        QueryResultCache.QueryKey key = key("SELECT name FROM bean");
+        long[] versions = cache.versions(new String[]{"bean"});
+        cache.invalidateTables("bean");
+        cache.put(key, "stale", new String[]{"bean"}, versions, Duration.ofMinutes(1));
+        assertNull(cache.get(key));
+    }
+
+    public static class Bean {
+        private String name;
+
+        public Bean() {
+        }
+
+        Bean(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    public static class Immutable {
+        private final String name;
+
+        Immutable(String name) {
+            this.name = name;
+        }
+
+        public String getName() {
+            return name;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.fastsql.cache;
+
+import org.junit.Test;
+
+import java.time.Duration;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class TinyLfuCacheTest {
+
+    @Test
+    public void sizeIsBounded() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 1000; i++) {
+            cache.put(i, "v" + i);
+            assertTrue(cache.size() <= 100);
+        }
+        CacheStats stats = cache.stats();
+        assertEquals(100, stats.getSize());
+        assertEquals(100, stats.getWeight());
+        assertEquals(900, stats.getEvictionCount());
+    }
+
+    /**
+     * 只访问一次的数据不能把频繁访问的数据挤出缓存
+     */
+    @Test
+    public void frequentEntriesSurviveScan() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+        for (int round = 0; round < 5; round++) {
+            for (int i = 0; i < 50; i++) {
+                assertNotNull(cache.get(i));
+            }
+        }
+        for (int i = 1000; i < 11000; i++) {
+            cache.put(i, "v" + i);
+        }
+        for (int i = 0; i < 50; i++) {
+            assertEquals("v" + i, cache.get(i));
+        }
+        assertEquals(100, cache.size());
+    }
+
+    /**
+     * 候选者的访问频率高于试用区头部时被接纳
+     */
+    @Test
+    public void frequentCandidateIsAdmitted() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(100);
+        for (int i = 0; i < 100; i++) {
+            cache.put(i, "v" + i);
+        }
+        //新数据反复写入，积累访问频率后进入主区
+        for (int round = 0; round < 5; round++) {
+            cache.put(-1, "hot");
+            cache.invalidate(-1);
+        }
+        cache.put(-1, "hot");
+        cache.put(-2, "push out of window");
+        assertEquals("hot", cache.get(-1));
+    }
+
+    @Test
+    public void weightLimit() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, null, (key, value) -> value.length());
+        cache.put(1, "aaaa");
+        cache.put(2, "bbbb");
+        cache.put(3, "cccccccccccc");
+        assertNull(cache.get(3));
+        cache.put(3, "cccc");
+        assertTrue(cache.stats().getWeight() <= 10);
+        assertEquals(2, cache.size());
+
+        cache.put(3, "c");
+        assertTrue(cache.stats().getWeight() <= 10);
+    }
+
+    @Test
+    public void expireAfterWrite() throws Exception {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10, Duration.ofMillis(50));
+        cache.put(1, "a");
+        assertEquals("a", cache.get(1));
+        Thread.sleep(100);
+        assertNull(cache.get(1));
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.stats().getWeight());
+    }
+
+    @Test
+    public void invalidate() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        for (int i = 0; i < 10; i++) {
+            cache.put(i, "v" + i);
+            cache.get(i);
+        }
+        cache.invalidate(3);
+        assertNull(cache.get(3));
+        assertEquals(9, cache.size());
+        cache.invalidateAll();
+        assertEquals(0, cache.size());
+        assertEquals(0, cache.stats().getWeight());
+        cache.put(1, "a");
+        assertEquals("a", cache.get(1));
+    }
+
+    @Test
+    public void hitAndMissCounts() {
+        TinyLfuCache<Integer, String> cache = new TinyLfuCache<>(10);
+        cache.put(1, "a");
+        cache.get(1);
+        cache.get(1);
+        cache.get(2);
+        CacheStats stats = cache.stats();
+        assertEquals(2, stats.getHitCount());
+        assertEquals(1, stats.getMissCount());
+    }
+}
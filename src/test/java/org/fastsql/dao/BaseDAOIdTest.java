@@ -0,0 +1,146 @@
+package org.fastsql.dao;
+
+import org.fastsql.SQLFactory;
+import org.fastsql.config.DatabaseType;
+import org.fastsql.support.StubDataSource;
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import javax.persistence.AttributeConverter;
+import javax.persistence.Convert;
+import javax.persistence.Id;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 主键有转换器时，按id的操作都绑定转换后的值
+ */
+public class BaseDAOIdTest {
+
+    private final StubDataSource database;
+
+    private final TicketDAO dao = new TicketDAO();
+
+    public BaseDAOIdTest() {
+        SQLFactory factory = new SQLFactory();
+        factory.setDataSource(StubDataSource.create());
+        factory.setDatabaseType(DatabaseType.MY_SQL);
+        database = StubDataSource.of(factory.getDataSource());
+        dao.setSqlFactory(factory);
+    }
+
+    @Test
+    public void existsByIdBindsConvertedId() {
+        database.onQuery(sql -> StubResultSet.of(new String[]{"e"}, new int[]{Types.INTEGER}, new Object[]{1}));
+        assertTrue(dao.existsById(new Code("A-1")));
+        database.onQuery(sql -> StubResultSet.of(new String[]{"e"}, new int[]{Types.INTEGER}, new Object[]{0}));
+        assertFalse(dao.existsById(new Code("A-2")));
+
+        assertEquals("SELECT CASE WHEN EXISTS ( SELECT 1 FROM ticket WHERE code IN (?) ) THEN 1 ELSE 0 END",
+                database.getExecuted().get(0));
+        assertEquals(Collections.singletonList("A-1"), database.getParameters().get(0));
+        assertEquals(Collections.singletonList("A-2"), database.getParameters().get(1));
+    }
+
+    @Test
+    public void deleteByIdsBindsConvertedIds() {
+        dao.deleteByIds(Arrays.asList(new Code("A-1"), new Code("A-2")));
+        assertEquals(Arrays.asList("A-1", "A-2"), database.getParameters().get(0));
+    }
+
+    /**
+     * 预先查询已存在的主键时绑定转换后的值，查到的值转换回主键类型
+     */
+    @Test
+    public void upsertPreCheckConvertsIds() {
+        dao.useBeforeInsert = true;
+        dao.useBeforeUpdate = true;
+        database.onQuery(sql -> StubResultSet.of(new String[]{"code"}, new int[]{Types.VARCHAR}, new Object[]{"A-1"}));
+        dao.upsertInBatch(Arrays.asList(ticket("A-1"), ticket("A-2")));
+
+        assertEquals("SELECT code FROM ticket WHERE code IN (?,?)", database.getExecuted().get(0));
+        assertEquals(Arrays.asList("A-1", "A-2"), database.getParameters().get(0));
+        assertEquals(Arrays.asList("beforeUpdate A-1", "beforeInsert A-2"), dao.events);
+    }
+
+    private static Ticket ticket(String code) {
+        Ticket ticket = new Ticket();
+        ticket.setCode(new Code(code));
+        return ticket;
+    }
+
+    public static final class Code {
+        private final String value;
+
+        Code(String value) {
+            this.value = value;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Code && ((Code) o).value.equals(value);
+        }
+
+        @Override
+        public int hashCode() {
+            return value.hashCode();
+        }
+    }
+
+    public static class CodeConverter implements AttributeConverter<Code, String> {
+        @Override
+        public String convertToDatabaseColumn(Code code) {
+            return code == null ? null : code.value;
+        }
+
+        @Override
+        public Code convertToEntityAttribute(String value) {
+            return value == null ? null : new Code(value);
+        }
+    }
+
+    public static class Ticket {
+        @Id
+        @Convert(converter = CodeConverter.class)
+        private Code code;
+        private String title;
+
+        public Code getCode() {
+            return code;
+        }
+
+        public void setCode(Code code) {
+            this.code = code;
+        }
+
+        public String getTitle() {
+            return title;
+        }
+
+        public void setTitle(String title) {
+            this.title = title;
+        }
+    }
+
+    static class TicketDAO extends BaseDAO<Ticket, Code> {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        protected void beforeInsert(Ticket entity) {
+            events.add("beforeInsert " + entity.getCode().value);
+        }
+
+        @Override
+        protected void beforeUpdate(Ticket entity) {
+            events.add("beforeUpdate " + entity.getCode().value);
+        }
+    }
+}
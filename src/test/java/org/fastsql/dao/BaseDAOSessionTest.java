@@ -0,0 +1,75 @@
+package org.fastsql.dao;
+
+import org.fastsql.FastSqlSession;
+import org.fastsql.SQLFactory;
+import org.fastsql.config.DatabaseType;
+import org.fastsql.dao.BaseDAOUpsertTest.Item;
+import org.fastsql.support.StubDataSource;
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import java.sql.Types;
+import java.util.Collections;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class BaseDAOSessionTest {
+
+    private final StubDataSource database;
+
+    private final SQLFactory factory = new SQLFactory();
+
+    private final ItemDAO dao = new ItemDAO();
+
+    public BaseDAOSessionTest() {
+        factory.setDataSource(StubDataSource.create());
+        factory.setDatabaseType(DatabaseType.MY_SQL);
+        database = StubDataSource.of(factory.getDataSource());
+        database.onQuery(sql -> StubResultSet.of(new String[]{"id", "name"}, new int[]{Types.BIGINT, Types.VARCHAR},
+                new Object[]{1L, "a"}));
+        dao.setSqlFactory(factory);
+    }
+
+    @Test
+    public void sessionOfOwnFactoryIsUsed() {
+        try (FastSqlSession ignored = factory.openSession()) {
+            Item first = dao.selectOneById(1L);
+            assertSame(first, dao.selectOneById(1L));
+        }
+        assertEquals(1, database.getExecuted().size());
+    }
+
+    /**
+     * 其他工厂的会话可能缓存着另一个数据库中同id的对象
+     */
+    @Test
+    public void sessionOfOtherFactoryIsIgnored() {
+        SQLFactory other = new SQLFactory();
+        try (FastSqlSession session = other.openSession()) {
+            Item first = dao.selectOneById(1L);
+            assertNotSame(first, dao.selectOneById(1L));
+            assertNull(session.get(Item.class, 1L));
+        }
+        assertEquals(2, database.getExecuted().size());
+    }
+
+    /**
+     * 批量写入只更新了数据库，会话中的旧对象被移除
+     */
+    @Test
+    public void batchWriteEvictsSessionEntries() {
+        try (FastSqlSession session = factory.openSession()) {
+            Item item = dao.selectOneById(1L);
+            dao.updateInBatch(Collections.singletonList(item));
+            assertNull(session.get(Item.class, 1L));
+            dao.selectOneById(1L);
+        }
+        assertEquals(3, database.getExecuted().size());
+    }
+
+    static class ItemDAO extends BaseDAO<Item, Long> {
+    }
+}
@@ -0,0 +1,167 @@
+package org.fastsql.dao;
+
+import org.fastsql.SQLFactory;
+import org.fastsql.config.DatabaseType;
+import org.fastsql.support.StubDataSource;
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import javax.persistence.Id;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * 通过StubDataSource记录执行的语句，upsert默认只执行一条语句
+ */
+public class BaseDAOUpsertTest {
+
+    private final StubDataSource database;
+
+    private final ItemDAO dao = new ItemDAO();
+
+    public BaseDAOUpsertTest() {
+        SQLFactory factory = new SQLFactory();
+        factory.setDataSource(StubDataSource.create());
+        database = StubDataSource.of(factory.getDataSource());
+        dao.setSqlFactory(factory);
+    }
+
+    private ItemDAO dao(DatabaseType databaseType) {
+        dao.getSqlFactory().setDatabaseType(databaseType);
+        dao.setSqlFactory(dao.getSqlFactory());
+        return dao;
+    }
+
+    private static Item item(long id) {
+        Item item = new Item();
+        item.setId(id);
+        item.setName("item" + id);
+        return item;
+    }
+
+    @Test
+    public void mySqlDecidesByAffectedRows() {
+        dao(DatabaseType.MY_SQL);
+        database.onUpdate(sql -> 1);
+        assertEquals(1, dao.insertOrUpdate(item(1)));
+        database.onUpdate(sql -> 2);
+        assertEquals(2, dao.insertOrUpdate(item(2)));
+        database.onUpdate(sql -> 0);
+        assertEquals(0, dao.insertOrUpdate(item(3)));
+
+        assertEquals(3, database.getExecuted().size());
+        assertTrue(database.getExecuted().get(0).contains("ON DUPLICATE KEY UPDATE"));
+        assertEquals(Arrays.asList("afterInsert 1", "afterUpdate 2", "afterUpdate 3"), dao.events);
+    }
+
+    @Test
+    public void postgreSqlDecidesByXmax() {
+        dao(DatabaseType.POSTGRESQL);
+        AtomicInteger calls = new AtomicInteger();
+        database.onQuery(sql -> StubResultSet.of(new String[]{"inserted"}, new int[]{Types.BOOLEAN},
+                new Object[]{calls.getAndIncrement() == 0}));
+        assertEquals(1, dao.insertOrUpdate(item(1)));
+        assertEquals(1, dao.insertOrUpdate(item(2)));
+
+        assertEquals(2, database.getExecuted().size());
+        assertTrue(database.getExecuted().get(0).endsWith("RETURNING (xmax = 0)"));
+        assertEquals(Arrays.asList("afterInsert 1", "afterUpdate 2"), dao.events);
+    }
+
+    @Test
+    public void oracleMergeCannotTell() {
+        dao(DatabaseType.ORACLE);
+        assertEquals(1, dao.insertOrUpdate(item(1)));
+        assertEquals(1, database.getExecuted().size());
+        assertTrue(database.getExecuted().get(0).startsWith("MERGE INTO"));
+        assertEquals(Arrays.asList("afterUpsert 1"), dao.events);
+    }
+
+    @Test
+    public void beforeHooksCheckExistenceFirst() {
+        dao(DatabaseType.MY_SQL).useBeforeUpdate = true;
+        database.onQuery(sql -> StubResultSet.of(new String[]{"id"}, new int[]{Types.BIGINT}, new Object[]{1L}));
+        database.onUpdate(sql -> 1);
+        dao.insertOrUpdate(item(1));
+
+        assertEquals(2, database.getExecuted().size());
+        assertTrue(database.getExecuted().get(0).startsWith("SELECT id FROM item"));
+        //预先查询的结果优先于修改行数
+        assertEquals(Arrays.asList("beforeUpdate 1", "afterUpdate 1"), dao.events);
+    }
+
+    @Test
+    public void batchUsesOneSlotPerEntity() {
+        dao(DatabaseType.MY_SQL);
+        int[] counts = {1, 2, 0};
+        AtomicInteger next = new AtomicInteger();
+        database.onUpdate(sql -> counts[next.getAndIncrement()]);
+        dao.upsertInBatch(Arrays.asList(item(1), item(2), item(3)));
+
+        assertEquals(3, database.getExecuted().size());
+        for (String sql : database.getExecuted()) {
+            assertTrue(sql, sql.startsWith("INSERT"));
+        }
+        assertEquals(Arrays.asList("afterInsert 1", "afterUpdate 2", "afterUpdate 3"), dao.events);
+    }
+
+    @Test
+    public void postgreSqlBatchCannotTell() {
+        dao(DatabaseType.POSTGRESQL).upsertInBatch(Arrays.asList(item(1), item(2)));
+        assertEquals(2, database.getExecuted().size());
+        assertEquals(Arrays.asList("afterUpsert 1", "afterUpsert 2"), dao.events);
+    }
+
+    public static class Item {
+        @Id
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    static class ItemDAO extends BaseDAO<Item, Long> {
+
+        final List<String> events = new ArrayList<>();
+
+        @Override
+        protected void beforeUpdate(Item entity) {
+            events.add("beforeUpdate " + entity.getId());
+        }
+
+        @Override
+        protected void afterInsert(Item entity, int count) {
+            events.add("afterInsert " + entity.getId());
+        }
+
+        @Override
+        protected void afterUpdate(Item entity, int count) {
+            events.add("afterUpdate " + entity.getId());
+        }
+
+        @Override
+        protected void afterUpsert(Item entity, int count) {
+            events.add("afterUpsert " + entity.getId());
+        }
+    }
+}
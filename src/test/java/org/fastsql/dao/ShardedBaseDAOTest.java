@@ -0,0 +1,121 @@
+package org.fastsql.dao;
+
+import org.fastsql.FastSQLException;
+import org.junit.Test;
+
+import javax.persistence.Id;
+import java.text.Collator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Locale;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+public class ShardedBaseDAOTest {
+
+    private final UserDAO dao = new UserDAO();
+
+    private static User user(Long id, String name) {
+        User user = new User();
+        user.setId(id);
+        user.setName(name);
+        return user;
+    }
+
+    private static List<Long> ids(List<User> users) {
+        List<Long> ids = new ArrayList<>();
+        users.forEach(user -> ids.add(user.getId()));
+        return ids;
+    }
+
+    private List<User> sorted(String orderBy, User... users) {
+        List<User> list = new ArrayList<>(Arrays.asList(users));
+        list.sort(dao.orderComparator(orderBy));
+        return list;
+    }
+
+    @Test
+    public void numericColumnsAndNulls() {
+        User a = user(1L, null);
+        User b = user(2L, null);
+        User none = user(null, null);
+        //PostgreSQL升序时NULL在最后
+        assertEquals(Arrays.asList(1L, 2L, null), ids(sorted("x = 1 ORDER BY id", none, b, a)));
+        assertEquals(Arrays.asList(null, 2L, 1L), ids(sorted("ORDER BY t.id DESC", a, none, b)));
+        assertEquals(Arrays.asList(null, 1L, 2L), ids(sorted("ORDER BY id NULLS FIRST LIMIT 10", b, a, none)));
+    }
+
+    /**
+     * 字符串的顺序取决于数据库的排序规则，没有设置比较方式时不能跨分片归并
+     */
+    @Test
+    public void stringColumnsNeedExplicitOrder() {
+        try {
+            dao.orderComparator("ORDER BY name");
+            fail();
+        } catch (FastSQLException expected) {
+            //需要setStringOrder()
+        }
+
+        User lower = user(1L, "b");
+        User upper = user(2L, "C");
+        User chinese = user(3L, "阿");
+        dao.setStringOrder(Comparator.naturalOrder());
+        assertEquals(Arrays.asList(2L, 1L, 3L), ids(sorted("ORDER BY name, id", lower, chinese, upper)));
+
+        dao.setStringOrder(String.CASE_INSENSITIVE_ORDER);
+        assertEquals(Arrays.asList(1L, 2L, 3L), ids(sorted("ORDER BY name", upper, chinese, lower)));
+
+        //按拼音排序，与码点顺序不同
+        User zhang = user(4L, "张");
+        User li = user(5L, "李");
+        dao.setStringOrder(Comparator.naturalOrder());
+        assertEquals(Arrays.asList(4L, 5L, 3L), ids(sorted("ORDER BY name", chinese, li, zhang)));
+        dao.setStringOrder(Collator.getInstance(Locale.CHINA));
+        assertEquals(Arrays.asList(3L, 5L, 4L), ids(sorted("ORDER BY name", zhang, chinese, li)));
+    }
+
+    @Test
+    public void unknownColumnIsRejected() {
+        try {
+            dao.orderComparator("ORDER BY lower(name)");
+            fail();
+        } catch (FastSQLException expected) {
+            //排序列必须是实体的字段
+        }
+    }
+
+    @Test
+    public void mergeKeepsOrderAndLimit() {
+        List<List<Integer>> lists = Arrays.asList(Arrays.asList(1, 4, 7), Arrays.<Integer>asList(), Arrays.asList(2, 3, 9));
+        assertEquals(Arrays.asList(1, 2, 3, 4, 7), ShardedBaseDAO.mergeSorted(lists, Comparator.naturalOrder(), 5));
+    }
+
+    public static class User {
+        @Id
+        private Long id;
+        private String name;
+
+        public Long getId() {
+            return id;
+        }
+
+        public void setId(Long id) {
+            this.id = id;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+    }
+
+    static class UserDAO extends ShardedBaseDAO<User, Long> {
+    }
+}
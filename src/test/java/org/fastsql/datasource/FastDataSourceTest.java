@@ -0,0 +1,209 @@
+package org.fastsql.datasource;
+
+import org.fastsql.support.StubDataSource;
+import org.junit.After;
+import org.junit.Test;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class FastDataSourceTest {
+
+    private final FastDataSource pool = new FastDataSource();
+
+    @After
+    public void closePool() {
+        pool.close();
+    }
+
+    private StubDataSource stub() {
+        return StubDataSource.of(pool.getDataSource());
+    }
+
+    private FastDataSource pool(int maximumPoolSize) {
+        pool.setDataSource(StubDataSource.create());
+        pool.setMaximumPoolSize(maximumPoolSize);
+        return pool;
+    }
+
+    private static Connection physical(Connection connection) throws Exception {
+        return connection.unwrap(Connection.class);
+    }
+
+    /**
+     * 多个线程同时借还连接，同一个物理连接不会同时借给两个线程，借出的连接总是默认状态
+     */
+    @Test
+    public void concurrentBorrowNeverLendsTwice() throws Exception {
+        final int threads = 16;
+        final int rounds = 500;
+        pool(4).setConnectionTimeout(10000);
+        final Set<Connection> inUse = ConcurrentHashMap.newKeySet();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final CountDownLatch start = new CountDownLatch(1);
+        final List<Thread> workers = new ArrayList<>();
+        for (int t = 0; t < threads; t++) {
+            Thread worker = new Thread(() -> {
+                try {
+                    start.await();
+                    ThreadLocalRandom random = ThreadLocalRandom.current();
+                    for (int i = 0; i < rounds && failure.get() == null; i++) {
+                        Connection connection = pool.getConnection();
+                        Connection physical = physical(connection);
+                        if (!inUse.add(physical)) {
+                            throw new AssertionError(physical + "同时借给了两个线程");
+                        }
+                        assertDefaultState(physical);
+                        if (random.nextBoolean()) {
+                            connection.setAutoCommit(false);
+                            connection.setReadOnly(true);
+                            connection.setTransactionIsolation(Connection.TRANSACTION_SERIALIZABLE);
+                            connection.setCatalog("other");
+                            connection.setSchema("other");
+                        }
+                        if (random.nextInt(8) == 0) {
+                            Thread.yield();
+                        }
+                        inUse.remove(physical);
+                        connection.close();
+                    }
+                } catch (Throwable e) {
+                    failure.compareAndSet(null, e);
+                }
+            });
+            workers.add(worker);
+            worker.start();
+        }
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join(TimeUnit.SECONDS.toMillis(60));
+        }
+        if (failure.get() != null) {
+            throw new AssertionError(failure.get());
+        }
+        assertTrue(stub().getMaxOpen() <= 4);
+        assertEquals(0, pool.getPoolStats().getTimeoutCount());
+    }
+
+    private static void assertDefaultState(Connection physical) {
+        StubDataSource.State state = StubDataSource.stateOf(physical);
+        assertTrue(state.autoCommit);
+        assertFalse(state.readOnly);
+        assertEquals(Connection.TRANSACTION_READ_COMMITTED, state.isolation);
+        assertEquals(StubDataSource.CATALOG, state.catalog);
+        assertEquals(StubDataSource.SCHEMA, state.schema);
+        assertFalse(state.closed);
+    }
+
+    @Test
+    public void stateIsResetOnReturn() throws Exception {
+        pool(1);
+        Connection physical;
+        try (Connection connection = pool.getConnection()) {
+            physical = physical(connection);
+            connection.setAutoCommit(false);
+            connection.setReadOnly(true);
+            connection.setTransactionIsolation(Connection.TRANSACTION_REPEATABLE_READ);
+            connection.setCatalog("other");
+            connection.setSchema("other");
+        }
+        assertEquals(1, StubDataSource.stateOf(physical).rollbacks.get());
+        assertDefaultState(physical);
+        try (Connection connection = pool.getConnection()) {
+            assertSame(physical, physical(connection));
+            assertTrue(connection.getAutoCommit());
+        }
+    }
+
+    @Test
+    public void borrowTimesOut() throws Exception {
+        pool(1).setConnectionTimeout(200);
+        try (Connection ignored = pool.getConnection()) {
+            long start = System.nanoTime();
+            try {
+                pool.getConnection();
+                fail();
+            } catch (SQLTransientConnectionException e) {
+                long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+                assertTrue(String.valueOf(waited), waited >= 150 && waited < 5000);
+            }
+        }
+        assertEquals(1, pool.getPoolStats().getTimeoutCount());
+        try (Connection connection = pool.getConnection()) {
+            assertFalse(connection.isClosed());
+        }
+    }
+
+    @Test
+    public void waiterReceivesReturnedConnection() throws Exception {
+        pool(1).setConnectionTimeout(5000);
+        Connection held = pool.getConnection();
+        Connection physical = physical(held);
+        AtomicReference<Connection> received = new AtomicReference<>();
+        Thread waiter = new Thread(() -> {
+            try (Connection connection = pool.getConnection()) {
+                received.set(physical(connection));
+            } catch (Exception e) {
+                throw new IllegalStateException(e);
+            }
+        });
+        waiter.start();
+        Thread.sleep(100);
+        held.close();
+        waiter.join(5000);
+        assertSame(physical, received.get());
+    }
+
+    @Test
+    public void expiredConnectionsAreRetired() throws Exception {
+        pool(1).setMaxLifetime(100);
+        Connection first;
+        try (Connection connection = pool.getConnection()) {
+            first = physical(connection);
+        }
+        Thread.sleep(150);
+        //空闲期间到期的连接在借出时关闭
+        Connection held = pool.getConnection();
+        Connection second = physical(held);
+        assertNotSame(first, second);
+        assertTrue(StubDataSource.stateOf(first).closed);
+
+        //借出期间到期的连接在归还时关闭
+        Thread.sleep(150);
+        held.close();
+        assertTrue(StubDataSource.stateOf(second).closed);
+        assertEquals(0, pool.getPoolStats().getTotalConnections());
+        assertEquals(2, stub().getOpened());
+    }
+
+    @Test
+    public void closedProxyRejectsUse() throws Exception {
+        pool(1);
+        Connection connection = pool.getConnection();
+        connection.close();
+        connection.close();
+        try {
+            connection.createStatement();
+            fail();
+        } catch (SQLException e) {
+            assertEquals("08003", e.getSQLState());
+        }
+        assertEquals(1, pool.getPoolStats().getIdleConnections());
+    }
+}
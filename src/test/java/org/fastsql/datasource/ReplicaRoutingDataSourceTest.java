@@ -0,0 +1,126 @@
+package org.fastsql.datasource;
+
+import org.fastsql.support.StubDataSource;
+import org.junit.Test;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ReplicaRoutingDataSourceTest {
+
+    private final List<DataSource> replicas = new ArrayList<>();
+
+    private ReplicaRoutingDataSource routing(int count) {
+        for (int i = 0; i < count; i++) {
+            replicas.add(StubDataSource.create());
+            stub(i).named("replica" + i);
+        }
+        return new ReplicaRoutingDataSource(replicas);
+    }
+
+    private StubDataSource stub(int index) {
+        return StubDataSource.of(replicas.get(index));
+    }
+
+    private int[] opened() {
+        int[] opened = new int[replicas.size()];
+        for (int i = 0; i < opened.length; i++) {
+            opened[i] = stub(i).getOpened();
+        }
+        return opened;
+    }
+
+    /**
+     * 选择未归还连接最少的副本，归还后该副本再次被选中
+     */
+    @Test
+    public void choosesLeastOutstandingReplica() throws Exception {
+        ReplicaRoutingDataSource routing = routing(3);
+        List<Connection> connections = new ArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            connections.add(routing.getConnection());
+        }
+        assertArrayEquals(new int[]{1, 1, 1}, routing.getOutstandingRequests());
+        assertArrayEquals(new int[]{1, 1, 1}, opened());
+
+        Connection returned = connections.remove(1);
+        int index = replicas.indexOf(physicalSource(returned));
+        returned.close();
+        assertEquals(0, routing.getOutstandingRequests()[index]);
+        connections.add(routing.getConnection());
+        assertEquals(2, opened()[index]);
+        assertArrayEquals(new int[]{1, 1, 1}, routing.getOutstandingRequests());
+        for (Connection connection : connections) {
+            connection.close();
+        }
+        assertArrayEquals(new int[]{0, 0, 0}, routing.getOutstandingRequests());
+    }
+
+    /**
+     * 没有连接未归还时轮流选择
+     */
+    @Test
+    public void roundRobinWhenIdle() throws Exception {
+        ReplicaRoutingDataSource routing = routing(3);
+        for (int i = 0; i < 30; i++) {
+            routing.getConnection().close();
+        }
+        assertArrayEquals(new int[]{10, 10, 10}, opened());
+    }
+
+    @Test
+    public void failsOverToNextReplica() throws Exception {
+        ReplicaRoutingDataSource routing = routing(3);
+        stub(1).unavailable(true);
+        for (int i = 0; i < 6; i++) {
+            routing.getConnection().close();
+        }
+        assertEquals(0, opened()[1]);
+        assertEquals(6, opened()[0] + opened()[2]);
+        assertArrayEquals(new int[]{0, 0, 0}, routing.getOutstandingRequests());
+
+        stub(0).unavailable(true);
+        stub(2).unavailable(true);
+        try {
+            routing.getConnection();
+            fail();
+        } catch (SQLException expected) {
+            //全部副本不可用时抛出最后一个异常
+            assertTrue(expected.getMessage().startsWith("replica"));
+        }
+        assertArrayEquals(new int[]{0, 0, 0}, routing.getOutstandingRequests());
+    }
+
+    /**
+     * 重复关闭只减少一次未归还连接数
+     */
+    @Test
+    public void closeIsCountedOnce() throws Exception {
+        ReplicaRoutingDataSource routing = routing(1);
+        Connection connection = routing.getConnection();
+        assertArrayEquals(new int[]{1}, routing.getOutstandingRequests());
+        connection.close();
+        connection.close();
+        assertArrayEquals(new int[]{0}, routing.getOutstandingRequests());
+        assertTrue(connection.isClosed());
+        assertEquals(0, stub(0).getOpen());
+    }
+
+    private DataSource physicalSource(Connection connection) throws SQLException {
+        Connection physical = connection.unwrap(Connection.class);
+        for (int i = 0; i < replicas.size(); i++) {
+            if (stub(i).owns(physical)) {
+                return replicas.get(i);
+            }
+        }
+        throw new AssertionError(connection);
+    }
+}
@@ -0,0 +1,151 @@
+package org.fastsql.dto;
+
+import org.fastsql.SQLFactory;
+import org.fastsql.support.StubDataSource;
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.sql.ResultSet;
+import java.sql.Types;
+import java.util.Arrays;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ColumnFrameTest {
+
+    private static final int ROWS = 100;
+
+    @Test
+    public void primitiveColumnsWithNulls() throws Exception {
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            boolean isNull = i % 7 == 3;
+            rows[i] = new Object[]{isNull ? null : i, isNull ? null : i * 10_000_000_000L, isNull ? null : i / 4.0};
+        }
+        ColumnFrame frame = ColumnFrame.read(StubResultSet.of(new String[]{"n", "big", "ratio"},
+                new int[]{Types.INTEGER, Types.BIGINT, Types.DOUBLE}, rows));
+        assertEquals(ROWS, frame.getRowCount());
+        assertEquals(3, frame.getColumnCount());
+
+        ColumnFrame.IntColumn ints = frame.getIntColumn("N");
+        ColumnFrame.LongColumn longs = frame.getLongColumn("big");
+        ColumnFrame.DoubleColumn doubles = frame.getDoubleColumn("ratio");
+        assertEquals(ROWS, ints.values().length);
+        assertEquals(ROWS, longs.values().length);
+        assertEquals(ROWS, doubles.values().length);
+        assertEquals(14, ints.getNullCount());
+        for (int i = 0; i < ROWS; i++) {
+            boolean isNull = i % 7 == 3;
+            assertEquals(isNull, ints.isNull(i));
+            assertEquals(isNull, longs.isNull(i));
+            assertEquals(isNull, doubles.isNull(i));
+            assertEquals(isNull ? 0 : i, ints.getInt(i));
+            assertEquals(isNull ? 0 : i * 10_000_000_000L, longs.getLong(i));
+            assertEquals(isNull ? 0 : i / 4.0, doubles.getDouble(i), 0);
+        }
+        assertNull(ints.getObject(3));
+        assertEquals(4, ints.getObject(4));
+        assertEquals(40_000_000_000L, longs.getObject(4));
+        assertEquals(1.0, doubles.getObject(4));
+    }
+
+    /**
+     * 小数位为0的NUMERIC按精度存为int或long，其余按对象存储
+     */
+    @Test
+    public void numericNarrowing() throws Exception {
+        ResultSet rs = StubResultSet.of(new String[]{"p9", "p18", "p19", "money", "number"},
+                new int[]{Types.NUMERIC, Types.DECIMAL, Types.NUMERIC, Types.NUMERIC, Types.NUMERIC},
+                new Object[]{new BigDecimal(123456789), new BigDecimal(123456789012345678L),
+                        new BigDecimal("1234567890123456789"), new BigDecimal("1.50"), new BigDecimal(7)},
+                new Object[]{null, null, null, null, null});
+        StubResultSet.withPrecision(rs, 1, 9, 0);
+        StubResultSet.withPrecision(rs, 2, 18, 0);
+        StubResultSet.withPrecision(rs, 3, 19, 0);
+        StubResultSet.withPrecision(rs, 4, 10, 2);
+        //Oracle未指定精度的NUMBER
+        StubResultSet.withPrecision(rs, 5, 0, 0);
+        ColumnFrame frame = ColumnFrame.read(rs);
+        assertEquals(123456789, frame.getIntColumn("p9").getInt(0));
+        assertEquals(123456789012345678L, frame.getLongColumn("p18").getLong(0));
+        assertTrue(frame.getIntColumn("p9").isNull(1));
+        assertTrue(frame.getLongColumn("p18").isNull(1));
+        assertTrue(frame.getColumn("p19") instanceof ColumnFrame.ObjectColumn);
+        assertEquals(new BigDecimal("1234567890123456789"), frame.getColumn("p19").getObject(0));
+        assertEquals(new BigDecimal("1.50"), frame.getColumn("money").getObject(0));
+        assertTrue(frame.getColumn("number") instanceof ColumnFrame.ObjectColumn);
+        assertTrue(frame.getColumn("money").isNull(1));
+        try {
+            frame.getIntColumn("money");
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //列的类型不符
+        }
+    }
+
+    /**
+     * 重复的字符串只在字典中保存一次
+     */
+    @Test
+    public void stringDictionaryReuse() throws Exception {
+        String[] cities = {"北京", "上海", "广州"};
+        Object[][] rows = new Object[ROWS][];
+        for (int i = 0; i < ROWS; i++) {
+            //每次新建字符串，字典按值去重
+            rows[i] = new Object[]{i % 10 == 9 ? null : new String(cities[i % 3])};
+        }
+        ColumnFrame.StringColumn column = ColumnFrame.read(StubResultSet.of(new String[]{"city"},
+                new int[]{Types.VARCHAR}, rows)).getStringColumn("city");
+        assertEquals(Arrays.asList(cities), column.getDictionary());
+        for (int i = 0; i < ROWS; i++) {
+            if (i % 10 == 9) {
+                assertTrue(column.isNull(i));
+                assertEquals(-1, column.getCode(i));
+                assertNull(column.getString(i));
+            } else {
+                assertFalse(column.isNull(i));
+                assertEquals(i % 3, column.getCode(i));
+                assertSame(column.getDictionary().get(i % 3), column.getString(i));
+            }
+        }
+    }
+
+    @Test
+    public void emptyResult() throws Exception {
+        ColumnFrame frame = ColumnFrame.read(StubResultSet.of(new String[]{"n", "s"},
+                new int[]{Types.INTEGER, Types.VARCHAR}));
+        assertEquals(0, frame.getRowCount());
+        assertEquals(0, frame.getIntColumn("n").values().length);
+        assertEquals(0, frame.getStringColumn("s").getDictionary().size());
+    }
+
+    /**
+     * 超过初始容量16行后扩容，NULL读取为0
+     */
+    @Test
+    public void primitiveArraysGrowPastInitialCapacity() {
+        SQLFactory factory = new SQLFactory();
+        factory.setDataSource(StubDataSource.create());
+        for (int count : new int[]{0, 16, 17, 25, ROWS}) {
+            Object[][] rows = new Object[count][];
+            int[] expectedInts = new int[count];
+            long[] expectedLongs = new long[count];
+            for (int i = 0; i < count; i++) {
+                rows[i] = new Object[]{i == 5 ? null : (long) i};
+                expectedInts[i] = i == 5 ? 0 : i;
+                expectedLongs[i] = i == 5 ? 0 : i;
+            }
+            StubDataSource.of(factory.getDataSource()).onQuery(sql -> StubResultSet.of(new String[]{"n"},
+                    new int[]{Types.BIGINT}, rows));
+            assertArrayEquals(expectedInts, factory.createSQL().useSql("SELECT n FROM t").queryIntArray());
+            assertArrayEquals(expectedLongs, factory.createSQL().useSql("SELECT n FROM t").queryLongArray());
+        }
+    }
+}
@@ -0,0 +1,100 @@
+package org.fastsql.dto;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+public class LongObjectMapTest {
+
+    @Test
+    public void growsPastInitialCapacity() {
+        LongObjectMap<String> map = new LongObjectMap<>(2);
+        for (long i = 0; i < 10000; i++) {
+            assertNull(map.put(i * 31, "v" + i));
+        }
+        assertEquals(10000, map.size());
+        for (long i = 0; i < 10000; i++) {
+            assertEquals("v" + i, map.get(i * 31));
+        }
+        assertNull(map.get(-31));
+        assertEquals("v5", map.put(155, "x"));
+        assertEquals(10000, map.size());
+        assertEquals(10000, map.keys().length);
+        assertEquals(10000, map.values().size());
+    }
+
+    @Test
+    public void extremeKeys() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        long[] keys = {0, -1, Long.MIN_VALUE, Long.MAX_VALUE, 1L << 32, 1};
+        for (long key : keys) {
+            map.put(key, String.valueOf(key));
+        }
+        for (long key : keys) {
+            assertEquals(String.valueOf(key), map.get(key));
+        }
+        long[] stored = map.keys();
+        Arrays.sort(stored);
+        long[] expected = keys.clone();
+        Arrays.sort(expected);
+        assertTrue(Arrays.equals(expected, stored));
+    }
+
+    @Test
+    public void remove() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(1, "a");
+        map.put(2, "b");
+        assertEquals("a", map.remove(1));
+        assertNull(map.remove(1));
+        assertFalse(map.containsKey(1));
+        assertEquals("b", map.get(2));
+        assertEquals(1, map.size());
+    }
+
+    /**
+     * 随机的增删与HashMap的结果一致，移除后探测序列中的其他键仍能找到
+     */
+    @Test
+    public void randomOperationsMatchHashMap() {
+        Random random = new Random(42);
+        LongObjectMap<Long> map = new LongObjectMap<>(4);
+        Map<Long, Long> expected = new HashMap<>();
+        for (int i = 0; i < 200000; i++) {
+            long key = random.nextInt(2000);
+            if (random.nextInt(3) == 0) {
+                assertEquals(expected.remove(key), map.remove(key));
+            } else {
+                long value = random.nextLong();
+                assertEquals(expected.put(key, value), map.put(key, value));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        for (long key = 0; key < 2000; key++) {
+            assertEquals(expected.get(key), map.get(key));
+            assertEquals(expected.containsKey(key), map.containsKey(key));
+        }
+        Map<Long, Long> visited = new HashMap<>();
+        map.forEach(visited::put);
+        assertEquals(expected, visited);
+    }
+
+    @Test
+    public void clear() {
+        LongObjectMap<String> map = new LongObjectMap<>();
+        map.put(1, "a");
+        map.clear();
+        assertTrue(map.isEmpty());
+        assertNull(map.get(1));
+        map.put(1, "b");
+        assertEquals("b", map.get(1));
+    }
+}
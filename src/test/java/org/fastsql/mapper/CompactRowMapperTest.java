@@ -0,0 +1,103 @@
+package org.fastsql.mapper;
+
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.sql.ResultSet;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class CompactRowMapperTest {
+
+    private static List<Map<String, Object>> map(ResultSet rs) throws Exception {
+        CompactRowMapper mapper = new CompactRowMapper();
+        List<Map<String, Object>> rows = new ArrayList<>();
+        int rowNum = 0;
+        while (rs.next()) {
+            rows.add(mapper.mapRow(rs, rowNum++));
+        }
+        return rows;
+    }
+
+    @Test
+    public void caseInsensitiveLookup() throws Exception {
+        List<Map<String, Object>> rows = map(StubResultSet.of(new String[]{"id", "User_Name"},
+                new Object[]{1, "tom"}, new Object[]{2, null}));
+        Map<String, Object> row = rows.get(0);
+        assertEquals("tom", row.get("user_name"));
+        assertEquals("tom", row.get("USER_NAME"));
+        assertTrue(row.containsKey("ID"));
+        assertFalse(row.containsKey("missing"));
+        assertNull(row.get(1));
+        assertTrue(rows.get(1).containsKey("user_name"));
+        assertNull(rows.get(1).get("user_name"));
+
+        Map<String, Object> expected = new LinkedHashMap<>();
+        expected.put("id", 1);
+        expected.put("User_Name", "tom");
+        assertEquals(expected, row);
+        assertEquals(expected.hashCode(), row.hashCode());
+        assertEquals("[id, User_Name]", row.keySet().toString());
+    }
+
+    /**
+     * 重名的列与ColumnMapRowMapper一致，后面的列覆盖前面的列
+     */
+    @Test
+    public void laterDuplicateColumnWins() throws Exception {
+        Map<String, Object> row = map(StubResultSet.of(new String[]{"id", "name", "ID"},
+                new Object[]{1, "tom", 2})).get(0);
+        assertEquals(2, row.size());
+        assertEquals(2, row.get("id"));
+        assertEquals("[id, name]", row.keySet().toString());
+    }
+
+    @Test
+    public void rowsAreReadOnly() throws Exception {
+        Map<String, Object> row = map(StubResultSet.of(new String[]{"id"}, new Object[]{1})).get(0);
+        try {
+            row.put("id", 2);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            //只读
+        }
+        try {
+            row.entrySet().iterator().next().setValue(2);
+            fail();
+        } catch (UnsupportedOperationException expected) {
+            //只读
+        }
+        assertEquals(1, row.get("id"));
+    }
+
+    @Test
+    public void rowsAreSerializable() throws Exception {
+        List<Map<String, Object>> rows = map(StubResultSet.of(new String[]{"id", "name"},
+                new Object[]{1, "tom"}, new Object[]{2, "jerry"}));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(new ArrayList<>(rows));
+        }
+        List<?> copy;
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            copy = (List<?>) in.readObject();
+        }
+        assertEquals(rows, copy);
+        Map<?, ?> row = (Map<?, ?>) copy.get(1);
+        assertEquals("jerry", row.get("NAME"));
+        assertEquals(2, row.entrySet().size());
+        assertTrue(CompactRowMapper.isCompactRow(row));
+    }
+}
@@ -0,0 +1,182 @@
+package org.fastsql.mapper;
+
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+
+import java.sql.Date;
+import java.sql.ResultSet;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+
+public class FastBeanRowMapperTest {
+
+    private static List<Row> map(ResultSet rs) throws Exception {
+        FastBeanRowMapper<Row> mapper = FastBeanRowMapper.of(Row.class);
+        List<Row> result = new ArrayList<>();
+        int rowNum = 0;
+        while (rs.next()) {
+            result.add(mapper.mapRow(rs, rowNum++));
+        }
+        return result;
+    }
+
+    @Test
+    public void nullIntoPrimitiveKeepsDefault() throws Exception {
+        ResultSet rs = StubResultSet.of(new String[]{"age", "total", "score", "active"},
+                new Object[]{null, null, null, null},
+                new Object[]{18, 7L, 1.5, true});
+        List<Row> rows = map(rs);
+
+        assertEquals(-1, rows.get(0).getAge());
+        assertEquals(-1L, rows.get(0).getTotal());
+        assertEquals(-1.0, rows.get(0).getScore(), 0);
+        assertEquals(false, rows.get(0).isActive());
+
+        assertEquals(18, rows.get(1).getAge());
+        assertEquals(7L, rows.get(1).getTotal());
+        assertEquals(1.5, rows.get(1).getScore(), 0);
+        assertEquals(true, rows.get(1).isActive());
+    }
+
+    @Test
+    public void javaTimeColumns() throws Exception {
+        LocalDateTime now = LocalDateTime.of(2018, 3, 4, 5, 6, 7);
+        ResultSet rs = StubResultSet.of(new String[]{"birthday", "created_at", "start_time", "updated"},
+                new Object[]{Date.valueOf("2000-01-02"), Timestamp.valueOf(now), Time.valueOf("08:30:00"),
+                        Timestamp.valueOf(now)},
+                new Object[]{null, null, null, null});
+        List<Row> rows = map(rs);
+
+        assertEquals(LocalDate.of(2000, 1, 2), rows.get(0).getBirthday());
+        assertEquals(now, rows.get(0).getCreatedAt());
+        assertEquals(LocalTime.of(8, 30), rows.get(0).getStartTime());
+        assertEquals(Timestamp.valueOf(now).toInstant(), rows.get(0).getUpdated());
+
+        assertNull(rows.get(1).getBirthday());
+        assertNull(rows.get(1).getCreatedAt());
+        assertNull(rows.get(1).getStartTime());
+        assertNull(rows.get(1).getUpdated());
+    }
+
+    @Test
+    public void columnAliasMatching() throws Exception {
+        String[][] layouts = {
+                {"user_name", "created_at"},
+                {"USERNAME", "CREATEDAT"},
+                {"UserName", "Created_At"},
+                {"user name", "created at"},
+        };
+        for (String[] labels : layouts) {
+            LocalDateTime time = LocalDateTime.of(2018, 1, 1, 0, 0);
+            Row row = map(StubResultSet.of(labels, new Object[]{"tom", Timestamp.valueOf(time)})).get(0);
+            assertEquals(String.join(",", labels), "tom", row.getUserName());
+            assertEquals(String.join(",", labels), time, row.getCreatedAt());
+        }
+    }
+
+    @Test
+    public void unknownColumnsAreIgnored() throws Exception {
+        Row row = map(StubResultSet.of(new String[]{"not_a_property", "age"}, new Object[]{"x", 3})).get(0);
+        assertEquals(3, row.getAge());
+        assertNull(row.getUserName());
+    }
+
+    @Test
+    public void mapperIsCachedPerClass() {
+        assertSame(FastBeanRowMapper.of(Row.class), FastBeanRowMapper.of(Row.class));
+    }
+
+    public static class Row {
+        private int age = -1;
+        private long total = -1;
+        private double score = -1;
+        private boolean active;
+        private String userName;
+        private LocalDate birthday;
+        private LocalDateTime createdAt;
+        private LocalTime startTime;
+        private Instant updated;
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+
+        public long getTotal() {
+            return total;
+        }
+
+        public void setTotal(long total) {
+            this.total = total;
+        }
+
+        public double getScore() {
+            return score;
+        }
+
+        public void setScore(double score) {
+            this.score = score;
+        }
+
+        public boolean isActive() {
+            return active;
+        }
+
+        public void setActive(boolean active) {
+            this.active = active;
+        }
+
+        public String getUserName() {
+            return userName;
+        }
+
+        public void setUserName(String userName) {
+            this.userName = userName;
+        }
+
+        public LocalDate getBirthday() {
+            return birthday;
+        }
+
+        public void setBirthday(LocalDate birthday) {
+            this.birthday = birthday;
+        }
+
+        public LocalDateTime getCreatedAt() {
+            return createdAt;
+        }
+
+        public void setCreatedAt(LocalDateTime createdAt) {
+            this.createdAt = createdAt;
+        }
+
+        public LocalTime getStartTime() {
+            return startTime;
+        }
+
+        public void setStartTime(LocalTime startTime) {
+            this.startTime = startTime;
+        }
+
+        public Instant getUpdated() {
+            return updated;
+        }
+
+        public void setUpdated(Instant updated) {
+            this.updated = updated;
+        }
+    }
+}
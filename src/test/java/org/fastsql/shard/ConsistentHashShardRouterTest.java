@@ -0,0 +1,89 @@
+package org.fastsql.shard;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ConsistentHashShardRouterTest {
+
+    private static final int KEYS = 100000;
+
+    @Test
+    public void routesIntoRangeAndIsDeterministic() {
+        ConsistentHashShardRouter router = new ConsistentHashShardRouter();
+        ConsistentHashShardRouter other = new ConsistentHashShardRouter();
+        for (long key = 0; key < 1000; key++) {
+            int shard = router.route(key, 7);
+            assertTrue(shard >= 0 && shard < 7);
+            assertEquals(shard, other.route(key, 7));
+            assertEquals(router.route("user-" + key, 7), other.route("user-" + key, 7));
+        }
+        assertEquals(0, router.route(42L, 1));
+    }
+
+    /**
+     * 整数按值路由，与装箱类型无关；其他类型按toString()路由
+     */
+    @Test
+    public void keyTypes() {
+        ConsistentHashShardRouter router = new ConsistentHashShardRouter();
+        for (int key = 0; key < 1000; key++) {
+            int shard = router.route((long) key, 16);
+            assertEquals(shard, router.route(key, 16));
+            assertEquals(router.route("k" + key, 16), router.route(new StringBuilder("k").append(key), 16));
+        }
+        assertEquals(ConsistentHashShardRouter.hash(5L), ConsistentHashShardRouter.hash((short) 5));
+    }
+
+    @Test
+    public void keysAreSpreadEvenly() {
+        ConsistentHashShardRouter router = new ConsistentHashShardRouter();
+        int shardCount = 8;
+        int[] counts = new int[shardCount];
+        for (long key = 0; key < KEYS; key++) {
+            counts[router.route(key, shardCount)]++;
+        }
+        int mean = KEYS / shardCount;
+        for (int count : counts) {
+            assertTrue(String.valueOf(count), Math.abs(count - mean) < mean / 4);
+        }
+    }
+
+    /**
+     * 增加一个分片时只有约1/N的键移动，并且都移到新分片
+     */
+    @Test
+    public void addingShardMovesFewKeys() {
+        ConsistentHashShardRouter eight = new ConsistentHashShardRouter();
+        ConsistentHashShardRouter nine = new ConsistentHashShardRouter();
+        int moved = 0;
+        for (long key = 0; key < KEYS; key++) {
+            int before = eight.route("order-" + key, 8);
+            int after = nine.route("order-" + key, 9);
+            if (before != after) {
+                assertEquals(8, after);
+                moved++;
+            }
+        }
+        int expected = KEYS / 9;
+        assertTrue(String.valueOf(moved), Math.abs(moved - expected) < expected / 4);
+    }
+
+    @Test
+    public void invalidArguments() {
+        try {
+            new ConsistentHashShardRouter(0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //虚拟节点数必须大于0
+        }
+        try {
+            new ConsistentHashShardRouter().route(1, 0);
+            fail();
+        } catch (IllegalArgumentException expected) {
+            //分片数量必须大于0
+        }
+    }
+}
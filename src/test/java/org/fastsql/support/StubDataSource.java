@@ -0,0 +1,312 @@
+package org.fastsql.support;
+
+import javax.sql.DataSource;
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.ToIntFunction;
+
+/**
+ * 不连接数据库的数据源，每次getConnection新建一个只记录状态的Connection
+ * <p>
+ * 连接初始为自动提交、可写、READ_COMMITTED，catalog为"db"，schema为"public"，isValid总是返回true。
+ * 执行的语句按顺序记录在{@link #getExecuted()}中，批处理的每条记录一次，绑定的参数记录在{@link #getParameters()}中；
+ * 查询结果由{@link #onQuery(Function)}提供，默认为空，修改行数由{@link #onUpdate(ToIntFunction)}提供，默认为1
+ */
+public final class StubDataSource implements InvocationHandler {
+
+    public static final String CATALOG = "db";
+
+    public static final String SCHEMA = "public";
+
+    private final AtomicInteger opened = new AtomicInteger();
+
+    private final AtomicInteger open = new AtomicInteger();
+
+    private final AtomicInteger maxOpen = new AtomicInteger();
+
+    private final List<String> executed = new CopyOnWriteArrayList<>();
+
+    private final List<List<Object>> parameters = new CopyOnWriteArrayList<>();
+
+    private volatile Function<String, ResultSet> queryResult = sql -> StubResultSet.of(new String[0]);
+
+    private volatile ToIntFunction<String> updateCount = sql -> 1;
+
+    private volatile String name = "StubDataSource";
+
+    private volatile boolean unavailable;
+
+    private StubDataSource() {
+    }
+
+    public static DataSource create() {
+        return (DataSource) Proxy.newProxyInstance(StubDataSource.class.getClassLoader(),
+                new Class<?>[]{DataSource.class}, new StubDataSource());
+    }
+
+    public static StubDataSource of(DataSource dataSource) {
+        return (StubDataSource) Proxy.getInvocationHandler(dataSource);
+    }
+
+    /**
+     * @return 打开过的物理连接数
+     */
+    public int getOpened() {
+        return opened.get();
+    }
+
+    /**
+     * @return 同时打开的物理连接数的最大值
+     */
+    public int getMaxOpen() {
+        return maxOpen.get();
+    }
+
+    /**
+     * @return 当前打开的物理连接数
+     */
+    public int getOpen() {
+        return open.get();
+    }
+
+    public List<String> getExecuted() {
+        return executed;
+    }
+
+    /**
+     * @return 与{@link #getExecuted()}一一对应，每次执行时按序号绑定的参数
+     */
+    public List<List<Object>> getParameters() {
+        return parameters;
+    }
+
+    public StubDataSource onQuery(Function<String, ResultSet> queryResult) {
+        this.queryResult = queryResult;
+        return this;
+    }
+
+    public StubDataSource onUpdate(ToIntFunction<String> updateCount) {
+        this.updateCount = updateCount;
+        return this;
+    }
+
+    /**
+     * @param unavailable 为true时getConnection抛出SQLException
+     */
+    public StubDataSource unavailable(boolean unavailable) {
+        this.unavailable = unavailable;
+        return this;
+    }
+
+    /**
+     * 出现在toString()中，用于区分多个数据源
+     */
+    public StubDataSource named(String name) {
+        this.name = name;
+        return this;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        switch (method.getName()) {
+            case "getConnection":
+                if (unavailable) {
+                    throw new SQLException(name + "不可用", "08001");
+                }
+                opened.incrementAndGet();
+                maxOpen.accumulateAndGet(open.incrementAndGet(), Math::max);
+                return Proxy.newProxyInstance(StubDataSource.class.getClassLoader(),
+                        new Class<?>[]{Connection.class}, new State());
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return name;
+            default:
+                throw new UnsupportedOperationException(method.getName());
+        }
+    }
+
+    /**
+     * 记录执行的语句和set方法绑定的参数，setNull记为null
+     */
+    private PreparedStatement statement(Connection connection, String sql) {
+        final List<List<Object>> batch = new ArrayList<>();
+        final Map<Integer, Object> bound = new TreeMap<>();
+        return (PreparedStatement) Proxy.newProxyInstance(StubDataSource.class.getClassLoader(),
+                new Class<?>[]{PreparedStatement.class}, (proxy, method, args) -> {
+                    String name = method.getName();
+                    switch (name) {
+                        case "executeQuery":
+                            record(sql, new ArrayList<>(bound.values()));
+                            return queryResult.apply(sql);
+                        case "executeUpdate":
+                            record(sql, new ArrayList<>(bound.values()));
+                            return updateCount.applyAsInt(sql);
+                        case "addBatch":
+                            batch.add(new ArrayList<>(bound.values()));
+                            return null;
+                        case "executeBatch":
+                            int[] counts = new int[batch.size()];
+                            for (int i = 0; i < counts.length; i++) {
+                                record(sql, batch.get(i));
+                                counts[i] = updateCount.applyAsInt(sql);
+                            }
+                            batch.clear();
+                            return counts;
+                        case "clearParameters":
+                            bound.clear();
+                            return null;
+                        case "getConnection":
+                            return connection;
+                        case "getWarnings":
+                        case "close":
+                            return null;
+                        case "hashCode":
+                            return System.identityHashCode(proxy);
+                        case "equals":
+                            return proxy == args[0];
+                        case "toString":
+                            return "StubStatement[" + sql + "]";
+                        default:
+                    }
+                    if (name.startsWith("set")) {
+                        if (args != null && args.length >= 2 && args[0] instanceof Integer) {
+                            bound.put((Integer) args[0], name.equals("setNull") ? null : args[1]);
+                        }
+                        return null;
+                    }
+                    throw new UnsupportedOperationException(name);
+                });
+    }
+
+    private synchronized void record(String sql, List<Object> values) {
+        executed.add(sql);
+        parameters.add(values);
+    }
+
+    private DatabaseMetaData metaData() {
+        return (DatabaseMetaData) Proxy.newProxyInstance(StubDataSource.class.getClassLoader(),
+                new Class<?>[]{DatabaseMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "supportsBatchUpdates":
+                            return true;
+                        case "getDatabaseProductName":
+                        case "getDriverName":
+                            return "Stub";
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+
+    public static State stateOf(Connection connection) {
+        return (State) Proxy.getInvocationHandler(connection);
+    }
+
+    /**
+     * @return connection是否由本数据源创建
+     */
+    public boolean owns(Connection connection) {
+        return Proxy.isProxyClass(connection.getClass()) && Proxy.getInvocationHandler(connection) instanceof State
+                && stateOf(connection).owner() == this;
+    }
+
+    /**
+     * 一个物理连接的状态
+     */
+    public final class State implements InvocationHandler {
+
+        public volatile boolean autoCommit = true;
+
+        public volatile boolean readOnly;
+
+        public volatile int isolation = Connection.TRANSACTION_READ_COMMITTED;
+
+        public volatile String catalog = CATALOG;
+
+        public volatile String schema = SCHEMA;
+
+        public volatile boolean closed;
+
+        public final AtomicInteger rollbacks = new AtomicInteger();
+
+        StubDataSource owner() {
+            return StubDataSource.this;
+        }
+
+        @Override
+        public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+            switch (method.getName()) {
+                case "getAutoCommit":
+                    return autoCommit;
+                case "setAutoCommit":
+                    autoCommit = (Boolean) args[0];
+                    return null;
+                case "isReadOnly":
+                    return readOnly;
+                case "setReadOnly":
+                    readOnly = (Boolean) args[0];
+                    return null;
+                case "getTransactionIsolation":
+                    return isolation;
+                case "setTransactionIsolation":
+                    isolation = (Integer) args[0];
+                    return null;
+                case "getCatalog":
+                    return catalog;
+                case "setCatalog":
+                    catalog = (String) args[0];
+                    return null;
+                case "getSchema":
+                    return schema;
+                case "setSchema":
+                    schema = (String) args[0];
+                    return null;
+                case "rollback":
+                    rollbacks.incrementAndGet();
+                    return null;
+                case "commit":
+                case "clearWarnings":
+                case "getWarnings":
+                    return null;
+                case "prepareStatement":
+                    return statement((Connection) proxy, (String) args[0]);
+                case "getMetaData":
+                    return metaData();
+                case "isValid":
+                    return !closed;
+                case "isClosed":
+                    return closed;
+                case "close":
+                    if (!closed) {
+                        closed = true;
+                        open.decrementAndGet();
+                    }
+                    return null;
+                case "hashCode":
+                    return System.identityHashCode(proxy);
+                case "equals":
+                    return proxy == args[0];
+                case "toString":
+                    return "StubConnection@" + Integer.toHexString(System.identityHashCode(proxy));
+                default:
+                    throw new UnsupportedOperationException(method.getName());
+            }
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package org.fastsql.support;
+
+import java.lang.reflect.InvocationHandler;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.Types;
+import java.util.Arrays;
+
+/**
+ * 内存中的只进ResultSet，按列序号返回构造时给出的值，用于不连接数据库的测试
+ * <p>
+ * 基本类型的get方法按Number转换，值为null时返回0并让wasNull()返回true；其他get方法原样返回给出的值
+ */
+public final class StubResultSet implements InvocationHandler {
+
+    private final String[] labels;
+
+    private final int[] types;
+
+    private final Object[][] rows;
+
+    private final int[] precisions;
+
+    private final int[] scales;
+
+    private int row = -1;
+
+    private boolean wasNull;
+
+    private boolean closed;
+
+    private StubResultSet(String[] labels, int[] types, Object[][] rows) {
+        this.labels = labels;
+        this.types = types;
+        this.rows = rows;
+        this.precisions = new int[labels.length];
+        this.scales = new int[labels.length];
+    }
+
+    /**
+     * 所有列的类型为Types.OTHER
+     */
+    public static ResultSet of(String[] labels, Object[]... rows) {
+        int[] types = new int[labels.length];
+        Arrays.fill(types, Types.OTHER);
+        return of(labels, types, rows);
+    }
+
+    public static ResultSet of(String[] labels, int[] types, Object[]... rows) {
+        return (ResultSet) Proxy.newProxyInstance(StubResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSet.class}, new StubResultSet(labels, types, rows));
+    }
+
+    /**
+     * 设置元数据中列的精度和小数位数，默认都为0
+     *
+     * @param column 从1开始
+     */
+    public static ResultSet withPrecision(ResultSet rs, int column, int precision, int scale) {
+        StubResultSet stub = (StubResultSet) Proxy.getInvocationHandler(rs);
+        stub.precisions[column - 1] = precision;
+        stub.scales[column - 1] = scale;
+        return rs;
+    }
+
+    @Override
+    public Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
+        String name = method.getName();
+        switch (name) {
+            case "next":
+                return ++row < rows.length;
+            case "wasNull":
+                return wasNull;
+            case "close":
+                closed = true;
+                return null;
+            case "isClosed":
+                return closed;
+            case "getMetaData":
+                return metaData();
+            case "hashCode":
+                return System.identityHashCode(proxy);
+            case "equals":
+                return proxy == args[0];
+            case "toString":
+                return "StubResultSet" + Arrays.toString(labels);
+            default:
+        }
+        if (name.startsWith("get") && args != null && args.length > 0) {
+            int index = args[0] instanceof Integer ? (Integer) args[0] : indexOf((String) args[0]);
+            Object value = rows[row][index - 1];
+            wasNull = value == null;
+            return convert(value, method.getReturnType());
+        }
+        throw new UnsupportedOperationException(name);
+    }
+
+    private int indexOf(String label) {
+        for (int i = 0; i < labels.length; i++) {
+            if (labels[i].equalsIgnoreCase(label)) {
+                return i + 1;
+            }
+        }
+        throw new IllegalArgumentException(label);
+    }
+
+    private static Object convert(Object value, Class<?> type) {
+        if (!type.isPrimitive()) {
+            return value;
+        }
+        if (type == boolean.class) {
+            return value != null && (Boolean) value;
+        }
+        Number number = value == null ? 0 : (Number) value;
+        if (type == int.class) {
+            return number.intValue();
+        } else if (type == long.class) {
+            return number.longValue();
+        } else if (type == double.class) {
+            return number.doubleValue();
+        } else if (type == float.class) {
+            return number.floatValue();
+        } else if (type == short.class) {
+            return number.shortValue();
+        }
+        return number.byteValue();
+    }
+
+    private ResultSetMetaData metaData() {
+        return (ResultSetMetaData) Proxy.newProxyInstance(StubResultSet.class.getClassLoader(),
+                new Class<?>[]{ResultSetMetaData.class}, (proxy, method, args) -> {
+                    switch (method.getName()) {
+                        case "getColumnCount":
+                            return labels.length;
+                        case "getColumnLabel":
+                        case "getColumnName":
+                            return labels[(Integer) args[0] - 1];
+                        case "getColumnType":
+                            return types[(Integer) args[0] - 1];
+                        case "getPrecision":
+                            return precisions[(Integer) args[0] - 1];
+                        case "getScale":
+                            return scales[(Integer) args[0] - 1];
+                        default:
+                            throw new UnsupportedOperationException(method.getName());
+                    }
+                });
+    }
+}
@@ -0,0 +1,77 @@
+package org.fastsql.util;
+
+import org.junit.Test;
+
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.ObjIntConsumer;
+import java.util.function.Supplier;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNotSame;
+import static org.junit.Assert.assertNull;
+
+public class AccessorsTest {
+
+    @Test
+    public void generatedAccessors() throws Exception {
+        Supplier<Pojo> constructor = Accessors.constructor(Pojo.class);
+        Pojo pojo = constructor.get();
+        Function<Object, Object> getter = Accessors.getter(Pojo.class.getMethod("getName"));
+        BiConsumer<Object, Object> setter = Accessors.setter(Pojo.class.getMethod("setName", String.class));
+        ObjIntConsumer<Object> intSetter = Accessors.intSetter(Pojo.class.getMethod("setAge", int.class));
+
+        setter.accept(pojo, "tom");
+        assertNotNull(intSetter);
+        intSetter.accept(pojo, 3);
+        assertEquals("tom", getter.apply(pojo));
+        assertEquals(3, pojo.getAge());
+    }
+
+    /**
+     * 子类加载器加载的实体类不能用FastSQL的类加载器生成访问函数，必须退回到MethodHandle
+     */
+    @Test
+    public void classFromForeignLoader() throws Exception {
+        URL classes = Pojo.class.getProtectionDomain().getCodeSource().getLocation();
+        try (URLClassLoader loader = new URLClassLoader(new URL[]{classes}, ClassLoader.getSystemClassLoader().getParent())) {
+            Class<?> cls = loader.loadClass(Pojo.class.getName());
+            assertNotSame(Pojo.class, cls);
+
+            Object bean = Accessors.constructor(cls).get();
+            Accessors.setter(cls.getMethod("setName", String.class)).accept(bean, "tom");
+            assertEquals("tom", Accessors.getter(cls.getMethod("getName")).apply(bean));
+            assertNull(Accessors.intSetter(cls.getMethod("setAge", int.class)));
+            Accessors.setter(cls.getMethod("setAge", int.class)).accept(bean, 5);
+            assertEquals(5, Accessors.getter(cls.getMethod("getAge")).apply(bean));
+
+            PropertyMetadata name = EntityMetadata.of(cls).getProperties().get("name");
+            name.set(bean, "jerry");
+            assertEquals("jerry", name.get(bean));
+        }
+    }
+
+    public static class Pojo {
+        private String name;
+        private int age;
+
+        public String getName() {
+            return name;
+        }
+
+        public void setName(String name) {
+            this.name = name;
+        }
+
+        public int getAge() {
+            return age;
+        }
+
+        public void setAge(int age) {
+            this.age = age;
+        }
+    }
+}
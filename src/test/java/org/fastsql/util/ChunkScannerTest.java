@@ -0,0 +1,158 @@
+package org.fastsql.util;
+
+import org.fastsql.dto.ScanProgress;
+import org.junit.Test;
+import org.springframework.transaction.support.TransactionSynchronizationManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+public class ChunkScannerTest {
+
+    private static Stream<Integer> rows(int count, AtomicBoolean closed, Set<Thread> readers) {
+        return IntStream.range(0, count).boxed()
+                .peek(row -> readers.add(Thread.currentThread()))
+                .onClose(() -> closed.set(true));
+    }
+
+    @Test
+    public void consumesAllRowsInChunks() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        List<Integer> sizes = new ArrayList<>();
+        List<Integer> consumed = new ArrayList<>();
+        ScanProgress progress = ChunkScanner.forEachChunk(rows(25, closed, readers), 10, (chunk, p) -> {
+            sizes.add(chunk.size());
+            consumed.addAll(chunk);
+        });
+        assertEquals("[10, 10, 5]", sizes.toString());
+        assertEquals(25, consumed.size());
+        assertEquals(24, (int) consumed.get(24));
+        assertEquals(25, progress.getRowCount());
+        assertEquals(3, progress.getChunkCount());
+        assertTrue(progress.isFinished());
+        assertTrue(closed.get());
+    }
+
+    /**
+     * 共享线程池满时在调用线程读取
+     */
+    @Test
+    public void readsInCurrentThreadWhenPoolIsBusy() throws Exception {
+        final int maximumPoolSize = SharedExecutor.getMaximumPoolSize();
+        final CountDownLatch release = new CountDownLatch(1);
+        SharedExecutor.setMaximumPoolSize(1);
+        try {
+            while (SharedExecutor.tryExecute(() -> awaitQuietly(release))) {
+                //占满线程池
+            }
+            AtomicBoolean closed = new AtomicBoolean();
+            Set<Thread> readers = ConcurrentHashMap.newKeySet();
+            List<Integer> consumed = new ArrayList<>();
+            ScanProgress progress = ChunkScanner.forEachChunk(rows(7, closed, readers), 3,
+                    (chunk, p) -> consumed.addAll(chunk));
+            assertEquals(7, consumed.size());
+            assertEquals(3, progress.getChunkCount());
+            assertEquals(1, readers.size());
+            assertTrue(readers.contains(Thread.currentThread()));
+            assertTrue(closed.get());
+        } finally {
+            release.countDown();
+            SharedExecutor.setMaximumPoolSize(maximumPoolSize);
+        }
+    }
+
+    /**
+     * 事务的连接绑定在调用线程上，事务中不交给读取线程
+     */
+    @Test
+    public void readsInCurrentThreadInTransaction() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        List<Integer> consumed = new ArrayList<>();
+        TransactionSynchronizationManager.setActualTransactionActive(true);
+        try {
+            ChunkScanner.forEachChunk(rows(20, closed, readers), 6, (chunk, p) -> consumed.addAll(chunk));
+        } finally {
+            TransactionSynchronizationManager.setActualTransactionActive(false);
+        }
+        assertEquals(20, consumed.size());
+        assertEquals(1, readers.size());
+        assertTrue(readers.contains(Thread.currentThread()));
+        assertTrue(closed.get());
+    }
+
+    /**
+     * 处理方出错时停止读取，关闭rows后抛出原异常
+     */
+    @Test
+    public void consumerFailureStopsReader() {
+        AtomicBoolean closed = new AtomicBoolean();
+        Set<Thread> readers = ConcurrentHashMap.newKeySet();
+        IllegalStateException failure = new IllegalStateException("consumer");
+        List<Integer> sizes = new ArrayList<>();
+        try {
+            ChunkScanner.forEachChunk(rows(1_000_000, closed, readers), 10, (chunk, p) -> {
+                sizes.add(chunk.size());
+                if (sizes.size() == 2) {
+                    throw failure;
+                }
+            });
+            fail();
+        } catch (IllegalStateException e) {
+            assertSame(failure, e);
+        }
+        assertEquals(2, sizes.size());
+        assertTrue(closed.get());
+        assertFalse(readers.contains(Thread.currentThread()));
+    }
+
+    /**
+     * 读取出错时已读到的块仍被处理，之后在调用线程抛出读取的异常
+     */
+    @Test
+    public void readerFailureIsRethrown() {
+        for (boolean transactional : new boolean[]{false, true}) {
+            AtomicBoolean closed = new AtomicBoolean();
+            IllegalStateException failure = new IllegalStateException("reader");
+            Stream<Integer> rows = IntStream.range(0, 100).boxed().map(row -> {
+                if (row == 25) {
+                    throw failure;
+                }
+                return row;
+            }).onClose(() -> closed.set(true));
+            List<Integer> consumed = new ArrayList<>();
+            TransactionSynchronizationManager.setActualTransactionActive(transactional);
+            try {
+                ChunkScanner.forEachChunk(rows, 10, (chunk, p) -> consumed.addAll(chunk));
+                fail();
+            } catch (IllegalStateException e) {
+                assertSame(failure, e);
+            } finally {
+                TransactionSynchronizationManager.setActualTransactionActive(false);
+            }
+            assertEquals(20, consumed.size());
+            assertTrue(closed.get());
+        }
+    }
+
+    private static void awaitQuietly(CountDownLatch latch) {
+        try {
+            latch.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
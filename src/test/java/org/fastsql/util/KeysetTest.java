@@ -0,0 +1,220 @@
+package org.fastsql.util;
+
+import org.fastsql.FastSQLException;
+import org.fastsql.config.DatabaseType;
+import org.junit.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.sql.Time;
+import java.sql.Timestamp;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Random;
+import java.util.UUID;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+public class KeysetTest {
+
+    private static Keyset columns(int count) {
+        StringBuilder orderBy = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            orderBy.append(i == 0 ? "" : ", ").append("c").append(i);
+        }
+        return Keyset.parse(orderBy.toString());
+    }
+
+    private static Object[] roundTrip(Object... key) {
+        Keyset keyset = columns(key.length);
+        return keyset.decode(keyset.encode(key));
+    }
+
+    @Test
+    public void roundTripKeepsValueAndType() {
+        Timestamp timestamp = Timestamp.valueOf("2018-03-04 05:06:07.123456789");
+        Timestamp beforeEpoch = new Timestamp(-1500);
+        Object[] key = {
+                "a:b,c 中文 12:x", 42, Long.MAX_VALUE, new BigDecimal("1.50"), new BigInteger("123456789012345678901234567890"),
+                -0.25d, true, java.sql.Date.valueOf("2018-03-04"), Time.valueOf("05:06:07"), timestamp, beforeEpoch,
+                LocalDate.of(2018, 3, 4), LocalDateTime.of(2018, 3, 4, 5, 6, 7, 8), UUID.randomUUID(), ""
+        };
+        Object[] decoded = roundTrip(key);
+        assertArrayEquals(key, decoded);
+        for (int i = 0; i < key.length; i++) {
+            assertEquals(key[i].getClass(), decoded[i].getClass());
+        }
+        assertEquals(timestamp.getNanos(), ((Timestamp) decoded[9]).getNanos());
+    }
+
+    /**
+     * 较窄的数字类型和java.util.Date解码为同值的通用类型
+     */
+    @Test
+    public void roundTripWidensTypes() {
+        java.util.Date date = new java.util.Date(1520139967123L);
+        Object[] decoded = roundTrip((short) 7, (byte) -3, 1.5f, date);
+        assertArrayEquals(new Object[]{7, -3, 1.5d, new Timestamp(date.getTime())}, decoded);
+    }
+
+    @Test
+    public void invalidKeysAndCursors() {
+        Keyset keyset = columns(2);
+        assertNull(keyset.decode(null));
+        assertNull(keyset.decode(""));
+        expectFailure(() -> keyset.encode(new Object[]{1, null}));
+        expectFailure(() -> keyset.encode(new Object[]{1, new Object()}));
+        expectFailure(() -> keyset.decode("not a cursor"));
+        expectFailure(() -> keyset.decode(columns(1).encode(new Object[]{1})));
+    }
+
+    private static void expectFailure(Runnable action) {
+        try {
+            action.run();
+            fail();
+        } catch (FastSQLException expected) {
+            //游标或排序列的值无效
+        }
+    }
+
+    @Test
+    public void parse() {
+        Keyset keyset = Keyset.parse("t.create_time desc, `id`, \"名称\"");
+        assertArrayEquals(new String[]{"create_time", "id", "名称"}, keyset.getColumns());
+        assertEquals("create_time DESC, id ASC, 名称 ASC", keyset.getOrderBy());
+        assertEquals("create_time DESC, id DESC", Keyset.parse("create_time DESC").thenBy("id").getOrderBy());
+        for (String orderBy : new String[]{"lower(name)", "name NULLS FIRST", "a,,b", " ", "name; DROP TABLE t"}) {
+            try {
+                Keyset.parse(orderBy);
+                fail(orderBy);
+            } catch (IllegalArgumentException expected) {
+                //只支持列名加排序方向
+            }
+        }
+    }
+
+    @Test
+    public void rowValueComparisonWhenDirectionsMatch() {
+        Keyset keyset = Keyset.parse("a DESC, b DESC");
+        assertEquals("SELECT * FROM t WHERE (x = ?) AND (a, b) < (?, ?) ORDER BY a DESC, b DESC LIMIT 11",
+                keyset.getRowsSQL("SELECT * FROM t", "x = ?", true, false, 11, DatabaseType.MY_SQL));
+        assertEquals("SELECT * FROM t WHERE (a, b) < (:keyset_0, :keyset_1) ORDER BY a DESC, b DESC LIMIT 11",
+                keyset.getRowsSQL("SELECT * FROM t", null, true, true, 11, DatabaseType.POSTGRESQL));
+        assertArrayEquals(new Object[]{"x", 1, 2},
+                keyset.bind(new Object[]{"x"}, new Object[]{1, 2}, DatabaseType.MY_SQL));
+    }
+
+    /**
+     * 排序方向不同时展开的条件恰好选中排序后游标之后的所有行
+     */
+    @Test
+    public void mixedDirectionPredicateSelectsRowsAfterCursor() {
+        Keyset keyset = Keyset.parse("a ASC, b DESC, id ASC");
+        String sql = keyset.getRowsSQL("SELECT * FROM t", null, true, false, 10, DatabaseType.POSTGRESQL);
+        String predicate = sql.substring("SELECT * FROM t WHERE ".length(), sql.indexOf(" ORDER BY "));
+        assertEquals("(a >= ? AND (a > ? OR (b <= ? AND (b < ? OR id > ?))))", predicate);
+
+        Random random = new Random(7);
+        List<int[]> rows = new ArrayList<>();
+        for (int id = 0; id < 200; id++) {
+            rows.add(new int[]{random.nextInt(4), random.nextInt(4), id});
+        }
+        rows.sort(Comparator.<int[]>comparingInt(row -> row[0])
+                .thenComparing(row -> row[1], Comparator.reverseOrder())
+                .thenComparingInt(row -> row[2]));
+        for (int k = 0; k < rows.size(); k++) {
+            int[] cursor = rows.get(k);
+            Object[] params = keyset.bind(null, new Object[]{cursor[0], cursor[1], cursor[2]}, DatabaseType.POSTGRESQL);
+            List<int[]> selected = new ArrayList<>();
+            for (int[] row : rows) {
+                if (new Predicate(predicate, row, params).evaluate()) {
+                    selected.add(row);
+                }
+            }
+            assertEquals(rows.size() - k - 1, selected.size());
+            for (int i = 0; i < selected.size(); i++) {
+                assertArrayEquals(rows.get(k + 1 + i), selected.get(i));
+            }
+        }
+    }
+
+    /**
+     * 按生成的条件判断一行是否满足，只支持 列 比较符 ?、AND、OR 和括号，列为a、b、id
+     */
+    private static final class Predicate {
+
+        private final List<String> tokens;
+
+        private final int[] row;
+
+        private final Object[] params;
+
+        private int position;
+
+        private int parameter;
+
+        Predicate(String sql, int[] row, Object[] params) {
+            this.tokens = Arrays.asList(sql.replace("(", " ( ").replace(")", " ) ").trim().split("\\s+"));
+            this.row = row;
+            this.params = params;
+        }
+
+        boolean evaluate() {
+            boolean result = or();
+            assertEquals(tokens.size(), position);
+            assertEquals(params.length, parameter);
+            return result;
+        }
+
+        private boolean or() {
+            boolean result = and();
+            while (position < tokens.size() && tokens.get(position).equals("OR")) {
+                position++;
+                result |= and();
+            }
+            return result;
+        }
+
+        private boolean and() {
+            boolean result = factor();
+            while (position < tokens.size() && tokens.get(position).equals("AND")) {
+                position++;
+                result &= factor();
+            }
+            return result;
+        }
+
+        private boolean factor() {
+            if (tokens.get(position).equals("(")) {
+                position++;
+                boolean result = or();
+                assertEquals(")", tokens.get(position++));
+                return result;
+            }
+            String column = tokens.get(position++);
+            String op = tokens.get(position++);
+            assertEquals("?", tokens.get(position++));
+            int value = column.equals("a") ? row[0] : column.equals("b") ? row[1] : row[2];
+            int compared = Integer.compare(value, (Integer) params[parameter++]);
+            switch (op) {
+                case ">":
+                    return compared > 0;
+                case ">=":
+                    return compared >= 0;
+                case "<":
+                    return compared < 0;
+                case "<=":
+                    return compared <= 0;
+                default:
+                    throw new IllegalArgumentException(op);
+            }
+        }
+    }
+}
@@ -0,0 +1,120 @@
+package org.fastsql.util;
+
+import org.fastsql.config.DatabaseType;
+import org.fastsql.dto.ResultPage;
+import org.fastsql.support.StubDataSource;
+import org.fastsql.support.StubResultSet;
+import org.junit.Test;
+import org.springframework.jdbc.core.ColumnMapRowMapper;
+import org.springframework.jdbc.core.namedparam.NamedParameterJdbcTemplate;
+
+import javax.sql.DataSource;
+import java.sql.Types;
+import java.util.Map;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+
+public class PageUtilsTest {
+
+    private static String window(String sql) {
+        return PageUtils.getWindowRowsSQL(sql, 2, 10, DatabaseType.POSTGRESQL);
+    }
+
+    @Test
+    public void addsTotalToOuterSelect() {
+        assertEquals("SELECT id, name , COUNT(*) OVER() AS FASTSQL_TOTAL FROM t WHERE a = 1 ORDER BY id LIMIT 10 OFFSET 10",
+                window("SELECT id, name FROM t WHERE a = 1 ORDER BY id"));
+        assertEquals("SELECT * , COUNT(*) OVER() AS FASTSQL_TOTAL FROM t LIMIT 10,10",
+                PageUtils.getWindowRowsSQL("SELECT * FROM t", 2, 10, DatabaseType.MY_SQL));
+    }
+
+    @Test
+    public void lowercaseKeywords() {
+        assertEquals("select id , COUNT(*) OVER() AS FASTSQL_TOTAL from t where a in (select b from u) LIMIT 10 OFFSET 10",
+                window("select id from t where a in (select b from u)"));
+    }
+
+    /**
+     * 选择列表中子查询的FROM不是最外层的FROM
+     */
+    @Test
+    public void subqueryInSelectList() {
+        assertEquals("SELECT t.id, (SELECT count(*) FROM u WHERE u.t_id = t.id) c , COUNT(*) OVER() AS FASTSQL_TOTAL "
+                        + "FROM t LIMIT 10 OFFSET 10",
+                window("SELECT t.id, (SELECT count(*) FROM u WHERE u.t_id = t.id) c FROM t"));
+    }
+
+    /**
+     * 引号中的关键字不参与解析
+     */
+    @Test
+    public void quotedIdentifiersAndLiterals() {
+        assertEquals("SELECT \"from\", `select`, 'a FROM b' , COUNT(*) OVER() AS FASTSQL_TOTAL FROM t LIMIT 10 OFFSET 10",
+                window("SELECT \"from\", `select`, 'a FROM b' FROM t"));
+        assertEquals("SELECT 'it''s' , COUNT(*) OVER() AS FASTSQL_TOTAL FROM t LIMIT 10 OFFSET 10",
+                window("SELECT 'it''s' FROM t"));
+        assertNull(window("SELECT 'unterminated FROM t"));
+    }
+
+    @Test
+    public void commonTableExpression() {
+        assertEquals("WITH a AS (SELECT id FROM t), b AS (SELECT id FROM u) SELECT a.id , COUNT(*) OVER() AS FASTSQL_TOTAL "
+                        + "FROM a JOIN b ON a.id = b.id LIMIT 10 OFFSET 10",
+                window("WITH a AS (SELECT id FROM t), b AS (SELECT id FROM u) SELECT a.id FROM a JOIN b ON a.id = b.id"));
+        //CTE中的UNION不影响外层
+        assertEquals("WITH a AS (SELECT id FROM t UNION SELECT id FROM u) SELECT id , COUNT(*) OVER() AS FASTSQL_TOTAL "
+                        + "FROM a LIMIT 10 OFFSET 10",
+                window("WITH a AS (SELECT id FROM t UNION SELECT id FROM u) SELECT id FROM a"));
+    }
+
+    /**
+     * 窗口函数在DISTINCT和集合运算之前计算，总数不正确，改用单独的计数查询
+     */
+    @Test
+    public void distinctAndSetOperationsAreNotRewritten() {
+        assertNull(window("SELECT DISTINCT name FROM t"));
+        assertNull(window("select distinct name from t"));
+        assertNull(window("SELECT id FROM t UNION SELECT id FROM u"));
+        assertNull(window("SELECT id FROM t union all SELECT id FROM u"));
+        assertNull(window("SELECT id FROM t EXCEPT SELECT id FROM u"));
+        assertNull(window("SELECT id FROM t INTERSECT SELECT id FROM u"));
+        assertNull(window("WITH a AS (SELECT id FROM t) SELECT DISTINCT id FROM a"));
+        assertNull(window("SELECT 1"));
+    }
+
+    @Test
+    public void distinctInsideSubqueryIsAllowed() {
+        assertEquals("SELECT id , COUNT(*) OVER() AS FASTSQL_TOTAL FROM (SELECT DISTINCT id FROM t) x LIMIT 10 OFFSET 10",
+                window("SELECT id FROM (SELECT DISTINCT id FROM t) x"));
+    }
+
+    @Test
+    public void oracleCountsOutsideRownum() {
+        assertEquals("SELECT * FROM  (       SELECT t.*, ROWNUM RN, COUNT(*) OVER() FASTSQL_TOTAL FROM  ( "
+                        + "SELECT DISTINCT a FROM t ) t    ) WHERE RN > 10 AND RN <= 20",
+                PageUtils.getWindowRowsSQL("SELECT DISTINCT a FROM t", 2, 10, DatabaseType.ORACLE));
+    }
+
+    /**
+     * 总数从第一行读取，Map结果中去掉总数列
+     */
+    @Test
+    public void windowCountRowMapperStripsTotal() {
+        DataSource dataSource = StubDataSource.create();
+        StubDataSource.of(dataSource).onQuery(sql -> StubResultSet.of(
+                new String[]{"id", "name", "fastsql_total"}, new int[]{Types.INTEGER, Types.VARCHAR, Types.BIGINT},
+                new Object[]{1, "a", 42L}, new Object[]{2, "b", 42L}));
+        PageTemplate template = new PageTemplate(new NamedParameterJdbcTemplate(dataSource), true);
+        ResultPage<Map<String, Object>> page = template.queryPage("SELECT id, name FROM t", 1, 2, new Object[0],
+                new ColumnMapRowMapper(), DatabaseType.POSTGRESQL);
+        assertEquals(42, page.getTotalElements());
+        assertEquals(2, page.getContent().size());
+        for (Map<String, Object> row : page.getContent()) {
+            assertEquals(2, row.size());
+            assertFalse(row.containsKey(PageUtils.TOTAL_COLUMN));
+        }
+        assertEquals(1, StubDataSource.of(dataSource).getExecuted().size());
+    }
+}